@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.search.MusicSearch;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
+
+import org.json.JSONObject;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks complete searches and lookups through each transport, against the local stand-in for the iTunes
+ * api so that no network or rate limit is involved. The stand-in serves https like the real api, so requests
+ * without keep-alive pay for a tls handshake each, and the keepAlive parameter measures what reusing connections
+ * saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=1272970334");
+
+    @Param({ "urlConnection", "pooled", "httpClient" })
+    public String transport;
+
+    @Param({ "true", "false" })
+    public boolean keepAlive;
+
+    private ItunesStandInServer standIn;
+    private HttpTransport httpTransport;
+    private ItunesClient client;
+
+    @Setup
+    public void startStandIn() throws IOException {
+        KeyStore keyStore = keyStore();
+        standIn = ItunesStandInServer.start(serverContext(keyStore));
+        httpTransport = create(transport, keepAlive, clientContext(keyStore));
+
+        /*
+         * coalescing is off so every invocation makes its own request
+         */
+        client = standIn.configure(new ItunesClient()
+            .withTransport(httpTransport)
+            .withRequestCoalescing(false));
+    }
+
+    @TearDown
+    public void stopStandIn() throws IOException {
+        if (httpTransport instanceof Closeable) ((Closeable) httpTransport).close();
+        standIn.close();
+    }
+
+    private static HttpTransport create(String transport, boolean keepAlive, SSLContext sslContext) {
+        switch (transport) {
+            case "urlConnection":
+                return new UrlConnectionTransport().withSslContext(sslContext).withKeepAlive(keepAlive);
+            case "pooled":
+                PooledHttpTransport pooled = new PooledHttpTransport().withSslContext(sslContext);
+                return keepAlive ? pooled : pooled.withMaxIdleConnections(0);
+            case "httpClient":
+                /*
+                 * the client has no switch for keep-alive, but its pool drops connections right away with a zero
+                 * timeout. Every trial runs in a fresh fork, so the property is read for this client only.
+                 */
+                if (!keepAlive) System.setProperty("jdk.httpclient.keepalive.timeout", "0");
+
+                return new HttpClientTransport(HttpClient.newBuilder()
+                    .followRedirects(HttpClient.Redirect.NORMAL)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .sslContext(sslContext)
+                    .build());
+            default: throw new IllegalArgumentException("Unknown transport " + transport);
+        }
+    }
+
+    /**
+     * @return the key store holding the certificate of localhost, also trusted by the clients
+     */
+    private static KeyStore keyStore() throws IOException {
+        try (InputStream in = EndToEndBenchmark.class.getResourceAsStream("/networking/localhost.p12")) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, KEYSTORE_PASSWORD);
+            return keyStore;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static SSLContext serverContext(KeyStore keyStore) throws IOException {
+        try {
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(keyManagers.getKeyManagers(), null, null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static SSLContext clientContext(KeyStore keyStore) throws IOException {
+        try {
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(keyStore);
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagers.getTrustManagers(), null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Benchmark
+    public JSONObject search() {
+        return new MusicSearch().with("the national").withClient(client).execute();
+    }
+
+    @Benchmark
+    public JSONObject lookup() {
+        return client.executeQuery(LOOKUP_URI);
+    }
+
+    @Benchmark
+    public JSONObject lookupAsync() {
+        return client.executeQueryAsync(LOOKUP_URI).join();
+    }
+
+}
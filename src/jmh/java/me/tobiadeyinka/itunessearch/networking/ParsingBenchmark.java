@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.results.ItunesResult;
+import me.tobiadeyinka.itunessearch.results.ItunesResults;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading and parsing response bodies of 1, 50 and 200 results, built from the recorded results
+ * the test stand-in serves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+    private static final String CATALOG = "/standin/catalog.json";
+
+    @Param({ "1", "50", "200" })
+    public int results;
+
+    private byte[] body;
+
+    @Setup
+    public void createBody() throws IOException {
+        JSONArray catalog;
+
+        try (InputStream in = ParsingBenchmark.class.getResourceAsStream(CATALOG)) {
+            if (in == null) throw new IOException("Missing " + CATALOG + ", run with the test classpath");
+            catalog = new JSONObject(new JSONTokener(in)).getJSONArray("results");
+        }
+
+        JSONArray payload = new JSONArray();
+        for (int i = 0; i < results; i++) {
+            payload.put(catalog.get(i % catalog.length()));
+        }
+
+        body = new JSONObject()
+            .put("resultCount", results)
+            .put("results", payload)
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * reading the body into a string with a {@link Scanner}, the way responses used to be read
+     */
+    @Benchmark
+    public String scannerRead() {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(body), StandardCharsets.UTF_8.name()).useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+    /**
+     * reading the body with {@link Scanner} then parsing the string, the way responses used to be parsed
+     */
+    @Benchmark
+    public JSONObject scannerThenJsonObject() {
+        return new JSONObject(scannerRead());
+    }
+
+    /**
+     * parsing the whole body straight from the stream
+     */
+    @Benchmark
+    public JSONObject streamingJsonObject() {
+        return ResponseParser.parse(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * parsing the results one at a time, without holding on to them
+     */
+    @Benchmark
+    public int forEachResult(Blackhole blackhole) {
+        return ResponseParser.forEachResult(new ByteArrayInputStream(body), blackhole::consume);
+    }
+
+    /**
+     * parsing the body into typed results
+     */
+    @Benchmark
+    public List<ItunesResult> typedResults() {
+        return ItunesResults.parse(body);
+    }
+
+}
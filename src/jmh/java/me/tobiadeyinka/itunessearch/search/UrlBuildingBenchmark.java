@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import me.tobiadeyinka.itunessearch.networking.NetworkUtils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building the url of each kind of search, from the query string to the encoded uri that is sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBuildingBenchmark {
+
+    @Param({ "audiobook", "ebook", "media", "movie", "music", "musicVideo", "podcast", "shortFilm", "software", "tvShow" })
+    public String kind;
+
+    private Search<?> search;
+    private URL url;
+
+    @Setup
+    public void createSearch() throws MalformedURLException {
+        search = create(kind);
+        search.with("jack johnson");
+        url = new URL(search.constructUrlString());
+    }
+
+    private static Search<?> create(String kind) {
+        switch (kind) {
+            case "audiobook": return new AudioBookSearch();
+            case "ebook": return new EBookSearch();
+            case "media": return new MediaSearch();
+            case "movie": return new MovieSearch();
+            case "music": return new MusicSearch();
+            case "musicVideo": return new MusicVideoSearch();
+            case "podcast": return new PodcastSearch();
+            case "shortFilm": return new ShortFilmSearch();
+            case "software": return new SoftwareSearch();
+            case "tvShow": return new TvShowSearch();
+            default: throw new IllegalArgumentException("Unknown search " + kind);
+        }
+    }
+
+    /**
+     * concatenating the query string
+     */
+    @Benchmark
+    public String constructUrlString() {
+        return search.constructUrlString();
+    }
+
+    /**
+     * re-encoding the url into the uri every request is sent to
+     */
+    @Benchmark
+    public URI encode() {
+        return NetworkUtils.encode(url);
+    }
+
+    /**
+     * everything a search does before its first request: parameter checks, url construction and encoding
+     */
+    @Benchmark
+    public CompiledQuery compile() {
+        return search.compile();
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.lookup;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of looking up several items by id at once.
+ */
+public class BatchLookupResult {
+
+    private final Map<Long, JSONObject> results;
+    private final Set<Long> missingIds;
+
+    BatchLookupResult(Map<Long, JSONObject> results, Set<Long> missingIds) {
+        this.results = Collections.unmodifiableMap(results);
+        this.missingIds = Collections.unmodifiableSet(missingIds);
+    }
+
+    /**
+     *
+     * @return the items found, keyed by the id they were looked up with, in the order the ids were passed
+     */
+    public Map<Long, JSONObject> getResults() {
+        return results;
+    }
+
+    /**
+     * @param id an id that was looked up
+     * @return the item found for the id, or null if none matched
+     */
+    public JSONObject get(long id) {
+        return results.get(id);
+    }
+
+    /**
+     *
+     * @return the ids no item matched
+     */
+    public Set<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    /**
+     *
+     * @return true if an item was found for every id
+     */
+    public boolean isComplete() {
+        return missingIds.isEmpty();
+    }
+
+}
@@ -22,6 +22,10 @@ import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
 import org.json.JSONObject;
 import com.neovisionaries.i18n.CountryCode;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 public class BookLookup extends Lookup {
 
     private enum BookList {
@@ -46,6 +50,71 @@ public class BookLookup extends Lookup {
         return getById(id);
     }
 
+    /**
+     * get a book by it's id, failing if the lookup does not complete within the timeout
+     *
+     * @param id The id of the book
+     * @param timeout the time the lookup may take
+     * @return a JSONObject of the book
+     * @throws NoMatchFoundException if no book is found with the passed id
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the lookup does not complete in
+     *         time
+     */
+    public static JSONObject getBookById(long id, Duration timeout) throws NoMatchFoundException {
+        return getById(id, timeout);
+    }
+
+    /**
+     * get a book by it's id without blocking the calling thread
+     *
+     * @param id The id of the book
+     * @return a future completed with a JSONObject of the book, or completed
+     *         exceptionally with a {@link NoMatchFoundException} if no book is found with the passed id
+     */
+    public static CompletableFuture<JSONObject> getBookByIdAsync(long id) {
+        return getByIdAsync(id);
+    }
+
+    /**
+     * get several books by their ids
+     *
+     * @param ids the ids of the books
+     * @return the books found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(long... ids) {
+        return lookupByIds(asList(ids));
+    }
+
+    /**
+     * get several books by their ids
+     *
+     * @param ids the ids of the books
+     * @return the books found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(Collection<Long> ids) {
+        return lookupByIds(ids);
+    }
+
+    /**
+     * get several books by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the books
+     * @return a future completed with the books found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(long... ids) {
+        return lookupByIdsAsync(asList(ids));
+    }
+
+    /**
+     * get several books by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the books
+     * @return a future completed with the books found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(Collection<Long> ids) {
+        return lookupByIdsAsync(ids);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} free books in the default iTunes store
      *
@@ -55,6 +124,16 @@ public class BookLookup extends Lookup {
         return topFree(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} free books in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top free books
+     */
+    public static CompletableFuture<JSONObject> topFreeAsync() {
+        return topFreeAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) free books in the default iTunes store
      *
@@ -65,6 +144,16 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_FREE, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) free books in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of books to return
+     * @return a future completed with a JSONObject containing a list of the top free books
+     */
+    public static CompletableFuture<JSONObject> topFreeAsync(int limit) {
+        return queryBookListAsync(BookList.TOP_FREE, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} free books in the specified iTunes store
      *
@@ -75,6 +164,17 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_FREE, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} free books in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top free books
+     */
+    public static CompletableFuture<JSONObject> topFreeAsync(CountryCode countryCode) {
+        return queryBookListAsync(BookList.TOP_FREE, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) free books in the specified iTunes store
      *
@@ -86,6 +186,32 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_FREE, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) free books in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of books to return
+     * @return a future completed with a JSONObject containing a list of the top free books
+     */
+    public static CompletableFuture<JSONObject> topFreeAsync(CountryCode countryCode, int limit) {
+        return queryBookListAsync(BookList.TOP_FREE, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) free books in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of books to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the top free books
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topFree(CountryCode countryCode, int limit, Duration timeout) {
+        return queryBookList(BookList.TOP_FREE, countryCode, limit, timeout);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} paid books in the default iTunes store
      *
@@ -95,6 +221,16 @@ public class BookLookup extends Lookup {
         return topPaid(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} paid books in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top paid books
+     */
+    public static CompletableFuture<JSONObject> topPaidAsync() {
+        return topPaidAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) paid books in the default iTunes store
      *
@@ -105,6 +241,16 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_PAID, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) paid books in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of books to return
+     * @return a future completed with a JSONObject containing a list of the top paid books
+     */
+    public static CompletableFuture<JSONObject> topPaidAsync(int limit) {
+        return queryBookListAsync(BookList.TOP_PAID, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} paid books in the specified iTunes store
      *
@@ -115,6 +261,17 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_PAID, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} paid books in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top paid books
+     */
+    public static CompletableFuture<JSONObject> topPaidAsync(CountryCode countryCode) {
+        return queryBookListAsync(BookList.TOP_PAID, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) paid books in the specified iTunes store
      *
@@ -126,12 +283,48 @@ public class BookLookup extends Lookup {
         return queryBookList(BookList.TOP_PAID, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) paid books in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of books to return
+     * @return a future completed with a JSONObject containing a list of the top paid books
+     */
+    public static CompletableFuture<JSONObject> topPaidAsync(CountryCode countryCode, int limit) {
+        return queryBookListAsync(BookList.TOP_PAID, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) paid books in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of books to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the top paid books
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topPaid(CountryCode countryCode, int limit, Duration timeout) {
+        return queryBookList(BookList.TOP_PAID, countryCode, limit, timeout);
+    }
+
     private static JSONObject queryBookList(BookLookup.BookList list, CountryCode countryCode, int limit) {
-        return executeQuery(
-            String.format(
-                "https://rss.itunes.apple.com/api/v1/%s/books/%s/all/%s/explicit.json",
-                countryCode.getAlpha2(), list.urlKey, limit
-            )
+        return executeQuery(bookListUrl(list, countryCode, limit));
+    }
+
+    private static JSONObject queryBookList(BookLookup.BookList list, CountryCode countryCode, int limit, Duration timeout) {
+        return executeQuery(bookListUrl(list, countryCode, limit), timeout);
+    }
+
+    private static CompletableFuture<JSONObject> queryBookListAsync(BookList list, CountryCode countryCode, int limit) {
+        return executeQueryAsync(bookListUrl(list, countryCode, limit));
+    }
+
+    private static String bookListUrl(BookList list, CountryCode countryCode, int limit) {
+        return String.format(
+            "https://rss.itunes.apple.com/api/v1/%s/books/%s/all/%s/explicit.json",
+            countryCode.getAlpha2(), list.urlKey, limit
         );
     }
 
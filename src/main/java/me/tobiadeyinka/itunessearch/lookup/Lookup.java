@@ -19,15 +19,23 @@ package me.tobiadeyinka.itunessearch.lookup;
 
 import com.neovisionaries.i18n.CountryCode;
 
-import me.tobiadeyinka.itunessearch.networking.NetworkUtils;
-import me.tobiadeyinka.itunessearch.exceptions.ItunesSearchException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
 import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+import me.tobiadeyinka.itunessearch.exceptions.SearchURLConstructionFailure;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Parent class for all lookups, containing common code implementations
@@ -41,16 +49,217 @@ abstract class Lookup {
     protected static final CountryCode DEFAULT_COUNTRY = CountryCode.US;
 
     /**
-     * retrieve a media item by its id
+     * Batched id lookups are split so no url is longer than this.
+     */
+    protected static final int MAX_LOOKUP_URL_LENGTH = 2000;
+
+    /**
+     * Batched id lookups are split so no request asks for more ids than this.
+     */
+    protected static final int MAX_IDS_PER_LOOKUP = 200;
+
+    /**
+     * retrieve a media item by its id. The lookup is batched with others if a {@link LookupBatcher} is installed.
      *
      * @param id the itunes id for the item
      * @return a JSONObject representation of the item
      * @throws NoMatchFoundException if no matching item is found
      */
     protected static JSONObject getById(long id) throws NoMatchFoundException {
-        String urlString = String.format("%sid=%s", BASE_LOOKUP_URL, id);
+        LookupBatcher batcher = LookupBatcher.getDefault();
+        if (batcher == null) return verifyMatch(executeQuery(lookupUrl(id)));
+
+        try {
+            return batcher.lookup(id).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof NoMatchFoundException) throw (NoMatchFoundException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * retrieve a media item by its id, failing if the lookup does not complete within the timeout. The lookup is
+     * batched with others if a {@link LookupBatcher} is installed, the batch's window counts towards the timeout.
+     *
+     * @param id the itunes id for the item
+     * @param timeout the time the lookup may take
+     * @return a JSONObject representation of the item
+     * @throws NoMatchFoundException if no matching item is found
+     * @throws RequestTimeoutException if the lookup does not complete in time
+     */
+    protected static JSONObject getById(long id, Duration timeout) throws NoMatchFoundException {
+        LookupBatcher batcher = LookupBatcher.getDefault();
+        if (batcher == null) return verifyMatch(executeQuery(lookupUrl(id), timeout));
+
+        try {
+            return batcher.lookup(id).get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RequestTimeoutException("Deadline passed while looking up id " + id);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestTimeoutException("Interrupted while looking up id " + id);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NoMatchFoundException) throw (NoMatchFoundException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * retrieve a media item by its id without blocking the calling thread. The lookup is batched with others if a
+     * {@link LookupBatcher} is installed.
+     *
+     * @param id the itunes id for the item
+     * @return a future completed with a JSONObject representation of the item, or completed exceptionally with
+     *         a {@link NoMatchFoundException} if no matching item is found
+     */
+    protected static CompletableFuture<JSONObject> getByIdAsync(long id) {
+        LookupBatcher batcher = LookupBatcher.getDefault();
+        if (batcher != null) return batcher.lookup(id);
+
+        return executeQueryAsync(lookupUrl(id)).thenCompose(response -> {
+            try {
+                return CompletableFuture.completedFuture(verifyMatch(response));
+            } catch (NoMatchFoundException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+
+    /**
+     * retrieve several media items by their ids. The ids are split into as many requests as needed to keep the
+     * urls short, and the requests are executed concurrently.
+     *
+     * @param ids the itunes ids of the items
+     * @return the items found keyed by id, and the ids no item matched
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any of the requests fails
+     */
+    protected static BatchLookupResult lookupByIds(Collection<Long> ids) {
+        try {
+            return lookupByIdsAsync(ids).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * retrieve several media items by their ids without blocking the calling thread
+     *
+     * @param ids the itunes ids of the items
+     * @return a future completed with the items found keyed by id and the ids no item matched, or completed
+     *         exceptionally if any of the requests fails
+     */
+    protected static CompletableFuture<BatchLookupResult> lookupByIdsAsync(Collection<Long> ids) {
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        List<CompletableFuture<JSONObject>> responses = new ArrayList<>();
+
+        for (List<Long> chunk : chunk(requestedIds)) {
+            responses.add(executeQueryAsync(lookupUrl(chunk)));
+        }
+
+        return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<Long, JSONObject> matches = new HashMap<>();
+
+            for (CompletableFuture<JSONObject> response : responses) {
+                JSONArray results = response.join().getJSONArray("results");
 
-        JSONObject response = executeQuery(urlString);
+                for (int i = 0; i < results.length(); i++) {
+                    JSONObject result = results.getJSONObject(i);
+                    Long id = matchingId(result, requestedIds);
+                    if (id != null) matches.putIfAbsent(id, result);
+                }
+            }
+
+            Map<Long, JSONObject> orderedMatches = new LinkedHashMap<>();
+            Set<Long> missingIds = new LinkedHashSet<>();
+
+            for (Long id : requestedIds) {
+                JSONObject match = matches.get(id);
+
+                if (match != null) {
+                    orderedMatches.put(id, match);
+                } else {
+                    missingIds.add(id);
+                }
+            }
+
+            return new BatchLookupResult(orderedMatches, missingIds);
+        });
+    }
+
+    /**
+     * @return the requested id the result was returned for, or null if it matches none
+     */
+    private static Long matchingId(JSONObject result, Set<Long> requestedIds) {
+        String wrapperType = result.optString("wrapperType");
+        String primaryKey;
+
+        if ("artist".equals(wrapperType)) {
+            primaryKey = "artistId";
+        } else if ("collection".equals(wrapperType) || "audiobook".equals(wrapperType)) {
+            primaryKey = "collectionId";
+        } else {
+            primaryKey = "trackId";
+        }
+
+        for (String key : new String[] { primaryKey, "trackId", "collectionId", "artistId" }) {
+            if (result.has(key) && requestedIds.contains(result.optLong(key))) {
+                return result.optLong(key);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * split the ids into groups small enough for a single lookup url
+     */
+    static List<List<Long>> chunk(Collection<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>();
+        int urlLength = BASE_LOOKUP_URL.length() + "id=".length();
+
+        for (Long id : ids) {
+            int idLength = String.valueOf(id).length() + (chunk.isEmpty() ? 0 : 1);
+
+            if (!chunk.isEmpty() && (urlLength + idLength > MAX_LOOKUP_URL_LENGTH || chunk.size() == MAX_IDS_PER_LOOKUP)) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                urlLength = BASE_LOOKUP_URL.length() + "id=".length();
+                idLength = String.valueOf(id).length();
+            }
+
+            chunk.add(id);
+            urlLength += idLength;
+        }
+
+        if (!chunk.isEmpty()) chunks.add(chunk);
+        return chunks;
+    }
+
+    private static String lookupUrl(long id) {
+        return String.format("%sid=%s", BASE_LOOKUP_URL, id);
+    }
+
+    private static String lookupUrl(List<Long> ids) {
+        StringJoiner joiner = new StringJoiner(",", BASE_LOOKUP_URL + "id=", "");
+        for (Long id : ids) joiner.add(String.valueOf(id));
+        return joiner.toString();
+    }
+
+    /**
+     * @param ids the ids passed to a public batch lookup method
+     * @return the ids as a list
+     */
+    protected static List<Long> asList(long... ids) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) idList.add(id);
+        return idList;
+    }
+
+    private static JSONObject verifyMatch(JSONObject response) throws NoMatchFoundException {
         JSONArray responseJSONArray = response.getJSONArray("results");
 
         if (responseJSONArray.length() == 0) {
@@ -60,17 +269,39 @@ abstract class Lookup {
         return response;
     }
 
+    /**
+     * @throws SearchURLConstructionFailure if the url is malformed
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any issues occur while
+     *         communicating with the iTunes api, after any retries of the client's retry policy
+     */
     protected static JSONObject executeQuery(String urlString) {
-        JSONObject response = null;
+        URL url;
 
         try {
-            URL url = new URL(urlString);
-            response = NetworkUtils.executeQuery(url);
-        } catch (MalformedURLException | ItunesSearchException e) {
-            e.printStackTrace();
+            url = new URL(urlString);
+        } catch (MalformedURLException e) {
+            throw new SearchURLConstructionFailure("Error during lookup url construction: " + e.getMessage());
         }
 
-        return response;
+        return ItunesClient.getDefault().executeQuery(url);
+    }
+
+    protected static JSONObject executeQuery(String urlString, Duration timeout) {
+        try {
+            return ItunesClient.getDefault().executeQuery(new URL(urlString), timeout);
+        } catch (MalformedURLException e) {
+            throw new SearchURLConstructionFailure("Error during lookup url construction: " + e.getMessage());
+        }
+    }
+
+    protected static CompletableFuture<JSONObject> executeQueryAsync(String urlString) {
+        try {
+            return ItunesClient.getDefault().executeQueryAsync(new URL(urlString));
+        } catch (MalformedURLException e) {
+            return CompletableFuture.failedFuture(
+                new SearchURLConstructionFailure("Error during lookup url construction: " + e.getMessage())
+            );
+        }
     }
 
 }
@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.lookup;
+
+import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces single id lookups made at about the same time into one multi-id request.
+ *
+ * While a batcher is {@link #setDefault(LookupBatcher) installed}, every lookup by id is held for up to the batch
+ * window, or until the batch is full, and then sent together with the other ids waiting in the same batch. Each
+ * caller still receives only its own item, or a {@link NoMatchFoundException} if its id matched nothing.
+ * Batching is off by default.
+ */
+public class LookupBatcher {
+
+    private static volatile LookupBatcher defaultBatcher;
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    /**
+     * Callers waiting in the open batch, keyed by id. Callers asking for the same id share an entry.
+     */
+    private Map<Long, List<CompletableFuture<JSONObject>>> pending = new LinkedHashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * @param window the longest a lookup is held waiting for other lookups to batch with
+     * @param maxBatchSize the number of distinct ids after which a batch is sent without waiting for the window
+     *                     to pass. Batches larger than a single lookup request allows are split.
+     */
+    public LookupBatcher(Duration window, int maxBatchSize) {
+        if (window.isNegative())
+            throw new IllegalArgumentException("window must not be negative");
+
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     *
+     * @return the batcher lookups by id go through, null if they are not batched
+     */
+    public static LookupBatcher getDefault() {
+        return defaultBatcher;
+    }
+
+    /**
+     * Sets the batcher lookups by id go through.
+     *
+     * @param batcher the batcher to use, null sends every lookup on its own
+     */
+    public static void setDefault(LookupBatcher batcher) {
+        defaultBatcher = batcher;
+    }
+
+    /**
+     * add a lookup to the open batch
+     *
+     * @param id the itunes id of the item
+     * @return a future completed with the lookup response for the id, or completed exceptionally with a
+     *         {@link NoMatchFoundException} if the id matched nothing
+     */
+    CompletableFuture<JSONObject> lookup(long id) {
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        Map<Long, List<CompletableFuture<JSONObject>>> fullBatch = null;
+        Map<Long, List<CompletableFuture<JSONObject>>> openedBatch = null;
+
+        synchronized (this) {
+            if (pending.isEmpty()) openedBatch = pending;
+            pending.computeIfAbsent(id, key -> new ArrayList<>()).add(future);
+
+            if (pending.size() >= maxBatchSize) {
+                fullBatch = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+
+        lookups.incrementAndGet();
+
+        if (fullBatch != null) {
+            send(fullBatch);
+        } else if (openedBatch != null) {
+            Map<Long, List<CompletableFuture<JSONObject>>> batch = openedBatch;
+            CompletableFuture.delayedExecutor(windowNanos, TimeUnit.NANOSECONDS, ItunesClient.getDefault().getExecutor())
+                .execute(() -> flush(batch));
+        }
+
+        return future;
+    }
+
+    /**
+     * send the batch if it has not been sent already for being full
+     */
+    private void flush(Map<Long, List<CompletableFuture<JSONObject>>> batch) {
+        synchronized (this) {
+            if (pending != batch || pending.isEmpty()) return;
+            pending = new LinkedHashMap<>();
+        }
+
+        send(batch);
+    }
+
+    private void send(Map<Long, List<CompletableFuture<JSONObject>>> batch) {
+        batches.incrementAndGet();
+
+        Lookup.lookupByIdsAsync(batch.keySet()).whenComplete((result, failure) -> {
+            for (Map.Entry<Long, List<CompletableFuture<JSONObject>>> waiting : batch.entrySet()) {
+                for (CompletableFuture<JSONObject> future : waiting.getValue()) {
+                    if (failure != null) {
+                        future.completeExceptionally(unwrap(failure));
+                    } else {
+                        complete(future, waiting.getKey(), result);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * complete the future with a response shaped like that of a single id lookup
+     */
+    private static void complete(CompletableFuture<JSONObject> future, long id, BatchLookupResult result) {
+        JSONObject item = result.get(id);
+
+        if (item == null) {
+            future.completeExceptionally(new NoMatchFoundException("No item matches the given id"));
+            return;
+        }
+
+        future.complete(new JSONObject()
+            .put("resultCount", 1)
+            .put("results", new JSONArray().put(new JSONObject(item.toMap()))));
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     *
+     * @return the longest a lookup is held waiting for other lookups
+     */
+    public Duration getWindow() {
+        return Duration.ofNanos(windowNanos);
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     *
+     * @return the number of lookups made through the batcher
+     */
+    public long getLookupCount() {
+        return lookups.get();
+    }
+
+    /**
+     *
+     * @return the number of batches sent, each needing one request per {@link Lookup#MAX_IDS_PER_LOOKUP} ids
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+}
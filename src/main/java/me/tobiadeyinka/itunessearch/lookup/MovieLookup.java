@@ -22,6 +22,10 @@ import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
 import org.json.JSONObject;
 import com.neovisionaries.i18n.CountryCode;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This class manages looking up movies.
  *
@@ -50,6 +54,71 @@ public class MovieLookup extends Lookup {
         return getById(id);
     }
 
+    /**
+     * get a movie by it's id, failing if the lookup does not complete within the timeout
+     *
+     * @param id The id of the movie
+     * @param timeout the time the lookup may take
+     * @return a JSONObject of the movie
+     * @throws NoMatchFoundException if no movie is found with the passed id
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the lookup does not complete in
+     *         time
+     */
+    public static JSONObject getMovieById(long id, Duration timeout) throws NoMatchFoundException {
+        return getById(id, timeout);
+    }
+
+    /**
+     * get a movie by it's id without blocking the calling thread
+     *
+     * @param id The id of the movie
+     * @return a future completed with a JSONObject of the movie, or completed
+     *         exceptionally with a {@link NoMatchFoundException} if no movie is found with the passed id
+     */
+    public static CompletableFuture<JSONObject> getMovieByIdAsync(long id) {
+        return getByIdAsync(id);
+    }
+
+    /**
+     * get several movies by their ids
+     *
+     * @param ids the ids of the movies
+     * @return the movies found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(long... ids) {
+        return lookupByIds(asList(ids));
+    }
+
+    /**
+     * get several movies by their ids
+     *
+     * @param ids the ids of the movies
+     * @return the movies found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(Collection<Long> ids) {
+        return lookupByIds(ids);
+    }
+
+    /**
+     * get several movies by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the movies
+     * @return a future completed with the movies found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(long... ids) {
+        return lookupByIdsAsync(asList(ids));
+    }
+
+    /**
+     * get several movies by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the movies
+     * @return a future completed with the movies found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(Collection<Long> ids) {
+        return lookupByIdsAsync(ids);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} movies in the default iTunes store
      *
@@ -59,6 +128,16 @@ public class MovieLookup extends Lookup {
         return topMovies(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} movies in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top movies
+     */
+    public static CompletableFuture<JSONObject> topMoviesAsync() {
+        return topMoviesAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) movies in the default iTunes store
      *
@@ -69,6 +148,16 @@ public class MovieLookup extends Lookup {
         return queryMovieList(MovieList.TOP_MOVIES, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) movies in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of movies to return
+     * @return a future completed with a JSONObject containing a list of the top movies
+     */
+    public static CompletableFuture<JSONObject> topMoviesAsync(int limit) {
+        return queryMovieListAsync(MovieList.TOP_MOVIES, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} movies in the specified iTunes store
      *
@@ -79,6 +168,17 @@ public class MovieLookup extends Lookup {
         return queryMovieList(MovieList.TOP_MOVIES, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} movies in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top movies
+     */
+    public static CompletableFuture<JSONObject> topMoviesAsync(CountryCode countryCode) {
+        return queryMovieListAsync(MovieList.TOP_MOVIES, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) movies in the specified iTunes store
      *
@@ -90,12 +190,48 @@ public class MovieLookup extends Lookup {
         return queryMovieList(MovieList.TOP_MOVIES, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) movies in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of movies to return
+     * @return a future completed with a JSONObject containing a list of the top songs
+     */
+    public static CompletableFuture<JSONObject> topMoviesAsync(CountryCode countryCode, int limit) {
+        return queryMovieListAsync(MovieList.TOP_MOVIES, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) movies in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of movies to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the top songs
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topMovies(CountryCode countryCode, int limit, Duration timeout) {
+        return queryMovieList(MovieList.TOP_MOVIES, countryCode, limit, timeout);
+    }
+
     private static JSONObject queryMovieList(MovieList list, CountryCode countryCode, int limit) {
-        return executeQuery(
-            String.format(
-                "https://rss.itunes.apple.com/api/v1/%s/movies/%s/all/%s/explicit.json",
-                countryCode.getAlpha2(), list.urlKey, limit
-            )
+        return executeQuery(movieListUrl(list, countryCode, limit));
+    }
+
+    private static JSONObject queryMovieList(MovieList list, CountryCode countryCode, int limit, Duration timeout) {
+        return executeQuery(movieListUrl(list, countryCode, limit), timeout);
+    }
+
+    private static CompletableFuture<JSONObject> queryMovieListAsync(MovieList list, CountryCode countryCode, int limit) {
+        return executeQueryAsync(movieListUrl(list, countryCode, limit));
+    }
+
+    private static String movieListUrl(MovieList list, CountryCode countryCode, int limit) {
+        return String.format(
+            "https://rss.itunes.apple.com/api/v1/%s/movies/%s/all/%s/explicit.json",
+            countryCode.getAlpha2(), list.urlKey, limit
         );
     }
 
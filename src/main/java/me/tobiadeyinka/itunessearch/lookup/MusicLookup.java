@@ -22,6 +22,10 @@ import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
 import org.json.JSONObject;
 import com.neovisionaries.i18n.CountryCode;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This class manages looking up podcasts with different attributes
  *
@@ -54,6 +58,31 @@ public abstract class MusicLookup extends Lookup {
         return getById(id);
     }
 
+    /**
+     * get a song by it's id, failing if the lookup does not complete within the timeout
+     *
+     * @param id The id of the song
+     * @param timeout the time the lookup may take
+     * @return a JSONObject of the song
+     * @throws NoMatchFoundException if no song is found with the passed id
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the lookup does not complete in
+     *         time
+     */
+    public static JSONObject getSongById(long id, Duration timeout) throws NoMatchFoundException {
+        return getById(id, timeout);
+    }
+
+    /**
+     * get a song by it's id without blocking the calling thread
+     *
+     * @param id The id of the song
+     * @return a future completed with a JSONObject of the song, or completed
+     *         exceptionally with a {@link NoMatchFoundException} if no song is found with the passed id
+     */
+    public static CompletableFuture<JSONObject> getSongByIdAsync(long id) {
+        return getByIdAsync(id);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} songs in the default iTunes store
      *
@@ -63,6 +92,16 @@ public abstract class MusicLookup extends Lookup {
         return topSongs(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} songs in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top songs
+     */
+    public static CompletableFuture<JSONObject> topSongsAsync() {
+        return topSongsAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) songs in the default iTunes store
      *
@@ -73,6 +112,16 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_SONGS, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) songs in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the top songs
+     */
+    public static CompletableFuture<JSONObject> topSongsAsync(int limit) {
+        return querySongListAsync(MusicList.TOP_SONGS, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} songs in the specified iTunes store
      *
@@ -83,6 +132,17 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_SONGS, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} songs in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top songs
+     */
+    public static CompletableFuture<JSONObject> topSongsAsync(CountryCode countryCode) {
+        return querySongListAsync(MusicList.TOP_SONGS, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) songs in the specified iTunes store
      *
@@ -94,6 +154,32 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_SONGS, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) songs in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the top songs
+     */
+    public static CompletableFuture<JSONObject> topSongsAsync(CountryCode countryCode, int limit) {
+        return querySongListAsync(MusicList.TOP_SONGS, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) songs in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the top songs
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topSongs(CountryCode countryCode, int limit, Duration timeout) {
+        return querySongList(MusicList.TOP_SONGS, countryCode, limit, timeout);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} hot tracks in the default iTunes store
      *
@@ -103,6 +189,16 @@ public abstract class MusicLookup extends Lookup {
         return hotTracks(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} hot tracks in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the tracks
+     */
+    public static CompletableFuture<JSONObject> hotTracksAsync() {
+        return hotTracksAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) hot tracks in the default iTunes store
      *
@@ -113,6 +209,16 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.HOT_TRACKS, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) hot tracks in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the tracks
+     */
+    public static CompletableFuture<JSONObject> hotTracksAsync(int limit) {
+        return querySongListAsync(MusicList.HOT_TRACKS, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} hot tracks in the specified iTunes store
      *
@@ -123,6 +229,17 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.HOT_TRACKS, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} hot tracks in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the tracks
+     */
+    public static CompletableFuture<JSONObject> hotTracksAsync(CountryCode countryCode) {
+        return querySongListAsync(MusicList.HOT_TRACKS, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) hot tracks in the specified iTunes store
      *
@@ -134,6 +251,32 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.HOT_TRACKS, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) hot tracks in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of tracks to return
+     * @return a future completed with a JSONObject containing a list of the tracks
+     */
+    public static CompletableFuture<JSONObject> hotTracksAsync(CountryCode countryCode, int limit) {
+        return querySongListAsync(MusicList.HOT_TRACKS, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) hot tracks in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of tracks to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the tracks
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject hotTracks(CountryCode countryCode, int limit, Duration timeout) {
+        return querySongList(MusicList.HOT_TRACKS, countryCode, limit, timeout);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} new songs in the default iTunes store
      *
@@ -143,6 +286,16 @@ public abstract class MusicLookup extends Lookup {
         return newMusic(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} new songs in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> newMusicAsync() {
+        return newMusicAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) new songs in the default iTunes store
      *
@@ -153,6 +306,16 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.NEW_MUSIC, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) new songs in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> newMusicAsync(int limit) {
+        return querySongListAsync(MusicList.NEW_MUSIC, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} new songs in the specified iTunes store
      *
@@ -163,6 +326,17 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.NEW_MUSIC, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} new songs in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> newMusicAsync(CountryCode countryCode) {
+        return querySongListAsync(MusicList.NEW_MUSIC, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) new songs in the specified iTunes store
      *
@@ -174,6 +348,32 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.NEW_MUSIC, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) new songs in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> newMusicAsync(CountryCode countryCode, int limit) {
+        return querySongListAsync(MusicList.NEW_MUSIC, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) new songs in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the songs
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject newMusic(CountryCode countryCode, int limit, Duration timeout) {
+        return querySongList(MusicList.NEW_MUSIC, countryCode, limit, timeout);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} recent releases in the default iTunes store
      *
@@ -183,6 +383,16 @@ public abstract class MusicLookup extends Lookup {
         return recentReleases(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} recent releases in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> recentReleasesAsync() {
+        return recentReleasesAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) recent releases in the default iTunes store
      *
@@ -193,6 +403,16 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.RECENT_RELEASES, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) recent releases in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> recentReleasesAsync(int limit) {
+        return querySongListAsync(MusicList.RECENT_RELEASES, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} recent releases in the specified iTunes store
      *
@@ -203,6 +423,17 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.RECENT_RELEASES, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} recent releases in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> recentReleasesAsync(CountryCode countryCode) {
+        return querySongListAsync(MusicList.RECENT_RELEASES, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) recent releases in the specified iTunes store
      *
@@ -214,6 +445,32 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.RECENT_RELEASES, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) recent releases in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> recentReleasesAsync(CountryCode countryCode, int limit) {
+        return querySongListAsync(MusicList.RECENT_RELEASES, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) recent releases in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the songs
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject recentReleases(CountryCode countryCode, int limit, Duration timeout) {
+        return querySongList(MusicList.RECENT_RELEASES, countryCode, limit, timeout);
+    }
+
     /**
      * get an album by it's id
      *
@@ -225,6 +482,71 @@ public abstract class MusicLookup extends Lookup {
         return getById(id);
     }
 
+    /**
+     * get an album by it's id, failing if the lookup does not complete within the timeout
+     *
+     * @param id The id of the album
+     * @param timeout the time the lookup may take
+     * @return a JSONObject of the album
+     * @throws NoMatchFoundException if no album is found with the passed id
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the lookup does not complete in
+     *         time
+     */
+    public static JSONObject getAlbumById(long id, Duration timeout) throws NoMatchFoundException {
+        return getById(id, timeout);
+    }
+
+    /**
+     * get an album by it's id without blocking the calling thread
+     *
+     * @param id The id of the album
+     * @return a future completed with a JSONObject of the album, or completed
+     *         exceptionally with a {@link NoMatchFoundException} if no album is found with the passed id
+     */
+    public static CompletableFuture<JSONObject> getAlbumByIdAsync(long id) {
+        return getByIdAsync(id);
+    }
+
+    /**
+     * get several songs and albums by their ids
+     *
+     * @param ids the ids of the songs and albums
+     * @return the songs and albums found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(long... ids) {
+        return lookupByIds(asList(ids));
+    }
+
+    /**
+     * get several songs and albums by their ids
+     *
+     * @param ids the ids of the songs and albums
+     * @return the songs and albums found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(Collection<Long> ids) {
+        return lookupByIds(ids);
+    }
+
+    /**
+     * get several songs and albums by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the songs and albums
+     * @return a future completed with the songs and albums found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(long... ids) {
+        return lookupByIdsAsync(asList(ids));
+    }
+
+    /**
+     * get several songs and albums by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the songs and albums
+     * @return a future completed with the songs and albums found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(Collection<Long> ids) {
+        return lookupByIdsAsync(ids);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} top albums in the default iTunes store
      *
@@ -234,6 +556,16 @@ public abstract class MusicLookup extends Lookup {
         return topAlbums(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} top albums in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the albums
+     */
+    public static CompletableFuture<JSONObject> topAlbumsAsync() {
+        return topAlbumsAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) top albums in the default iTunes store
      *
@@ -244,6 +576,16 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_ALBUMS, DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) top albums in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the albums
+     */
+    public static CompletableFuture<JSONObject> topAlbumsAsync(int limit) {
+        return querySongListAsync(MusicList.TOP_ALBUMS, DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} top albums in the specified iTunes store
      *
@@ -254,6 +596,17 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_ALBUMS, countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} top albums in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the albums
+     */
+    public static CompletableFuture<JSONObject> topAlbumsAsync(CountryCode countryCode) {
+        return querySongListAsync(MusicList.TOP_ALBUMS, countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) top albums in the specified iTunes store
      *
@@ -265,12 +618,48 @@ public abstract class MusicLookup extends Lookup {
         return querySongList(MusicList.TOP_ALBUMS, countryCode, limit);
     }
 
+    /**
+     * get the top (limit) top albums in the specified iTunes store without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @return a future completed with a JSONObject containing a list of the songs
+     */
+    public static CompletableFuture<JSONObject> topAlbumsAsync(CountryCode countryCode, int limit) {
+        return querySongListAsync(MusicList.TOP_ALBUMS, countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) top albums in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param countryCode country code of the itunes store to search
+     * @param limit the maximum number of songs to return
+     * @param timeout the time the query may take
+     * @return a JSONObject containing a list of the songs
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topAlbums(CountryCode countryCode, int limit, Duration timeout) {
+        return querySongList(MusicList.TOP_ALBUMS, countryCode, limit, timeout);
+    }
+
     private static JSONObject querySongList(MusicList list, CountryCode countryCode, int limit) {
-        return executeQuery(
-            String.format(
-                "https://rss.itunes.apple.com/api/v1/%s/itunes-music/%s/all/%s/explicit.json",
-                countryCode.getAlpha2(), list.urlKey, limit
-            )
+        return executeQuery(songListUrl(list, countryCode, limit));
+    }
+
+    private static JSONObject querySongList(MusicList list, CountryCode countryCode, int limit, Duration timeout) {
+        return executeQuery(songListUrl(list, countryCode, limit), timeout);
+    }
+
+    private static CompletableFuture<JSONObject> querySongListAsync(MusicList list, CountryCode countryCode, int limit) {
+        return executeQueryAsync(songListUrl(list, countryCode, limit));
+    }
+
+    private static String songListUrl(MusicList list, CountryCode countryCode, int limit) {
+        return String.format(
+            "https://rss.itunes.apple.com/api/v1/%s/itunes-music/%s/all/%s/explicit.json",
+            countryCode.getAlpha2(), list.urlKey, limit
         );
     }
 
@@ -22,6 +22,10 @@ import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
 import org.json.JSONObject;
 import com.neovisionaries.i18n.CountryCode;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This class manages looking up podcasts with different attributes
  *
@@ -52,6 +56,71 @@ public abstract class PodcastLookup extends Lookup {
         return getById(id);
     }
 
+    /**
+     * get a podcast by it's id, failing if the lookup does not complete within the timeout
+     *
+     * @param id The id of the podcast
+     * @param timeout the time the lookup may take
+     * @return a JSONObject of the podcast
+     * @throws NoMatchFoundException if no podcast is found with the passed id
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the lookup does not complete in
+     *         time
+     */
+    public static JSONObject getPodcastById(long id, Duration timeout) throws NoMatchFoundException {
+        return getById(id, timeout);
+    }
+
+    /**
+     * get a podcast by it's id without blocking the calling thread
+     *
+     * @param id The id of the podcast
+     * @return a future completed with a JSONObject of the podcast, or completed
+     *         exceptionally with a {@link NoMatchFoundException} if no podcast is found with the passed id
+     */
+    public static CompletableFuture<JSONObject> getPodcastByIdAsync(long id) {
+        return getByIdAsync(id);
+    }
+
+    /**
+     * get several podcasts by their ids
+     *
+     * @param ids the ids of the podcasts
+     * @return the podcasts found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(long... ids) {
+        return lookupByIds(asList(ids));
+    }
+
+    /**
+     * get several podcasts by their ids
+     *
+     * @param ids the ids of the podcasts
+     * @return the podcasts found keyed by id, and the ids nothing was found for
+     */
+    public static BatchLookupResult getByIds(Collection<Long> ids) {
+        return lookupByIds(ids);
+    }
+
+    /**
+     * get several podcasts by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the podcasts
+     * @return a future completed with the podcasts found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(long... ids) {
+        return lookupByIdsAsync(asList(ids));
+    }
+
+    /**
+     * get several podcasts by their ids without blocking the calling thread
+     *
+     * @param ids the ids of the podcasts
+     * @return a future completed with the podcasts found keyed by id, and the ids nothing was found for
+     */
+    public static CompletableFuture<BatchLookupResult> getByIdsAsync(Collection<Long> ids) {
+        return lookupByIdsAsync(ids);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} podcasts in the default iTunes store
      *
@@ -61,6 +130,16 @@ public abstract class PodcastLookup extends Lookup {
         return topPodcasts(DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} podcasts in the default iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> topPodcastsAsync() {
+        return topPodcastsAsync(DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) podcasts in the default iTunes store
      *
@@ -71,6 +150,16 @@ public abstract class PodcastLookup extends Lookup {
         return queryTopPodcasts(DEFAULT_COUNTRY, limit);
     }
 
+    /**
+     * get the top (limit) podcasts in the default iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of podcasts to return
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> topPodcastsAsync(int limit) {
+        return queryTopPodcastsAsync(DEFAULT_COUNTRY, limit);
+    }
+
     /**
      * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} podcasts in the specified iTunes store
      *
@@ -81,6 +170,17 @@ public abstract class PodcastLookup extends Lookup {
         return queryTopPodcasts(countryCode, DEFAULT_LIMIT);
     }
 
+    /**
+     * get the top {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} podcasts in the specified iTunes store
+     * without blocking the calling thread
+     *
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> topPodcastsAsync(CountryCode countryCode) {
+        return queryTopPodcastsAsync(countryCode, DEFAULT_LIMIT);
+    }
+
     /**
      * get the top (limit) podcasts in the specified iTunes store
      *
@@ -92,6 +192,32 @@ public abstract class PodcastLookup extends Lookup {
         return queryTopPodcasts(countryCode, limit);
     }
 
+    /**
+     * get the top (limit) podcasts in the specified iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of podcasts to return
+     * @param countryCode country code of the itunes store to search
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> topPodcastsAsync(CountryCode countryCode, int limit) {
+        return queryTopPodcastsAsync(countryCode, limit);
+    }
+
+    /**
+     * get the top (limit) podcasts in the specified iTunes store,
+     * failing if the query does not complete within the timeout
+     *
+     * @param limit the maximum number of podcasts to return
+     * @param timeout the time the query may take
+     * @param countryCode country code of the itunes store to search
+     * @return a JSONObject containing a list of the top podcasts
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     */
+    public static JSONObject topPodcasts(CountryCode countryCode, int limit, Duration timeout) {
+        return queryTopPodcasts(countryCode, limit, timeout);
+    }
+
     /**
      * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} comedy podcasts in the iTunes store
      *
@@ -101,6 +227,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.COMEDY, DEFAULT_LIMIT);
     }
 
+    /**
+     * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} comedy podcasts in the iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> comedyPodcastsAsync() {
+        return getPodcastGenreAsync(PodcastGenre.COMEDY, DEFAULT_LIMIT);
+    }
+
     /**
      * get a list of (limit) comedy podcasts in the iTunes store
      *
@@ -111,6 +247,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.COMEDY, limit);
     }
 
+    /**
+     * get a list of (limit) comedy podcasts in the iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of podcasts to return
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> comedyPodcastsAsync(int limit) {
+        return getPodcastGenreAsync(PodcastGenre.COMEDY, limit);
+    }
+
     /**
      * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} news &amp; politics podcasts in the iTunes store
      *
@@ -120,6 +266,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.NEWS_AND_POLITICS, DEFAULT_LIMIT);
     }
 
+    /**
+     * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} news &amp; politics podcasts in the iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> newsAndPoliticsPodcastsAsync() {
+        return getPodcastGenreAsync(PodcastGenre.NEWS_AND_POLITICS, DEFAULT_LIMIT);
+    }
+
     /**
      * get a list of (limit) news &amp; politics podcasts in the iTunes store
      *
@@ -130,6 +286,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.NEWS_AND_POLITICS, limit);
     }
 
+    /**
+     * get a list of (limit) news &amp; politics podcasts in the iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of podcasts to return
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> newsAndPoliticsPodcastsAsync(int limit) {
+        return getPodcastGenreAsync(PodcastGenre.NEWS_AND_POLITICS, limit);
+    }
+
     /**
      * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} society &amp; culture podcasts in the iTunes store
      *
@@ -139,6 +305,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.NEWS_AND_POLITICS, DEFAULT_LIMIT);
     }
 
+    /**
+     * get a list of {@value me.tobiadeyinka.itunessearch.lookup.Lookup#DEFAULT_LIMIT} society &amp; culture podcasts in the iTunes store
+     * without blocking the calling thread
+     *
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> societyAndCulturePodcastsAsync() {
+        return getPodcastGenreAsync(PodcastGenre.NEWS_AND_POLITICS, DEFAULT_LIMIT);
+    }
+
     /**
      * get a list of (limit) society &amp; culture podcasts in the iTunes store
      *
@@ -149,6 +325,16 @@ public abstract class PodcastLookup extends Lookup {
         return getPodcastGenre(PodcastGenre.SOCIETY_AND_CULTURE, limit);
     }
 
+    /**
+     * get a list of (limit) society &amp; culture podcasts in the iTunes store without blocking the calling thread
+     *
+     * @param limit the maximum number of podcasts to return
+     * @return a future completed with a JSONObject containing a list of the top podcasts
+     */
+    public static CompletableFuture<JSONObject> societyAndCulturePodcastsAsync(int limit) {
+        return getPodcastGenreAsync(PodcastGenre.SOCIETY_AND_CULTURE, limit);
+    }
+
     /**
      * Get podcasts by their genre id
      *
@@ -157,19 +343,33 @@ public abstract class PodcastLookup extends Lookup {
      * @return a JSONObject containing a list of the matching podcasts
      */
     private static JSONObject getPodcastGenre(PodcastGenre genre, int limit) {
-        return executeQuery(
-            String.format(
-                "https://itunes.apple.com/search?term=podcast&limit=%s&genreId=%s", limit, genre.id
-            )
-        );
+        return executeQuery(podcastGenreUrl(genre, limit));
+    }
+
+    private static CompletableFuture<JSONObject> getPodcastGenreAsync(PodcastGenre genre, int limit) {
+        return executeQueryAsync(podcastGenreUrl(genre, limit));
+    }
+
+    private static String podcastGenreUrl(PodcastGenre genre, int limit) {
+        return String.format("https://itunes.apple.com/search?term=podcast&limit=%s&genreId=%s", limit, genre.id);
     }
 
     private static JSONObject queryTopPodcasts(CountryCode countryCode, int limit) {
-        return executeQuery(
-            String.format(
-                "https://rss.itunes.apple.com/api/v1/%s/podcasts/top-podcasts/all/%s/explicit.json",
-                countryCode.getAlpha2(), limit
-            )
+        return executeQuery(topPodcastsUrl(countryCode, limit));
+    }
+
+    private static JSONObject queryTopPodcasts(CountryCode countryCode, int limit, Duration timeout) {
+        return executeQuery(topPodcastsUrl(countryCode, limit), timeout);
+    }
+
+    private static CompletableFuture<JSONObject> queryTopPodcastsAsync(CountryCode countryCode, int limit) {
+        return executeQueryAsync(topPodcastsUrl(countryCode, limit));
+    }
+
+    private static String topPodcastsUrl(CountryCode countryCode, int limit) {
+        return String.format(
+            "https://rss.itunes.apple.com/api/v1/%s/podcasts/top-podcasts/all/%s/explicit.json",
+            countryCode.getAlpha2(), limit
         );
     }
 
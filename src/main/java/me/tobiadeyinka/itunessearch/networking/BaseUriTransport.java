@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Sends requests for a host to another base uri instead, e.g. a local stand-in for the iTunes api. The scheme,
+ * host and port of the request are replaced by those of the base uri, and the base uri's path is prepended to
+ * the request's path.
+ *
+ * Everything above this transport still sees the original uri, so caches, rate limiters and circuit breakers
+ * keep working per original host.
+ */
+class BaseUriTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final Map<String, URI> baseUris;
+
+    /**
+     * @param delegate the transport executing the requests
+     * @param baseUris base uris keyed by the lower case host they replace
+     */
+    BaseUriTransport(HttpTransport delegate, Map<String, URI> baseUris) {
+        this.delegate = delegate;
+        this.baseUris = baseUris;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        return delegate.execute(rebase(request));
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        TransportRequest rebased;
+
+        try {
+            rebased = rebase(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return delegate.executeAsync(rebased, executor);
+    }
+
+    private TransportRequest rebase(TransportRequest request) throws IOException {
+        URI uri = request.getUri();
+        URI baseUri = uri.getHost() == null ? null : baseUris.get(uri.getHost().toLowerCase(Locale.ROOT));
+
+        if (baseUri == null) return request;
+
+        return request.withUri(rebase(uri, baseUri));
+    }
+
+    static URI rebase(URI uri, URI baseUri) throws IOException {
+        String basePath = baseUri.getRawPath() == null ? "" : baseUri.getRawPath();
+        if (basePath.endsWith("/")) basePath = basePath.substring(0, basePath.length() - 1);
+
+        StringBuilder rebased = new StringBuilder()
+            .append(baseUri.getScheme()).append("://").append(baseUri.getRawAuthority())
+            .append(basePath)
+            .append(uri.getRawPath() == null ? "" : uri.getRawPath());
+
+        if (uri.getRawQuery() != null) {
+            rebased.append('?').append(uri.getRawQuery());
+        }
+
+        try {
+            return new URI(rebased.toString());
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot send " + uri + " to " + baseUri + ": " + e.getMessage());
+        }
+    }
+
+}
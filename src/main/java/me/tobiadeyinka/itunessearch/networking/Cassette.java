@@ -0,0 +1,230 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.*;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The requests and responses captured by a {@link RecordingTransport}, replayed by a {@link ReplayTransport}.
+ *
+ * A cassette file is a gzip compressed stream of interactions in the order their responses arrived. Each holds the
+ * time the request started relative to the start of the recording, how long the response took, and either the
+ * status code, headers and body of the response or the message of the I/O failure.
+ */
+public final class Cassette {
+
+    private static final int MAGIC = 0x49544353;
+    private static final int VERSION = 1;
+
+    private final List<Interaction> interactions;
+
+    private Cassette(List<Interaction> interactions) {
+        this.interactions = Collections.unmodifiableList(interactions);
+    }
+
+    /**
+     * read a cassette file
+     *
+     * @param path the cassette file
+     * @return the recorded interactions
+     * @throws IOException if the file cannot be read or is not a cassette. A recording cut short, e.g. because
+     *         the process died, is read up to its last complete interaction.
+     */
+    public static Cassette read(Path path) throws IOException {
+        List<Interaction> interactions = new ArrayList<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new GZIPInputStream(Files.newInputStream(path))))) {
+
+            if (in.readInt() != MAGIC) throw new IOException(path + " is not a cassette");
+
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported cassette version " + version);
+
+            while (true) {
+                try {
+                    interactions.add(Interaction.read(in));
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+
+        return new Cassette(interactions);
+    }
+
+    /**
+     *
+     * @return the recorded interactions, in the order their responses arrived
+     */
+    public List<Interaction> getInteractions() {
+        return interactions;
+    }
+
+    static DataOutputStream open(Path path) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(Files.newOutputStream(path), true)));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        return out;
+    }
+
+    /**
+     * A request and the response or failure it got.
+     */
+    public static final class Interaction {
+
+        private final long startNanos;
+        private final long latencyNanos;
+        private final URI uri;
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+        private final String failure;
+
+        Interaction(long startNanos, long latencyNanos, URI uri, int statusCode,
+                    Map<String, List<String>> headers, byte[] body, String failure) {
+            this.startNanos = startNanos;
+            this.latencyNanos = latencyNanos;
+            this.uri = uri;
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.failure = failure;
+        }
+
+        /**
+         *
+         * @return when the request started, in nanoseconds since the recording started
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         *
+         * @return how long the response or failure took, in nanoseconds
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         *
+         * @return the requested uri
+         */
+        public URI getUri() {
+            return uri;
+        }
+
+        /**
+         *
+         * @return true if the request failed with an I/O error instead of getting a response
+         */
+        public boolean isFailure() {
+            return failure != null;
+        }
+
+        /**
+         *
+         * @return the status code of the response, -1 for a failure
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         *
+         * @return the message of the I/O failure, null if there was a response
+         */
+        public String getFailure() {
+            return failure;
+        }
+
+        /**
+         *
+         * @return the size of the response body in bytes
+         */
+        public int getBodyLength() {
+            return body.length;
+        }
+
+        TransportResponse toResponse() {
+            return new TransportResponse(statusCode, headers, new ByteArrayInputStream(body));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(startNanos);
+            out.writeLong(latencyNanos);
+            out.writeUTF(uri.toString());
+
+            if (failure != null) {
+                out.writeInt(-1);
+                out.writeUTF(failure);
+                return;
+            }
+
+            out.writeInt(statusCode);
+            out.writeInt(headers.size());
+
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeInt(header.getValue().size());
+                for (String value : header.getValue()) out.writeUTF(value);
+            }
+
+            out.writeInt(body.length);
+            out.write(body);
+        }
+
+        static Interaction read(DataInputStream in) throws IOException {
+            long startNanos = in.readLong();
+            long latencyNanos = in.readLong();
+            URI uri = URI.create(in.readUTF());
+            int statusCode = in.readInt();
+
+            if (statusCode == -1) {
+                return new Interaction(startNanos, latencyNanos, uri, -1, Map.of(), new byte[0], in.readUTF());
+            }
+
+            int headerCount = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+
+            for (int i = 0; i < headerCount; i++) {
+                String name = in.readUTF();
+                String[] values = new String[in.readInt()];
+                for (int j = 0; j < values.length; j++) values[j] = in.readUTF();
+                headers.put(name, List.of(values));
+            }
+
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Interaction(startNanos, latencyNanos, uri, statusCode, headers, body, null);
+        }
+
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread safe circuit breaker, stops calls to a host that keeps failing.
+ *
+ * While {@link State#CLOSED closed} the outcome of every call is recorded in a sliding window of the last
+ * {@code windowSize} calls. Calls failing with an I/O error or answered with 403, 429 or a 5xx status count as
+ * failures, calls taking longer than the slow call duration as slow. Once the window holds at least
+ * {@code minimumCalls} outcomes and the failure rate or the slow call rate reaches its threshold, the breaker
+ * {@link State#OPEN opens} and rejects every call for the open duration. It then turns
+ * {@link State#HALF_OPEN half open} and lets a few trial calls through: if their failure and slow call rates stay
+ * below the thresholds the breaker closes again, otherwise it opens for another period.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified of every state change, on the thread whose call caused it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        void onStateChange(CircuitBreaker circuitBreaker, State from, State to);
+
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private double failureRateThreshold = 0.5;
+    private double slowCallRateThreshold = 1.0;
+    private long slowCallNanos = Duration.ofSeconds(10).toNanos();
+    private int minimumCalls = 10;
+    private long openNanos = Duration.ofSeconds(30).toNanos();
+    private int halfOpenCalls = 3;
+
+    private final LongSupplier clock;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Outcomes of the last calls, a ring buffer written at {@code next}. Bit 0 marks a failure, bit 1 a slow call.
+     */
+    private byte[] window = new byte[20];
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openUntil;
+
+    /**
+     * Trial calls let through while half open, and how many of them completed.
+     */
+    private int trialsStarted;
+    private int trialsCompleted;
+
+    private final AtomicLong notPermitted = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * Creates a breaker opening for 30 seconds once half of the last 20 calls failed, evaluated after at least 10
+     * calls. Slow calls, taking longer than 10 seconds, only open it if all calls in the window are slow.
+     */
+    public CircuitBreaker() {
+        this(System::nanoTime);
+    }
+
+    CircuitBreaker(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sets the share of failed calls in the window at which the breaker opens.
+     *
+     * @param failureRateThreshold the threshold, between 0 exclusive and 1 inclusive
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = rate(failureRateThreshold, "failureRateThreshold");
+        return this;
+    }
+
+    /**
+     * Sets the share of slow calls in the window at which the breaker opens.
+     *
+     * @param slowCallRateThreshold the threshold, between 0 exclusive and 1 inclusive
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = rate(slowCallRateThreshold, "slowCallRateThreshold");
+        return this;
+    }
+
+    /**
+     * Sets how long a call may take until its response arrives before it counts as slow.
+     *
+     * @param slowCallDuration the slow call duration
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withSlowCallDuration(Duration slowCallDuration) {
+        if (slowCallDuration.isNegative() || slowCallDuration.isZero())
+            throw new IllegalArgumentException("slowCallDuration must be positive");
+
+        this.slowCallNanos = slowCallDuration.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the number of calls the sliding window holds, and the number of calls it must hold before the rates
+     * are evaluated.
+     *
+     * @param windowSize the number of most recent calls considered
+     * @param minimumCalls the number of calls needed before the breaker can open, at most windowSize
+     * @return the current breaker instance
+     */
+    public synchronized CircuitBreaker withWindow(int windowSize, int minimumCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize)
+            throw new IllegalArgumentException("windowSize and minimumCalls must be positive, minimumCalls at most windowSize");
+
+        this.window = new byte[windowSize];
+        this.minimumCalls = minimumCalls;
+        resetWindow();
+        return this;
+    }
+
+    /**
+     * Sets how long the breaker stays open before it lets trial calls through.
+     *
+     * @param openDuration the open duration
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withOpenDuration(Duration openDuration) {
+        if (openDuration.isNegative())
+            throw new IllegalArgumentException("openDuration must not be negative");
+
+        this.openNanos = openDuration.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the number of trial calls let through while half open.
+     *
+     * @param halfOpenCalls the number of trial calls
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withHalfOpenCalls(int halfOpenCalls) {
+        if (halfOpenCalls < 1)
+            throw new IllegalArgumentException("halfOpenCalls must be positive");
+
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * Registers a listener notified of every state change.
+     *
+     * @param listener the listener
+     * @return the current breaker instance
+     */
+    public CircuitBreaker withListener(Listener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * @param listener a listener registered with {@link #withListener(Listener)}, no longer notified
+     */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static double rate(double rate, String name) {
+        if (!(rate > 0 && rate <= 1))
+            throw new IllegalArgumentException(name + " must be between 0 exclusive and 1 inclusive");
+
+        return rate;
+    }
+
+    /**
+     * ask for permission to send a call. Every permitted call must be followed by a call to
+     * {@link #onResult(boolean, long)} or {@link #releasePermission()}.
+     *
+     * @return true if the call may be sent
+     */
+    boolean tryAcquirePermission() {
+        State from;
+        boolean permitted;
+
+        synchronized (this) {
+            from = state;
+
+            if (state == State.OPEN && clock.getAsLong() - openUntil >= 0) {
+                state = State.HALF_OPEN;
+                trialsStarted = 0;
+                trialsCompleted = 0;
+                resetWindow();
+            }
+
+            permitted = state == State.CLOSED || (state == State.HALF_OPEN && trialsStarted < halfOpenCalls);
+
+            if (state == State.HALF_OPEN && permitted) {
+                trialsStarted++;
+            }
+
+            if (!permitted) {
+                notPermitted.incrementAndGet();
+            }
+
+            if (from == state) return permitted;
+        }
+
+        notify(from, State.HALF_OPEN);
+        return permitted;
+    }
+
+    /**
+     * check whether the breaker rejects every call, without asking for permission, so that a call can fail before
+     * it waits for anything. A call that passes must still {@link #tryAcquirePermission() acquire} a permission
+     * before it is sent.
+     *
+     * @return true if the breaker is open and its open duration has not passed. The call is then counted as not
+     *         permitted.
+     */
+    boolean rejectsCalls() {
+        synchronized (this) {
+            if (state != State.OPEN || clock.getAsLong() - openUntil >= 0) return false;
+        }
+
+        notPermitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * give back the permission of a call that was not sent after all, recording no outcome
+     */
+    synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsCompleted) {
+            trialsStarted--;
+        }
+    }
+
+    /**
+     * record the outcome of a permitted call
+     *
+     * @param failed true if the call failed
+     * @param durationNanos the time until the call's response arrived
+     */
+    void onResult(boolean failed, long durationNanos) {
+        byte outcome = (byte) ((failed ? FAILURE : SUCCESS) | (durationNanos >= slowCallNanos ? SLOW : SUCCESS));
+        State from;
+        State to;
+
+        synchronized (this) {
+            from = state;
+            if (state == State.OPEN) return;
+
+            record(outcome);
+
+            if (state == State.HALF_OPEN) {
+                if (++trialsCompleted < halfOpenCalls) return;
+                to = exceedsThresholds() ? State.OPEN : State.CLOSED;
+            } else {
+                if (recorded < minimumCalls || !exceedsThresholds()) return;
+                to = State.OPEN;
+            }
+
+            state = to;
+            resetWindow();
+
+            if (to == State.OPEN) {
+                openUntil = clock.getAsLong() + openNanos;
+                opened.incrementAndGet();
+            }
+        }
+
+        notify(from, to);
+    }
+
+    private void record(byte outcome) {
+        if (recorded == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & FAILURE;
+            slowCalls -= (evicted & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        failures += outcome & FAILURE;
+        slowCalls += (outcome & SLOW) >> 1;
+    }
+
+    private boolean exceedsThresholds() {
+        return (double) failures / recorded >= failureRateThreshold
+            || (double) slowCalls / recorded >= slowCallRateThreshold;
+    }
+
+    private void resetWindow() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void notify(State from, State to) {
+        for (Listener listener : listeners) {
+            listener.onStateChange(this, from, to);
+        }
+    }
+
+    /**
+     * @param statusCode the http status code of a response
+     * @return true if the response counts as a failed call
+     */
+    static boolean isFailure(int statusCode) {
+        return statusCode == 403 || statusCode == 429 || (statusCode >= 500 && statusCode < 600);
+    }
+
+    /**
+     *
+     * @return the current state. An open breaker whose open duration passed reports open until the next call.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     *
+     * @return the share of failed calls in the current window, 0 if it is empty
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : (double) failures / recorded;
+    }
+
+    /**
+     *
+     * @return the share of slow calls in the current window, 0 if it is empty
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded == 0 ? 0 : (double) slowCalls / recorded;
+    }
+
+    /**
+     *
+     * @return the number of calls rejected because the breaker was open
+     */
+    public long getNotPermittedCount() {
+        return notPermitted.get();
+    }
+
+    /**
+     *
+     * @return the number of times the breaker opened
+     */
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public Duration getSlowCallDuration() {
+        return Duration.ofNanos(slowCallNanos);
+    }
+
+    public synchronized int getWindowSize() {
+        return window.length;
+    }
+
+    public synchronized int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public Duration getOpenDuration() {
+        return Duration.ofNanos(openNanos);
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+}
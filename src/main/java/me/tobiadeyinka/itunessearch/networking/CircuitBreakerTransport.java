@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.CircuitBreakerOpenException;
+
+import java.io.IOException;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Asks the circuit breaker of the request's host for permission before every request, and reports the outcome
+ * back to it. Requests rejected by an open breaker fail right away with a {@link CircuitBreakerOpenException}.
+ *
+ * Calls are timed from when they are sent, so this transport belongs below any rate limiting: time spent queued
+ * for a permit must not count toward the slow call duration, nor hold a half open breaker's trial permission.
+ * {@link FailFast} above the rate limiter still rejects requests to an open breaker before they queue.
+ */
+class CircuitBreakerTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final Map<String, CircuitBreaker> circuitBreakers;
+
+    /**
+     * @param delegate the transport executing the requests
+     * @param circuitBreakers circuit breakers keyed by lower case host name. Hosts without one are not guarded.
+     */
+    CircuitBreakerTransport(HttpTransport delegate, Map<String, CircuitBreaker> circuitBreakers) {
+        this.delegate = delegate;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        CircuitBreaker circuitBreaker = acquire(request);
+        if (circuitBreaker == null) return delegate.execute(request);
+
+        long start = System.nanoTime();
+
+        try {
+            TransportResponse response = delegate.execute(request);
+            circuitBreaker.onResult(CircuitBreaker.isFailure(response.getStatusCode()), System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            circuitBreaker.onResult(true, System.nanoTime() - start);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            circuitBreaker.releasePermission();
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        CircuitBreaker circuitBreaker;
+
+        try {
+            circuitBreaker = acquire(request);
+        } catch (CircuitBreakerOpenException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (circuitBreaker == null) return delegate.executeAsync(request, executor);
+
+        long start = System.nanoTime();
+
+        return delegate.executeAsync(request, executor).whenComplete((response, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+
+            if (cause == null) {
+                circuitBreaker.onResult(CircuitBreaker.isFailure(response.getStatusCode()), System.nanoTime() - start);
+            } else if (cause instanceof IOException) {
+                circuitBreaker.onResult(true, System.nanoTime() - start);
+            } else {
+                circuitBreaker.releasePermission();
+            }
+        });
+    }
+
+    /**
+     * @return the circuit breaker that permitted the request, or null if its host has none
+     * @throws CircuitBreakerOpenException if the breaker of the request's host rejected it
+     */
+    private CircuitBreaker acquire(TransportRequest request) {
+        CircuitBreaker circuitBreaker = circuitBreaker(circuitBreakers, request);
+
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) throw open(request);
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the circuit breaker of the request's host, or null if it has none
+     */
+    private static CircuitBreaker circuitBreaker(Map<String, CircuitBreaker> circuitBreakers,
+                                                 TransportRequest request) {
+        String host = request.getUri().getHost();
+        return host == null ? null : circuitBreakers.get(host.toLowerCase(Locale.ROOT));
+    }
+
+    private static CircuitBreakerOpenException open(TransportRequest request) {
+        return new CircuitBreakerOpenException(String.format(
+            "Circuit breaker for %s is open, %s was not sent", request.getUri().getHost(), request
+        ));
+    }
+
+    /**
+     * Rejects requests to a host whose circuit breaker is open before they wait for a rate limit permit, without
+     * taking a permission. The {@link CircuitBreakerTransport} below the rate limiter takes it once the request
+     * is about to be sent.
+     */
+    static class FailFast implements HttpTransport {
+
+        private final HttpTransport delegate;
+        private final Map<String, CircuitBreaker> circuitBreakers;
+
+        /**
+         * @param delegate the transport executing the requests
+         * @param circuitBreakers circuit breakers keyed by lower case host name
+         */
+        FailFast(HttpTransport delegate, Map<String, CircuitBreaker> circuitBreakers) {
+            this.delegate = delegate;
+            this.circuitBreakers = circuitBreakers;
+        }
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            if (rejects(request)) throw open(request);
+            return delegate.execute(request);
+        }
+
+        @Override
+        public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+            if (rejects(request)) return CompletableFuture.failedFuture(open(request));
+            return delegate.executeAsync(request, executor);
+        }
+
+        private boolean rejects(TransportRequest request) {
+            CircuitBreaker circuitBreaker = circuitBreaker(circuitBreakers, request);
+            return circuitBreaker != null && circuitBreaker.rejectsCalls();
+        }
+
+    }
+
+}
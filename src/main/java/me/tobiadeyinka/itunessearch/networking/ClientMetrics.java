@@ -0,0 +1,459 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import me.tobiadeyinka.itunessearch.entities.ItunesMedia;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms and counters for the requests of an {@link ItunesClient}, kept per endpoint, media type and
+ * country. Each series records:
+ * <ul>
+ *     <li>how long requests waited for a rate limit permit, took to connect, to receive the first byte of the
+ *     response, to read the body and to parse it</li>
+ *     <li>the responses per http status code, the queries that failed without a response, the retries and the
+ *     bytes read</li>
+ * </ul>
+ * The state of the circuit breaker guarding each host and its number of state changes are kept alongside the
+ * series.
+ *
+ * Connect and first byte times are only known for transports that report them, see
+ * {@link TransportResponse#withTimings(long, long)}. Responses served from the {@link ResponseCache} are not
+ * recorded.
+ *
+ * A series is created the first time its combination is seen, recording into it never allocates. Snapshots can
+ * be read with {@link #getSeries()} or through JMX once {@link #registerMBean(String) registered}.
+ */
+public class ClientMetrics implements ClientMetricsMXBean {
+
+    /**
+     * The phases of a request whose latencies are recorded.
+     */
+    public enum Phase {
+        QUEUE_WAIT,
+        CONNECT,
+        TIME_TO_FIRST_BYTE,
+        BODY_READ,
+        PARSE
+    }
+
+    private static final String JMX_DOMAIN = "me.tobiadeyinka.itunessearch";
+
+    private static final Endpoint[] ENDPOINTS = Endpoint.values();
+    private static final ItunesMedia[] MEDIA = ItunesMedia.values();
+    private static final CountryCode[] COUNTRIES = CountryCode.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * country indexes by alpha-2 code, from (first letter - 'A') * 26 + (second letter - 'A')
+     */
+    private static final short[] COUNTRY_BY_ALPHA2 = new short[26 * 26];
+
+    static {
+        for (int i = 0; i < COUNTRY_BY_ALPHA2.length; i++) COUNTRY_BY_ALPHA2[i] = -1;
+
+        for (CountryCode country : COUNTRIES) {
+            String alpha2 = country.getAlpha2();
+
+            if (alpha2 != null && alpha2.length() == 2 && isLetter(alpha2.charAt(0)) && isLetter(alpha2.charAt(1))) {
+                int index = (upperCase(alpha2.charAt(0)) - 'A') * 26 + (upperCase(alpha2.charAt(1)) - 'A');
+                if (COUNTRY_BY_ALPHA2[index] == -1) COUNTRY_BY_ALPHA2[index] = (short) country.ordinal();
+            }
+        }
+    }
+
+    /**
+     * series by endpoint, media and country index. The last media and country index stand for none.
+     */
+    private final AtomicReferenceArray<Series> series =
+        new AtomicReferenceArray<>(ENDPOINTS.length * (MEDIA.length + 1) * (COUNTRIES.length + 1));
+
+    /**
+     * circuit breaker states and transition counts by lower case host
+     */
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param request a request of the client
+     * @return the series the request is recorded in
+     */
+    Series series(TransportRequest request) {
+        int index = index(request.getUri());
+        Series existing = series.get(index);
+        if (existing != null) return existing;
+
+        Series created = new Series(endpointOf(index), mediaOf(index), countryOf(index));
+        return series.compareAndSet(index, null, created) ? created : series.get(index);
+    }
+
+    /**
+     * @param uri a uri queried by the library
+     * @return the index of the series the uri is recorded in, parsed without allocating
+     */
+    static int index(URI uri) {
+        Endpoint endpoint = Endpoint.of(uri);
+        int media = MEDIA.length;
+        int country = COUNTRIES.length;
+
+        if (endpoint == Endpoint.RSS) {
+            /*
+             * /api/v1/{country}/{media type}/...
+             */
+            String path = uri.getRawPath();
+            int countryStart = segmentStart(path, 3);
+            int mediaStart = segmentStart(path, 4);
+
+            if (countryStart >= 0) country = country(path, countryStart, segmentEnd(path, countryStart));
+            if (mediaStart >= 0) media = feedMedia(path, mediaStart, segmentEnd(path, mediaStart));
+        } else {
+            String query = uri.getRawQuery();
+            int mediaStart = parameterStart(query, "media");
+            int countryStart = parameterStart(query, "country");
+
+            if (mediaStart >= 0) {
+                media = media(query, mediaStart, parameterEnd(query, mediaStart));
+            } else if (endpoint == Endpoint.SEARCH) {
+                media = ItunesMedia.ALL.ordinal();
+            }
+
+            if (countryStart >= 0) country = country(query, countryStart, parameterEnd(query, countryStart));
+        }
+
+        return (endpoint.ordinal() * (MEDIA.length + 1) + media) * (COUNTRIES.length + 1) + country;
+    }
+
+    static Endpoint endpointOf(int index) {
+        return ENDPOINTS[index / ((MEDIA.length + 1) * (COUNTRIES.length + 1))];
+    }
+
+    static ItunesMedia mediaOf(int index) {
+        int media = index / (COUNTRIES.length + 1) % (MEDIA.length + 1);
+        return media == MEDIA.length ? null : MEDIA[media];
+    }
+
+    static CountryCode countryOf(int index) {
+        int country = index % (COUNTRIES.length + 1);
+        return country == COUNTRIES.length ? null : COUNTRIES[country];
+    }
+
+    private static int media(String value, int start, int end) {
+        for (ItunesMedia media : MEDIA) {
+            String parameterValue = media.getParameterValue();
+
+            if (parameterValue.length() == end - start && value.regionMatches(start, parameterValue, 0, end - start)) {
+                return media.ordinal();
+            }
+        }
+
+        return MEDIA.length;
+    }
+
+    private static int feedMedia(String path, int start, int end) {
+        if (segmentIs(path, start, end, "itunes-music")) return ItunesMedia.MUSIC.ordinal();
+        if (segmentIs(path, start, end, "books")) return ItunesMedia.EBOOK.ordinal();
+        if (segmentIs(path, start, end, "movies")) return ItunesMedia.MOVIE.ordinal();
+        if (segmentIs(path, start, end, "podcasts")) return ItunesMedia.PODCAST.ordinal();
+        return MEDIA.length;
+    }
+
+    private static boolean segmentIs(String path, int start, int end, String segment) {
+        return end - start == segment.length() && path.regionMatches(start, segment, 0, segment.length());
+    }
+
+    private static int country(String value, int start, int end) {
+        if (end - start != 2 || !isLetter(value.charAt(start)) || !isLetter(value.charAt(start + 1))) {
+            return COUNTRIES.length;
+        }
+
+        int index = COUNTRY_BY_ALPHA2[(upperCase(value.charAt(start)) - 'A') * 26 + (upperCase(value.charAt(start + 1)) - 'A')];
+        return index == -1 ? COUNTRIES.length : index;
+    }
+
+    /**
+     * @return the index the value of the query parameter starts at, or -1 if the query has no such parameter
+     */
+    private static int parameterStart(String query, String name) {
+        if (query == null) return -1;
+
+        for (int start = 0; start < query.length(); ) {
+            if (query.startsWith(name, start) && query.length() > start + name.length()
+                && query.charAt(start + name.length()) == '=') {
+                return start + name.length() + 1;
+            }
+
+            int next = query.indexOf('&', start);
+            if (next == -1) return -1;
+            start = next + 1;
+        }
+
+        return -1;
+    }
+
+    private static int parameterEnd(String query, int start) {
+        int end = query.indexOf('&', start);
+        return end == -1 ? query.length() : end;
+    }
+
+    /**
+     * @return the index the path segment starts at, counting from 1, or -1 if the path is shorter
+     */
+    private static int segmentStart(String path, int segment) {
+        if (path == null) return -1;
+
+        int start = 0;
+        for (int i = 0; i < segment; i++) {
+            start = path.indexOf('/', start);
+            if (start == -1) return -1;
+            start++;
+        }
+
+        return start;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end == -1 ? path.length() : end;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static char upperCase(char c) {
+        return c >= 'a' ? (char) (c - 'a' + 'A') : c;
+    }
+
+    /**
+     *
+     * @return a snapshot of every series that recorded anything
+     */
+    @Override
+    public List<SeriesSnapshot> getSeries() {
+        List<SeriesSnapshot> snapshots = new ArrayList<>();
+
+        for (int i = 0; i < series.length(); i++) {
+            Series current = series.get(i);
+            if (current != null) snapshots.add(current.snapshot());
+        }
+
+        return snapshots;
+    }
+
+    /**
+     * @param endpoint the endpoint
+     * @param media the media type, null for none
+     * @param country the country, null for none
+     * @return a snapshot of the series, or null if it has not recorded anything
+     */
+    public SeriesSnapshot getSeries(Endpoint endpoint, ItunesMedia media, CountryCode country) {
+        int index = (endpoint.ordinal() * (MEDIA.length + 1) + (media == null ? MEDIA.length : media.ordinal()))
+            * (COUNTRIES.length + 1) + (country == null ? COUNTRIES.length : country.ordinal());
+
+        Series current = series.get(index);
+        return current == null ? null : current.snapshot();
+    }
+
+    @Override
+    public long getResponseCount() {
+        long count = 0;
+        for (SeriesSnapshot snapshot : getSeries()) count += snapshot.getResponseCount();
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (SeriesSnapshot snapshot : getSeries()) count += snapshot.getErrorCount();
+        return count;
+    }
+
+    @Override
+    public long getRetryCount() {
+        long count = 0;
+        for (SeriesSnapshot snapshot : getSeries()) count += snapshot.getRetryCount();
+        return count;
+    }
+
+    @Override
+    public long getBytesRead() {
+        long count = 0;
+        for (SeriesSnapshot snapshot : getSeries()) count += snapshot.getBytesRead();
+        return count;
+    }
+
+    @Override
+    public Map<String, CircuitBreaker.State> getCircuitStates() {
+        Map<String, CircuitBreaker.State> states = new TreeMap<>();
+        circuits.forEach((host, circuit) -> states.put(host, circuit.state));
+        return states;
+    }
+
+    @Override
+    public Map<String, Long> getCircuitTransitionCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        circuits.forEach((host, circuit) -> counts.put(host, circuit.transitions.get()));
+        return counts;
+    }
+
+    /**
+     * @param host the lower case host guarded by the breaker
+     * @param to the state the breaker entered
+     */
+    void recordCircuitStateChange(String host, CircuitBreaker.State to) {
+        Circuit circuit = circuits.computeIfAbsent(host, ignored -> new Circuit());
+        circuit.state = to;
+        circuit.transitions.incrementAndGet();
+    }
+
+    /**
+     * register the metrics with the platform MBean server, as
+     * {@code me.tobiadeyinka.itunessearch:type=ClientMetrics,name=<name>}
+     *
+     * @param name the name of the client, unique among registered metrics
+     * @return the name the metrics are registered under
+     * @throws IllegalStateException if the metrics cannot be registered, e.g. because the name is taken
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics as " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * remove the metrics registered under the name from the platform MBean server
+     *
+     * @param name the name the metrics were registered with
+     * @throws IllegalStateException if no metrics are registered under the name
+     */
+    public static void unregisterMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister metrics " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=ClientMetrics,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * The last state of the circuit breaker guarding a host, and its number of state changes.
+     */
+    private static final class Circuit {
+
+        private volatile CircuitBreaker.State state;
+        private final AtomicLong transitions = new AtomicLong();
+
+    }
+
+    /**
+     * The histograms and counters of one endpoint, media type and country.
+     */
+    static final class Series {
+
+        /**
+         * status codes from 100 to 599 are counted individually, others in the last slot
+         */
+        private static final int STATUS_CODES = 501;
+
+        private final Endpoint endpoint;
+        private final ItunesMedia media;
+        private final CountryCode country;
+
+        private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+        private final AtomicLongArray statusCounts = new AtomicLongArray(STATUS_CODES);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        private Series(Endpoint endpoint, ItunesMedia media, CountryCode country) {
+            this.endpoint = endpoint;
+            this.media = media;
+            this.country = country;
+
+            for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+        }
+
+        void record(Phase phase, long nanos) {
+            histograms[phase.ordinal()].record(nanos);
+        }
+
+        /**
+         * record the status of a response, and the connect and first byte times its transport reported
+         */
+        void recordResponse(TransportResponse response) {
+            int statusCode = response.getStatusCode();
+            statusCounts.incrementAndGet(statusCode >= 100 && statusCode < 600 ? statusCode - 100 : STATUS_CODES - 1);
+
+            if (response.getConnectNanos() >= 0) record(Phase.CONNECT, response.getConnectNanos());
+            if (response.getTimeToFirstByteNanos() >= 0) {
+                record(Phase.TIME_TO_FIRST_BYTE, response.getTimeToFirstByteNanos());
+            }
+        }
+
+        void recordError() {
+            errors.incrementAndGet();
+        }
+
+        void recordRetry() {
+            retries.incrementAndGet();
+        }
+
+        void recordBytes(long bytes) {
+            bytesRead.addAndGet(bytes);
+        }
+
+        private SeriesSnapshot snapshot() {
+            TreeMap<Integer, Long> statuses = new TreeMap<>();
+
+            for (int i = 0; i < STATUS_CODES; i++) {
+                long count = statusCounts.get(i);
+                if (count > 0) statuses.put(i == STATUS_CODES - 1 ? -1 : i + 100, count);
+            }
+
+            EnumMap<Phase, HistogramSnapshot> snapshots = new EnumMap<>(Phase.class);
+            for (Phase phase : PHASES) snapshots.put(phase, histograms[phase.ordinal()].snapshot());
+
+            return new SeriesSnapshot(endpoint, media, country, statuses, errors.get(), retries.get(),
+                bytesRead.get(), snapshots);
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ClientMetrics}.
+ */
+public interface ClientMetricsMXBean {
+
+    /**
+     *
+     * @return a snapshot of every series that recorded anything
+     */
+    List<SeriesSnapshot> getSeries();
+
+    /**
+     *
+     * @return the number of responses received, over all series
+     */
+    long getResponseCount();
+
+    /**
+     *
+     * @return the number of queries that failed without a response, over all series
+     */
+    long getErrorCount();
+
+    /**
+     *
+     * @return the number of retries, over all series
+     */
+    long getRetryCount();
+
+    /**
+     *
+     * @return the number of response body bytes read, over all series
+     */
+    long getBytesRead();
+
+    /**
+     *
+     * @return the state of the circuit breaker guarding each host, by lower case host
+     */
+    Map<String, CircuitBreaker.State> getCircuitStates();
+
+    /**
+     *
+     * @return the number of state changes of the circuit breaker guarding each host, by lower case host
+     */
+    Map<String, Long> getCircuitTransitionCounts();
+
+}
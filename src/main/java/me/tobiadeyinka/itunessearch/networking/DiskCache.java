@@ -0,0 +1,726 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent tier of a {@link ResponseCache}, keeping response bodies across restarts of the jvm.
+ *
+ * Bodies are appended to memory-mapped segment files in a directory, and found through an in-memory index by the
+ * canonical url of their query that is rebuilt from the segments when the cache is opened. Reads are served
+ * straight from the mapped files without copying. Expiry times are wall-clock times, so entries expire across
+ * restarts as they would have in a running jvm.
+ *
+ * Every record is checksummed. After a crash, the segments are read up to the first incomplete or corrupted
+ * record, later records of that segment are lost but the rest of the cache is kept. Segments whose records mostly
+ * expired or were replaced are compacted in the background, and the oldest segments are dropped once the cache
+ * outgrows its maximum size.
+ *
+ * The cache is thread safe. A directory can only be used by one cache at a time, opening a second one fails.
+ */
+public class DiskCache implements Closeable {
+
+    private static final int MAGIC = 0x49545343;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_LENGTH = 8;
+
+    /**
+     * key length, body length, expiry, keep until, checksum
+     */
+    private static final int RECORD_HEADER_LENGTH = 4 + 4 + 8 + 8 + 4;
+
+    private static final int TOMBSTONE = -1;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final LongSupplier clock;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    /**
+     * segments oldest first, the last one is appended to. Guarded by this cache.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    private int segmentSize = 64 * 1024 * 1024;
+    private long maxSize = 1024L * 1024 * 1024;
+    private long compactionIntervalNanos;
+    private ScheduledFuture<?> compaction;
+    private volatile boolean closed;
+
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong droppedSegments = new AtomicLong();
+    private final AtomicLong corruptRecords = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    /**
+     * Opens the cache in a directory, creating it if necessary, and reads the index from the segments already in
+     * it. Segments are compacted every 10 minutes.
+     *
+     * @param directory the directory the segments are kept in
+     * @throws IOException if the directory cannot be created or read
+     * @throws IllegalStateException if another cache uses the directory
+     */
+    public DiskCache(Path directory) throws IOException {
+        this(directory, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock the wall clock, in milliseconds
+     */
+    DiskCache(Path directory, LongSupplier clock) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.clock = clock;
+        this.lockChannel = FileChannel.open(
+            directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE
+        );
+
+        FileLock lock;
+
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Disk cache directory " + directory + " is in use by another cache");
+        }
+
+        this.lock = lock;
+
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+
+        withCompactionInterval(Duration.ofMinutes(10));
+    }
+
+    /**
+     * Sets the size of new segment files. Bodies larger than a segment get a segment of their own. Default is
+     * 64 MiB.
+     *
+     * @param segmentSize the size of a segment in bytes
+     * @return the current cache instance
+     */
+    public synchronized DiskCache withSegmentSize(int segmentSize) {
+        if (segmentSize < 4096)
+            throw new IllegalArgumentException("segmentSize must be at least 4096 bytes");
+
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Sets the size the segments may take up together. Once they outgrow it, the oldest segments are dropped with
+     * all their entries. Default is 1 GiB.
+     *
+     * @param maxSize the maximum size of the cache in bytes
+     * @return the current cache instance
+     */
+    public synchronized DiskCache withMaxSize(long maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive");
+
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Sets how often segments are compacted in the background. Default is every 10 minutes.
+     *
+     * @param interval the time between compactions, zero to only compact when {@link #compact()} is called
+     * @return the current cache instance
+     */
+    public synchronized DiskCache withCompactionInterval(Duration interval) {
+        if (interval.isNegative())
+            throw new IllegalArgumentException("interval must not be negative");
+
+        if (compaction != null) compaction.cancel(false);
+
+        compactionIntervalNanos = interval.toNanos();
+        compaction = compactionIntervalNanos == 0 || closed
+            ? null
+            : Compactor.INSTANCE.scheduleWithFixedDelay(
+                this::compactQuietly, compactionIntervalNanos, compactionIntervalNanos, TimeUnit.NANOSECONDS
+            );
+
+        return this;
+    }
+
+    /**
+     * @param key the canonical key of the query
+     * @return the entry of the key, or null if it is not cached or has passed the time it is kept until
+     */
+    Entry find(String key) {
+        Entry entry = index.get(key);
+        if (entry == null || entry.isTombstone() || clock.getAsLong() >= entry.keepUntil) return null;
+
+        return entry;
+    }
+
+    /**
+     * @param entry an entry of this cache
+     * @return a read-only view of the entry's body in the mapped segment
+     */
+    ByteBuffer read(Entry entry) {
+        ByteBuffer body = entry.segment.buffer.duplicate();
+        body.limit(entry.bodyOffset + entry.bodyLength).position(entry.bodyOffset);
+
+        return body.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     *
+     * @return the current wall clock time in milliseconds, as entries' expiry times are
+     */
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * append a body. Failures to write are counted, the cache keeps working without the body.
+     *
+     * @param key the canonical key of the query
+     * @param body the body
+     * @param ttlMillis how long the body is fresh
+     * @param maxStaleMillis how long past its time to live the body is kept
+     */
+    void put(String key, byte[] body, long ttlMillis, long maxStaleMillis) {
+        long expiresAt = clock.getAsLong() + ttlMillis;
+        append(key, body, expiresAt, expiresAt + maxStaleMillis);
+    }
+
+    /**
+     * mark the key as removed. The mark is kept as long as the entry it removes would have been.
+     *
+     * @param key the canonical key of the query
+     */
+    void invalidate(String key) {
+        Entry entry = index.get(key);
+        if (entry == null || entry.isTombstone()) return;
+
+        append(key, null, entry.expiresAt, entry.keepUntil);
+    }
+
+    private synchronized void append(String key, byte[] body, long expiresAt, long keepUntil) {
+        if (closed) return;
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = body == null ? TOMBSTONE : body.length;
+        int recordLength = RECORD_HEADER_LENGTH + keyBytes.length + Math.max(0, bodyLength);
+
+        try {
+            Segment segment = segmentFor(recordLength);
+            int position = segment.writePosition;
+            ByteBuffer buffer = segment.buffer.duplicate();
+
+            buffer.position(position + RECORD_HEADER_LENGTH);
+            buffer.put(keyBytes);
+            if (body != null) buffer.put(body);
+
+            buffer.position(position);
+            buffer.putInt(keyBytes.length).putInt(bodyLength).putLong(expiresAt).putLong(keepUntil);
+            buffer.putInt(checksum(segment.buffer, position, recordLength));
+
+            segment.writePosition = position + recordLength;
+            index(key, new Entry(segment, position, recordLength, keyBytes.length, bodyLength, expiresAt, keepUntil));
+        } catch (IOException e) {
+            writeFailures.incrementAndGet();
+        }
+    }
+
+    private void index(String key, Entry entry) {
+        Entry previous = index.put(key, entry);
+        if (previous != null) previous.segment.deadBytes += previous.recordLength;
+    }
+
+    /**
+     * @return the segment to append a record of the given length to, rolling to a new one if necessary
+     */
+    private Segment segmentFor(int recordLength) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active != null && active.capacity() - active.writePosition >= recordLength) return active;
+
+        long id = active == null ? 1 : active.id + 1;
+        int size = Math.max(segmentSize, SEGMENT_HEADER_LENGTH + recordLength);
+        Segment segment = Segment.create(directory.resolve(segmentName(id)), id, size);
+        segments.add(segment);
+
+        /*
+         * never drop the segment just created
+         */
+        while (size() > maxSize && segments.size() > 1) {
+            drop(segments.get(0));
+            droppedSegments.incrementAndGet();
+        }
+
+        return segment;
+    }
+
+    /**
+     * remove a segment and every entry in it
+     */
+    private void drop(Segment segment) throws IOException {
+        index.values().removeIf(entry -> entry.segment == segment);
+        segments.remove(segment);
+        Files.deleteIfExists(segment.path);
+    }
+
+    /**
+     * rewrite the entries of every segment that is mostly expired or replaced to the end of the cache, and delete
+     * the segment. Entries past the time they are kept until are removed.
+     *
+     * @throws IOException if a segment cannot be written or deleted
+     */
+    public synchronized void compact() throws IOException {
+        if (closed || segments.size() < 2) return;
+
+        long now = clock.getAsLong();
+        Map<Segment, Long> liveBytes = new HashMap<>();
+
+        for (Iterator<Entry> entries = index.values().iterator(); entries.hasNext(); ) {
+            Entry entry = entries.next();
+
+            if (now >= entry.keepUntil) {
+                entries.remove();
+                entry.segment.deadBytes += entry.recordLength;
+            } else {
+                liveBytes.merge(entry.segment, (long) entry.recordLength, Long::sum);
+            }
+        }
+
+        Segment active = segments.get(segments.size() - 1);
+        List<Segment> sparse = new ArrayList<>();
+
+        for (Segment segment : segments) {
+            long written = segment.writePosition - SEGMENT_HEADER_LENGTH;
+            if (segment != active && liveBytes.getOrDefault(segment, 0L) * 2 <= written) sparse.add(segment);
+        }
+
+        if (sparse.isEmpty()) return;
+
+        /*
+         * writing may roll over to new segments, each one a record was moved to is forced
+         */
+        Set<Segment> targets = new LinkedHashSet<>();
+
+        for (Map.Entry<String, Entry> indexed : index.entrySet()) {
+            Entry entry = indexed.getValue();
+
+            /*
+             * rolling to a new segment may have dropped the oldest segments along with their entries
+             */
+            if (!sparse.contains(entry.segment) || !segments.contains(entry.segment)) continue;
+
+            Segment segment = segmentFor(entry.recordLength);
+            if (!segments.contains(entry.segment)) continue;
+
+            ByteBuffer record = entry.segment.buffer.duplicate();
+            record.limit(entry.offset + entry.recordLength).position(entry.offset);
+
+            ByteBuffer target = segment.buffer.duplicate();
+            target.position(segment.writePosition);
+            target.put(record);
+
+            Entry moved = entry.movedTo(segment, segment.writePosition);
+            segment.writePosition += entry.recordLength;
+            index.replace(indexed.getKey(), entry, moved);
+            targets.add(segment);
+        }
+
+        /*
+         * the moved records are on disk before the segments they were copied from are deleted
+         */
+        for (Segment segment : targets) {
+            if (segments.contains(segment)) segment.buffer.force();
+        }
+
+        for (Segment segment : sparse) {
+            if (segments.contains(segment)) drop(segment);
+        }
+
+        compactions.incrementAndGet();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            /*
+             * the cache keeps working uncompacted, the next compaction tries again
+             */
+            writeFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * remove every entry and delete every segment
+     *
+     * @throws IOException if a segment cannot be deleted
+     */
+    public synchronized void clear() throws IOException {
+        index.clear();
+
+        for (Segment segment : new ArrayList<>(segments)) {
+            drop(segment);
+        }
+    }
+
+    /**
+     * read every segment of the directory into the index, oldest first so later records replace earlier ones
+     */
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            files.forEach(paths::add);
+        }
+
+        paths.sort(null);
+        long now = clock.getAsLong();
+
+        for (Path path : paths) {
+            Segment segment = Segment.open(path, segmentId(path));
+
+            if (segment == null) {
+                /*
+                 * not a segment of this version, or too short to be one
+                 */
+                Files.delete(path);
+                continue;
+            }
+
+            segments.add(segment);
+            ByteBuffer buffer = segment.buffer;
+            int position = SEGMENT_HEADER_LENGTH;
+
+            while (position + RECORD_HEADER_LENGTH <= segment.capacity()) {
+                int keyLength = buffer.getInt(position);
+                int bodyLength = buffer.getInt(position + 4);
+
+                if (keyLength == 0) break;
+
+                long recordLength = RECORD_HEADER_LENGTH + (long) keyLength + Math.max(0, bodyLength);
+
+                if (keyLength < 0 || bodyLength < TOMBSTONE || position + recordLength > segment.capacity()
+                    || buffer.getInt(position + 24) != checksum(buffer, position, (int) recordLength)) {
+                    corruptRecords.incrementAndGet();
+                    break;
+                }
+
+                long expiresAt = buffer.getLong(position + 8);
+                long keepUntil = buffer.getLong(position + 16);
+                byte[] key = new byte[keyLength];
+                buffer.duplicate().position(position + RECORD_HEADER_LENGTH).get(key);
+
+                Entry entry = new Entry(
+                    segment, position, (int) recordLength, keyLength, bodyLength, expiresAt, keepUntil
+                );
+
+                if (now < keepUntil) {
+                    index(new String(key, StandardCharsets.UTF_8), entry);
+                } else {
+                    segment.deadBytes += entry.recordLength;
+                }
+
+                position += (int) recordLength;
+            }
+
+            /*
+             * anything after the last valid record was never completely written, it is overwritten by later appends
+             */
+            segment.writePosition = position;
+            if (position + 4 <= segment.capacity()) buffer.putInt(position, 0);
+        }
+    }
+
+    /**
+     * checksum of a record, over everything but the checksum itself
+     */
+    private static int checksum(ByteBuffer buffer, int position, int recordLength) {
+        CRC32 crc = new CRC32();
+
+        ByteBuffer header = buffer.duplicate();
+        header.limit(position + 24).position(position);
+        crc.update(header);
+
+        ByteBuffer content = buffer.duplicate();
+        content.limit(position + recordLength).position(position + RECORD_HEADER_LENGTH);
+        crc.update(content);
+
+        return (int) crc.getValue();
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * write the mapped segments to disk and stop compacting. Entries read before closing stay readable.
+     *
+     * @throws IOException if the directory lock cannot be released
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        if (compaction != null) compaction.cancel(false);
+        for (Segment segment : segments) segment.buffer.force();
+
+        try {
+            if (lock != null) lock.release();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    /**
+     *
+     * @return the number of entries held, including removal marks and entries past their time to live that were
+     *         not compacted yet
+     */
+    public int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     *
+     * @return the number of bytes the segment files take up
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (Segment segment : segments) size += segment.capacity();
+        return size;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized Duration getCompactionInterval() {
+        return Duration.ofNanos(compactionIntervalNanos);
+    }
+
+    /**
+     *
+     * @return the number of compactions that rewrote at least one segment
+     */
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    /**
+     *
+     * @return the number of segments dropped to keep the cache within its maximum size
+     */
+    public long getDroppedSegmentCount() {
+        return droppedSegments.get();
+    }
+
+    /**
+     *
+     * @return the number of incomplete or corrupted records found when the cache was opened
+     */
+    public long getCorruptRecordCount() {
+        return corruptRecords.get();
+    }
+
+    /**
+     *
+     * @return the number of bodies that could not be written and compactions that failed
+     */
+    public long getWriteFailureCount() {
+        return writeFailures.get();
+    }
+
+    /**
+     * The location and lifetime of the latest record of a key.
+     */
+    static final class Entry {
+
+        private final Segment segment;
+        private final int offset;
+        private final int recordLength;
+        private final int bodyOffset;
+        private final int bodyLength;
+
+        /**
+         * the wall clock time the body stops being fresh
+         */
+        final long expiresAt;
+
+        /**
+         * the wall clock time the body may no longer be served, even stale
+         */
+        final long keepUntil;
+
+        private Entry(Segment segment, int offset, int recordLength, int keyLength, int bodyLength, long expiresAt,
+                      long keepUntil) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordLength = recordLength;
+            this.bodyOffset = offset + RECORD_HEADER_LENGTH + keyLength;
+            this.bodyLength = bodyLength;
+            this.expiresAt = expiresAt;
+            this.keepUntil = keepUntil;
+        }
+
+        boolean isTombstone() {
+            return bodyLength == TOMBSTONE;
+        }
+
+        private Entry movedTo(Segment segment, int offset) {
+            return new Entry(segment, offset, recordLength, bodyOffset - this.offset - RECORD_HEADER_LENGTH,
+                bodyLength, expiresAt, keepUntil);
+        }
+
+    }
+
+    /**
+     * A segment file, mapped in full.
+     */
+    private static final class Segment {
+
+        private final Path path;
+        private final long id;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * where the next record is appended. Guarded by the cache.
+         */
+        private int writePosition = SEGMENT_HEADER_LENGTH;
+
+        /**
+         * bytes of records that were replaced, removed or expired. Guarded by the cache.
+         */
+        private long deadBytes;
+
+        private Segment(Path path, long id, MappedByteBuffer buffer) {
+            this.path = path;
+            this.id = id;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path path, long id, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION);
+
+                return new Segment(path, id, buffer);
+            }
+        }
+
+        /**
+         * @return the segment, or null if the file is not a segment
+         */
+        static Segment open(Path path, long id) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (id == 0 || size < SEGMENT_HEADER_LENGTH + RECORD_HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+
+                return new Segment(path, id, buffer);
+            }
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+    }
+
+    /**
+     * Daemon thread shared by the compactions of all caches.
+     */
+    private static class Compactor {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "itunes-search-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+}
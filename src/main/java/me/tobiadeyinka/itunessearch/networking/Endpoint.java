@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.net.URI;
+
+/**
+ * The iTunes api endpoints queried by the library.
+ */
+public enum Endpoint {
+    SEARCH,
+    LOOKUP,
+    RSS;
+
+    /**
+     * @param uri a uri queried by the library
+     * @return the endpoint the uri belongs to
+     */
+    public static Endpoint of(URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+
+        if (ItunesClient.RSS_HOST.equalsIgnoreCase(uri.getHost()) || path.startsWith("/api/")) {
+            return RSS;
+        }
+
+        return path.startsWith("/lookup") ? LOOKUP : SEARCH;
+    }
+
+}
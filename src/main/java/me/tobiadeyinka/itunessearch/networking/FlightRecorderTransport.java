@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Records a flight recorder event for every exchange of the transport while a recording is interested in it, and
+ * adds nothing but a check otherwise.
+ */
+class FlightRecorderTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+
+    FlightRecorderTransport(HttpTransport delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        ItunesExchangeEvent event = ItunesExchangeEvent.start();
+        if (event == null) return delegate.execute(request);
+
+        Throwable failure = null;
+
+        try {
+            TransportResponse response = delegate.execute(request);
+            event.recordResponse(response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            event.finish(request, failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        ItunesExchangeEvent event = ItunesExchangeEvent.start();
+        if (event == null) return delegate.executeAsync(request, executor);
+
+        return delegate.executeAsync(request, executor).whenComplete((response, failure) -> {
+            if (response != null) event.recordResponse(response);
+            event.finish(request, failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure);
+        });
+    }
+
+}
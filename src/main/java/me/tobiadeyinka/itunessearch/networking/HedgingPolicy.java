@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a request that has not been answered yet is sent a second time, to cut the latency of the
+ * occasional stalled request. Whichever of the two answers first is used, the other is discarded.
+ *
+ * The hedge is sent once the first request has been outstanding for the {@code percentile} of recently observed
+ * latencies, kept within the delay bounds, or after a fixed delay if one is set. Until enough latencies have been
+ * observed the upper bound is used. A hedge is only sent if the rate limiter of the request's host has a permit
+ * available right away, so hedging never makes requests wait for permits or exceed the rate limit.
+ *
+ * By default only id lookups are hedged. The policy is thread safe and can be shared between clients, its
+ * latency samples and counters then cover all of them.
+ */
+public class HedgingPolicy {
+
+    private static final int SAMPLES = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    /**
+     * The percentile is recomputed after this many new samples.
+     */
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private double percentile = 0.95;
+    private long minDelayNanos = Duration.ofMillis(50).toNanos();
+    private long maxDelayNanos = Duration.ofSeconds(2).toNanos();
+    private long fixedDelayNanos = -1;
+    private Set<Endpoint> endpoints = EnumSet.of(Endpoint.LOOKUP);
+
+    /**
+     * Latencies of the last answered requests, a ring buffer written at {@code next}.
+     */
+    private final long[] samples = new long[SAMPLES];
+    private int next;
+    private int recorded;
+    private int sinceRecompute;
+    private long percentileNanos = -1;
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetDenied = new AtomicLong();
+
+    /**
+     * Sets the percentile of recent latencies after which a hedge is sent.
+     *
+     * @param percentile the percentile, between 0 exclusive and 1 exclusive, e.g. 0.95
+     * @return the current policy instance
+     */
+    public synchronized HedgingPolicy withPercentile(double percentile) {
+        if (!(percentile > 0 && percentile < 1))
+            throw new IllegalArgumentException("percentile must be between 0 and 1 exclusive");
+
+        this.percentile = percentile;
+        this.percentileNanos = -1;
+        return this;
+    }
+
+    /**
+     * Sets the bounds the percentile derived delay is kept within. Default is 50 ms to 2 seconds.
+     *
+     * @param minDelay the shortest delay
+     * @param maxDelay the longest delay, also used until enough latencies have been observed
+     * @return the current policy instance
+     */
+    public synchronized HedgingPolicy withDelayBounds(Duration minDelay, Duration maxDelay) {
+        if (minDelay.isNegative() || maxDelay.compareTo(minDelay) < 0)
+            throw new IllegalArgumentException("minDelay must not be negative nor longer than maxDelay");
+
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        return this;
+    }
+
+    /**
+     * Sends hedges after a fixed delay instead of one derived from observed latencies.
+     *
+     * @param fixedDelay the delay, null to derive it from observed latencies again
+     * @return the current policy instance
+     */
+    public synchronized HedgingPolicy withFixedDelay(Duration fixedDelay) {
+        if (fixedDelay != null && fixedDelay.isNegative())
+            throw new IllegalArgumentException("fixedDelay must not be negative");
+
+        this.fixedDelayNanos = fixedDelay == null ? -1 : fixedDelay.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the endpoints whose requests are hedged. Default is {@link Endpoint#LOOKUP} only.
+     *
+     * @param first an endpoint to hedge
+     * @param rest more endpoints to hedge
+     * @return the current policy instance
+     */
+    public synchronized HedgingPolicy withEndpoints(Endpoint first, Endpoint... rest) {
+        this.endpoints = EnumSet.of(first, rest);
+        return this;
+    }
+
+    synchronized boolean appliesTo(Endpoint endpoint) {
+        return endpoints.contains(endpoint);
+    }
+
+    /**
+     *
+     * @return the time after which an unanswered request is hedged, in nanoseconds
+     */
+    synchronized long delayNanos() {
+        if (fixedDelayNanos >= 0) return fixedDelayNanos;
+        if (recorded < MIN_SAMPLES) return maxDelayNanos;
+
+        if (percentileNanos < 0 || sinceRecompute >= RECOMPUTE_INTERVAL) {
+            long[] sorted = Arrays.copyOf(samples, recorded);
+            Arrays.sort(sorted);
+            percentileNanos = sorted[(int) Math.min(recorded - 1, Math.ceil(percentile * recorded) - 1)];
+            sinceRecompute = 0;
+        }
+
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, percentileNanos));
+    }
+
+    /**
+     * @param latencyNanos the time until a request was answered
+     */
+    synchronized void recordLatency(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % SAMPLES;
+        recorded = Math.min(SAMPLES, recorded + 1);
+        sinceRecompute++;
+    }
+
+    void recordHedge() {
+        hedges.incrementAndGet();
+    }
+
+    void recordHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    void recordBudgetDenied() {
+        budgetDenied.incrementAndGet();
+    }
+
+    /**
+     *
+     * @return the current delay after which an unanswered request is hedged
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos());
+    }
+
+    public synchronized double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     *
+     * @return the number of hedges sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     *
+     * @return the number of hedges answered before the request they hedged
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     *
+     * @return the number of hedges not sent because no rate limit permit was available
+     */
+    public long getBudgetDeniedCount() {
+        return budgetDenied.get();
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a second, identical request when the first is not answered within the delay of a {@link HedgingPolicy},
+ * and completes with whichever response arrives first. The other request can't be aborted once it is sent, its
+ * response is closed as soon as it arrives, which releases its connection.
+ *
+ * Hedges take a rate limit permit only if one is available right away, the first request acquires its permit
+ * before it reaches this transport.
+ */
+class HedgingTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final HedgingPolicy policy;
+    private final Map<String, RateLimiter> rateLimiters;
+    private final Executor executor;
+
+    /**
+     * @param delegate the transport executing the requests
+     * @param policy decides when requests are hedged
+     * @param rateLimiters rate limiters keyed by lower case host name, hedges to hosts without one are always sent
+     * @param executor executor blocking requests run on, so a blocking request can be hedged
+     */
+    HedgingTransport(HttpTransport delegate, HedgingPolicy policy, Map<String, RateLimiter> rateLimiters,
+                     Executor executor) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.rateLimiters = rateLimiters;
+        this.executor = executor;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        if (!policy.appliesTo(Endpoint.of(request.getUri()))) return delegate.execute(request);
+
+        CompletableFuture<TransportResponse> response = executeAsync(request, executor);
+
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.thenAccept(HedgingTransport::close);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while executing " + request);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        if (!policy.appliesTo(Endpoint.of(request.getUri()))) return delegate.executeAsync(request, executor);
+
+        Race race = new Race();
+        long start = System.nanoTime();
+
+        delegate.executeAsync(request, executor).whenComplete((response, failure) -> {
+            if (failure == null) policy.recordLatency(System.nanoTime() - start);
+            race.finish(response, failure, false);
+        });
+
+        long delay = policy.delayNanos();
+
+        if (delay < request.remainingNanos()) {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executor).execute(() -> {
+                if (!race.startHedge()) return;
+
+                if (!acquireBudget(request)) {
+                    policy.recordBudgetDenied();
+                    race.cancelHedge();
+                    return;
+                }
+
+                policy.recordHedge();
+                delegate.executeAsync(request, executor)
+                    .whenComplete((response, failure) -> race.finish(response, failure, true));
+            });
+        }
+
+        return race.result;
+    }
+
+    private boolean acquireBudget(TransportRequest request) {
+        String host = request.getUri().getHost();
+        RateLimiter rateLimiter = host == null ? null : rateLimiters.get(host.toLowerCase(Locale.ROOT));
+        return rateLimiter == null || rateLimiter.tryAcquire();
+    }
+
+    /**
+     * The first request and its hedge, racing to complete the result.
+     */
+    private final class Race {
+
+        private final CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+
+        /**
+         * requests that may still complete the result
+         */
+        private int pending = 1;
+
+        /**
+         * the first failure, reported if no request succeeds
+         */
+        private Throwable failure;
+
+        /**
+         * whether a response has claimed the result
+         */
+        private boolean answered;
+
+        /**
+         * @return true if a hedge should be sent, i.e. the result is still open
+         */
+        synchronized boolean startHedge() {
+            if (result.isDone()) return false;
+
+            pending++;
+            return true;
+        }
+
+        void cancelHedge() {
+            finish(null, null, true);
+        }
+
+        /**
+         * A response completes the result unless another one already did, a failure only if no other request is
+         * left to complete it. A null response and failure withdraw a hedge that was never sent.
+         */
+        void finish(TransportResponse response, Throwable failure, boolean isHedge) {
+            if (response != null) {
+                boolean won;
+
+                /*
+                 * the win is recorded before the result completes, so callers never see a stale count
+                 */
+                synchronized (this) {
+                    won = !answered && !result.isDone();
+                    answered |= won;
+                }
+
+                if (won && isHedge) policy.recordHedgeWin();
+                if (!won || !result.complete(response)) close(response);
+
+                return;
+            }
+
+            Throwable firstFailure;
+
+            synchronized (this) {
+                if (this.failure == null && failure != null) {
+                    this.failure = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure;
+                }
+
+                if (--pending > 0) return;
+                firstFailure = this.failure;
+            }
+
+            if (firstFailure != null) {
+                result.completeExceptionally(firstFailure);
+            }
+        }
+
+    }
+
+    private static void close(TransportResponse response) {
+        try {
+            response.close();
+        } catch (IOException ignored) {
+            /*
+             * the losing response is discarded anyway
+             */
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+/**
+ * The latencies recorded by a {@link LatencyHistogram} up to some point. All values are in nanoseconds.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     *
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     *
+     * @return the mean latency, 0 if nothing was recorded
+     */
+    public long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     *
+     * @return the highest recorded latency, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile the percentile, from 0 to 1, e.g. 0.99
+     * @return the latency the given share of recorded latencies did not exceed, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 1)
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) return Math.min(LatencyHistogram.highestValue(bucket), max);
+        }
+
+        return max;
+    }
+
+    public long getP50() {
+        return getPercentile(0.5);
+    }
+
+    public long getP90() {
+        return getPercentile(0.9);
+    }
+
+    public long getP99() {
+        return getPercentile(0.99);
+    }
+
+    public long getP999() {
+        return getPercentile(0.999);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dns p50=%dns p99=%dns max=%dns",
+            count, getMean(), getP50(), getP99(), max);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Transport backed by a {@link HttpClient}, which pools and reuses connections between requests.
+ *
+ * Asynchronous requests are non-blocking, no thread waits on the connection while the response is outstanding.
+ *
+ * The response headers must arrive within the {@link #withResponseTimeout(Duration) response timeout}, shortened
+ * to the time left until the deadline of requests that have one.
+ */
+public class HttpClientTransport implements HttpTransport {
+
+    private final HttpClient httpClient;
+
+    private long responseTimeoutNanos = Duration.ofSeconds(30).toNanos();
+
+    /**
+     * Creates a transport whose connections time out after 10 seconds if they cannot be opened.
+     */
+    public HttpClientTransport() {
+        this(HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build());
+    }
+
+    /**
+     * @param httpClient the client used to execute all requests
+     */
+    public HttpClientTransport(HttpClient httpClient) {
+        this.httpClient = Objects.requireNonNull(httpClient, "httpClient");
+    }
+
+    /**
+     * Sets how long to wait for the response headers after a request is sent. Default is 30 seconds. The connect
+     * timeout is set on the {@link HttpClient}.
+     *
+     * @param responseTimeout the response timeout, zero for none
+     * @return the current transport instance
+     */
+    public HttpClientTransport withResponseTimeout(Duration responseTimeout) {
+        if (responseTimeout.isNegative())
+            throw new IllegalArgumentException("responseTimeout must not be negative");
+
+        this.responseTimeoutNanos = responseTimeout.toNanos();
+        return this;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        try {
+            HttpRequest httpRequest = httpRequest(request);
+            long start = System.nanoTime();
+            HttpResponse<InputStream> response = httpClient.send(httpRequest,
+                bodyHandler(request, HttpResponse.BodyHandlers.ofInputStream()));
+
+            /*
+             * the client connects internally, so only the time until the headers arrived is known
+             */
+            return new TransportResponse(response.statusCode(), response.headers().map(), response.body())
+                .withTimings(-1, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while executing " + request);
+        }
+    }
+
+    /**
+     * The future completes once the response headers arrived, without a thread waiting for them. The body is
+     * streamed as it is read, like the body of {@link #execute(TransportRequest)}.
+     */
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        HttpRequest httpRequest;
+
+        try {
+            httpRequest = httpRequest(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long start = System.nanoTime();
+
+        return httpClient.sendAsync(httpRequest, bodyHandler(request, HttpResponse.BodyHandlers.ofInputStream()))
+            .thenApply(response -> new TransportResponse(
+                response.statusCode(), response.headers().map(), response.body()
+            ).withTimings(-1, System.nanoTime() - start));
+    }
+
+    /**
+     * @return the body handler, telling the request's listener when the headers arrived
+     */
+    private static <T> HttpResponse.BodyHandler<T> bodyHandler(TransportRequest request,
+                                                              HttpResponse.BodyHandler<T> bodyHandler) {
+        ItunesEventListener listener = request.getEventListener();
+        if (listener == null) return bodyHandler;
+
+        return responseInfo -> {
+            listener.firstByte(request, responseInfo.statusCode());
+            return bodyHandler.apply(responseInfo);
+        };
+    }
+
+    private HttpRequest httpRequest(TransportRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request.getUri()).GET();
+        int timeout = request.timeoutMillis(responseTimeoutNanos);
+
+        if (timeout > 0) {
+            builder.timeout(Duration.ofMillis(timeout));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     *
+     * @return the client used to execute all requests
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     *
+     * @return how long to wait for the response headers after a request is sent, zero for none
+     */
+    public Duration getResponseTimeout() {
+        return Duration.ofNanos(responseTimeoutNanos);
+    }
+
+}
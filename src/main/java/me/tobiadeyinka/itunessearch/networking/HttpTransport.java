@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Executes HTTP requests against the iTunes api.
+ *
+ * A single transport instance is shared by every search and lookup that uses the same {@link ItunesClient},
+ * so implementations must be thread safe.
+ */
+public interface HttpTransport {
+
+    /**
+     * execute a GET request
+     *
+     * @param request the request to execute
+     * @return the response to the request. The caller is responsible for closing it.
+     * @throws IOException if any I/O issue occurs while communicating with the server
+     */
+    TransportResponse execute(TransportRequest request) throws IOException;
+
+    /**
+     * execute a GET request without blocking the calling thread. The default implementation runs
+     * {@link #execute(TransportRequest)} on the passed executor, non-blocking transports should override it.
+     *
+     * @param request the request to execute
+     * @param executor executor for transports that need to block while waiting for the response
+     * @return a future completed with the response, or completed exceptionally with the {@link IOException}
+     *         that occurred. The caller is responsible for closing the response.
+     */
+    default CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(request);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+}
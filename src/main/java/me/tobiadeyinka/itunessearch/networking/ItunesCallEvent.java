@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a query of an {@link ItunesClient}, from the cache lookup until the response is
+ * parsed or the query fails. Enabled in every recording, so {@code jcmd <pid> JFR.start} records it.
+ */
+@Name("me.tobiadeyinka.itunessearch.Call")
+@Label("iTunes Call")
+@Description("A search or lookup, including cache lookups, rate limit waits, retries and parsing")
+class ItunesCallEvent extends ItunesEvent {
+
+    static final String CACHE_NONE = "none";
+    static final String CACHE_HIT = "hit";
+    static final String CACHE_MISS = "miss";
+    static final String CACHE_STALE = "stale";
+
+    @Label("Cache Outcome")
+    @Description("Whether the response was cached: none, hit, miss, or stale if a stale response was served")
+    String cacheOutcome = CACHE_NONE;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Body Read")
+    @Description("The time spent waiting for the response body")
+    @Timespan
+    long bodyRead;
+
+    @Label("Parse")
+    @Description("The time spent parsing the response body")
+    @Timespan
+    long parse;
+
+    /**
+     * @return a started event, or null if no recording is interested in it
+     */
+    static ItunesCallEvent start() {
+        ItunesCallEvent event = new ItunesCallEvent();
+        if (!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+    void recordBody(long bytes, long readNanos, long parseNanos) {
+        this.bytes = bytes;
+        this.bodyRead = readNanos;
+        this.parse = parseNanos;
+    }
+
+}
@@ -0,0 +1,1235 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.CircuitBreakerOpenException;
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+import me.tobiadeyinka.itunessearch.results.ItunesResult;
+import me.tobiadeyinka.itunessearch.results.ItunesResults;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Holds the configuration used to communicate with the iTunes api.
+ *
+ * Lookups always use the {@link #getDefault() default client}, searches use it unless another client is
+ * set on the search. A client should be fully configured before it is shared between threads.
+ */
+public class ItunesClient {
+
+    /**
+     * Host of the search and id lookup endpoints.
+     */
+    public static final String ITUNES_HOST = "itunes.apple.com";
+
+    /**
+     * Host of the rss feeds used by chart lookups.
+     */
+    public static final String RSS_HOST = "rss.itunes.apple.com";
+
+    private static volatile ItunesClient defaultClient = new ItunesClient();
+
+    /**
+     * The transport all requests are executed with. Default is {@link UrlConnectionTransport}.
+     */
+    private HttpTransport transport = new UrlConnectionTransport();
+
+    /**
+     * The executor asynchronous queries are completed on, and that blocking transports run on.
+     * Default is a shared pool of daemon threads.
+     */
+    private Executor executor;
+
+    /**
+     * Rate limiters keyed by lower case host. Requests to hosts without a rate limiter are not limited.
+     */
+    private final Map<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * Base uris requests are sent to instead of their host, keyed by lower case host. Default is none.
+     */
+    private final Map<String, URI> baseUris = new ConcurrentHashMap<>();
+
+    /**
+     * Circuit breakers keyed by lower case host. Requests to hosts without a circuit breaker are always sent.
+     */
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners registered with the circuit breakers, telling the client's metrics and event listener about their
+     * state changes. Keyed by lower case host.
+     */
+    private final Map<String, CircuitBreaker.Listener> circuitListeners = new ConcurrentHashMap<>();
+
+    /**
+     * Background refreshes of expired cached responses, keyed by canonical key. At most one is in flight per key.
+     */
+    private final Map<String, CompletableFuture<?>> revalidations = new ConcurrentHashMap<>();
+
+    /**
+     * The longest a request waits for a rate limit permit. Default is to wait as long as necessary.
+     */
+    private Duration rateLimitTimeout;
+
+    /**
+     * Decides when unanswered requests are sent a second time. Default is no hedging.
+     */
+    private HedgingPolicy hedgingPolicy;
+
+    /**
+     * Decides which failed requests are sent again. Default is no retries.
+     */
+    private RetryPolicy retryPolicy;
+
+    /**
+     * The time every query may take, unless its request has an earlier deadline. Default is no limit.
+     */
+    private Duration timeout;
+
+    /**
+     * Cache of successful responses, consulted before any request is sent. Default is no cache.
+     */
+    private ResponseCache responseCache;
+
+    /**
+     * The metrics requests are recorded in. Default is none.
+     */
+    private ClientMetrics metrics;
+
+    /**
+     * The listener told about each stage of every request. Default is none.
+     */
+    private ItunesEventListener eventListener;
+
+    /**
+     * Whether concurrent requests for the same url share one exchange. Default is true.
+     */
+    private boolean requestCoalescing = true;
+
+    /**
+     * The transport with all configured behaviours applied, created on first use.
+     */
+    private volatile HttpTransport pipeline;
+
+    /**
+     * Sets the transport all requests are executed with.
+     *
+     * @param transport the transport to use
+     * @return the current client instance
+     */
+    public ItunesClient withTransport(HttpTransport transport) {
+        this.transport = Objects.requireNonNull(transport, "transport");
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the executor asynchronous queries are completed on. Transports that block while waiting for a
+     * response also run on it. Default is a shared pool of daemon threads.
+     *
+     * @param executor the executor to use
+     * @return the current client instance
+     */
+    public ItunesClient withExecutor(Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sends requests for the host to another base uri, e.g. a local stand-in for the iTunes api or a proxy. The
+     * scheme, host and port of each request are replaced by those of the base uri, and the base uri's path is
+     * prepended to the request's path. Caching, rate limiting and circuit breaking still apply per original host.
+     *
+     * @param host the host to replace, e.g. {@link #ITUNES_HOST} or {@link #RSS_HOST}
+     * @param baseUri the base uri to send the host's requests to, null to send them to the host again
+     * @return the current client instance
+     */
+    public ItunesClient withBaseUri(String host, URI baseUri) {
+        String key = host.toLowerCase(Locale.ROOT);
+
+        if (baseUri == null) {
+            baseUris.remove(key);
+        } else if (baseUri.getScheme() == null || baseUri.getRawAuthority() == null) {
+            throw new IllegalArgumentException("baseUri must be absolute, e.g. http://localhost:8080");
+        } else {
+            baseUris.put(key, baseUri);
+        }
+
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the rate limiter every request to the host acquires a permit from before it is sent. The same rate
+     * limiter can be shared between clients.
+     *
+     * @param host the host to limit, e.g. {@link #ITUNES_HOST} or {@link #RSS_HOST}
+     * @param rateLimiter the rate limiter to acquire permits from, null removes the host's rate limiter
+     * @return the current client instance
+     */
+    public ItunesClient withRateLimiter(String host, RateLimiter rateLimiter) {
+        String key = host.toLowerCase(Locale.ROOT);
+
+        if (rateLimiter == null) {
+            rateLimiters.remove(key);
+        } else {
+            rateLimiters.put(key, rateLimiter);
+        }
+
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the circuit breaker guarding the host. While it is open, requests to the host fail right away with a
+     * {@link CircuitBreakerOpenException}, unless a {@link ResponseCache#withMaxStale(Duration) stale} response
+     * for the same query is cached, which is returned instead. The same breaker can be shared between clients.
+     * State changes of the breaker are recorded in the client's {@link #withMetrics(ClientMetrics) metrics} and
+     * told to its {@link #withEventListener(ItunesEventListener) event listener}.
+     *
+     * @param host the host to guard, e.g. {@link #ITUNES_HOST} or {@link #RSS_HOST}
+     * @param circuitBreaker the circuit breaker to use, null removes the host's circuit breaker
+     * @return the current client instance
+     */
+    public ItunesClient withCircuitBreaker(String host, CircuitBreaker circuitBreaker) {
+        String key = host.toLowerCase(Locale.ROOT);
+        CircuitBreaker previous = circuitBreakers.remove(key);
+        CircuitBreaker.Listener previousListener = circuitListeners.remove(key);
+        if (previous != null && previousListener != null) previous.removeListener(previousListener);
+
+        if (circuitBreaker != null) {
+            CircuitBreaker.Listener listener = (breaker, from, to) -> circuitStateChanged(key, from, to);
+            circuitBreakers.put(key, circuitBreaker.withListener(listener));
+            circuitListeners.put(key, listener);
+        }
+
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the longest a request waits for a rate limit permit before it fails with a
+     * {@link me.tobiadeyinka.itunessearch.exceptions.RateLimitExceededException}. A zero timeout fails right away
+     * when no permit is available, null waits as long as necessary. Default is null.
+     *
+     * @param rateLimitTimeout the maximum wait
+     * @return the current client instance
+     */
+    public ItunesClient withRateLimitTimeout(Duration rateLimitTimeout) {
+        this.rateLimitTimeout = rateLimitTimeout;
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the policy deciding which failed requests are sent again, and when. Every retry acquires its own
+     * rate limit permit. The same policy can be shared between clients.
+     *
+     * @param retryPolicy the policy to use, null disables retries
+     * @return the current client instance
+     */
+    public ItunesClient withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the time every query may take from the moment it is executed, including rate limit waits, retries and
+     * reading the response. Queries taking longer fail with a {@link RequestTimeoutException}. Connect and read
+     * timeouts are set on the {@link #withTransport(HttpTransport) transport}, and shortened to fit the deadline.
+     *
+     * @param timeout the total timeout, null for no limit
+     * @return the current client instance
+     */
+    public ItunesClient withTimeout(Duration timeout) {
+        if (timeout != null && timeout.isNegative())
+            throw new IllegalArgumentException("timeout must not be negative");
+
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Sets the policy deciding when a request that has not been answered yet is sent a second time, using
+     * whichever response arrives first. Hedges are only sent when the host's rate limiter has a permit available
+     * right away. The same policy can be shared between clients.
+     *
+     * @param hedgingPolicy the policy to use, null disables hedging
+     * @return the current client instance
+     */
+    public ItunesClient withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the cache successful responses are stored in and served from. The same cache can be shared between
+     * clients.
+     *
+     * @param responseCache the cache to use, null disables caching
+     * @return the current client instance
+     */
+    public ItunesClient withResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    /**
+     * Sets the metrics every request of this client is recorded in.
+     *
+     * @param metrics the metrics to record in, null to record nothing
+     * @return the current client instance
+     */
+    public ItunesClient withMetrics(ClientMetrics metrics) {
+        this.metrics = metrics;
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * Sets the listener told about each stage of every request of this client, from compiling the query to
+     * parsing the response.
+     *
+     * @param eventListener the listener to tell, null to tell nobody
+     * @return the current client instance
+     */
+    public ItunesClient withEventListener(ItunesEventListener eventListener) {
+        this.eventListener = eventListener;
+        return this;
+    }
+
+    /**
+     * Sets whether concurrent requests for the same url share one exchange with the api instead of each being
+     * sent. Every request still receives its own copy of the response, or the same failure. Default is true.
+     *
+     * @param requestCoalescing true to coalesce identical requests in flight
+     * @return the current client instance
+     */
+    public ItunesClient withRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+        this.pipeline = null;
+        return this;
+    }
+
+    /**
+     * execute a query against the iTunes api
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @return the response body as a {@link JSONObject}
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public JSONObject executeQuery(URL url) {
+        return executeQuery(compile(url));
+    }
+
+    /**
+     * execute a query against the iTunes api
+     *
+     * @param uri the already encoded uri to query
+     * @return the response body as a {@link JSONObject}
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public JSONObject executeQuery(URI uri) {
+        return executeQuery(new TransportRequest(uri));
+    }
+
+    /**
+     * execute a query against the iTunes api that must complete within the timeout
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @param timeout the time the query may take, including rate limit waits, retries and reading the response
+     * @return the response body as a {@link JSONObject}
+     * @throws RequestTimeoutException if the query does not complete in time
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public JSONObject executeQuery(URL url, Duration timeout) {
+        return executeQuery(new TransportRequest(compile(url)).withTimeout(timeout));
+    }
+
+    /**
+     * execute a prepared query against the iTunes api. Nothing about the request is computed again, so a
+     * request can be built once and executed many times. A request {@link TransportRequest#withTimeout with a
+     * deadline} fails with a {@link RequestTimeoutException} once the deadline passes.
+     *
+     * @param request the request to execute
+     * @return the response body as a {@link JSONObject}
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public JSONObject executeQuery(TransportRequest request) {
+        return execute(request, ResponseParser::parse);
+    }
+
+    /**
+     * execute a query against the iTunes api, handing each element of the response's {@code results} array to
+     * the handler as soon as it is parsed. The response body is never held in memory as a whole, unless it is
+     * cached or shared with identical requests in flight, so memory use does not grow with the number of
+     * results.
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public int executeQuery(URL url, Consumer<? super JSONObject> resultHandler) {
+        return executeQuery(compile(url), resultHandler);
+    }
+
+    /**
+     * execute a query against the iTunes api, handing each element of the response's {@code results} array to
+     * the handler as soon as it is parsed.
+     *
+     * @param uri the already encoded uri to query
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     * @see #executeQuery(URL, Consumer)
+     */
+    public int executeQuery(URI uri, Consumer<? super JSONObject> resultHandler) {
+        return executeQuery(new TransportRequest(uri), resultHandler);
+    }
+
+    /**
+     * execute a prepared query against the iTunes api, handing each element of the response's {@code results}
+     * array to the handler as soon as it is parsed.
+     *
+     * @param request the request to execute
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     * @see #executeQuery(URL, Consumer)
+     */
+    public int executeQuery(TransportRequest request, Consumer<? super JSONObject> resultHandler) {
+        return execute(request, body -> ResponseParser.forEachResult(body, resultHandler));
+    }
+
+    /**
+     * execute a query against the iTunes api and return its results as typed objects, whose fields are decoded
+     * on first access
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @return the elements of the response's {@code results} array, in order
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public List<ItunesResult> fetchResults(URL url) {
+        return fetchResults(compile(url));
+    }
+
+    /**
+     * execute a query against the iTunes api and return its results as typed objects, whose fields are decoded
+     * on first access
+     *
+     * @param uri the already encoded uri to query
+     * @return the elements of the response's {@code results} array, in order
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public List<ItunesResult> fetchResults(URI uri) {
+        return fetchResults(new TransportRequest(uri));
+    }
+
+    /**
+     * execute a prepared query against the iTunes api and return its results as typed objects
+     *
+     * @param request the request to execute
+     * @return the elements of the response's {@code results} array, in order
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public List<ItunesResult> fetchResults(TransportRequest request) {
+        return execute(request, ItunesClient::parseResults);
+    }
+
+    /**
+     * execute a query against the iTunes api without blocking the calling thread
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @return a future completed with the response body as a {@link JSONObject}, or completed exceptionally with
+     *         a {@link NetworkCommunicationException} if any issues occur while communicating with the iTunes api.
+     */
+    public CompletableFuture<JSONObject> executeQueryAsync(URL url) {
+        try {
+            return executeQueryAsync(compile(url));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * execute a query against the iTunes api without blocking the calling thread
+     *
+     * @param uri the already encoded uri to query
+     * @return a future completed with the response body as a {@link JSONObject}, or completed exceptionally with
+     *         a {@link NetworkCommunicationException} if any issues occur while communicating with the iTunes api.
+     */
+    public CompletableFuture<JSONObject> executeQueryAsync(URI uri) {
+        return executeQueryAsync(new TransportRequest(uri));
+    }
+
+    /**
+     * execute a prepared query against the iTunes api without blocking the calling thread
+     *
+     * @param request the request to execute
+     * @return a future completed with the response body as a {@link JSONObject}, or completed exceptionally with
+     *         a {@link NetworkCommunicationException} if any issues occur while communicating with the iTunes api.
+     */
+    public CompletableFuture<JSONObject> executeQueryAsync(TransportRequest request) {
+        return executeAsync(request, ResponseParser::parse);
+    }
+
+    /**
+     * execute a query against the iTunes api without blocking the calling thread, and return its results as
+     * typed objects
+     *
+     * @param url the url to query, it is encoded before the query is executed
+     * @return a future completed with the elements of the response's {@code results} array, or completed
+     *         exceptionally with a {@link NetworkCommunicationException} if any issues occur while communicating
+     *         with the iTunes api.
+     */
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync(URL url) {
+        try {
+            return fetchResultsAsync(compile(url));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * execute a query against the iTunes api without blocking the calling thread, and return its results as
+     * typed objects
+     *
+     * @param uri the already encoded uri to query
+     * @return a future completed with the elements of the response's {@code results} array, or completed
+     *         exceptionally with a {@link NetworkCommunicationException} if any issues occur while communicating
+     *         with the iTunes api.
+     */
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync(URI uri) {
+        return fetchResultsAsync(new TransportRequest(uri));
+    }
+
+    /**
+     * execute a prepared query against the iTunes api without blocking the calling thread, and return its
+     * results as typed objects
+     *
+     * @param request the request to execute
+     * @return a future completed with the elements of the response's {@code results} array, or completed
+     *         exceptionally with a {@link NetworkCommunicationException} if any issues occur while communicating
+     *         with the iTunes api.
+     */
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync(TransportRequest request) {
+        return executeAsync(request, ItunesClient::parseResults);
+    }
+
+    private <T> T execute(TransportRequest request, BodyParser<T> parser) {
+        request = prepare(request);
+        URI uri = request.getUri();
+        ResponseCache cache = responseCache;
+        String cacheKey = cache == null ? null : request.getCanonicalKey();
+        ClientMetrics metrics = this.metrics;
+        ClientMetrics.Series series = metrics == null ? null : metrics.series(request);
+
+        ItunesCallEvent event = ItunesCallEvent.start();
+        RuntimeException failure = null;
+
+        try {
+            if (cache != null) {
+                ByteBuffer cachedBody = lookup(request, cache, cacheKey, parser, event);
+                if (cachedBody != null) return parseStored(request, cachedBody, parser);
+            }
+
+            try (TransportResponse response = send(request, series)) {
+                return read(request, response, cache, cacheKey, parser, series, event);
+            } catch (IOException | RuntimeException e) {
+                ByteBuffer staleBody = servesStale(cache, request, e) ? stale(request, cache, cacheKey, event) : null;
+                if (staleBody == null) throw e;
+
+                return parseStored(request, staleBody, parser);
+            }
+        } catch (IOException e) {
+            failure = failed(request, networkFailure(e, request));
+            throw failure;
+        } catch (RuntimeException e) {
+            failure = failed(request, e);
+            throw failure;
+        } finally {
+            if (event != null) event.finish(request, failure);
+        }
+    }
+
+    private <T> CompletableFuture<T> executeAsync(TransportRequest request, BodyParser<T> parser) {
+        TransportRequest prepared = prepare(request);
+        ResponseCache cache = responseCache;
+        String cacheKey = cache == null ? null : request.getCanonicalKey();
+        ItunesCallEvent event = ItunesCallEvent.start();
+
+        if (cache != null) {
+            ByteBuffer cachedBody = lookup(prepared, cache, cacheKey, parser, event);
+
+            if (cachedBody != null) {
+                try {
+                    T parsed = parseStored(prepared, cachedBody, parser);
+                    if (event != null) event.finish(prepared, null);
+
+                    return CompletableFuture.completedFuture(parsed);
+                } catch (IOException | RuntimeException e) {
+                    RuntimeException failure = failed(prepared, e instanceof IOException
+                        ? networkFailure(e, prepared)
+                        : (RuntimeException) e);
+
+                    if (event != null) event.finish(prepared, failure);
+                    return CompletableFuture.failedFuture(failure);
+                }
+            }
+        }
+
+        CompletableFuture<T> result = sendAsync(prepared, cache, cacheKey, parser, event);
+        ItunesEventListener listener = prepared.getEventListener();
+        if (listener == null && event == null) return result;
+
+        return result.whenComplete((parsed, failure) -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+
+            if (event != null) event.finish(prepared, cause);
+
+            if (listener != null && cause != null) {
+                listener.failure(prepared, cause instanceof RuntimeException
+                    ? (RuntimeException) cause
+                    : new CompletionException(cause));
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> sendAsync(TransportRequest request, ResponseCache cache, String cacheKey,
+                                               BodyParser<T> parser, ItunesCallEvent event) {
+        Executor executor = getExecutor();
+        ClientMetrics metrics = this.metrics;
+        ClientMetrics.Series series = metrics == null ? null : metrics.series(request);
+
+        CompletableFuture<T> result = pipeline().executeAsync(request, executor).handleAsync((response, failure) -> {
+            RuntimeException networkFailure;
+
+            if (failure == null) {
+                try (response) {
+                    return read(request, response, cache, cacheKey, parser, series, event);
+                } catch (IOException | RuntimeException e) {
+                    networkFailure = networkFailure(e, request);
+                }
+            } else {
+                if (series != null) series.recordError();
+                networkFailure = networkFailure(failure, request);
+            }
+
+            ByteBuffer staleBody = servesStale(cache, request, networkFailure)
+                ? stale(request, cache, cacheKey, event)
+                : null;
+
+            if (staleBody == null) throw networkFailure;
+
+            try {
+                return parseStored(request, staleBody, parser);
+            } catch (IOException e) {
+                throw networkFailure(e, request);
+            }
+        }, executor);
+
+        if (!request.hasDeadline()) return result;
+
+        return result.orTimeout(request.remainingNanos(), TimeUnit.NANOSECONDS).exceptionally(failure -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure;
+
+            if (cause instanceof TimeoutException) throw timeout(request);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new CompletionException(cause);
+        });
+    }
+
+    /**
+     * encode the url of a lookup or another query not compiled from a search
+     */
+    private URI compile(URL url) {
+        URI uri = NetworkUtils.encode(url);
+        ItunesEventListener listener = eventListener;
+        if (listener != null) listener.queryCompiled(uri);
+
+        return uri;
+    }
+
+    /**
+     * @return the request with the client's timeout and event listener
+     */
+    private TransportRequest prepare(TransportRequest request) {
+        Duration timeout = this.timeout;
+        ItunesEventListener listener = eventListener;
+
+        if (timeout != null) request = request.withTimeout(timeout);
+        return listener == null ? request : request.withEventListener(listener);
+    }
+
+    private <T> ByteBuffer lookup(TransportRequest request, ResponseCache cache, String cacheKey,
+                                  BodyParser<T> parser, ItunesCallEvent event) {
+        ByteBuffer cachedBody = cache.get(cacheKey, Endpoint.of(request.getUri()),
+            () -> revalidate(request.getUri(), cache, cacheKey, parser));
+
+        ItunesEventListener listener = request.getEventListener();
+        if (listener != null) listener.cacheLookup(request, cachedBody != null);
+
+        if (event != null) {
+            event.cacheOutcome = cachedBody == null ? ItunesCallEvent.CACHE_MISS : ItunesCallEvent.CACHE_HIT;
+        }
+
+        return cachedBody;
+    }
+
+    /**
+     * refresh the cached response of a query in the background, unless it is already being refreshed. The
+     * refresh stores the response in the cache if it succeeds, and leaves the expired one in place otherwise.
+     *
+     * The refresh is a request of its own rather than the caller's, so it is bounded by the client's timeout
+     * instead of the caller's deadline, and reports to no listener.
+     */
+    private <T> void revalidate(URI uri, ResponseCache cache, String cacheKey, BodyParser<T> parser) {
+        CompletableFuture<Object> refresh = new CompletableFuture<>();
+        if (revalidations.putIfAbsent(cacheKey, refresh) != null) return;
+
+        refresh.whenComplete((parsed, failure) -> revalidations.remove(cacheKey, refresh));
+
+        try {
+            Duration timeout = this.timeout;
+            TransportRequest request = timeout == null
+                ? new TransportRequest(uri)
+                : new TransportRequest(uri).withTimeout(timeout);
+
+            Executor executor = getExecutor();
+            ClientMetrics metrics = this.metrics;
+            ClientMetrics.Series series = metrics == null ? null : metrics.series(request);
+
+            pipeline().executeAsync(request, executor).handleAsync((response, failure) -> {
+                if (failure != null) {
+                    if (series != null) series.recordError();
+                    return null;
+                }
+
+                try (response) {
+                    return read(request, response, cache, cacheKey, parser, series, null);
+                } catch (IOException e) {
+                    throw networkFailure(e, request);
+                }
+            }, executor).whenComplete((parsed, failure) -> refresh.complete(null));
+        } catch (RuntimeException e) {
+            refresh.complete(null);
+        }
+    }
+
+    /**
+     * @return true if a query that failed with the failure may be answered with a stale response instead
+     */
+    private static boolean servesStale(ResponseCache cache, TransportRequest request, Throwable failure) {
+        return cache != null && (failure instanceof CircuitBreakerOpenException
+            || cache.servesStaleOnFailure(Endpoint.of(request.getUri())));
+    }
+
+    /**
+     * @return the expired body cached for the key, null if there is none
+     */
+    private static ByteBuffer stale(TransportRequest request, ResponseCache cache, String cacheKey,
+                                    ItunesCallEvent event) {
+        ByteBuffer staleBody = cache == null ? null : cache.getStale(cacheKey, Endpoint.of(request.getUri()));
+        if (staleBody != null && event != null) event.cacheOutcome = ItunesCallEvent.CACHE_STALE;
+
+        return staleBody;
+    }
+
+    private void circuitStateChanged(String host, CircuitBreaker.State from, CircuitBreaker.State to) {
+        ClientMetrics metrics = this.metrics;
+        if (metrics != null) metrics.recordCircuitStateChange(host, to);
+
+        ItunesEventListener listener = eventListener;
+        if (listener != null) listener.circuitStateChanged(host, from, to);
+    }
+
+    private static RuntimeException failed(TransportRequest request, RuntimeException failure) {
+        ItunesEventListener listener = request.getEventListener();
+        if (listener != null) listener.failure(request, failure);
+
+        return failure;
+    }
+
+    private HttpTransport pipeline() {
+        HttpTransport pipeline = this.pipeline;
+
+        if (pipeline == null) {
+            /*
+             * innermost, so every attempt is recorded as its own exchange, timed without the other layers
+             */
+            pipeline = new FlightRecorderTransport(transport);
+
+            if (!baseUris.isEmpty()) {
+                pipeline = new BaseUriTransport(pipeline, baseUris);
+            }
+
+            /*
+             * innermost, so the first request has taken its rate limit permit and the breaker sees a single outcome
+             */
+            if (hedgingPolicy != null) {
+                pipeline = new HedgingTransport(pipeline, hedgingPolicy, rateLimiters, getExecutor());
+            }
+
+            /*
+             * inside the rate limiter so calls are timed, and hold a trial permission, only once they are sent
+             */
+            if (!circuitBreakers.isEmpty()) {
+                pipeline = new CircuitBreakerTransport(pipeline, circuitBreakers);
+            }
+
+            if (!rateLimiters.isEmpty()) {
+                pipeline = new RateLimitedTransport(pipeline, rateLimiters, rateLimitTimeout, metrics);
+            }
+
+            /*
+             * outside the rate limiter so an open breaker fails without waiting for a permit, inside the retries
+             * so retries stop once the breaker opens
+             */
+            if (!circuitBreakers.isEmpty()) {
+                pipeline = new CircuitBreakerTransport.FailFast(pipeline, circuitBreakers);
+            }
+
+            /*
+             * outside the rate limiter so every attempt waits for a permit
+             */
+            if (retryPolicy != null) {
+                pipeline = new RetryingTransport(pipeline, retryPolicy, metrics);
+            }
+
+            /*
+             * outermost, so requests answered by an identical one in flight don't consume rate limit permits
+             */
+            if (requestCoalescing) {
+                pipeline = new SingleFlightTransport(pipeline);
+            }
+
+            this.pipeline = pipeline;
+        }
+
+        return pipeline;
+    }
+
+    private TransportResponse send(TransportRequest request, ClientMetrics.Series series) throws IOException {
+        try {
+            return pipeline().execute(request);
+        } catch (IOException | RuntimeException e) {
+            if (series != null) series.recordError();
+            throw e;
+        }
+    }
+
+    /**
+     * read a response body with the given parser, caching the body if it parsed successfully. The body is only
+     * held in memory when it is cached, otherwise it is parsed straight from the stream.
+     */
+    private static <T> T read(TransportRequest request, TransportResponse response, ResponseCache cache,
+                              String cacheKey, BodyParser<T> parser, ClientMetrics.Series series,
+                              ItunesCallEvent event) throws IOException {
+        URI uri = request.getUri();
+        InputStream responseBody = request.hasDeadline()
+            ? new DeadlineInputStream(response.getBody(), request)
+            : response.getBody();
+
+        if (series != null) series.recordResponse(response);
+        if (event != null) event.recordResponse(response);
+
+        if (!response.isSuccessful()) {
+            throw new NetworkCommunicationException(String.format(
+                "Error while executing query: Server returned HTTP response code: %s for URL: %s",
+                response.getStatusCode(), uri
+            ));
+        }
+
+        ItunesEventListener listener = request.getEventListener();
+
+        if (series == null && listener == null && event == null) {
+            return parse(uri, responseBody, cache, cacheKey, parser);
+        }
+
+        /*
+         * reading and parsing interleave when the body is parsed from the stream, the time spent waiting for
+         * the stream is told apart from the time spent parsing
+         */
+        MeteredInputStream meteredBody = new MeteredInputStream(responseBody);
+        long start = System.nanoTime();
+        T parsed;
+
+        try {
+            parsed = parse(uri, meteredBody, cache, cacheKey, parser);
+        } finally {
+            long readNanos = meteredBody.readNanos;
+            long parseNanos = System.nanoTime() - start - readNanos;
+
+            if (series != null) {
+                series.record(ClientMetrics.Phase.BODY_READ, readNanos);
+                series.record(ClientMetrics.Phase.PARSE, parseNanos);
+                series.recordBytes(meteredBody.bytes);
+            }
+
+            if (event != null) event.recordBody(meteredBody.bytes, readNanos, parseNanos);
+        }
+
+        if (listener != null) {
+            listener.bodyComplete(request, meteredBody.bytes);
+            listener.parseComplete(request);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * parse a body from the cache, straight from the memory or mapped file it is held in
+     */
+    private static <T> T parseStored(TransportRequest request, ByteBuffer body, BodyParser<T> parser)
+            throws IOException {
+        T parsed = parser.parse(new BufferInputStream(body));
+        ItunesEventListener listener = request.getEventListener();
+        if (listener != null) listener.parseComplete(request);
+
+        return parsed;
+    }
+
+    private static <T> T parse(URI uri, InputStream responseBody, ResponseCache cache, String cacheKey,
+                               BodyParser<T> parser) throws IOException {
+        if (cache == null) {
+            return parser.parse(responseBody);
+        }
+
+        byte[] body = responseBody.readAllBytes();
+        T parsed = parser.parse(new ByteArrayInputStream(body));
+        cache.put(cacheKey, Endpoint.of(uri), body);
+        return parsed;
+    }
+
+    private static List<ItunesResult> parseResults(InputStream body) throws IOException {
+        return ItunesResults.parse(body.readAllBytes());
+    }
+
+    private static RuntimeException networkFailure(Throwable failure, TransportRequest request) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause()
+            : failure;
+
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+
+        if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+            return new RequestTimeoutException(String.format("Error while executing query: %s", cause.getMessage()));
+        }
+
+        if (request.hasDeadline() && request.remainingNanos() == 0) {
+            return timeout(request);
+        }
+
+        return new NetworkCommunicationException(String.format("Error while executing query: %s", cause.getMessage()));
+    }
+
+    private static RequestTimeoutException timeout(TransportRequest request) {
+        return new RequestTimeoutException(String.format("Deadline passed while executing query: %s", request.getUri()));
+    }
+
+    /**
+     *
+     * @return the transport all requests are executed with
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     *
+     * @return the executor asynchronous queries are completed on
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : DefaultExecutor.INSTANCE;
+    }
+
+    /**
+     *
+     * @return the time every query may take, null if there is no limit
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     *
+     * @return the listener told about each stage of every request, null if nobody is told
+     */
+    public ItunesEventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     *
+     * @return the metrics requests are recorded in, null if they are not recorded
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     *
+     * @return the cache successful responses are stored in, null if responses are not cached
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     *
+     * @return the policy deciding when unanswered requests are hedged, null if they are not
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     *
+     * @return the policy deciding which failed requests are sent again, null if they are not retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     *
+     * @return true if concurrent requests for the same url share one exchange
+     */
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    /**
+     * @param host the host
+     * @return the rate limiter requests to the host acquire permits from, or null if they are not limited
+     */
+    public RateLimiter getRateLimiter(String host) {
+        return rateLimiters.get(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param host the host
+     * @return the base uri requests for the host are sent to, or null if they are sent to the host itself
+     */
+    public URI getBaseUri(String host) {
+        return baseUris.get(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param host the host
+     * @return the circuit breaker guarding the host, or null if requests to it are always sent
+     */
+    public CircuitBreaker getCircuitBreaker(String host) {
+        return circuitBreakers.get(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     *
+     * @return the longest a request waits for a rate limit permit, null if it waits as long as necessary
+     */
+    public Duration getRateLimitTimeout() {
+        return rateLimitTimeout;
+    }
+
+    /**
+     *
+     * @return the client used by lookups and by searches without a client of their own
+     */
+    public static ItunesClient getDefault() {
+        return defaultClient;
+    }
+
+    /**
+     * Replaces the client used by lookups and by searches without a client of their own.
+     *
+     * @param client the new default client
+     */
+    public static void setDefault(ItunesClient client) {
+        defaultClient = Objects.requireNonNull(client, "client");
+    }
+
+    /**
+     * Parses a response body. Read failures surfacing as a {@link JSONException} are reported as the
+     * {@link IOException} that caused them.
+     */
+    @FunctionalInterface
+    private interface BodyParser<T> {
+
+        T parseBody(InputStream body) throws IOException;
+
+        default T parse(InputStream body) throws IOException {
+            try {
+                return parseBody(body);
+            } catch (JSONException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                throw e;
+            }
+        }
+
+    }
+
+    /**
+     * reads a buffer without copying it
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+    /**
+     * counts the bytes read and the time spent waiting for them
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        private long bytes;
+        private long readNanos;
+
+        MeteredInputStream(InputStream body) {
+            super(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int read = super.read();
+            readNanos += System.nanoTime() - start;
+            if (read != -1) bytes++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - start;
+            if (read > 0) bytes += read;
+            return read;
+        }
+
+    }
+
+    /**
+     * Response body that stops being read once the deadline of its request passed.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+
+        private final TransportRequest request;
+
+        DeadlineInputStream(InputStream body, TransportRequest request) {
+            super(body);
+            this.request = request;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline();
+            return super.read(buffer, offset, length);
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (request.remainingNanos() == 0)
+                throw new SocketTimeoutException("Deadline passed while reading the response to " + request);
+        }
+
+    }
+
+    /**
+     * Lazily created pool shared by all clients without an executor of their own.
+     */
+    private static class DefaultExecutor {
+
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "itunes-search-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+}
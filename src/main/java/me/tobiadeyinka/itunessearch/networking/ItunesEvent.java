@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import me.tobiadeyinka.itunessearch.entities.ItunesMedia;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import java.net.URI;
+import java.util.Set;
+
+/**
+ * The fields shared by the flight recorder events of the library. Events are only created while a recording
+ * they are enabled in is running, and only describe their request once they are committed.
+ */
+@Category("iTunes Search")
+@StackTrace(false)
+abstract class ItunesEvent extends Event {
+
+    /**
+     * query parameters whose values identify what was searched for or looked up
+     */
+    private static final Set<String> ELIDED_PARAMETERS =
+        Set.of("term", "id", "amgArtistId", "amgAlbumId", "amgVideoId", "upc", "isbn");
+
+    @Label("URL Template")
+    @Description("The queried url, with search terms and ids left out")
+    String urlTemplate;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Media")
+    String media;
+
+    @Label("Country")
+    String country;
+
+    @Label("Status Code")
+    @Description("The HTTP status code of the response, 0 if none was received")
+    int statusCode;
+
+    @Label("Connect")
+    @Description("The time taken to open a connection, -1 if the transport did not report it")
+    @Timespan
+    long connect = -1;
+
+    @Label("Time To First Byte")
+    @Description("The time from sending the request until the response headers arrived, -1 if not reported")
+    @Timespan
+    long timeToFirstByte = -1;
+
+    @Label("Failure")
+    @Description("The exception the request failed with, if any")
+    String failure;
+
+    void recordResponse(TransportResponse response) {
+        statusCode = response.getStatusCode();
+        connect = response.getConnectNanos();
+        timeToFirstByte = response.getTimeToFirstByteNanos();
+    }
+
+    /**
+     * end the event and commit it if the recording keeps it
+     *
+     * @param request the request the event describes
+     * @param failure the exception the request failed with, null if it succeeded
+     */
+    void finish(TransportRequest request, Throwable failure) {
+        end();
+        if (!shouldCommit()) return;
+
+        URI uri = request.getUri();
+        int index = ClientMetrics.index(uri);
+        ItunesMedia media = ClientMetrics.mediaOf(index);
+        CountryCode country = ClientMetrics.countryOf(index);
+
+        this.urlTemplate = urlTemplate(uri);
+        this.endpoint = ClientMetrics.endpointOf(index).name();
+        this.media = media == null ? null : media.name();
+        this.country = country == null ? null : country.name();
+        if (failure != null) this.failure = failure.toString();
+
+        commit();
+    }
+
+    /**
+     * @return the uri without fragment, with the values of parameters identifying what was queried replaced by
+     *         their name, e.g. {@code https://itunes.apple.com/search?term={term}&media=music}
+     */
+    static String urlTemplate(URI uri) {
+        StringBuilder template = new StringBuilder()
+            .append(uri.getScheme()).append("://").append(uri.getRawAuthority()).append(uri.getRawPath());
+
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) return template.toString();
+
+        template.append('?');
+
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+
+            if (template.charAt(template.length() - 1) != '?') template.append('&');
+
+            if (separator >= 0 && ELIDED_PARAMETERS.contains(name)) {
+                template.append(name).append("={").append(name).append('}');
+            } else {
+                template.append(parameter);
+            }
+        }
+
+        return template.toString();
+    }
+
+}
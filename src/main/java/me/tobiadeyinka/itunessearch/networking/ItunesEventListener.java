@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.net.InetAddress;
+import java.net.URI;
+
+/**
+ * Told about each stage of the requests of an {@link ItunesClient}, e.g. to trace requests or log slow queries.
+ * Every method does nothing by default, so implementations only override the stages they are interested in.
+ *
+ * Events carry no timestamps, listeners read the clock themselves. They are called on the thread that reached the
+ * stage, which may be a thread of the client's executor, so implementations must be thread safe, should return
+ * quickly and must not throw.
+ *
+ * Requests are retried, hedged and rate limited as separate attempts, so the transport stages may be reported
+ * several times for one query. Requests answered by an identical request in flight only report the stages handled
+ * by the client. Transports report the stages they can observe, the built-in ones as follows:
+ * <ul>
+ *     <li>{@link PooledHttpTransport} reports every transport stage</li>
+ *     <li>{@link UrlConnectionTransport} and {@link HttpClientTransport} connect internally and only report the
+ *     first byte</li>
+ * </ul>
+ */
+public interface ItunesEventListener {
+
+    /**
+     * a search was compiled into a query, or the url of a lookup was encoded
+     *
+     * @param uri the encoded uri to query
+     */
+    default void queryCompiled(URI uri) { }
+
+    /**
+     * the response cache was consulted before sending the request
+     *
+     * @param request the request
+     * @param hit true if the request was answered from the cache
+     */
+    default void cacheLookup(TransportRequest request, boolean hit) { }
+
+    /**
+     * a rate limit permit was acquired for the request
+     *
+     * @param request the request
+     * @param waitNanos the time the request waited for the permit
+     */
+    default void rateLimitAcquired(TransportRequest request, long waitNanos) { }
+
+    /**
+     * the host of the request was resolved before opening a connection
+     *
+     * @param request the request
+     * @param address the address the connection is opened to
+     */
+    default void dnsResolved(TransportRequest request, InetAddress address) { }
+
+    /**
+     * a connection was acquired to send the request on
+     *
+     * @param request the request
+     * @param reused true if an idle connection was reused, false if a connection was opened
+     */
+    default void connectionAcquired(TransportRequest request, boolean reused) { }
+
+    /**
+     * the request was written to the connection
+     *
+     * @param request the request
+     */
+    default void requestSent(TransportRequest request) { }
+
+    /**
+     * the status line and headers of the response arrived
+     *
+     * @param request the request
+     * @param statusCode the status code of the response
+     */
+    default void firstByte(TransportRequest request, int statusCode) { }
+
+    /**
+     * the response body was read. Bodies parsed as they stream in complete together with the parse.
+     *
+     * @param request the request
+     * @param bytes the length of the body
+     */
+    default void bodyComplete(TransportRequest request, long bytes) { }
+
+    /**
+     * the response body was parsed, the query succeeded
+     *
+     * @param request the request
+     */
+    default void parseComplete(TransportRequest request) { }
+
+    /**
+     * the query failed
+     *
+     * @param request the request
+     * @param failure the exception the query fails with
+     */
+    default void failure(TransportRequest request, RuntimeException failure) { }
+
+    /**
+     * the circuit breaker guarding a host of the client changed state, see
+     * {@link ItunesClient#withCircuitBreaker(String, CircuitBreaker)}
+     *
+     * @param host the lower case host the breaker guards
+     * @param from the state the breaker left
+     * @param to the state the breaker entered
+     */
+    default void circuitStateChanged(String host, CircuitBreaker.State from, CircuitBreaker.State to) { }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a single exchange with the api, from sending the request until the response headers
+ * arrived. Retries and hedged requests are separate exchanges. Disabled by default, enable it with
+ * {@code me.tobiadeyinka.itunessearch.Exchange#enabled=true} in the recording settings.
+ */
+@Name("me.tobiadeyinka.itunessearch.Exchange")
+@Label("iTunes Exchange")
+@Description("A single request sent by the transport, up to the arrival of the response headers")
+@Enabled(false)
+class ItunesExchangeEvent extends ItunesEvent {
+
+    /**
+     * @return a started event, or null if no recording is interested in it
+     */
+    static ItunesExchangeEvent start() {
+        ItunesExchangeEvent event = new ItunesExchangeEvent();
+        if (!event.isEnabled()) return null;
+
+        event.begin();
+        return event;
+    }
+
+}
@@ -21,12 +21,9 @@ import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
 
 import org.json.JSONObject;
 
-import java.io.IOException;
-import java.io.InputStream;
-
 import java.net.*;
-import java.util.Objects;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Locale;
 
 /**
  * URL queries management.
@@ -35,11 +32,26 @@ import java.util.Scanner;
  */
 public abstract class NetworkUtils {
 
+    /**
+     * execute a query with the {@link ItunesClient#getDefault() default client}
+     *
+     * @param url the url to query
+     * @return the response body as a {@link JSONObject}
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
     public static JSONObject executeQuery(URL url) {
+        return ItunesClient.getDefault().executeQuery(url);
+    }
+
+    /**
+     * encode a url before it is queried
+     *
+     * @param url the url to encode
+     * @return the encoded uri
+     * @throws NetworkCommunicationException if the url cannot be encoded
+     */
+    public static URI encode(URL url) {
         try {
-            /*
-             * encode url before query
-             */
             URI uri = new URI(
                 url.getProtocol(),
                 url.getUserInfo(),
@@ -50,23 +62,45 @@ public abstract class NetworkUtils {
                 url.getRef()
             );
 
-            return new JSONObject(Objects.requireNonNull(query(new URL(uri.toASCIIString()))));
-        } catch (IOException | URISyntaxException e) {
+            return new URI(uri.toASCIIString());
+        } catch (URISyntaxException e) {
             throw new NetworkCommunicationException(String.format("Error while executing query: %s", e.getMessage()));
         }
     }
 
-    private static String query(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection)url.openConnection();
+    /**
+     * build the canonical form of an encoded uri, used to recognise identical queries. The scheme and host are
+     * lower cased, default ports and fragments are dropped and the query parameters are sorted.
+     *
+     * @param uri the encoded uri
+     * @return the canonical form of the uri
+     */
+    public static String canonicalKey(URI uri) {
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(scheme).append("://");
 
-        try {
-            InputStream inputStream = urlConnection.getInputStream();
-            Scanner scanner = new Scanner(inputStream);
-            scanner.useDelimiter("\\A");
-            return scanner.hasNext() ? scanner.next() : null;
-        } finally {
-            urlConnection.disconnect();
+        if (uri.getHost() != null) {
+            key.append(uri.getHost().toLowerCase(Locale.ROOT));
         }
+
+        boolean defaultPort = uri.getPort() == -1
+            || (uri.getPort() == 443 && scheme.equals("https"))
+            || (uri.getPort() == 80 && scheme.equals("http"));
+
+        if (!defaultPort) {
+            key.append(':').append(uri.getPort());
+        }
+
+        key.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] parameters = query.split("&");
+            Arrays.sort(parameters);
+            key.append('?').append(String.join("&", parameters));
+        }
+
+        return key.toString();
     }
 
 }
@@ -0,0 +1,790 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import java.io.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport keeping a pool of persistent HTTP/1.1 connections per host, so consecutive requests to the same
+ * host skip the TCP and TLS handshakes.
+ *
+ * A connection returns to the pool once its response body has been fully read or closed, closing a response
+ * drains whatever is left of the body first. Up to {@link #withMaxIdleConnections(int) maxIdleConnections} are
+ * kept per host, concurrent requests beyond that open extra connections which are closed instead of pooled.
+ * Connections idle for longer than the {@link #withIdleTimeout(Duration) idle timeout} are evicted.
+ *
+ * A request on a pooled connection the server closed meanwhile is sent again on a new connection, as long as no
+ * part of a response arrived. Redirects are followed, except from https to http.
+ */
+public class PooledHttpTransport implements HttpTransport, Closeable {
+
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * The longest status, header or chunk size line read, in bytes.
+     */
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final String USER_AGENT = "iTunesSearch (Java)";
+
+    private final ConcurrentMap<String, Deque<Connection>> idleConnections = new ConcurrentHashMap<>();
+
+    private final AtomicLong openedConnections = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+
+    /**
+     * The maximum number of idle connections kept per host. Default is 5.
+     */
+    private int maxIdleConnections = 5;
+
+    /**
+     * How long a connection may stay idle before it is evicted. Default is 30 seconds.
+     */
+    private long idleTimeoutNanos = Duration.ofSeconds(30).toNanos();
+    private long connectTimeoutNanos = Duration.ofSeconds(10).toNanos();
+    private long readTimeoutNanos = Duration.ofSeconds(30).toNanos();
+
+    private SSLSocketFactory sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+
+    private volatile boolean closed = false;
+
+    /**
+     * Sets the maximum number of idle connections kept per host. Default is 5.
+     *
+     * @param maxIdleConnections the maximum number of idle connections per host, 0 disables pooling.
+     * @return the current transport instance
+     */
+    public PooledHttpTransport withMaxIdleConnections(int maxIdleConnections) {
+        if (maxIdleConnections < 0)
+            throw new IllegalArgumentException("maxIdleConnections must not be negative");
+
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    /**
+     * Sets how long a connection may stay idle in the pool before it is evicted. Default is 30 seconds.
+     *
+     * @param idleTimeout the idle timeout
+     * @return the current transport instance
+     */
+    public PooledHttpTransport withIdleTimeout(Duration idleTimeout) {
+        if (idleTimeout.isNegative())
+            throw new IllegalArgumentException("idleTimeout must not be negative");
+
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets how long opening a connection, including the tls handshake, may take. Default is 10 seconds, shortened
+     * to the time left until the deadline of requests that have one.
+     *
+     * @param connectTimeout the connect timeout, zero for none
+     * @return the current transport instance
+     */
+    public PooledHttpTransport withConnectTimeout(Duration connectTimeout) {
+        if (connectTimeout.isNegative())
+            throw new IllegalArgumentException("connectTimeout must not be negative");
+
+        this.connectTimeoutNanos = connectTimeout.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets how long a read waits for data from the server. Default is 30 seconds, shortened to the time left until
+     * the deadline of requests that have one.
+     *
+     * @param readTimeout the read timeout, zero for none
+     * @return the current transport instance
+     */
+    public PooledHttpTransport withReadTimeout(Duration readTimeout) {
+        if (readTimeout.isNegative())
+            throw new IllegalArgumentException("readTimeout must not be negative");
+
+        this.readTimeoutNanos = readTimeout.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets the ssl context https connections are created with. Default is the jvm default context.
+     *
+     * @param sslContext the ssl context to use
+     * @return the current transport instance
+     */
+    public PooledHttpTransport withSslContext(SSLContext sslContext) {
+        this.sslSocketFactory = sslContext.getSocketFactory();
+        return this;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        if (closed)
+            throw new IOException("Transport is closed");
+
+        URI uri = request.getUri();
+
+        for (int redirects = 0; ; redirects++) {
+            TransportResponse response = exchange(request, uri);
+            String location = response.getHeader("Location");
+
+            if (!isRedirect(response.getStatusCode()) || location == null || redirects == MAX_REDIRECTS) {
+                return response;
+            }
+
+            URI next = uri.resolve(location);
+
+            /*
+             * never downgrade to plain http
+             */
+            if ("https".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(next.getScheme())) {
+                return response;
+            }
+
+            response.close();
+            uri = next;
+        }
+    }
+
+    private TransportResponse exchange(TransportRequest request, URI uri) throws IOException {
+        String route = route(uri);
+        Connection connection = pooledConnection(route);
+        int readTimeout = request.timeoutMillis(readTimeoutNanos);
+
+        ItunesEventListener listener = request.getEventListener();
+
+        if (connection != null) {
+            if (listener != null) listener.connectionAcquired(request, true);
+
+            try {
+                long start = System.nanoTime();
+                return connection.exchange(request, uri, readTimeout).withTimings(0, System.nanoTime() - start);
+            } catch (StaleConnectionException e) {
+                /*
+                 * the server may close an idle connection at any time, retry once on a new connection.
+                 */
+                connection.close();
+            } catch (IOException | RuntimeException e) {
+                /*
+                 * anything else, e.g. a read timeout, may have reached a server that is processing the request
+                 */
+                connection.close();
+                throw e;
+            }
+        }
+
+        long start = System.nanoTime();
+        connection = openConnection(request, route, uri, request.timeoutMillis(connectTimeoutNanos));
+        long connected = System.nanoTime();
+        if (listener != null) listener.connectionAcquired(request, false);
+
+        try {
+            return connection.exchange(request, uri, request.timeoutMillis(readTimeoutNanos))
+                .withTimings(connected - start, System.nanoTime() - connected);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private Connection pooledConnection(String route) {
+        Deque<Connection> connections = idleConnections.get(route);
+        if (connections == null) return null;
+
+        List<Connection> expired = new ArrayList<>();
+        Connection connection;
+
+        synchronized (connections) {
+            evictExpired(connections, expired);
+            connection = connections.pollFirst();
+        }
+
+        expired.forEach(Connection::close);
+
+        if (connection != null) {
+            reusedConnections.incrementAndGet();
+        }
+
+        return connection;
+    }
+
+    private Connection openConnection(TransportRequest request, String route, URI uri, int connectTimeout)
+            throws IOException {
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        String host = uri.getHost();
+        int port = port(uri);
+
+        InetAddress address = InetAddress.getByName(host);
+        ItunesEventListener listener = request.getEventListener();
+        if (listener != null) listener.dnsResolved(request, address);
+
+        Socket socket = new Socket();
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(address, port), connectTimeout);
+
+            if (secure) {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+                SSLParameters sslParameters = sslSocket.getSSLParameters();
+                sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(sslParameters);
+                sslSocket.setSoTimeout(connectTimeout);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            }
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+
+        openedConnections.incrementAndGet();
+        return new Connection(route, socket);
+    }
+
+    private void release(Connection connection) {
+        Deque<Connection> connections = idleConnections.computeIfAbsent(connection.route, route -> new ArrayDeque<>());
+        List<Connection> expired = new ArrayList<>();
+        boolean pooled = false;
+
+        synchronized (connections) {
+            evictExpired(connections, expired);
+
+            if (!closed && connections.size() < maxIdleConnections) {
+                connection.idleSince = System.nanoTime();
+                connections.addFirst(connection);
+                pooled = true;
+            }
+        }
+
+        if (!pooled) {
+            connection.close();
+        }
+
+        expired.forEach(Connection::close);
+    }
+
+    /**
+     * Removes expired connections from the tail of the deque, which holds the least recently used ones.
+     */
+    private void evictExpired(Deque<Connection> connections, List<Connection> expired) {
+        long now = System.nanoTime();
+
+        while (!connections.isEmpty() && now - connections.peekLast().idleSince >= idleTimeoutNanos) {
+            expired.add(connections.pollLast());
+        }
+    }
+
+    /**
+     * Closes every pooled connection that has been idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        List<Connection> expired = new ArrayList<>();
+
+        for (Deque<Connection> connections : idleConnections.values()) {
+            synchronized (connections) {
+                evictExpired(connections, expired);
+            }
+        }
+
+        expired.forEach(Connection::close);
+    }
+
+    /**
+     * Closes all pooled connections. Responses still being read are closed once they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<Connection> connections = new ArrayList<>();
+
+        for (Deque<Connection> idle : idleConnections.values()) {
+            synchronized (idle) {
+                connections.addAll(idle);
+                idle.clear();
+            }
+        }
+
+        connections.forEach(Connection::close);
+    }
+
+    /**
+     *
+     * @return the number of idle connections currently held in the pool
+     */
+    public int getIdleConnectionCount() {
+        int count = 0;
+
+        for (Deque<Connection> connections : idleConnections.values()) {
+            synchronized (connections) {
+                count += connections.size();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     *
+     * @return the number of connections opened since the transport was created
+     */
+    public long getOpenedConnectionCount() {
+        return openedConnections.get();
+    }
+
+    /**
+     *
+     * @return the number of requests served by a pooled connection since the transport was created
+     */
+    public long getReusedConnectionCount() {
+        return reusedConnections.get();
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public Duration getIdleTimeout() {
+        return Duration.ofNanos(idleTimeoutNanos);
+    }
+
+    /**
+     *
+     * @return how long to wait for a connection to be opened, zero for none
+     */
+    public Duration getConnectTimeout() {
+        return Duration.ofNanos(connectTimeoutNanos);
+    }
+
+    /**
+     *
+     * @return how long to wait for data from an open connection, zero for none
+     */
+    public Duration getReadTimeout() {
+        return Duration.ofNanos(readTimeoutNanos);
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) return uri.getPort();
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static String route(URI uri) {
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT) + ":" + port(uri);
+    }
+
+    /**
+     * A single persistent connection.
+     */
+    private final class Connection {
+
+        private final String route;
+        private final Socket socket;
+        private final BufferedInputStream in;
+        private final OutputStream out;
+
+        private volatile long idleSince;
+
+        Connection(String route, Socket socket) throws IOException {
+            this.route = route;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        TransportResponse exchange(TransportRequest request, URI uri, int readTimeout) throws IOException {
+            ItunesEventListener listener = request.getEventListener();
+
+            socket.setSoTimeout(readTimeout);
+
+            try {
+                writeRequest(uri);
+            } catch (SocketTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new StaleConnectionException("Connection closed by server before the request was sent", e);
+            }
+
+            if (listener != null) listener.requestSent(request);
+            awaitResponse();
+
+            String statusLine;
+            Map<String, List<String>> headers;
+
+            /*
+             * skip informational responses
+             */
+            do {
+                statusLine = readLine(in);
+                if (statusLine == null)
+                    throw new EOFException("Connection closed by server before a response was received");
+
+                headers = readHeaders();
+            } while (statusCode(statusLine) / 100 == 1);
+
+            int statusCode = statusCode(statusLine);
+            if (listener != null) listener.firstByte(request, statusCode);
+
+            String connectionHeader = firstValue(headers, "Connection");
+            boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+            InputStream body;
+            String transferEncoding = firstValue(headers, "Transfer-Encoding");
+            String contentLength = firstValue(headers, "Content-Length");
+
+            if (statusCode == 204 || statusCode == 304) {
+                body = new FixedLengthInputStream(in, 0);
+            } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+                body = new ChunkedInputStream(in);
+            } else if (contentLength != null) {
+                body = new FixedLengthInputStream(in, contentLength(contentLength));
+            } else {
+                /*
+                 * body is delimited by the end of the connection
+                 */
+                body = in;
+                keepAlive = false;
+            }
+
+            return new TransportResponse(statusCode, headers, new ResponseBody(body, this, keepAlive));
+        }
+
+        /**
+         * wait for the first byte of the response, telling a connection the server closed while it was idle apart
+         * from a server that is slow to answer
+         */
+        private void awaitResponse() throws IOException {
+            int first;
+            in.mark(1);
+
+            try {
+                first = in.read();
+            } catch (SocketException e) {
+                throw new StaleConnectionException("Connection reset by server before a response was received", e);
+            }
+
+            if (first == -1)
+                throw new StaleConnectionException("Connection closed by server before a response was received", null);
+
+            in.reset();
+        }
+
+        private void writeRequest(URI uri) throws IOException {
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) path += "?" + uri.getRawQuery();
+
+            String host = uri.getHost();
+            if (uri.getPort() != -1) host += ":" + uri.getPort();
+
+            String request = "GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + host + "\r\n" +
+                "User-Agent: " + USER_AGENT + "\r\n" +
+                "Accept: application/json, */*\r\n" +
+                "Connection: keep-alive\r\n" +
+                "\r\n";
+
+            out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+        }
+
+        private Map<String, List<String>> readHeaders() throws IOException {
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            String line;
+
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int separator = line.indexOf(':');
+                if (separator <= 0) continue;
+
+                headers.computeIfAbsent(line.substring(0, separator).trim(), name -> new ArrayList<>(1))
+                    .add(line.substring(separator + 1).trim());
+            }
+
+            if (line == null)
+                throw new EOFException("Connection closed by server while reading response headers");
+
+            return headers;
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                /*
+                 * nothing left to release
+                 */
+            }
+        }
+
+    }
+
+    /**
+     * Response body stream, returns its connection to the pool once it is closed.
+     */
+    private final class ResponseBody extends FilterInputStream {
+
+        private final Connection connection;
+        private final boolean keepAlive;
+        private boolean released = false;
+
+        ResponseBody(InputStream body, Connection connection, boolean keepAlive) {
+            super(body);
+            this.connection = connection;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+
+            if (!keepAlive) {
+                connection.close();
+                return;
+            }
+
+            try {
+                /*
+                 * the connection can only be reused once the current body has been read completely
+                 */
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    /* drain */
+                }
+
+                release(connection);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+
+    }
+
+    /**
+     * Body delimited by a Content-Length header. Closing it leaves the connection open.
+     */
+    private static final class FixedLengthInputStream extends InputStream {
+
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+
+            int value = in.read();
+            if (value == -1) throw new EOFException("Connection closed before the response body was complete");
+
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) return -1;
+
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) throw new EOFException("Connection closed before the response body was complete");
+
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+    }
+
+    /**
+     * Body sent with chunked transfer encoding. Closing it leaves the connection open.
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final InputStream in;
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) return -1;
+
+            int value = in.read();
+            if (value == -1) throw new EOFException("Connection closed before the response body was complete");
+
+            chunkRemaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (!nextChunk()) return -1;
+
+            int read = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (read == -1) throw new EOFException("Connection closed before the response body was complete");
+
+            chunkRemaining -= read;
+            return read;
+        }
+
+        /**
+         * @return false once the last chunk has been read
+         */
+        private boolean nextChunk() throws IOException {
+            if (finished) return false;
+            if (chunkRemaining > 0) return true;
+
+            String sizeLine = readLine(in);
+
+            /*
+             * every chunk but the first is preceded by the CRLF ending the previous one
+             */
+            if (sizeLine != null && sizeLine.isEmpty()) sizeLine = readLine(in);
+            if (sizeLine == null) throw new EOFException("Connection closed before the response body was complete");
+
+            int extension = sizeLine.indexOf(';');
+            String size = (extension == -1 ? sizeLine : sizeLine.substring(0, extension)).trim();
+
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + size);
+            }
+
+            if (chunkRemaining < 0) throw new IOException("Malformed chunk size: " + size);
+
+            if (chunkRemaining == 0) {
+                /*
+                 * skip trailers
+                 */
+                String trailer;
+                while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                    /* ignored */
+                }
+
+                finished = true;
+                return false;
+            }
+
+            return true;
+        }
+
+    }
+
+    private static int statusCode(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+    }
+
+    private static long contentLength(String value) throws IOException {
+        long length;
+
+        try {
+            length = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed Content-Length: " + value);
+        }
+
+        if (length < 0) throw new IOException("Malformed Content-Length: " + value);
+        return length;
+    }
+
+    private static String firstValue(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the next line without its line terminator, or null if the stream ended first
+     * @throws IOException if the line is longer than {@value #MAX_LINE_LENGTH} bytes
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int value;
+
+        while ((value = in.read()) != -1) {
+            if (value == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+                return line.toString();
+            }
+
+            if (line.length() == MAX_LINE_LENGTH)
+                throw new IOException("Response line longer than " + MAX_LINE_LENGTH + " bytes");
+
+            line.append((char) value);
+        }
+
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * A pooled connection turned out to be closed by the server before any part of the response arrived, so the
+     * request can safely be sent again.
+     */
+    private static final class StaleConnectionException extends IOException {
+
+        StaleConnectionException(String message, IOException cause) {
+            super(message, cause);
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.RateLimitExceededException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquires a permit from the rate limiter of the request's host before every request. A request never waits for
+ * a permit past its deadline.
+ */
+class RateLimitedTransport implements HttpTransport {
+
+    private static final long NOT_LIMITED = -1;
+
+    private final HttpTransport delegate;
+    private final Map<String, RateLimiter> rateLimiters;
+    private final long maxWaitNanos;
+    private final ClientMetrics metrics;
+
+    /**
+     * @param delegate the transport executing the requests
+     * @param rateLimiters rate limiters keyed by lower case host name. Hosts without a rate limiter are not limited.
+     * @param maxWait the longest a request may wait for a permit, null to wait as long as necessary
+     * @param metrics the metrics waits are recorded in, null for none
+     */
+    RateLimitedTransport(HttpTransport delegate, Map<String, RateLimiter> rateLimiters, Duration maxWait,
+                         ClientMetrics metrics) {
+        this.delegate = delegate;
+        this.rateLimiters = rateLimiters;
+        this.maxWaitNanos = maxWait == null ? Long.MAX_VALUE : maxWait.toNanos();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        long wait = reserve(request);
+
+        try {
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+        }
+
+        acquired(request, wait);
+        return delegate.execute(request);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        long wait;
+
+        try {
+            wait = reserve(request);
+        } catch (RateLimitExceededException | RequestTimeoutException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (wait <= 0) {
+            acquired(request, wait);
+            return delegate.executeAsync(request, executor);
+        }
+
+        Executor delayedExecutor = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, executor);
+        return CompletableFuture.runAsync(() -> acquired(request, wait), delayedExecutor)
+            .thenCompose(ignored -> delegate.executeAsync(request, executor));
+    }
+
+    private static void acquired(TransportRequest request, long wait) {
+        ItunesEventListener listener = request.getEventListener();
+        if (listener != null && wait != NOT_LIMITED) listener.rateLimitAcquired(request, wait);
+    }
+
+    /**
+     * @return the time to wait before the request may be sent, {@link #NOT_LIMITED} if its host has no rate limiter
+     * @throws RateLimitExceededException if no permit is available within the maximum wait
+     * @throws RequestTimeoutException if no permit is available before the request's deadline
+     */
+    private long reserve(TransportRequest request) {
+        String host = request.getUri().getHost();
+        RateLimiter rateLimiter = host == null ? null : rateLimiters.get(host.toLowerCase(Locale.ROOT));
+
+        if (rateLimiter == null) return NOT_LIMITED;
+
+        long remaining = request.remainingNanos();
+        long wait = rateLimiter.reserve(Math.min(maxWaitNanos, remaining));
+
+        if (wait < 0 && remaining < maxWaitNanos) {
+            throw new RequestTimeoutException(String.format(
+                "Deadline of %s passes before the next rate limit permit for %s is available", request, host
+            ));
+        }
+
+        if (wait < 0) {
+            throw new RateLimitExceededException(String.format(
+                "Rate limit for %s exceeded, next permit available in %s ms",
+                host, rateLimiter.timeUntilNextPermit().toMillis()
+            ));
+        }
+
+        if (metrics != null) metrics.series(request).record(ClientMetrics.Phase.QUEUE_WAIT, wait);
+        return wait;
+    }
+
+}
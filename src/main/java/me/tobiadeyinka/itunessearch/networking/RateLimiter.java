@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread safe, lock-free token bucket.
+ *
+ * The bucket holds up to {@code burst} permits and refills at {@code permits} per {@code period}. Its whole state
+ * is the time at which the bucket will be full again, updated with a single compare-and-set, so acquiring never
+ * blocks other threads. A blocking acquire reserves its permit immediately and then waits for it, which keeps
+ * waiting callers in arrival order.
+ */
+public class RateLimiter {
+
+    /**
+     * Time needed to refill a single permit.
+     */
+    private final long intervalNanos;
+
+    /**
+     * Time needed to refill an empty bucket.
+     */
+    private final long burstNanos;
+
+    private final LongSupplier clock;
+
+    /**
+     * The time at which the bucket is full again. The bucket is full whenever this is in the past.
+     */
+    private final AtomicLong fullAt;
+
+    /**
+     * @param permits the number of permits refilled every period. Also the size of the bucket.
+     * @param period the refill period
+     */
+    public RateLimiter(int permits, Duration period) {
+        this(permits, period, permits);
+    }
+
+    /**
+     * @param permits the number of permits refilled every period
+     * @param period the refill period
+     * @param burst the size of the bucket, i.e. the number of permits that can be acquired at once
+     */
+    public RateLimiter(int permits, Duration period, int burst) {
+        this(permits, period, burst, System::nanoTime);
+    }
+
+    RateLimiter(int permits, Duration period, int burst, LongSupplier clock) {
+        if (permits < 1 || burst < 1)
+            throw new IllegalArgumentException("permits and burst must be positive");
+
+        if (period.isNegative() || period.isZero())
+            throw new IllegalArgumentException("period must be positive");
+
+        this.intervalNanos = Math.max(1, period.toNanos() / permits);
+        this.burstNanos = intervalNanos * burst;
+        this.clock = clock;
+        this.fullAt = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * @param permits the number of permits per minute, also the size of the bucket
+     * @return a rate limiter allowing the given number of calls per minute
+     */
+    public static RateLimiter perMinute(int permits) {
+        return new RateLimiter(permits, Duration.ofMinutes(1));
+    }
+
+    /**
+     * acquire a permit, waiting as long as necessary
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting. The permit is consumed anyway.
+     */
+    public void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * acquire a permit only if one is available right away
+     *
+     * @return true if a permit was acquired
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * acquire a permit if one becomes available within the timeout, waiting for it if necessary
+     *
+     * @param timeout the maximum time to wait
+     * @return true if a permit was acquired, false if none would be available in time. Nothing is consumed then.
+     * @throws InterruptedException if the thread is interrupted while waiting. The permit is consumed anyway.
+     */
+    public boolean tryAcquire(Duration timeout) throws InterruptedException {
+        long wait = reserve(timeout.toNanos());
+        if (wait < 0) return false;
+
+        TimeUnit.NANOSECONDS.sleep(wait);
+        return true;
+    }
+
+    /**
+     * reserve a permit without waiting for it
+     *
+     * @param maxWaitNanos the longest acceptable wait
+     * @return the time in nanoseconds until the reserved permit may be used, or -1 if that would be longer than
+     *         maxWaitNanos, in which case nothing is reserved
+     */
+    long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long wait = next - burstNanos - now;
+
+            if (wait > maxWaitNanos) return -1;
+            if (fullAt.compareAndSet(current, next)) return Math.max(0, wait);
+        }
+    }
+
+    /**
+     *
+     * @return the number of permits that can be acquired right now without waiting
+     */
+    public long availablePermits() {
+        long now = clock.getAsLong();
+        long debt = Math.max(fullAt.get(), now) - now;
+        return Math.max(0, (burstNanos - debt) / intervalNanos);
+    }
+
+    /**
+     *
+     * @return the time until the next permit is available, zero if one is available now
+     */
+    public Duration timeUntilNextPermit() {
+        long now = clock.getAsLong();
+        long wait = Math.max(fullAt.get(), now) + intervalNanos - burstNanos - now;
+        return Duration.ofNanos(Math.max(0, wait));
+    }
+
+    /**
+     *
+     * @return the maximum number of permits the bucket holds
+     */
+    public long getBurst() {
+        return burstNanos / intervalNanos;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport recording every request and response passing through it to a {@link Cassette} file, for a
+ * {@link ReplayTransport} to play back later, e.g. to compare new builds against a captured slice of real traffic
+ * without touching the network.
+ *
+ * Response bodies are read in full before they are handed on, so the recorded latency includes the body transfer.
+ * The file is complete once the transport is closed, a recording cut short is readable up to its last
+ * interaction. Requests are recorded as the transport receives them, i.e. after any
+ * {@link ItunesClient#withBaseUri(String, java.net.URI) base uri} rewrite.
+ */
+public class RecordingTransport implements HttpTransport, Closeable {
+
+    private final HttpTransport delegate;
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong recordedCount = new AtomicLong();
+
+    private boolean closed = false;
+
+    /**
+     * @param delegate the transport executing the requests
+     * @param cassette the file to record to, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public RecordingTransport(HttpTransport delegate, Path cassette) throws IOException {
+        this.delegate = delegate;
+        this.out = Cassette.open(cassette);
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        long start = System.nanoTime();
+        TransportResponse response;
+
+        try {
+            response = delegate.execute(request);
+        } catch (IOException e) {
+            record(request, start, null, null, e);
+            throw e;
+        }
+
+        return buffer(request, start, response);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        long start = System.nanoTime();
+
+        return delegate.executeAsync(request, executor).handleAsync((response, failure) -> {
+            try {
+                if (failure != null) {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause()
+                        : failure;
+
+                    if (cause instanceof IOException) record(request, start, null, null, (IOException) cause);
+                    throw new CompletionException(cause);
+                }
+
+                return buffer(request, start, response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * read the whole body so it can be recorded, and hand on a response reading from the copy
+     */
+    private TransportResponse buffer(TransportRequest request, long start, TransportResponse response)
+        throws IOException {
+
+        byte[] body;
+
+        try (response) {
+            body = response.getBody().readAllBytes();
+        } catch (IOException e) {
+            record(request, start, null, null, e);
+            throw e;
+        }
+
+        record(request, start, response, body, null);
+        return new TransportResponse(response.getStatusCode(), response.getHeaders(), new ByteArrayInputStream(body));
+    }
+
+    private void record(TransportRequest request, long start, TransportResponse response, byte[] body,
+                        IOException failure) throws IOException {
+
+        long now = System.nanoTime();
+        Cassette.Interaction interaction = failure != null
+            ? new Cassette.Interaction(start - startNanos, now - start, request.getUri(), -1, Map.of(),
+                new byte[0], String.valueOf(failure.getMessage()))
+            : new Cassette.Interaction(start - startNanos, now - start, request.getUri(), response.getStatusCode(),
+                response.getHeaders(), body, null);
+
+        synchronized (this) {
+            if (closed) return;
+
+            interaction.write(out);
+            out.flush();
+        }
+
+        recordedCount.incrementAndGet();
+    }
+
+    /**
+     *
+     * @return the number of interactions recorded so far
+     */
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * stop recording and complete the cassette file. Requests still pass through to the delegate afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+
+        closed = true;
+        out.close();
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport answering requests from a {@link Cassette} instead of the network, for deterministic regression
+ * and performance runs.
+ *
+ * Requests are matched to recorded interactions by their canonical uri. A uri recorded several times gets its
+ * recorded responses in order, starting over once they are used up. A request that was never recorded fails with
+ * an {@link IOException}.
+ *
+ * By default responses are returned at once. {@link #withOriginalTiming(boolean) With original timing} each
+ * response is held back for as long as it originally took, or fails with a {@link SocketTimeoutException} if the
+ * request's deadline comes first.
+ */
+public class ReplayTransport implements HttpTransport {
+
+    private final Map<String, Recording> recordings = new HashMap<>();
+
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile boolean originalTiming = false;
+
+    /**
+     * @param cassette the recorded interactions to answer requests from
+     */
+    public ReplayTransport(Cassette cassette) {
+        Map<String, List<Cassette.Interaction>> byKey = new HashMap<>();
+
+        for (Cassette.Interaction interaction : cassette.getInteractions()) {
+            byKey.computeIfAbsent(NetworkUtils.canonicalKey(interaction.getUri()), key -> new ArrayList<>())
+                .add(interaction);
+        }
+
+        byKey.forEach((key, interactions) -> recordings.put(key, new Recording(interactions)));
+    }
+
+    /**
+     * Sets whether responses take as long as they originally did. Default is false, i.e. as fast as possible.
+     *
+     * @param originalTiming true to replay the recorded latencies
+     * @return the current transport instance
+     */
+    public ReplayTransport withOriginalTiming(boolean originalTiming) {
+        this.originalTiming = originalTiming;
+        return this;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        Cassette.Interaction interaction = next(request);
+
+        if (originalTiming) {
+            long delay = Math.min(interaction.getLatencyNanos(), request.remainingNanos());
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying " + request.getUri());
+            }
+        }
+
+        return answer(request, interaction);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        Cassette.Interaction interaction;
+
+        try {
+            interaction = next(request);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (originalTiming) {
+            long delay = Math.min(interaction.getLatencyNanos(), request.remainingNanos());
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS, executor);
+            return CompletableFuture.supplyAsync(() -> interaction, delayed).thenCompose(replayed -> {
+                try {
+                    return CompletableFuture.completedFuture(answer(request, replayed));
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            });
+        }
+
+        try {
+            return CompletableFuture.completedFuture(answer(request, interaction));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Cassette.Interaction next(TransportRequest request) throws IOException {
+        Recording recording = recordings.get(request.getCanonicalKey());
+
+        if (recording == null) {
+            missCount.incrementAndGet();
+            throw new IOException("No recorded response for " + request.getUri());
+        }
+
+        replayedCount.incrementAndGet();
+        return recording.next();
+    }
+
+    private static TransportResponse answer(TransportRequest request, Cassette.Interaction interaction)
+        throws IOException {
+
+        if (request.hasDeadline() && request.remainingNanos() == 0) {
+            throw new SocketTimeoutException("Deadline passed while replaying " + request.getUri());
+        }
+
+        if (interaction.isFailure()) throw new IOException(interaction.getFailure());
+        return interaction.toResponse();
+    }
+
+    /**
+     *
+     * @return the number of requests answered from the cassette
+     */
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     *
+     * @return the number of requests the cassette had no recording for
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The interactions recorded for one uri, handed out in order.
+     */
+    private static final class Recording {
+
+        private final List<Cassette.Interaction> interactions;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Recording(List<Cassette.Interaction> interactions) {
+            this.interactions = interactions;
+        }
+
+        private Cassette.Interaction next() {
+            return interactions.get(Math.floorMod(next.getAndIncrement(), interactions.size()));
+        }
+
+    }
+
+}
@@ -0,0 +1,508 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache of successful response bodies, keyed by the {@link NetworkUtils#canonicalKey(URI)
+ * canonical url} of the query.
+ *
+ * The least recently used entry is evicted once the cache is full, and entries expire after the time to live of
+ * their {@link Endpoint}. Expired entries can be kept a while longer to be served when the api is unavailable,
+ * see {@link #withMaxStale(Duration)}. Bodies are stored raw, every hit is parsed into a new object so callers never share
+ * results. The cache is thread safe and can be shared between clients.
+ *
+ * With a {@link DiskCache} tier, every body is also written to disk, and queries not held in memory are answered
+ * from disk, e.g. after a restart. Bodies read from disk are then held in memory for the rest of their time to
+ * live.
+ */
+public class ResponseCache {
+
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final Map<Endpoint, Long> ttlNanos = new EnumMap<>(Endpoint.class);
+
+    /**
+     * How long past their time to live entries of an endpoint are served while they are refreshed.
+     */
+    private final Map<Endpoint, Long> revalidateNanos = new EnumMap<>(Endpoint.class);
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * How long past their time to live entries are kept for {@link #getStale(String, Endpoint)}.
+     */
+    private long maxStaleNanos;
+
+    /**
+     * The persistent tier consulted on misses, null for none.
+     */
+    private DiskCache diskCache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    /**
+     * Creates a cache with the default times to live: 10 minutes for searches, 30 minutes for rss charts and
+     * 1 hour for id lookups.
+     *
+     * @param maxEntries the maximum number of responses held
+     */
+    public ResponseCache(int maxEntries) {
+        this(maxEntries, System::nanoTime);
+    }
+
+    ResponseCache(int maxEntries, LongSupplier clock) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        ttlNanos.put(Endpoint.SEARCH, Duration.ofMinutes(10).toNanos());
+        ttlNanos.put(Endpoint.RSS, Duration.ofMinutes(30).toNanos());
+        ttlNanos.put(Endpoint.LOOKUP, Duration.ofHours(1).toNanos());
+
+        for (Endpoint endpoint : Endpoint.values()) revalidateNanos.put(endpoint, 0L);
+    }
+
+    /**
+     * Sets how long responses from an endpoint are kept.
+     *
+     * @param endpoint the endpoint
+     * @param ttl the time to live of the endpoint's responses, zero disables caching for the endpoint
+     * @return the current cache instance
+     */
+    public ResponseCache withTtl(Endpoint endpoint, Duration ttl) {
+        if (ttl.isNegative())
+            throw new IllegalArgumentException("ttl must not be negative");
+
+        synchronized (this) {
+            ttlNanos.put(endpoint, ttl.toNanos());
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets how long past their time to live entries of an endpoint are still served, e.g. for rss charts that
+     * change slowly. The time to live becomes a soft limit: a query for an expired entry within the window is
+     * answered with it immediately, and a client refreshes it in the background, with one refresh in flight per
+     * query. Queries to the endpoint that fail are answered with a stale entry within the window whatever they
+     * failed with. Default is zero, expired entries are not served.
+     *
+     * @param endpoint the endpoint
+     * @param window how long past their time to live entries are served while they are refreshed
+     * @return the current cache instance
+     */
+    public ResponseCache withStaleWhileRevalidate(Endpoint endpoint, Duration window) {
+        if (window.isNegative())
+            throw new IllegalArgumentException("window must not be negative");
+
+        synchronized (this) {
+            revalidateNanos.put(endpoint, window.toNanos());
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets how long entries are kept past their time to live. Such stale entries are never returned by
+     * {@link #get(URI)}, they are only served when a request is rejected because the api is unavailable, e.g. by
+     * an open {@link CircuitBreaker}. Default is zero, entries are removed once they expire.
+     *
+     * @param maxStale how long expired entries are kept
+     * @return the current cache instance
+     */
+    public ResponseCache withMaxStale(Duration maxStale) {
+        if (maxStale.isNegative())
+            throw new IllegalArgumentException("maxStale must not be negative");
+
+        synchronized (this) {
+            this.maxStaleNanos = maxStale.toNanos();
+        }
+
+        return this;
+    }
+
+    /**
+     * Sets the persistent tier every body is also written to, and queries not held in memory are answered from.
+     * Entries on disk keep the time to live and stale period they were written with. The disk cache is not closed
+     * with this cache.
+     *
+     * @param diskCache the disk tier, null for none
+     * @return the current cache instance
+     */
+    public synchronized ResponseCache withDiskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+        return this;
+    }
+
+    /**
+     * @param uri the encoded uri of the query
+     * @return the cached body, or null if the uri is not cached or its entry expired
+     */
+    public byte[] get(URI uri) {
+        return bytes(get(NetworkUtils.canonicalKey(uri), Endpoint.of(uri), null));
+    }
+
+    /**
+     * @param key the canonical key of the query
+     * @param endpoint the endpoint of the query
+     * @param revalidate run when an expired body is served within the endpoint's
+     *                   {@link #withStaleWhileRevalidate(Endpoint, Duration) revalidation window}, to refresh it.
+     *                   Null to only return fresh bodies.
+     * @return a read-only view of the cached body, mapped from disk if it is not held in memory
+     */
+    ByteBuffer get(String key, Endpoint endpoint, Runnable revalidate) {
+        long now = clock.getAsLong();
+        long window;
+        DiskCache diskCache;
+        ByteBuffer body = null;
+        boolean expired = false;
+
+        synchronized (this) {
+            window = revalidate == null ? 0 : revalidateNanos.get(endpoint);
+            Entry entry = entries.get(key);
+
+            if (entry != null && now - entry.expiresAt < window) {
+                expired = now - entry.expiresAt >= 0;
+                body = ByteBuffer.wrap(entry.body).asReadOnlyBuffer();
+            } else if (entry != null && now - entry.expiresAt >= retentionNanos(endpoint)) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+
+            diskCache = this.diskCache;
+        }
+
+        if (body == null && diskCache != null) {
+            DiskCache.Entry diskEntry = diskCache.find(key);
+            long diskNow = diskCache.now();
+
+            if (diskEntry != null && diskNow - diskEntry.expiresAt < TimeUnit.NANOSECONDS.toMillis(window)) {
+                expired = diskNow - diskEntry.expiresAt >= 0;
+                byte[] bytes = bytes(diskCache.read(diskEntry));
+                promote(key, bytes, now + TimeUnit.MILLISECONDS.toNanos(diskEntry.expiresAt - diskNow));
+
+                body = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+                diskHits.incrementAndGet();
+            }
+        }
+
+        if (body == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+
+        if (expired) {
+            revalidations.incrementAndGet();
+            revalidate.run();
+        }
+
+        return body;
+    }
+
+    /**
+     * hold a body read from disk in memory, unless the query was cached again meanwhile. The disk keeps the
+     * record, and with it the stale period it was written with.
+     *
+     * @param expiresAt when the body's time to live passes on the cache's clock
+     */
+    private synchronized void promote(String key, byte[] body, long expiresAt) {
+        if (entries.containsKey(key)) return;
+
+        entries.put(key, new Entry(body, expiresAt));
+        evictEldest();
+    }
+
+    /**
+     * get a cached body even if it expired, as long as it is within the {@link #withMaxStale(Duration) stale
+     * period} or the endpoint's {@link #withStaleWhileRevalidate(Endpoint, Duration) revalidation window}. Used in
+     * place of a request that could not be sent or failed.
+     *
+     * @param key the canonical key of the query
+     * @param endpoint the endpoint of the query
+     * @return the cached body, or null if the key is not cached or its entry is too old
+     */
+    ByteBuffer getStale(String key, Endpoint endpoint) {
+        long now = clock.getAsLong();
+        DiskCache diskCache;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry != null && now - entry.expiresAt < retentionNanos(endpoint)) {
+                if (now - entry.expiresAt >= 0) {
+                    staleHits.incrementAndGet();
+                }
+
+                return ByteBuffer.wrap(entry.body).asReadOnlyBuffer();
+            }
+
+            diskCache = this.diskCache;
+        }
+
+        DiskCache.Entry diskEntry = diskCache == null ? null : diskCache.find(key);
+        if (diskEntry == null) return null;
+
+        if (diskCache.now() >= diskEntry.expiresAt) {
+            staleHits.incrementAndGet();
+        }
+
+        diskHits.incrementAndGet();
+        return diskCache.read(diskEntry);
+    }
+
+    /**
+     * @param endpoint the endpoint of a failed query
+     * @return true if the query may be answered with a stale body whatever it failed with, rather than only when
+     *         the api is unavailable
+     */
+    synchronized boolean servesStaleOnFailure(Endpoint endpoint) {
+        return revalidateNanos.get(endpoint) > 0;
+    }
+
+    /**
+     * @return how long past their time to live entries of the endpoint are kept
+     */
+    private long retentionNanos(Endpoint endpoint) {
+        return Math.max(maxStaleNanos, revalidateNanos.get(endpoint));
+    }
+
+    private static byte[] bytes(ByteBuffer body) {
+        if (body == null) return null;
+
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param uri the encoded uri of the query
+     * @param body the successful response body
+     */
+    public void put(URI uri, byte[] body) {
+        put(NetworkUtils.canonicalKey(uri), Endpoint.of(uri), body);
+    }
+
+    void put(String key, Endpoint endpoint, byte[] body) {
+        long ttl;
+        long maxStale;
+        DiskCache diskCache;
+
+        synchronized (this) {
+            ttl = ttlNanos.get(endpoint);
+            if (ttl == 0) return;
+
+            maxStale = retentionNanos(endpoint);
+            diskCache = this.diskCache;
+
+            entries.put(key, new Entry(body, clock.getAsLong() + ttl));
+            evictEldest();
+        }
+
+        if (diskCache != null) {
+            diskCache.put(key, body, TimeUnit.NANOSECONDS.toMillis(ttl), TimeUnit.NANOSECONDS.toMillis(maxStale));
+        }
+    }
+
+    /**
+     * remove the least recently used entries until the cache is within its size
+     */
+    private void evictEldest() {
+        while (entries.size() > maxEntries) {
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * remove the cached response of a query
+     *
+     * @param uri the encoded uri of the query
+     */
+    public void invalidate(URI uri) {
+        String key = NetworkUtils.canonicalKey(uri);
+        DiskCache diskCache;
+
+        synchronized (this) {
+            entries.remove(key);
+            diskCache = this.diskCache;
+        }
+
+        if (diskCache != null) diskCache.invalidate(key);
+    }
+
+    /**
+     * remove all cached responses, including those on disk
+     *
+     * @throws UncheckedIOException if the segments of the disk tier cannot be deleted
+     */
+    public void clear() {
+        DiskCache diskCache;
+
+        synchronized (this) {
+            entries.clear();
+            diskCache = this.diskCache;
+        }
+
+        if (diskCache == null) return;
+
+        try {
+            diskCache.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     *
+     * @return the number of responses held in memory, including expired ones not yet removed
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param endpoint the endpoint
+     * @return how long responses from the endpoint are kept
+     */
+    public synchronized Duration getTtl(Endpoint endpoint) {
+        return Duration.ofNanos(ttlNanos.get(endpoint));
+    }
+
+    /**
+     *
+     * @return the number of queries answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     *
+     * @return the number of queries not found in the cache, including expired entries
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     *
+     * @return the number of entries removed to keep the cache within its size
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     *
+     * @return the number of entries removed because their time to live passed
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     *
+     * @return the number of expired responses served because the api was unavailable
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * @param endpoint the endpoint
+     * @return how long past their time to live entries of the endpoint are served while they are refreshed
+     */
+    public synchronized Duration getStaleWhileRevalidate(Endpoint endpoint) {
+        return Duration.ofNanos(revalidateNanos.get(endpoint));
+    }
+
+    /**
+     *
+     * @return the number of expired responses served while they were refreshed in the background
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     *
+     * @return the number of queries answered from the disk tier, fresh or stale
+     */
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public synchronized DiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    public synchronized Duration getMaxStale() {
+        return Duration.ofNanos(maxStaleNanos);
+    }
+
+    /**
+     *
+     * @return the share of queries answered from the cache, between 0 and 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static final class Entry {
+
+        private final byte[] body;
+        private final long expiresAt;
+
+        Entry(byte[] body, long expiresAt) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Parses response bodies straight from their stream, without reading them into a string first.
+ */
+final class ResponseParser {
+
+    private ResponseParser() {
+    }
+
+    /**
+     * @param body the response body
+     * @return the whole body as a {@link JSONObject}
+     * @throws JSONException if the body is not a json object or cannot be read
+     */
+    static JSONObject parse(InputStream body) {
+        return new JSONObject(tokener(body));
+    }
+
+    /**
+     * parse the body of a search or lookup response one result at a time. Each element of the {@code results}
+     * array is handed to the handler as soon as it is parsed, and is not retained afterwards. Every other member
+     * of the body is skipped.
+     *
+     * @param body the response body
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws JSONException if the body is not a json object or cannot be read
+     */
+    static int forEachResult(InputStream body, Consumer<? super JSONObject> resultHandler) {
+        JSONTokener tokener = tokener(body);
+        int count = 0;
+
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
+        }
+
+        char next = tokener.nextClean();
+
+        while (next != '}') {
+            if (next != '"') {
+                throw tokener.syntaxError("Expected a quoted key");
+            }
+
+            String key = tokener.nextString('"');
+
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+
+            if (key.equals("results")) {
+                count += forEachElement(tokener, resultHandler);
+            } else {
+                tokener.nextValue();
+            }
+
+            next = tokener.nextClean();
+
+            if (next == ',') {
+                next = tokener.nextClean();
+            } else if (next != '}') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+
+        return count;
+    }
+
+    private static int forEachElement(JSONTokener tokener, Consumer<? super JSONObject> resultHandler) {
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("Expected results to be an array");
+        }
+
+        if (tokener.nextClean() == ']') {
+            return 0;
+        }
+
+        tokener.back();
+        int count = 0;
+
+        while (true) {
+            Object value = tokener.nextValue();
+
+            if (!(value instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected every result to be an object");
+            }
+
+            resultHandler.accept((JSONObject) value);
+            count++;
+
+            char next = tokener.nextClean();
+            if (next == ']') return count;
+
+            if (next != ',') {
+                throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    private static JSONTokener tokener(InputStream body) {
+        return new JSONTokener(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+}
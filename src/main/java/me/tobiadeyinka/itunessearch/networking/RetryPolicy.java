@@ -0,0 +1,233 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides whether and when a failed request is sent again.
+ *
+ * Requests failing with an I/O error, or answered with 403 or 429 (how the iTunes api signals throttling) or a
+ * 5xx status, are retried up to a maximum number of attempts. The wait before each retry is drawn uniformly
+ * between zero and an exponentially growing cap ("full jitter"), so clients throttled together don't retry
+ * together. A {@code Retry-After} header is honoured when it asks for a longer wait. A retry is only started
+ * within the time budget, counted from the first attempt, otherwise the last failure is reported instead. The
+ * budget does not limit how long a started attempt takes, a request's deadline bounds the total time.
+ *
+ * Only GET requests are ever sent, all of them idempotent, so every request can be retried. The policy is thread
+ * safe and can be shared between clients, its counters then cover all of them.
+ */
+public class RetryPolicy {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private int maxAttempts = 3;
+    private Duration baseDelay = Duration.ofMillis(200);
+    private Duration maxDelay = Duration.ofSeconds(10);
+    private Duration timeBudget = Duration.ofSeconds(30);
+
+    private final DoubleSupplier random;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    /**
+     * Creates a policy making at most 3 attempts, with a 200 ms base delay, a 10 second maximum delay and a
+     * 30 second time budget.
+     */
+    public RetryPolicy() {
+        this(() -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RetryPolicy(DoubleSupplier random) {
+        this.random = random;
+    }
+
+    /**
+     * Sets the maximum number of times a request is sent, including the first attempt.
+     *
+     * @param maxAttempts the maximum number of attempts, 1 disables retries
+     * @return the current policy instance
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be positive");
+
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the cap on the wait before the first retry. The cap doubles with every further retry.
+     *
+     * @param baseDelay the base delay
+     * @return the current policy instance
+     */
+    public RetryPolicy withBaseDelay(Duration baseDelay) {
+        if (baseDelay.isNegative())
+            throw new IllegalArgumentException("baseDelay must not be negative");
+
+        this.baseDelay = baseDelay;
+        return this;
+    }
+
+    /**
+     * Sets the largest the cap on the wait before a retry grows to. A longer {@code Retry-After} is still
+     * honoured, within the time budget.
+     *
+     * @param maxDelay the maximum delay
+     * @return the current policy instance
+     */
+    public RetryPolicy withMaxDelay(Duration maxDelay) {
+        if (maxDelay.isNegative())
+            throw new IllegalArgumentException("maxDelay must not be negative");
+
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * Sets the time after the first attempt past which no retry is started.
+     *
+     * @param timeBudget the total time budget, null for no budget
+     * @return the current policy instance
+     */
+    public RetryPolicy withTimeBudget(Duration timeBudget) {
+        if (timeBudget != null && timeBudget.isNegative())
+            throw new IllegalArgumentException("timeBudget must not be negative");
+
+        this.timeBudget = timeBudget;
+        return this;
+    }
+
+    /**
+     * @param statusCode the http status code of a response
+     * @return true if a request answered with the status code may be retried
+     */
+    public boolean isRetryable(int statusCode) {
+        return statusCode == 403 || statusCode == 429 || (statusCode >= 500 && statusCode < 600);
+    }
+
+    /**
+     * @param failure the I/O error a request failed with
+     * @return true if the request may be retried, i.e. unless the failure is an interruption of the calling thread
+     */
+    public boolean isRetryable(IOException failure) {
+        return !(failure instanceof InterruptedIOException) || failure instanceof SocketTimeoutException;
+    }
+
+    /**
+     * @param retry the number of the retry, starting at 1
+     * @return the randomized wait before the retry, in nanoseconds
+     */
+    long backoffNanos(int retry) {
+        long cap = maxDelay.toNanos();
+        long delay = baseDelay.toNanos();
+
+        for (int i = 1; i < retry && delay < cap; i++) {
+            delay *= 2;
+        }
+
+        return (long) (random.getAsDouble() * Math.min(delay, cap));
+    }
+
+    /**
+     * @param response the failed response
+     * @param now the current wall clock time
+     * @return the wait asked for by the response's {@code Retry-After} header in nanoseconds, or 0 if it has none
+     */
+    static long retryAfterNanos(TransportResponse response, ZonedDateTime now) {
+        String value = response.getHeader("Retry-After");
+        if (value == null) return 0;
+
+        value = value.trim();
+
+        try {
+            return Math.max(0, Duration.ofSeconds(Long.parseLong(value)).toNanos());
+        } catch (NumberFormatException | ArithmeticException e) {
+            try {
+                return Math.max(0, Duration.between(now, ZonedDateTime.parse(value, HTTP_DATE)).toNanos());
+            } catch (DateTimeParseException | ArithmeticException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @param elapsedNanos the time since the first attempt
+     * @param waitNanos the wait before the next attempt
+     * @return true if the next attempt would start within the time budget
+     */
+    boolean withinBudget(long elapsedNanos, long waitNanos) {
+        return timeBudget == null || elapsedNanos + waitNanos <= timeBudget.toNanos();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordExhausted() {
+        exhausted.incrementAndGet();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getBaseDelay() {
+        return baseDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     *
+     * @return the time after the first attempt past which no retry is started, null if there is no budget
+     */
+    public Duration getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     *
+     * @return the number of retries sent
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     *
+     * @return the number of requests that still failed when they ran out of attempts or time budget
+     */
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends failed requests again as decided by a {@link RetryPolicy}.
+ *
+ * When a request runs out of attempts, time budget or time until its deadline, its last response is returned, or
+ * its last I/O error thrown, as if it had not been retried.
+ */
+class RetryingTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final RetryPolicy policy;
+    private final LongSupplier clock;
+    private final ClientMetrics metrics;
+
+    RetryingTransport(HttpTransport delegate, RetryPolicy policy, ClientMetrics metrics) {
+        this(delegate, policy, metrics, System::nanoTime);
+    }
+
+    RetryingTransport(HttpTransport delegate, RetryPolicy policy, ClientMetrics metrics, LongSupplier clock) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        long start = clock.getAsLong();
+
+        for (int attempt = 1; ; attempt++) {
+            long wait;
+
+            try {
+                TransportResponse response = delegate.execute(request);
+                wait = retryWait(request, response, attempt, start);
+                if (wait < 0) return response;
+
+                response.close();
+            } catch (IOException e) {
+                wait = retryWait(request, e, attempt, start);
+                if (wait < 0) throw e;
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry a request");
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        return attempt(request, executor, 1, clock.getAsLong());
+    }
+
+    private CompletableFuture<TransportResponse> attempt(TransportRequest request, Executor executor, int attempt,
+                                                         long start) {
+        return delegate.executeAsync(request, executor).handle((response, failure) -> {
+            long wait;
+
+            if (failure == null) {
+                wait = retryWait(request, response, attempt, start);
+                if (wait < 0) return CompletableFuture.completedFuture(response);
+
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                    /*
+                     * the response is discarded anyway
+                     */
+                }
+            } else {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+
+                wait = cause instanceof IOException ? retryWait(request, (IOException) cause, attempt, start) : -1;
+                if (wait < 0) return CompletableFuture.<TransportResponse>failedFuture(cause);
+            }
+
+            Executor delayedExecutor = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, executor);
+            return CompletableFuture.runAsync(() -> { }, delayedExecutor)
+                .thenCompose(ignored -> attempt(request, executor, attempt + 1, start));
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * @return the time to wait before retrying, or -1 if the response is final
+     */
+    private long retryWait(TransportRequest request, TransportResponse response, int attempt, long start) {
+        if (!policy.isRetryable(response.getStatusCode())) return -1;
+
+        long backoff = policy.backoffNanos(attempt);
+        long retryAfter = RetryPolicy.retryAfterNanos(response, ZonedDateTime.now());
+        return retryWait(request, attempt, start, Math.max(backoff, retryAfter));
+    }
+
+    /**
+     * @return the time to wait before retrying, or -1 if the failure is final
+     */
+    private long retryWait(TransportRequest request, IOException failure, int attempt, long start) {
+        if (!policy.isRetryable(failure)) return -1;
+        return retryWait(request, attempt, start, policy.backoffNanos(attempt));
+    }
+
+    private long retryWait(TransportRequest request, int attempt, long start, long wait) {
+        boolean outOfTime = !policy.withinBudget(clock.getAsLong() - start, wait) || wait >= request.remainingNanos();
+
+        if (attempt >= policy.getMaxAttempts() || outOfTime) {
+            policy.recordExhausted();
+            return -1;
+        }
+
+        policy.recordRetry();
+        if (metrics != null) metrics.series(request).recordRetry();
+        return wait;
+    }
+
+}
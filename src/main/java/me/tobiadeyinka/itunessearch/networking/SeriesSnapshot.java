@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import me.tobiadeyinka.itunessearch.entities.ItunesMedia;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The metrics recorded for one endpoint, media type and country up to some point. Latencies are in nanoseconds.
+ */
+public final class SeriesSnapshot {
+
+    private final Endpoint endpoint;
+    private final ItunesMedia media;
+    private final CountryCode country;
+    private final SortedMap<Integer, Long> statusCounts;
+    private final long errorCount;
+    private final long retryCount;
+    private final long bytesRead;
+    private final Map<ClientMetrics.Phase, HistogramSnapshot> histograms;
+
+    SeriesSnapshot(Endpoint endpoint, ItunesMedia media, CountryCode country, SortedMap<Integer, Long> statusCounts,
+                   long errorCount, long retryCount, long bytesRead,
+                   EnumMap<ClientMetrics.Phase, HistogramSnapshot> histograms) {
+        this.endpoint = endpoint;
+        this.media = media;
+        this.country = country;
+        this.statusCounts = Collections.unmodifiableSortedMap(statusCounts);
+        this.errorCount = errorCount;
+        this.retryCount = retryCount;
+        this.bytesRead = bytesRead;
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     *
+     * @return the media type searched for or listed, null for lookups
+     */
+    public ItunesMedia getMedia() {
+        return media;
+    }
+
+    /**
+     *
+     * @return the store country queried, null if the query names none
+     */
+    public CountryCode getCountry() {
+        return country;
+    }
+
+    /**
+     *
+     * @return the number of responses per http status code, status codes outside 100 to 599 are counted under -1
+     */
+    public SortedMap<Integer, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    /**
+     *
+     * @return the number of responses received
+     */
+    public long getResponseCount() {
+        long count = 0;
+        for (long statusCount : statusCounts.values()) count += statusCount;
+        return count;
+    }
+
+    /**
+     *
+     * @return the number of queries that failed without a response, e.g. on an I/O error or timeout
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     *
+     * @return the number of retries
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     *
+     * @return the number of response body bytes read
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @param phase the phase of the requests
+     * @return the latencies recorded for the phase
+     */
+    public HistogramSnapshot getHistogram(ClientMetrics.Phase phase) {
+        return histograms.get(phase);
+    }
+
+    public HistogramSnapshot getQueueWait() {
+        return getHistogram(ClientMetrics.Phase.QUEUE_WAIT);
+    }
+
+    public HistogramSnapshot getConnect() {
+        return getHistogram(ClientMetrics.Phase.CONNECT);
+    }
+
+    public HistogramSnapshot getTimeToFirstByte() {
+        return getHistogram(ClientMetrics.Phase.TIME_TO_FIRST_BYTE);
+    }
+
+    public HistogramSnapshot getBodyRead() {
+        return getHistogram(ClientMetrics.Phase.BODY_READ);
+    }
+
+    public HistogramSnapshot getParse() {
+        return getHistogram(ClientMetrics.Phase.PARSE);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s media=%s country=%s statuses=%s errors=%d retries=%d bytes=%d",
+            endpoint, media, country, statusCounts, errorCount, retryCount, bytesRead);
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.net.SocketTimeoutException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent requests for the same {@link NetworkUtils#canonicalKey(java.net.URI) canonical url} share one
+ * exchange with the delegate.
+ *
+ * The first request for a url is sent, requests for the same url arriving while it is in flight wait for it
+ * instead. When its response arrives and requests are waiting, its body is read into memory so every waiting
+ * request receives its own copy of the response, or the same failure. When none are waiting, the response is
+ * handed over unread so its body can still be streamed from the connection, and requests arriving after that
+ * are sent on their own.
+ */
+class SingleFlightTransport implements HttpTransport {
+
+    private final HttpTransport delegate;
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    SingleFlightTransport(HttpTransport delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        String key = request.getCanonicalKey();
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            existing.waiters.incrementAndGet();
+            coalesced.incrementAndGet();
+            BufferedResponse buffered = await(existing.response, request);
+            if (buffered != null) return buffered.toResponse();
+
+            /*
+             * the response was handed over unread before this request started waiting, send it on its own
+             */
+            coalesced.decrementAndGet();
+            return execute(request);
+        }
+
+        TransportResponse response;
+
+        try {
+            response = delegate.execute(request);
+        } catch (IOException | RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.response.completeExceptionally(e);
+            throw e;
+        }
+
+        try {
+            return share(key, flight, response);
+        } catch (IOException | RuntimeException | Error e) {
+            flight.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> executeAsync(TransportRequest request, Executor executor) {
+        String key = request.getCanonicalKey();
+        Flight flight = new Flight();
+        Flight existing = inFlight.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            existing.waiters.incrementAndGet();
+            coalesced.incrementAndGet();
+
+            return existing.response.thenCompose(buffered -> {
+                if (buffered != null) return CompletableFuture.completedFuture(buffered.toResponse());
+
+                coalesced.decrementAndGet();
+                return executeAsync(request, executor);
+            });
+        }
+
+        CompletableFuture<TransportResponse> result = delegate.executeAsync(request, executor)
+            .thenApplyAsync(response -> {
+                try {
+                    return share(key, flight, response);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+
+        result.whenComplete((response, failure) -> {
+            if (failure == null) return;
+
+            inFlight.remove(key, flight);
+            flight.response.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause()
+                : failure);
+        });
+
+        return result;
+    }
+
+    /**
+     * end the flight now that its response arrived, buffering the response for the requests waiting on it. The
+     * flight is completed with null when none are waiting, the response is then returned unread.
+     */
+    private TransportResponse share(String key, Flight flight, TransportResponse response) throws IOException {
+        inFlight.remove(key, flight);
+
+        if (flight.waiters.get() == 0) {
+            flight.response.complete(null);
+            return response;
+        }
+
+        try (response) {
+            BufferedResponse buffered = new BufferedResponse(response);
+            flight.response.complete(buffered);
+            return buffered.toResponse();
+        }
+    }
+
+    private static BufferedResponse await(CompletableFuture<BufferedResponse> flight, TransportRequest request)
+        throws IOException {
+        try {
+            if (!request.hasDeadline()) return flight.get();
+            return flight.get(request.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Deadline passed while waiting for an identical request");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     *
+     * @return the number of requests that were answered by an identical request already in flight
+     */
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     *
+     * @return the number of distinct requests currently in flight
+     */
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * A request in flight and the requests waiting on it.
+     */
+    private static final class Flight {
+
+        /**
+         * completed with the buffered response, or with null if the response was not buffered
+         */
+        private final CompletableFuture<BufferedResponse> response = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+    }
+
+    /**
+     * A response read fully into memory, so it can be handed to several requests.
+     */
+    private static final class BufferedResponse {
+
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+        private final long connectNanos;
+        private final long timeToFirstByteNanos;
+
+        BufferedResponse(TransportResponse response) throws IOException {
+            this.statusCode = response.getStatusCode();
+            this.headers = response.getHeaders();
+            this.body = response.getBody().readAllBytes();
+            this.connectNanos = response.getConnectNanos();
+            this.timeToFirstByteNanos = response.getTimeToFirstByteNanos();
+        }
+
+        TransportResponse toResponse() {
+            return new TransportResponse(statusCode, headers, new ByteArrayInputStream(body))
+                .withTimings(connectNanos, timeToFirstByteNanos);
+        }
+
+    }
+
+}
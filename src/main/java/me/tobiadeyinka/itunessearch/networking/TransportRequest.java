@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable request handed to a {@link HttpTransport}.
+ */
+public final class TransportRequest {
+
+    /**
+     * The encoded uri to query.
+     */
+    private final URI uri;
+
+    /**
+     * The {@link System#nanoTime()} by which the request must complete, only meaningful if {@link #hasDeadline}.
+     */
+    private final long deadline;
+
+    private final boolean hasDeadline;
+
+    /**
+     * The listener told about the progress of the request, null for none.
+     */
+    private final ItunesEventListener eventListener;
+
+    /**
+     * The canonical form of the uri, computed on first use.
+     */
+    private String canonicalKey;
+
+    public TransportRequest(URI uri) {
+        this.uri = Objects.requireNonNull(uri, "uri");
+        this.deadline = 0;
+        this.hasDeadline = false;
+        this.eventListener = null;
+    }
+
+    private TransportRequest(TransportRequest request, long deadline) {
+        this.uri = request.uri;
+        this.canonicalKey = request.canonicalKey;
+        this.deadline = deadline;
+        this.hasDeadline = true;
+        this.eventListener = request.eventListener;
+    }
+
+    private TransportRequest(URI uri, TransportRequest request) {
+        this.uri = Objects.requireNonNull(uri, "uri");
+        this.deadline = request.deadline;
+        this.hasDeadline = request.hasDeadline;
+        this.eventListener = request.eventListener;
+    }
+
+    private TransportRequest(TransportRequest request, ItunesEventListener eventListener) {
+        this.uri = request.uri;
+        this.canonicalKey = request.canonicalKey;
+        this.deadline = request.deadline;
+        this.hasDeadline = request.hasDeadline;
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * @param uri the uri to query instead
+     * @return a copy of this request querying another uri, with the same deadline
+     */
+    TransportRequest withUri(URI uri) {
+        return new TransportRequest(uri, this);
+    }
+
+    /**
+     * @param eventListener the listener to tell about the progress of the request
+     * @return a copy of this request reporting to the listener, with the same deadline
+     */
+    TransportRequest withEventListener(ItunesEventListener eventListener) {
+        return eventListener == this.eventListener ? this : new TransportRequest(this, eventListener);
+    }
+
+    /**
+     * Returns a copy of this request that must complete within the timeout, counted from now. The deadline spans
+     * rate limit waits, retries and reading the response. A request that already has an earlier deadline keeps it.
+     *
+     * @param timeout the time the request may take
+     * @return a request with the deadline
+     */
+    public TransportRequest withTimeout(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        if (hasDeadline && this.deadline - deadline <= 0) return this;
+
+        return new TransportRequest(this, deadline);
+    }
+
+    /**
+     *
+     * @return the encoded uri to query
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     *
+     * @return true if the request must complete by a deadline
+     */
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     *
+     * @return the listener transports report the progress of the request to, null if nobody listens
+     */
+    public ItunesEventListener getEventListener() {
+        return eventListener;
+    }
+
+    /**
+     *
+     * @return the time left until the deadline, zero once it passed, or null if the request has no deadline.
+     *         Transports should not wait on the connection for longer.
+     */
+    public Duration getRemainingTime() {
+        return hasDeadline ? Duration.ofNanos(remainingNanos()) : null;
+    }
+
+    /**
+     *
+     * @return the nanoseconds left until the deadline, zero once it passed, {@link Long#MAX_VALUE} without one
+     */
+    long remainingNanos() {
+        return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param timeoutNanos a configured connect or read timeout, zero for none
+     * @return the timeout in milliseconds shortened to the time left until the deadline, zero for none
+     * @throws SocketTimeoutException if the deadline already passed
+     */
+    int timeoutMillis(long timeoutNanos) throws SocketTimeoutException {
+        long remaining = remainingNanos();
+
+        if (remaining == 0)
+            throw new SocketTimeoutException("Deadline passed before " + this + " was sent");
+
+        long timeout = timeoutNanos == 0 ? remaining : Math.min(timeoutNanos, remaining);
+        if (timeout == Long.MAX_VALUE) return 0;
+
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
+    }
+
+    /**
+     *
+     * @return the {@link NetworkUtils#canonicalKey(URI) canonical form} of the uri, identical for requests that
+     *         query the same thing
+     */
+    public String getCanonicalKey() {
+        String key = canonicalKey;
+
+        /*
+         * racing threads compute equal strings, so the field needs no synchronization
+         */
+        if (key == null) {
+            key = NetworkUtils.canonicalKey(uri);
+            canonicalKey = key;
+        }
+
+        return key;
+    }
+
+    /**
+     * Requests are equal if they query the same thing, i.e. their canonical keys are equal. Deadlines and listeners are ignored.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TransportRequest
+            && getCanonicalKey().equals(((TransportRequest) other).getCanonicalKey());
+    }
+
+    @Override
+    public int hashCode() {
+        return getCanonicalKey().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "GET " + uri;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.*;
+
+/**
+ * The response returned by a {@link HttpTransport}. Closing the response releases the underlying connection.
+ */
+public class TransportResponse implements Closeable {
+
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+
+    private long connectNanos = -1;
+    private long timeToFirstByteNanos = -1;
+
+    /**
+     * @param statusCode the http status code of the response
+     * @param headers the response headers. Header names are matched case insensitively, null names are ignored.
+     * @param body the response body
+     */
+    public TransportResponse(int statusCode, Map<String, List<String>> headers, InputStream body) {
+        this.statusCode = statusCode;
+        this.body = Objects.requireNonNull(body, "body");
+
+        Map<String, List<String>> normalizedHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null) {
+                normalizedHeaders.put(header.getKey(), header.getValue());
+            }
+        }
+
+        this.headers = Collections.unmodifiableMap(normalizedHeaders);
+    }
+
+    /**
+     *
+     * @return the http status code of the response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     *
+     * @return true if the status code is in the 2xx range
+     */
+    public boolean isSuccessful() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     *
+     * @return all response headers, keyed case insensitively
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name the header name, matched case insensitively
+     * @return the first value of the header, or null if the header is absent
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+    /**
+     * Reports how long the exchange took, for {@link ClientMetrics}. Transports that can't tell leave them unknown.
+     *
+     * @param connectNanos the time taken to connect, 0 for a reused connection, -1 if unknown
+     * @param timeToFirstByteNanos the time from sending the request to receiving the start of the response,
+     *                             -1 if unknown
+     * @return the current response
+     */
+    public TransportResponse withTimings(long connectNanos, long timeToFirstByteNanos) {
+        this.connectNanos = connectNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        return this;
+    }
+
+    /**
+     *
+     * @return the time taken to connect, 0 for a reused connection, -1 if unknown
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     *
+     * @return the time from sending the request to receiving the start of the response, -1 if unknown
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     *
+     * @return the response body. The stream can only be consumed once.
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Default transport, backed by a {@link HttpURLConnection} per request.
+ *
+ * With keep-alive enabled, closing a response drains and closes the body stream so the underlying socket is
+ * returned to the jvm wide keep-alive cache, whose size is controlled by the {@code http.maxConnections} system
+ * property. Use {@link PooledHttpTransport} for a pool configurable per transport instance.
+ *
+ * Connecting times out after 10 seconds and waiting for data after 30 seconds by default, shortened to the time
+ * left until the deadline of requests that have one.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    /**
+     * reuse connections between requests. Enabled by default.
+     */
+    private boolean keepAlive = true;
+
+    private SSLSocketFactory sslSocketFactory;
+
+    private long connectTimeoutNanos = Duration.ofSeconds(10).toNanos();
+    private long readTimeoutNanos = Duration.ofSeconds(30).toNanos();
+
+    /**
+     * Enables/disables connection reuse. When disabled, the connection is disconnected after every request.
+     *
+     * @param keepAlive reuse connections or not
+     * @return the current transport instance
+     */
+    public UrlConnectionTransport withKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Sets the ssl context https connections are created with. Default is the jvm default context.
+     *
+     * @param sslContext the ssl context to use
+     * @return the current transport instance
+     */
+    public UrlConnectionTransport withSslContext(SSLContext sslContext) {
+        this.sslSocketFactory = sslContext.getSocketFactory();
+        return this;
+    }
+
+    /**
+     * Sets how long opening a connection may take.
+     *
+     * @param connectTimeout the connect timeout, zero for none
+     * @return the current transport instance
+     */
+    public UrlConnectionTransport withConnectTimeout(Duration connectTimeout) {
+        if (connectTimeout.isNegative())
+            throw new IllegalArgumentException("connectTimeout must not be negative");
+
+        this.connectTimeoutNanos = connectTimeout.toNanos();
+        return this;
+    }
+
+    /**
+     * Sets how long a read waits for data from the server.
+     *
+     * @param readTimeout the read timeout, zero for none
+     * @return the current transport instance
+     */
+    public UrlConnectionTransport withReadTimeout(Duration readTimeout) {
+        if (readTimeout.isNegative())
+            throw new IllegalArgumentException("readTimeout must not be negative");
+
+        this.readTimeoutNanos = readTimeout.toNanos();
+        return this;
+    }
+
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) request.getUri().toURL().openConnection();
+        urlConnection.setConnectTimeout(request.timeoutMillis(connectTimeoutNanos));
+        urlConnection.setReadTimeout(request.timeoutMillis(readTimeoutNanos));
+
+        if (sslSocketFactory != null && urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) urlConnection).setSSLSocketFactory(sslSocketFactory);
+        }
+
+        if (!keepAlive) {
+            urlConnection.setRequestProperty("Connection", "close");
+        }
+
+        try {
+            long start = System.nanoTime();
+            urlConnection.connect();
+            long connected = System.nanoTime();
+
+            int statusCode = urlConnection.getResponseCode();
+            long firstByte = System.nanoTime();
+
+            ItunesEventListener listener = request.getEventListener();
+            if (listener != null) listener.firstByte(request, statusCode);
+
+            InputStream body = statusCode >= 400 ? urlConnection.getErrorStream() : urlConnection.getInputStream();
+
+            if (body == null) {
+                body = new ByteArrayInputStream(new byte[0]);
+            }
+
+            return new TransportResponse(
+                statusCode, urlConnection.getHeaderFields(), new ConnectionStream(body, urlConnection, keepAlive)
+            ).withTimings(connected - start, firstByte - connected);
+        } catch (IOException | RuntimeException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return the connection reuse setting
+     */
+    public boolean keepAliveEnabled() {
+        return keepAlive;
+    }
+
+    /**
+     *
+     * @return how long to wait for a connection to be opened, zero for none
+     */
+    public Duration getConnectTimeout() {
+        return Duration.ofNanos(connectTimeoutNanos);
+    }
+
+    /**
+     *
+     * @return how long to wait for data from an open connection, zero for none
+     */
+    public Duration getReadTimeout() {
+        return Duration.ofNanos(readTimeoutNanos);
+    }
+
+    /**
+     * Body stream that releases its connection once closed.
+     */
+    private static class ConnectionStream extends FilterInputStream {
+
+        private final HttpURLConnection urlConnection;
+        private final boolean keepAlive;
+
+        ConnectionStream(InputStream body, HttpURLConnection urlConnection, boolean keepAlive) {
+            super(body);
+            this.urlConnection = urlConnection;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!keepAlive) {
+                try {
+                    super.close();
+                } finally {
+                    urlConnection.disconnect();
+                }
+
+                return;
+            }
+
+            /*
+             * the connection only goes back to the keep-alive cache once the body has been read completely
+             */
+            try {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    /* drain */
+                }
+            } finally {
+                super.close();
+            }
+        }
+
+    }
+
+}
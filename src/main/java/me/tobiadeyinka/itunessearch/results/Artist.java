@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * An artist, author or other creator.
+ */
+public class Artist extends ItunesResult {
+
+    Artist(RawJson json) {
+        super(json);
+    }
+
+    /**
+     *
+     * @return the type of the artist, e.g. Artist, Author or Movie Artist
+     */
+    public String getArtistType() {
+        return json.string("artistType");
+    }
+
+    public String getArtistLinkUrl() {
+        return json.string("artistLinkUrl");
+    }
+
+    public Long getAmgArtistId() {
+        return json.longValue("amgArtistId");
+    }
+
+    public Long getPrimaryGenreId() {
+        return json.longValue("primaryGenreId");
+    }
+
+}
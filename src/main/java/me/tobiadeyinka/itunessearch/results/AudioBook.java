@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * An audiobook. The api reports audiobooks as collections.
+ */
+public class AudioBook extends Collection {
+
+    AudioBook(RawJson json) {
+        super(json);
+    }
+
+    public String getDescription() {
+        return json.string("description");
+    }
+
+    public String getPreviewUrl() {
+        return json.string("previewUrl");
+    }
+
+}
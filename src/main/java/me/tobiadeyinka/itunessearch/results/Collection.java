@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * A collection of tracks: an album, compilation or tv season.
+ */
+public class Collection extends ItunesResult {
+
+    Collection(RawJson json) {
+        super(json);
+    }
+
+    public Long getCollectionId() {
+        return json.longValue("collectionId");
+    }
+
+    public String getCollectionName() {
+        return json.string("collectionName");
+    }
+
+    public String getCollectionCensoredName() {
+        return json.string("collectionCensoredName");
+    }
+
+    /**
+     *
+     * @return the type of the collection, e.g. Album, Compilation or TV Season
+     */
+    public String getCollectionType() {
+        return json.string("collectionType");
+    }
+
+    public String getCollectionViewUrl() {
+        return json.string("collectionViewUrl");
+    }
+
+    public Double getCollectionPrice() {
+        return json.doubleValue("collectionPrice");
+    }
+
+    public Integer getTrackCount() {
+        return json.intValue("trackCount");
+    }
+
+    public String getCopyright() {
+        return json.string("copyright");
+    }
+
+    /**
+     *
+     * @return explicit, cleaned or notExplicit
+     */
+    public String getCollectionExplicitness() {
+        return json.string("collectionExplicitness");
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import java.util.List;
+
+/**
+ * An ebook. The author is reported as the artist.
+ */
+public class EBook extends ItunesResult {
+
+    EBook(RawJson json) {
+        super(json);
+    }
+
+    public Long getTrackId() {
+        return json.longValue("trackId");
+    }
+
+    public String getTrackName() {
+        return json.string("trackName");
+    }
+
+    public String getTrackViewUrl() {
+        return json.string("trackViewUrl");
+    }
+
+    public String getDescription() {
+        return json.string("description");
+    }
+
+    public Double getPrice() {
+        return json.doubleValue("price");
+    }
+
+    public String getFormattedPrice() {
+        return json.string("formattedPrice");
+    }
+
+    public Double getAverageUserRating() {
+        return json.doubleValue("averageUserRating");
+    }
+
+    public Long getUserRatingCount() {
+        return json.longValue("userRatingCount");
+    }
+
+    public List<String> getGenres() {
+        return json.strings("genres");
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A single result returned by a search or lookup.
+ *
+ * Fields are decoded from the response buffer on first access, so reading a couple of fields of a result costs
+ * only those fields. Getters return null when the api did not send the field. Results are thread safe.
+ */
+public abstract class ItunesResult {
+
+    final RawJson json;
+
+    ItunesResult(RawJson json) {
+        this.json = json;
+    }
+
+    /**
+     * wrap a result that has already been parsed, e.g. one returned by a lookup
+     *
+     * @param result a single element of a response's results array
+     * @return the typed result
+     */
+    public static ItunesResult from(JSONObject result) {
+        byte[] bytes = result.toString().getBytes(StandardCharsets.UTF_8);
+        return ItunesResults.of(new RawJson(bytes, 0, bytes.length));
+    }
+
+    /**
+     *
+     * @return the wrapper type of the result, e.g. track, collection or artist
+     */
+    public String getWrapperType() {
+        return json.string("wrapperType");
+    }
+
+    /**
+     *
+     * @return the kind of content, e.g. song, podcast or feature-movie
+     */
+    public String getKind() {
+        return json.string("kind");
+    }
+
+    public Long getArtistId() {
+        return json.longValue("artistId");
+    }
+
+    public String getArtistName() {
+        return json.string("artistName");
+    }
+
+    public String getArtistViewUrl() {
+        return json.string("artistViewUrl");
+    }
+
+    public String getPrimaryGenreName() {
+        return json.string("primaryGenreName");
+    }
+
+    public String getCountry() {
+        return json.string("country");
+    }
+
+    public String getCurrency() {
+        return json.string("currency");
+    }
+
+    public String getArtworkUrl100() {
+        return json.string("artworkUrl100");
+    }
+
+    /**
+     *
+     * @return the release date, or null if it is absent or not a valid instant
+     */
+    public Instant getReleaseDate() {
+        String releaseDate = json.string("releaseDate");
+        if (releaseDate == null) return null;
+
+        try {
+            return Instant.parse(releaseDate);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param key the field name
+     * @return true if the api sent the field
+     */
+    public boolean has(String key) {
+        return json.has(key);
+    }
+
+    /**
+     * read a field without a typed getter
+     *
+     * @param key the field name
+     * @return the field as a string, or null if it is absent
+     */
+    public String getString(String key) {
+        return json.string(key);
+    }
+
+    /**
+     * read a numeric field without a typed getter
+     *
+     * @param key the field name
+     * @return the field as a long, or null if it is absent
+     */
+    public Long getLong(String key) {
+        return json.longValue(key);
+    }
+
+    /**
+     * read a numeric field without a typed getter
+     *
+     * @param key the field name
+     * @return the field as a double, or null if it is absent
+     */
+    public Double getDouble(String key) {
+        return json.doubleValue(key);
+    }
+
+    /**
+     *
+     * @return the whole result as a {@link JSONObject}, decoding every field
+     */
+    public JSONObject toJSONObject() {
+        return new JSONObject(json.text());
+    }
+
+    /**
+     *
+     * @return the result's json text
+     */
+    @Override
+    public String toString() {
+        return json.text();
+    }
+
+}
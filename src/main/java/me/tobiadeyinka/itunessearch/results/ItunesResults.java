@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds typed results from response bodies.
+ *
+ * Only the structure of the body is scanned to find where each result starts and ends, no field is decoded until
+ * it is read. The results keep a reference to the body.
+ */
+public final class ItunesResults {
+
+    private ItunesResults() {
+    }
+
+    /**
+     * @param body a search or lookup response body, as utf-8 bytes
+     * @return the typed results, in order
+     * @throws JSONException if the body is not a json object with a results array of objects
+     */
+    public static List<ItunesResult> parse(byte[] body) {
+        int end = body.length;
+        int i = skipWhitespace(body, 0, end);
+        if (i == end || body[i] != '{') throw new JSONException("A JSONObject text must begin with '{'");
+
+        int objectEnd = RawJson.skipContainer(body, i, end);
+        int arrayStart = new RawJson(body, i, objectEnd).find("results");
+
+        if (arrayStart < 0) return Collections.emptyList();
+        if (body[arrayStart] != '[') throw new JSONException("Expected results to be an array");
+
+        List<ItunesResult> results = new ArrayList<>();
+        int arrayEnd = RawJson.skipContainer(body, arrayStart, objectEnd) - 1;
+        i = skipWhitespace(body, arrayStart + 1, arrayEnd);
+
+        while (i < arrayEnd) {
+            if (body[i] != '{') throw new JSONException("Expected every result to be an object");
+
+            int resultEnd = RawJson.skipContainer(body, i, arrayEnd);
+            results.add(of(new RawJson(body, i, resultEnd)));
+
+            i = skipWhitespace(body, resultEnd, arrayEnd);
+            if (i < arrayEnd && body[i] == ',') i = skipWhitespace(body, i + 1, arrayEnd);
+        }
+
+        return results;
+    }
+
+    private static int skipWhitespace(byte[] body, int i, int end) {
+        while (i < end && (body[i] == ' ' || body[i] == '\n' || body[i] == '\r' || body[i] == '\t')) i++;
+        return i;
+    }
+
+    /**
+     * choose the type of a result from its wrapper type and kind
+     */
+    static ItunesResult of(RawJson json) {
+        String wrapperType = json.string("wrapperType");
+
+        if ("artist".equals(wrapperType)) return new Artist(json);
+        if ("collection".equals(wrapperType)) return new Collection(json);
+        if ("audiobook".equals(wrapperType)) return new AudioBook(json);
+        if ("software".equals(wrapperType)) return new Software(json);
+
+        String kind = json.string("kind");
+        if (kind == null) return new Track(json);
+
+        switch (kind) {
+            case "podcast":
+                return new Podcast(json);
+            case "feature-movie":
+                return new Movie(json);
+            case "tv-episode":
+                return new TvEpisode(json);
+            case "ebook":
+                return new EBook(json);
+            case "software":
+            case "mac-software":
+                return new Software(json);
+            default:
+                return new Track(json);
+        }
+    }
+
+}
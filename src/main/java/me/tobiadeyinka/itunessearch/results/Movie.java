@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * A feature film or short film.
+ */
+public class Movie extends Track {
+
+    Movie(RawJson json) {
+        super(json);
+    }
+
+    /**
+     *
+     * @return the age rating, e.g. PG-13
+     */
+    public String getContentAdvisoryRating() {
+        return json.string("contentAdvisoryRating");
+    }
+
+    public String getShortDescription() {
+        return json.string("shortDescription");
+    }
+
+    public String getLongDescription() {
+        return json.string("longDescription");
+    }
+
+}
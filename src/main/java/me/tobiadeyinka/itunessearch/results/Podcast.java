@@ -0,0 +1,47 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import java.util.List;
+
+/**
+ * A podcast. The podcast's episode count is its track count.
+ */
+public class Podcast extends Track {
+
+    Podcast(RawJson json) {
+        super(json);
+    }
+
+    /**
+     *
+     * @return the url of the podcast's rss feed
+     */
+    public String getFeedUrl() {
+        return json.string("feedUrl");
+    }
+
+    public String getArtworkUrl600() {
+        return json.string("artworkUrl600");
+    }
+
+    public List<String> getGenres() {
+        return json.strings("genres");
+    }
+
+}
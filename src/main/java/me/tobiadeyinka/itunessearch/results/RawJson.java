@@ -0,0 +1,356 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A json object left undecoded inside the buffer it was received in.
+ *
+ * Members are located by scanning the object's bytes, and only the requested member's value is decoded. Decoded
+ * values are kept by member and type, so each member is decoded at most once as each type. Structural characters
+ * are all ascii, so the bytes can be scanned without decoding the utf-8 text around them.
+ *
+ * Instances are thread safe. Threads reading the same member for the first time at once may both decode it,
+ * which only costs the extra work.
+ */
+final class RawJson {
+
+    private static final Object ABSENT = new Object();
+
+    private final byte[] buffer;
+    private final int start;
+    private final int end;
+
+    /**
+     * the decoded values by member, one map per type, each created on first use
+     */
+    private final AtomicReferenceArray<Map<String, Object>> decoded = new AtomicReferenceArray<>(Type.values().length);
+
+    /**
+     * @param buffer the buffer holding the object
+     * @param start the index of the object's opening brace
+     * @param end the index after the object's closing brace
+     */
+    RawJson(byte[] buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    String string(String key) {
+        return (String) value(key, Type.STRING);
+    }
+
+    Long longValue(String key) {
+        return (Long) value(key, Type.LONG);
+    }
+
+    Integer intValue(String key) {
+        Long value = longValue(key);
+        return value == null ? null : value.intValue();
+    }
+
+    Double doubleValue(String key) {
+        return (Double) value(key, Type.DOUBLE);
+    }
+
+    Boolean booleanValue(String key) {
+        return (Boolean) value(key, Type.BOOLEAN);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<String> strings(String key) {
+        return (List<String>) value(key, Type.STRINGS);
+    }
+
+    boolean has(String key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the object's json text
+     */
+    String text() {
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private Object value(String key, Type type) {
+        Map<String, Object> decoded = this.decoded.get(type.ordinal());
+
+        if (decoded == null) {
+            this.decoded.compareAndSet(type.ordinal(), null, new ConcurrentHashMap<>(8));
+            decoded = this.decoded.get(type.ordinal());
+        }
+
+        Object value = decoded.get(key);
+
+        if (value == null) {
+            int valueStart = find(key);
+            value = valueStart < 0 || buffer[valueStart] == 'n' ? ABSENT : decode(valueStart, type);
+            decoded.put(key, value);
+        }
+
+        return value == ABSENT ? null : value;
+    }
+
+    /**
+     * @return the index in the buffer of the first byte of the member's value, or -1 if the object has no such
+     *         member
+     */
+    int find(String key) {
+        int i = skipWhitespace(start + 1);
+
+        while (i < end && buffer[i] == '"') {
+            int keyEnd = skipString(i);
+            boolean matches = keyEquals(i + 1, keyEnd - 1, key);
+
+            i = skipWhitespace(keyEnd);
+            if (buffer[i] != ':') throw malformed(i);
+            i = skipWhitespace(i + 1);
+
+            if (matches) return i;
+
+            i = skipWhitespace(skipValue(i));
+            if (buffer[i] == ',') i = skipWhitespace(i + 1);
+        }
+
+        return -1;
+    }
+
+    /**
+     * keys are compared as raw bytes, which is exact for the ascii keys used by the api
+     */
+    private boolean keyEquals(int keyStart, int keyEnd, String key) {
+        if (keyEnd - keyStart != key.length()) return false;
+
+        for (int i = 0; i < key.length(); i++) {
+            if (buffer[keyStart + i] != key.charAt(i)) return false;
+        }
+
+        return true;
+    }
+
+    private Object decode(int i, Type type) {
+        switch (type) {
+            case STRING:
+                return buffer[i] == '"' ? decodeString(i) : new String(buffer, i, skipValue(i) - i, StandardCharsets.US_ASCII);
+            case LONG:
+                return decodeLong(i);
+            case DOUBLE:
+                return decodeDouble(i);
+            case BOOLEAN:
+                if (buffer[i] == 't' || buffer[i] == 'f') return buffer[i] == 't';
+                throw notA("boolean", i);
+            case STRINGS:
+                return decodeStrings(i);
+            default:
+                throw new IllegalArgumentException(type.name());
+        }
+    }
+
+    /**
+     * @throws JSONException if the value is not an integer, like {@link org.json.JSONObject#getLong(String)}
+     */
+    private Long decodeLong(int i) {
+        int valueStart = i;
+
+        /*
+         * some numbers, like fileSizeBytes, are sent as strings
+         */
+        int valueEnd = buffer[i] == '"' ? skipString(i) - 1 : skipValue(i);
+        if (buffer[i] == '"') i++;
+
+        boolean negative = buffer[i] == '-';
+        if (negative) i++;
+        if (i == valueEnd) throw notA("long", valueStart);
+
+        long value = 0;
+
+        try {
+            for (; i < valueEnd; i++) {
+                byte digit = buffer[i];
+                if (digit < '0' || digit > '9') throw notA("long", valueStart);
+                value = Math.addExact(Math.multiplyExact(value, 10), digit - '0');
+            }
+        } catch (ArithmeticException e) {
+            throw notA("long", valueStart);
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * @throws JSONException if the value is not a number, like {@link org.json.JSONObject#getDouble(String)}
+     */
+    private Double decodeDouble(int i) {
+        int valueStart = i;
+        int valueEnd = buffer[i] == '"' ? skipString(i) - 1 : skipValue(i);
+        if (buffer[i] == '"') i++;
+
+        try {
+            return Double.parseDouble(new String(buffer, i, valueEnd - i, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw notA("double", valueStart);
+        }
+    }
+
+    private String decodeString(int quote) {
+        int stringEnd = skipString(quote) - 1;
+        int i = quote + 1;
+
+        boolean escaped = false;
+        for (int j = i; j < stringEnd; j++) {
+            if (buffer[j] == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+
+        if (!escaped) {
+            return new String(buffer, i, stringEnd - i, StandardCharsets.UTF_8);
+        }
+
+        StringBuilder value = new StringBuilder(stringEnd - i);
+        int runStart = i;
+
+        while (i < stringEnd) {
+            if (buffer[i] != '\\') {
+                i++;
+                continue;
+            }
+
+            value.append(new String(buffer, runStart, i - runStart, StandardCharsets.UTF_8));
+            byte escape = buffer[i + 1];
+
+            switch (escape) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    value.append((char) Integer.parseInt(new String(buffer, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                default: value.append((char) escape);
+            }
+
+            i += 2;
+            runStart = i;
+        }
+
+        return value.append(new String(buffer, runStart, stringEnd - runStart, StandardCharsets.UTF_8)).toString();
+    }
+
+    private List<String> decodeStrings(int i) {
+        if (buffer[i] != '[') throw malformed(i);
+
+        List<String> values = new ArrayList<>();
+        i = skipWhitespace(i + 1);
+
+        while (buffer[i] != ']') {
+            values.add(buffer[i] == '"' ? decodeString(i) : new String(buffer, i, skipValue(i) - i, StandardCharsets.US_ASCII));
+            i = skipWhitespace(skipValue(i));
+            if (buffer[i] == ',') i = skipWhitespace(i + 1);
+        }
+
+        return Collections.unmodifiableList(values);
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < end && (buffer[i] == ' ' || buffer[i] == '\n' || buffer[i] == '\r' || buffer[i] == '\t')) i++;
+        return i;
+    }
+
+    /**
+     * @return the index after the value starting at i
+     */
+    private int skipValue(int i) {
+        byte first = buffer[i];
+
+        if (first == '"') return skipString(i);
+        if (first == '{' || first == '[') return skipContainer(buffer, i, end);
+
+        while (i < end && buffer[i] != ',' && buffer[i] != '}' && buffer[i] != ']'
+            && buffer[i] != ' ' && buffer[i] != '\n' && buffer[i] != '\r' && buffer[i] != '\t') i++;
+
+        return i;
+    }
+
+    private int skipString(int quote) {
+        return skipString(buffer, quote, end);
+    }
+
+    /**
+     * @return the index after the closing quote of the string starting at quote
+     */
+    static int skipString(byte[] buffer, int quote, int limit) {
+        for (int i = quote + 1; i < limit; i++) {
+            if (buffer[i] == '\\') {
+                i++;
+            } else if (buffer[i] == '"') {
+                return i + 1;
+            }
+        }
+
+        throw new JSONException("Unterminated string at " + quote);
+    }
+
+    /**
+     * @return the index after the closing bracket of the object or array starting at open
+     */
+    static int skipContainer(byte[] buffer, int open, int limit) {
+        int depth = 0;
+
+        for (int i = open; i < limit; i++) {
+            byte b = buffer[i];
+
+            if (b == '"') {
+                i = skipString(buffer, i, limit) - 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if ((b == '}' || b == ']') && --depth == 0) {
+                return i + 1;
+            }
+        }
+
+        throw new JSONException("Unterminated object or array at " + open);
+    }
+
+    private JSONException malformed(int i) {
+        return new JSONException("Malformed json at " + i);
+    }
+
+    private JSONException notA(String type, int i) {
+        return new JSONException("Value at " + i + " is not a " + type);
+    }
+
+    private enum Type {
+        STRING, LONG, DOUBLE, BOOLEAN, STRINGS
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * A track: a song, music video or other single item. Movies, tv episodes and podcasts have their own subtypes.
+ */
+public class Track extends ItunesResult {
+
+    Track(RawJson json) {
+        super(json);
+    }
+
+    public Long getTrackId() {
+        return json.longValue("trackId");
+    }
+
+    public String getTrackName() {
+        return json.string("trackName");
+    }
+
+    public String getTrackCensoredName() {
+        return json.string("trackCensoredName");
+    }
+
+    public Long getCollectionId() {
+        return json.longValue("collectionId");
+    }
+
+    public String getCollectionName() {
+        return json.string("collectionName");
+    }
+
+    public String getTrackViewUrl() {
+        return json.string("trackViewUrl");
+    }
+
+    public String getPreviewUrl() {
+        return json.string("previewUrl");
+    }
+
+    public Double getTrackPrice() {
+        return json.doubleValue("trackPrice");
+    }
+
+    public Double getCollectionPrice() {
+        return json.doubleValue("collectionPrice");
+    }
+
+    public Long getTrackTimeMillis() {
+        return json.longValue("trackTimeMillis");
+    }
+
+    public Integer getTrackNumber() {
+        return json.intValue("trackNumber");
+    }
+
+    public Integer getTrackCount() {
+        return json.intValue("trackCount");
+    }
+
+    public Integer getDiscNumber() {
+        return json.intValue("discNumber");
+    }
+
+    public Integer getDiscCount() {
+        return json.intValue("discCount");
+    }
+
+    /**
+     *
+     * @return explicit, cleaned or notExplicit
+     */
+    public String getTrackExplicitness() {
+        return json.string("trackExplicitness");
+    }
+
+    public Boolean isStreamable() {
+        return json.booleanValue("isStreamable");
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+/**
+ * An episode of a tv show. The show is reported as the artist and the season as the collection.
+ */
+public class TvEpisode extends Track {
+
+    TvEpisode(RawJson json) {
+        super(json);
+    }
+
+    public String getShowName() {
+        return getArtistName();
+    }
+
+    public String getSeasonName() {
+        return getCollectionName();
+    }
+
+    public Integer getEpisodeNumber() {
+        return getTrackNumber();
+    }
+
+    /**
+     *
+     * @return the age rating, e.g. TV-14
+     */
+    public String getContentAdvisoryRating() {
+        return json.string("contentAdvisoryRating");
+    }
+
+    public String getShortDescription() {
+        return json.string("shortDescription");
+    }
+
+    public String getLongDescription() {
+        return json.string("longDescription");
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import me.tobiadeyinka.itunessearch.exceptions.InvalidParameterException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.TransportRequest;
+import me.tobiadeyinka.itunessearch.results.ItunesResult;
+
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, validated and encoded search, created by {@link Search#compile()}.
+ *
+ * The url is built, encoded and canonicalized once when the query is compiled, executing the query repeats none
+ * of that work. Queries are thread safe and can be shared and executed any number of times. Changing the search
+ * the query was compiled from does not change the query.
+ *
+ * Two queries are equal if they query the same thing, whichever client they are executed with.
+ */
+public final class CompiledQuery {
+
+    /**
+     * The largest number of results the api returns for a single request.
+     */
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private final TransportRequest request;
+    private final byte[] encodedUrl;
+
+    /**
+     * The client the query is executed with, null for the default client at the time of execution.
+     */
+    private final ItunesClient client;
+
+    CompiledQuery(URI encodedUri, ItunesClient client) {
+        this(new TransportRequest(encodedUri), client);
+    }
+
+    private CompiledQuery(TransportRequest request, ItunesClient client) {
+        this.request = request;
+        this.encodedUrl = request.getUri().toASCIIString().getBytes(StandardCharsets.US_ASCII);
+        this.client = client;
+
+        /*
+         * compute the key up front, so executions never do
+         */
+        request.getCanonicalKey();
+    }
+
+    /**
+     * @param client the client to execute the query with
+     * @return a query identical to this one, executed with the given client
+     */
+    public CompiledQuery withClient(ItunesClient client) {
+        return new CompiledQuery(request, client);
+    }
+
+    /**
+     * execute the query
+     *
+     * @return A {@link JSONObject} object containing the results.
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any issues occur while
+     *         communicating with the iTunes api.
+     */
+    public JSONObject execute() {
+        return new SearchManager(getClient()).executeSearch(request);
+    }
+
+    /**
+     * execute the query, failing if it does not complete within the timeout
+     *
+     * @param timeout the time the query may take, including rate limit waits, retries and reading the response
+     * @return A {@link JSONObject} object containing the results.
+     * @throws me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException if the query does not complete in
+     *         time
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any issues occur while
+     *         communicating with the iTunes api.
+     */
+    public JSONObject execute(Duration timeout) {
+        return new SearchManager(getClient()).executeSearch(request.withTimeout(timeout));
+    }
+
+    /**
+     * execute the query, handing each result to the handler as soon as it is parsed
+     *
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any issues occur while
+     *         communicating with the iTunes api.
+     */
+    public int execute(Consumer<? super JSONObject> resultHandler) {
+        return new SearchManager(getClient()).executeSearch(request, resultHandler);
+    }
+
+    /**
+     * execute the query without blocking the calling thread
+     *
+     * @return a future completed with a {@link JSONObject} object containing the results, or completed
+     *         exceptionally with a {@link me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException}
+     *         if any issues occur while communicating with the iTunes api.
+     */
+    public CompletableFuture<JSONObject> executeAsync() {
+        return new SearchManager(getClient()).executeSearchAsync(request);
+    }
+
+    /**
+     * execute the query without blocking the calling thread, failing if it does not complete within the timeout
+     *
+     * @param timeout the time the query may take, including rate limit waits, retries and reading the response
+     * @return a future completed with a {@link JSONObject} object containing the results, or completed
+     *         exceptionally with a {@link me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException} if the
+     *         query does not complete in time
+     */
+    public CompletableFuture<JSONObject> executeAsync(Duration timeout) {
+        return new SearchManager(getClient()).executeSearchAsync(request.withTimeout(timeout));
+    }
+
+    /**
+     * execute the query and return its results as typed objects
+     *
+     * @return the results, in order
+     * @throws me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException if any issues occur while
+     *         communicating with the iTunes api.
+     */
+    public List<ItunesResult> fetchResults() {
+        return new SearchManager(getClient()).fetchResults(request);
+    }
+
+    /**
+     * execute the query without blocking the calling thread and return its results as typed objects
+     *
+     * @return a future completed with the results, or completed exceptionally with a
+     *         {@link me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException} if any issues occur
+     *         while communicating with the iTunes api.
+     */
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync() {
+        return new SearchManager(getClient()).fetchResultsAsync(request);
+    }
+
+    /**
+     * stream all results of the query, page by page. Pages are requested with the {@code offset} parameter, the
+     * next page while the current one is consumed, until a page holds fewer results than the page size. The query's
+     * own limit is ignored, use {@link Stream#limit(long)} to cap the number of results. Closing the stream
+     * cancels the request for the next page.
+     *
+     * @param pageSize the number of results requested per page, at most {@link #MAX_PAGE_SIZE}
+     * @return a lazily fetched stream of the results, in order. Failed page requests surface as a
+     *         {@link me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException} thrown by the stream.
+     * @throws InvalidParameterException if the page size is not between 1 and {@link #MAX_PAGE_SIZE}
+     */
+    public Stream<JSONObject> stream(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+            throw new InvalidParameterException("Search stream failed: page size must be between 1 and " + MAX_PAGE_SIZE);
+
+        PagedResultIterator results = new PagedResultIterator(getClient(), request.getUri(), pageSize);
+        Spliterator<JSONObject> spliterator = Spliterators.spliteratorUnknownSize(
+            results, Spliterator.ORDERED | Spliterator.NONNULL
+        );
+
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
+
+    /**
+     *
+     * @return the encoded uri queried
+     */
+    public URI getUri() {
+        return request.getUri();
+    }
+
+    /**
+     *
+     * @return a copy of the encoded url, as ascii bytes
+     */
+    public byte[] getEncodedUrl() {
+        return encodedUrl.clone();
+    }
+
+    /**
+     *
+     * @return the canonical form of the url, used as the response cache key
+     */
+    public String getCacheKey() {
+        return request.getCanonicalKey();
+    }
+
+    /**
+     *
+     * @return the client the query is executed with
+     */
+    public ItunesClient getClient() {
+        return client != null ? client : ItunesClient.getDefault();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CompiledQuery && request.equals(((CompiledQuery) other).request);
+    }
+
+    @Override
+    public int hashCode() {
+        return request.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return request.getUri().toString();
+    }
+
+}
@@ -0,0 +1,216 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import me.tobiadeyinka.itunessearch.exceptions.InvalidParameterException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+
+import org.json.JSONObject;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs the same search against several storefronts, created by {@link Search#fanOut(java.util.Collection)}.
+ *
+ * At most {@link #withParallelism(int) parallelism} storefronts are queried at once, through the search's client,
+ * so the client's rate limiters apply to every request. Responses are handed over as they complete, and the
+ * search can be given a deadline after which whatever completed is returned. Every request carries the time left
+ * until that deadline, so requests still waiting on a rate limiter or the network are abandoned with it.
+ */
+public class CountryFanOut {
+
+    private final Map<CountryCode, CompiledQuery> queries;
+
+    /**
+     * The number of storefronts queried at once. Default is 4.
+     */
+    private int parallelism = 4;
+
+    /**
+     * How long the whole fan-out may take. Default is no deadline.
+     */
+    private Duration deadline;
+
+    /**
+     * @param queries the compiled search for every storefront, in the order given by the caller
+     */
+    CountryFanOut(Map<CountryCode, CompiledQuery> queries) {
+        this.queries = Collections.unmodifiableMap(queries);
+    }
+
+    /**
+     * Sets the number of storefronts queried at once. Default is 4.
+     *
+     * @param parallelism the maximum number of requests in flight
+     * @return the current fan-out instance
+     */
+    public CountryFanOut withParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new InvalidParameterException("Fan-out failed: parallelism must be positive");
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Sets how long the whole fan-out may take. Storefronts that have not answered by then are reported as
+     * unfinished. Default is no deadline.
+     *
+     * @param deadline the maximum duration, null for none
+     * @return the current fan-out instance
+     */
+    public CountryFanOut withDeadline(Duration deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * query every storefront and wait until all answered or the deadline passed
+     *
+     * @return the responses, failures and unfinished storefronts
+     */
+    public FanOutResult execute() {
+        return execute((country, response) -> { });
+    }
+
+    /**
+     * query every storefront, handing each response to the handler as soon as it arrives. The handler is called
+     * on the calling thread, one response at a time, in the order the responses complete.
+     *
+     * @param countryHandler receives each storefront's response
+     * @return the responses, failures and unfinished storefronts
+     */
+    public FanOutResult execute(BiConsumer<CountryCode, JSONObject> countryHandler) {
+        long deadlineNanos = deadline == null ? Long.MAX_VALUE : System.nanoTime() + deadline.toNanos();
+
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        Iterator<Map.Entry<CountryCode, CompiledQuery>> pending = queries.entrySet().iterator();
+        Map<CountryCode, CompletableFuture<JSONObject>> inFlight = new LinkedHashMap<>();
+
+        Map<CountryCode, JSONObject> responses = new LinkedHashMap<>();
+        Map<CountryCode, RuntimeException> failures = new LinkedHashMap<>();
+
+        try {
+            while (true) {
+                while (inFlight.size() < parallelism && pending.hasNext()
+                    && (deadline == null || deadlineNanos - System.nanoTime() > 0)) {
+                    Map.Entry<CountryCode, CompiledQuery> query = pending.next();
+                    CountryCode country = query.getKey();
+                    CompiledQuery compiled = query.getValue();
+
+                    CompletableFuture<JSONObject> response = deadline == null
+                        ? compiled.executeAsync()
+                        : compiled.executeAsync(Duration.ofNanos(deadlineNanos - System.nanoTime()));
+
+                    inFlight.put(country, response);
+                    response.whenComplete((body, failure) -> completions.add(new Completion(country, body, failure)));
+                }
+
+                if (inFlight.isEmpty()) break;
+
+                Completion completion = deadline == null
+                    ? completions.take()
+                    : completions.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                if (completion == null) break;
+                inFlight.remove(completion.country);
+
+                RuntimeException failure = completion.failure == null ? null : unwrap(completion.failure);
+
+                /*
+                 * a storefront that could not answer within the deadline did not fail, it is unfinished
+                 */
+                if (failure instanceof RequestTimeoutException && deadline != null) continue;
+
+                if (failure != null) {
+                    failures.put(completion.country, failure);
+                } else {
+                    responses.put(completion.country, completion.response);
+                    countryHandler.accept(completion.country, completion.response);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.values().forEach(response -> response.cancel(false));
+        }
+
+        Set<CountryCode> unfinished = new LinkedHashSet<>(queries.keySet());
+        unfinished.removeAll(responses.keySet());
+        unfinished.removeAll(failures.keySet());
+
+        return new FanOutResult(queries.keySet(), responses, failures, unfinished);
+    }
+
+    private static RuntimeException unwrap(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause()
+            : failure;
+
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    /**
+     *
+     * @return the storefronts queried, in order
+     */
+    public Set<CountryCode> getCountries() {
+        return queries.keySet();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     *
+     * @return how long the whole fan-out may take, null if there is no deadline
+     */
+    public Duration getDeadline() {
+        return deadline;
+    }
+
+    private static final class Completion {
+
+        private final CountryCode country;
+        private final JSONObject response;
+        private final Throwable failure;
+
+        Completion(CountryCode country, JSONObject response, Throwable failure) {
+            this.country = country;
+            this.response = response;
+            this.failure = failure;
+        }
+
+    }
+
+}
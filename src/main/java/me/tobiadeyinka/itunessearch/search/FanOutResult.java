@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of running a search against several storefronts.
+ */
+public class FanOutResult {
+
+    private final Map<CountryCode, JSONObject> responses;
+    private final Map<CountryCode, RuntimeException> failures;
+    private final Set<CountryCode> unfinished;
+
+    /**
+     * @param countries the storefronts queried, in the order their responses are merged
+     */
+    FanOutResult(Set<CountryCode> countries, Map<CountryCode, JSONObject> responses,
+                 Map<CountryCode, RuntimeException> failures, Set<CountryCode> unfinished) {
+        Map<CountryCode, JSONObject> orderedResponses = new LinkedHashMap<>();
+
+        for (CountryCode country : countries) {
+            if (responses.containsKey(country)) orderedResponses.put(country, responses.get(country));
+        }
+
+        this.responses = Collections.unmodifiableMap(orderedResponses);
+        this.failures = Collections.unmodifiableMap(failures);
+        this.unfinished = Collections.unmodifiableSet(unfinished);
+    }
+
+    /**
+     *
+     * @return the response of every storefront that answered, in the order the storefronts were given
+     */
+    public Map<CountryCode, JSONObject> getResponses() {
+        return responses;
+    }
+
+    /**
+     *
+     * @return the failure of every storefront whose request failed
+     */
+    public Map<CountryCode, RuntimeException> getFailures() {
+        return failures;
+    }
+
+    /**
+     *
+     * @return the storefronts that had not answered, or could not answer, by the deadline
+     */
+    public Set<CountryCode> getUnfinished() {
+        return unfinished;
+    }
+
+    /**
+     *
+     * @return true if every storefront answered
+     */
+    public boolean isComplete() {
+        return failures.isEmpty() && unfinished.isEmpty();
+    }
+
+    /**
+     * merge the results of every storefront that answered, keeping only the first occurrence of each item. Items
+     * are identified by their trackId, or collectionId, or artistId. Results carrying none of them are all kept.
+     *
+     * @return the merged results, in storefront order
+     */
+    public List<JSONObject> getMergedResults() {
+        List<JSONObject> merged = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        for (JSONObject response : responses.values()) {
+            JSONArray results = response.optJSONArray("results");
+            if (results == null) continue;
+
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.optJSONObject(i);
+                if (result == null) continue;
+
+                String key = identity(result);
+                if (key == null || seen.add(key)) merged.add(result);
+            }
+        }
+
+        return merged;
+    }
+
+    private static String identity(JSONObject result) {
+        for (String idKey : new String[] { "trackId", "collectionId", "artistId" }) {
+            if (result.has(idKey)) return idKey + ":" + result.opt(idKey);
+        }
+
+        return null;
+    }
+
+}
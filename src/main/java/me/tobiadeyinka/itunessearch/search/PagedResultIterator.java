@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.TransportRequest;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Iterates over the results of a query page by page, using the {@code offset} and {@code limit} parameters.
+ *
+ * The next page is requested as soon as the current one arrives, so it downloads while the current page is
+ * consumed. Iteration stops after the first page holding fewer results than the page size.
+ */
+class PagedResultIterator implements Iterator<JSONObject> {
+
+    private final ItunesClient client;
+    private final URI uri;
+    private final int pageSize;
+
+    private JSONArray page = new JSONArray();
+    private int index;
+    private int offset;
+
+    /**
+     * The request for the next page, null once the last page has been received.
+     */
+    private CompletableFuture<JSONObject> nextPage;
+
+    /**
+     * @param client the client to execute the page requests with
+     * @param uri the encoded uri of the query. Its limit and offset parameters are replaced.
+     * @param pageSize the number of results requested per page
+     */
+    PagedResultIterator(ItunesClient client, URI uri, int pageSize) {
+        this.client = client;
+        this.uri = uri;
+        this.pageSize = pageSize;
+        this.nextPage = request(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index == page.length()) {
+            if (nextPage == null) return false;
+            receivePage();
+        }
+
+        return true;
+    }
+
+    @Override
+    public JSONObject next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return page.getJSONObject(index++);
+    }
+
+    /**
+     * wait for the requested page and request the one after it, unless this page is the last
+     */
+    private void receivePage() {
+        JSONObject response;
+
+        try {
+            response = nextPage.join();
+        } catch (CompletionException e) {
+            nextPage = null;
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+
+        page = response.optJSONArray("results");
+        if (page == null) page = new JSONArray();
+
+        index = 0;
+        offset += page.length();
+        nextPage = page.length() < pageSize ? null : request(offset);
+    }
+
+    private CompletableFuture<JSONObject> request(int offset) {
+        return client.executeQueryAsync(new TransportRequest(pageUri(uri, offset, pageSize)));
+    }
+
+    /**
+     * cancel the request for the next page, if any
+     */
+    void close() {
+        CompletableFuture<JSONObject> pending = nextPage;
+        nextPage = null;
+        page = new JSONArray();
+        if (pending != null) pending.cancel(false);
+    }
+
+    /**
+     * @return the uri with its limit and offset parameters replaced
+     */
+    static URI pageUri(URI uri, int offset, int pageSize) {
+        StringJoiner query = new StringJoiner("&");
+
+        if (uri.getRawQuery() != null) {
+            for (String parameter : uri.getRawQuery().split("&")) {
+                if (!parameter.startsWith("limit=") && !parameter.startsWith("offset=") && !parameter.isEmpty()) {
+                    query.add(parameter);
+                }
+            }
+        }
+
+        query.add("limit=" + pageSize).add("offset=" + offset);
+
+        String base = uri.toString();
+        int queryStart = base.indexOf('?');
+        return URI.create((queryStart < 0 ? base : base.substring(0, queryStart)) + "?" + query);
+    }
+
+}
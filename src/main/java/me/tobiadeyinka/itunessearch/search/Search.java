@@ -21,11 +21,23 @@ import com.neovisionaries.i18n.CountryCode;
 
 import me.tobiadeyinka.itunessearch.entities.*;
 import me.tobiadeyinka.itunessearch.exceptions.*;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.ItunesEventListener;
+import me.tobiadeyinka.itunessearch.networking.NetworkUtils;
+import me.tobiadeyinka.itunessearch.results.ItunesResult;
 
 import org.json.JSONObject;
 
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Parent class for all searches, containing common code implementations
@@ -71,10 +83,16 @@ abstract class Search<T> {
     protected ReturnLanguage returnLanguage = ReturnLanguage.ENGLISH;
 
     /**
-     * URL used to search the iTunes store, generated using all the variables of the instance
+     * URL used to search the iTunes store, generated using all the variables of the instance when the search is
+     * last compiled or executed
      */
     protected URL searchUrl;
 
+    /**
+     * The client used to execute the search. The default client is used when none is set.
+     */
+    protected ItunesClient client;
+
     protected Search(ItunesMedia media) {
         this.media = media;
     }
@@ -146,6 +164,18 @@ abstract class Search<T> {
         return (T)this;
     }
 
+    /**
+     * Sets the client used to execute the search. The {@link ItunesClient#getDefault() default client} is used
+     * when none is set.
+     *
+     * @param client the client to execute the search with
+     * @return the current search instance
+     */
+    public T withClient(ItunesClient client) {
+        this.client = client;
+        return (T)this;
+    }
+
     /**
      * check the validity of all required data before executing the search
      *
@@ -166,6 +196,33 @@ abstract class Search<T> {
             throw new InvalidParameterException("Search execution failed: invalid api version code");
     }
 
+    /**
+     * validate and encode the search into an immutable query. The query can be shared between threads and
+     * executed any number of times without its url being built or encoded again. Later changes to this search
+     * do not affect the query.
+     *
+     * @return the compiled query, executed with this search's client
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     */
+    public CompiledQuery compile() {
+        URL url = prepareSearchUrl();
+
+        CompiledQuery query;
+
+        try {
+            query = new CompiledQuery(NetworkUtils.encode(url), client);
+        } catch (NetworkCommunicationException e) {
+            throw new SearchURLConstructionFailure("Error during search url construction: " + e.getMessage());
+        }
+
+        ItunesEventListener listener = query.getClient().getEventListener();
+        if (listener != null) listener.queryCompiled(query.getUri());
+
+        return query;
+    }
+
     /**
      * execute the search
      *
@@ -176,11 +233,162 @@ abstract class Search<T> {
      * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
      */
     public JSONObject execute() {
+        return compile().execute();
+    }
+
+    /**
+     * execute the search, failing if it does not complete within the timeout
+     *
+     * @param timeout the time the search may take, including rate limit waits, retries and reading the response
+     * @return A {@link org.json.JSONObject} object containing the results.
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     * @throws RequestTimeoutException if the search does not complete in time.
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public JSONObject execute(Duration timeout) {
+        return compile().execute(timeout);
+    }
+
+    /**
+     * execute the search, handing each result to the handler as soon as it is parsed instead of building the
+     * whole response first. Useful for large limits, memory use does not grow with the number of results.
+     *
+     * @param resultHandler receives each result in order
+     * @return the number of results handed to the handler
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public int execute(Consumer<? super JSONObject> resultHandler) {
+        return compile().execute(resultHandler);
+    }
+
+    /**
+     * execute the search without blocking the calling thread. The parameters are checked before this method
+     * returns.
+     *
+     * @return a future completed with a {@link org.json.JSONObject} object containing the results, or completed
+     *         exceptionally with a {@link NetworkCommunicationException} if any issues occur while communicating
+     *         with the iTunes api.
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     */
+    public CompletableFuture<JSONObject> executeAsync() {
+        return compile().executeAsync();
+    }
+
+    /**
+     * execute the search without blocking the calling thread, failing if it does not complete within the timeout.
+     * The parameters are checked before this method returns.
+     *
+     * @param timeout the time the search may take, including rate limit waits, retries and reading the response
+     * @return a future completed with a {@link org.json.JSONObject} object containing the results, or completed
+     *         exceptionally with a {@link RequestTimeoutException} if the search does not complete in time.
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     */
+    public CompletableFuture<JSONObject> executeAsync(Duration timeout) {
+        return compile().executeAsync(timeout);
+    }
+
+    /**
+     * execute the search and return its results as typed objects, whose fields are decoded on first access
+     *
+     * @return the results of the search, in order
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     * @throws NetworkCommunicationException if any issues occur while communicating with the iTunes api.
+     */
+    public List<ItunesResult> fetchResults() {
+        return compile().fetchResults();
+    }
+
+    /**
+     * execute the search without blocking the calling thread and return its results as typed objects. The
+     * parameters are checked before this method returns.
+     *
+     * @return a future completed with the results of the search, or completed exceptionally with a
+     *         {@link NetworkCommunicationException} if any issues occur while communicating with the iTunes api.
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     */
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync() {
+        return compile().fetchResultsAsync();
+    }
+
+    /**
+     * stream all results of the search, {@link CompiledQuery#MAX_PAGE_SIZE} per page. Pages are requested with the {@code offset}
+     * parameter, the next page while the current one is consumed, until a short page is received. The limit of the
+     * search is ignored, use {@link Stream#limit(long)} to cap the number of results.
+     *
+     * @return a lazily fetched stream of the results, in order
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     * @see CompiledQuery#stream(int)
+     */
+    public Stream<JSONObject> stream() {
+        return stream(CompiledQuery.MAX_PAGE_SIZE);
+    }
+
+    /**
+     * stream all results of the search, page by page
+     *
+     * @param pageSize the number of results requested per page, at most {@link CompiledQuery#MAX_PAGE_SIZE}
+     * @return a lazily fetched stream of the results, in order
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters or the page size are invalid.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     * @see CompiledQuery#stream(int)
+     */
+    public Stream<JSONObject> stream(int pageSize) {
+        return compile().stream(pageSize);
+    }
+
+    /**
+     * prepare the search to run against several storefronts. The search is compiled once per storefront, later
+     * changes to this search do not affect the fan-out.
+     *
+     * @param countries the storefronts to search, duplicates are ignored
+     * @return the fan-out, ready to be configured and executed
+     * @throws MissingRequiredParameterException if the search term is not set.
+     * @throws InvalidParameterException if any of the set parameters are invalid, or no storefront is given.
+     * @throws SearchURLConstructionFailure if there is an error during url construction.
+     */
+    public CountryFanOut fanOut(Collection<CountryCode> countries) {
+        if (countries.isEmpty())
+            throw new InvalidParameterException("Fan-out failed: no storefront given");
+
+        CountryCode originalCountry = countryCode;
+        URL originalUrl = searchUrl;
+        Map<CountryCode, CompiledQuery> queries = new LinkedHashMap<>();
+
+        try {
+            for (CountryCode country : countries) {
+                countryCode = country;
+                queries.put(country, compile());
+            }
+        } finally {
+            countryCode = originalCountry;
+            searchUrl = originalUrl;
+        }
+
+        return new CountryFanOut(queries);
+    }
+
+    private URL prepareSearchUrl() {
         runPreExecutionChecks();
         String urlString = constructUrlString();
         URL url = createUrlObject(urlString);
         searchUrl = url;
-        return new SearchManager().executeSearch(url);
+        return url;
     }
 
     private URL createUrlObject(String urlString) {
@@ -249,6 +457,14 @@ abstract class Search<T> {
         return returnLanguage;
     }
 
+    /**
+     *
+     * @return the client used to execute the search
+     */
+    public ItunesClient getClient() {
+        return client != null ? client : ItunesClient.getDefault();
+    }
+
     /**
      *
      * @return the url used to search the iTunes store.
@@ -17,9 +17,13 @@
 
 package me.tobiadeyinka.itunessearch.search;
 
-import me.tobiadeyinka.itunessearch.networking.NetworkUtils;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.TransportRequest;
+import me.tobiadeyinka.itunessearch.results.ItunesResult;
 
-import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.json.JSONObject;
 
@@ -30,8 +34,30 @@ import org.json.JSONObject;
  */
 class SearchManager {
 
-    public JSONObject executeSearch(URL url) {
-        return NetworkUtils.executeQuery(url);
+    private final ItunesClient client;
+
+    SearchManager(ItunesClient client) {
+        this.client = client;
+    }
+
+    public JSONObject executeSearch(TransportRequest request) {
+        return client.executeQuery(request);
+    }
+
+    public int executeSearch(TransportRequest request, Consumer<? super JSONObject> resultHandler) {
+        return client.executeQuery(request, resultHandler);
+    }
+
+    public List<ItunesResult> fetchResults(TransportRequest request) {
+        return client.fetchResults(request);
+    }
+
+    public CompletableFuture<JSONObject> executeSearchAsync(TransportRequest request) {
+        return client.executeQueryAsync(request);
+    }
+
+    public CompletableFuture<List<ItunesResult>> fetchResultsAsync(TransportRequest request) {
+        return client.fetchResultsAsync(request);
     }
 
 }
@@ -17,6 +17,10 @@
 
 package me.tobiadeyinka.itunessearch;
 
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
+
+import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +30,33 @@ import java.util.logging.Logger;
  */
 public abstract class TestUtils {
 
+    /**
+     * run the lookup and search tests against the real iTunes api with -Ditunes.live=true,
+     * they run against a local stand-in otherwise.
+     */
+    public static final String LIVE_PROPERTY = "itunes.live";
+
+    public static boolean isLive() {
+        return Boolean.getBoolean(LIVE_PROPERTY);
+    }
+
+    /**
+     * starts a stand-in and points the default client at it
+     */
+    public static ItunesStandInServer startStandIn() throws IOException {
+        ItunesStandInServer standIn = ItunesStandInServer.start();
+        ItunesClient.setDefault(standIn.configure(new ItunesClient()));
+        return standIn;
+    }
+
+    /**
+     * stops the stand-in and points the default client back at the iTunes api
+     */
+    public static void stopStandIn(ItunesStandInServer standIn) {
+        ItunesClient.setDefault(new ItunesClient());
+        standIn.close();
+    }
+
     public static void sleepForAMinute() {
         Logger logger = Logger.getLogger(TestUtils.class.getName());
         logger.info("sleeping for 1 minute to avoid access denial from itunes api");
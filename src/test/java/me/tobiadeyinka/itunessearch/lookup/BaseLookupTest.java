@@ -18,12 +18,15 @@
 package me.tobiadeyinka.itunessearch.lookup;
 
 import me.tobiadeyinka.itunessearch.TestUtils;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.logging.Logger;
 import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -40,6 +43,8 @@ public class BaseLookupTest {
     protected int limit = 5;
     protected JSONObject response = null;
 
+    private ItunesStandInServer standIn = null;
+
     private static final String TEST_LOG_TAG = "test: ";
     private static final String RESPONSE_LOG_TAG = "response: ";
 
@@ -84,12 +89,27 @@ public class BaseLookupTest {
     }
 
     /*
-     * The itunes api limits call per minute, so sleep for a minute before the next
+     * unless the tests run live, they query a local stand-in for the itunes api.
+     */
+    @BeforeClass
+    protected void startStandIn() throws IOException {
+        if (!TestUtils.isLive()) {
+            standIn = TestUtils.startStandIn();
+        }
+    }
+
+    /*
+     * The itunes api limits calls per minute, so live tests sleep for a minute before the next
      * set of tests start, to avoid failures.
      */
     @AfterClass
-    protected void sleepForAMinute() {
-        TestUtils.sleepForAMinute();
+    protected void stopStandInOrSleep() {
+        if (standIn != null) {
+            TestUtils.stopStandIn(standIn);
+            standIn = null;
+        } else {
+            TestUtils.sleepForAMinute();
+        }
     }
 
 }
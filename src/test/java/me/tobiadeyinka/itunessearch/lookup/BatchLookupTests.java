@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.lookup;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for looking up several ids at once, against a stub transport instead of the iTunes api.
+ */
+public class BatchLookupTests {
+
+    private final StubLookupTransport transport = new StubLookupTransport();
+    private final Queue<String> queries = transport.queries;
+    private ItunesClient previousDefault;
+
+    @BeforeClass
+    public void installStubClient() {
+        previousDefault = ItunesClient.getDefault();
+        ItunesClient.setDefault(new ItunesClient().withTransport(transport));
+    }
+
+    @AfterClass
+    public void restoreDefaultClient() {
+        ItunesClient.setDefault(previousDefault);
+    }
+
+    @BeforeMethod
+    public void reset() {
+        queries.clear();
+    }
+
+    @Test
+    public void resultsAreKeyedByRequestedId() {
+        BatchLookupResult result = MusicLookup.getByIds(1, 2, 3);
+
+        assertThat(result.getResults()).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(result.get(1).getLong("trackId")).isEqualTo(1);
+        assertThat(result.get(2).getLong("collectionId")).isEqualTo(2);
+        assertThat(result.get(3).getLong("trackId")).isEqualTo(3);
+        assertThat(result.isComplete()).isTrue();
+        assertThat(queries).containsExactly("id=1,2,3");
+    }
+
+    @Test
+    public void missingIdsAreReportedSeparately() {
+        BatchLookupResult result = BookLookup.getByIds(Arrays.asList(404L, 11L, 405L));
+
+        assertThat(result.getResults()).containsOnlyKeys(11L);
+        assertThat(result.getMissingIds()).containsExactly(404L, 405L);
+        assertThat(result.isComplete()).isFalse();
+    }
+
+    @Test
+    public void duplicateIdsAreQueriedOnce() {
+        BatchLookupResult result = PodcastLookup.getByIds(5, 5, 6);
+
+        assertThat(result.getResults().keySet()).containsExactly(5L, 6L);
+        assertThat(queries).containsExactly("id=5,6");
+    }
+
+    @Test
+    public void largeBatchesAreSplitIntoSeveralRequests() {
+        List<Long> ids = LongStream.rangeClosed(1_000_000_000L, 1_000_000_999L).boxed().collect(Collectors.toList());
+        BatchLookupResult result = MovieLookup.getByIdsAsync(ids).join();
+
+        assertThat(result.getResults().keySet()).containsExactlyElementsOf(ids);
+        assertThat(queries.size()).isGreaterThan(1);
+        assertThat(queries).allSatisfy(query -> {
+            assertThat(query.split(",").length).isLessThanOrEqualTo(Lookup.MAX_IDS_PER_LOOKUP);
+            assertThat(Lookup.BASE_LOOKUP_URL.length() + query.length()).isLessThanOrEqualTo(Lookup.MAX_LOOKUP_URL_LENGTH);
+        });
+    }
+
+    @Test
+    public void chunksRespectTheUrlLengthAndIdLimits() {
+        List<Long> longIds = Collections.nCopies(500, Long.MAX_VALUE);
+        List<Long> shortIds = LongStream.range(0, 450).boxed().collect(Collectors.toList());
+
+        assertThat(Lookup.chunk(longIds)).allSatisfy(chunk -> assertThat(chunk.size() * 20).isLessThan(Lookup.MAX_LOOKUP_URL_LENGTH));
+        assertThat(Lookup.chunk(shortIds)).extracting(List::size).containsExactly(200, 200, 50);
+        assertThat(Lookup.chunk(Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void failedChunkFailsTheLookup() {
+        assertThatThrownBy(() -> MusicLookup.getByIds(1, 500))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("500");
+    }
+
+    @Test
+    public void emptyBatchSendsNoRequest() {
+        assertThat(MusicLookup.getByIds().getResults()).isEmpty();
+        assertThat(queries).isEmpty();
+    }
+
+}
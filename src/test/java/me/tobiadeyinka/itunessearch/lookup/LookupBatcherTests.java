@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.lookup;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for coalescing concurrent lookups by id, against a stub transport instead of the iTunes api.
+ */
+public class LookupBatcherTests {
+
+    private final StubLookupTransport transport = new StubLookupTransport();
+    private ItunesClient previousDefault;
+
+    @BeforeClass
+    public void installStubClient() {
+        previousDefault = ItunesClient.getDefault();
+        ItunesClient.setDefault(new ItunesClient().withTransport(transport));
+    }
+
+    @AfterClass
+    public void restoreDefaultClient() {
+        ItunesClient.setDefault(previousDefault);
+    }
+
+    @BeforeMethod
+    public void reset() {
+        transport.queries.clear();
+    }
+
+    @AfterMethod
+    public void uninstallBatcher() {
+        LookupBatcher.setDefault(null);
+    }
+
+    @Test
+    public void concurrentLookupsShareOneRequest() throws Exception {
+        LookupBatcher batcher = new LookupBatcher(Duration.ofMillis(50), 100);
+        LookupBatcher.setDefault(batcher);
+
+        List<CompletableFuture<JSONObject>> songs = new ArrayList<>();
+        for (long id = 1; id <= 39; id += 2) songs.add(MusicLookup.getSongByIdAsync(id));
+        JSONObject album = MusicLookup.getAlbumById(40);
+
+        for (int i = 0; i < songs.size(); i++) {
+            JSONObject song = songs.get(i).join().getJSONArray("results").getJSONObject(0);
+            assertThat(song.getLong("trackId")).isEqualTo(1 + 2L * i);
+        }
+
+        assertThat(album.getInt("resultCount")).isEqualTo(1);
+        assertThat(album.getJSONArray("results").getJSONObject(0).getLong("collectionId")).isEqualTo(40);
+        assertThat(transport.queries).hasSize(1);
+        assertThat(batcher.getLookupCount()).isEqualTo(21);
+        assertThat(batcher.getBatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void lookupsFromManyThreadsAreCoalesced() throws Exception {
+        LookupBatcher.setDefault(new LookupBatcher(Duration.ofMillis(20), 200));
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+
+        try {
+            List<Future<JSONObject>> songs = new ArrayList<>();
+            for (long id = 1; id <= 400; id += 2) {
+                long songId = id;
+                songs.add(threads.submit(() -> MusicLookup.getSongById(songId)));
+            }
+
+            for (Future<JSONObject> song : songs) {
+                assertThat(song.get().getInt("resultCount")).isEqualTo(1);
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertThat(transport.queries.size()).isLessThanOrEqualTo(20);
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForTheWindow() {
+        LookupBatcher batcher = new LookupBatcher(Duration.ofHours(1), 3);
+        LookupBatcher.setDefault(batcher);
+
+        CompletableFuture<JSONObject> first = PodcastLookup.getPodcastByIdAsync(1);
+        CompletableFuture<JSONObject> second = PodcastLookup.getPodcastByIdAsync(3);
+        CompletableFuture<JSONObject> third = PodcastLookup.getPodcastByIdAsync(5);
+
+        CompletableFuture.allOf(first, second, third).join();
+        assertThat(transport.queries).containsExactly("id=1,3,5");
+    }
+
+    @Test
+    public void callersOfTheSameIdShareAnEntry() {
+        LookupBatcher.setDefault(new LookupBatcher(Duration.ofMillis(20), 100));
+
+        CompletableFuture<JSONObject> first = BookLookup.getBookByIdAsync(7);
+        CompletableFuture<JSONObject> second = BookLookup.getBookByIdAsync(7);
+
+        assertThat(first.join().toString()).isEqualTo(second.join().toString());
+        assertThat(first.join()).isNotSameAs(second.join());
+        assertThat(transport.queries).containsExactly("id=7");
+    }
+
+    @Test
+    public void unmatchedIdFailsOnlyItsOwnCaller() {
+        LookupBatcher.setDefault(new LookupBatcher(Duration.ofMillis(20), 100));
+
+        CompletableFuture<JSONObject> found = MovieLookup.getMovieByIdAsync(9);
+        CompletableFuture<JSONObject> missing = MovieLookup.getMovieByIdAsync(404);
+
+        assertThat(found.join().getInt("resultCount")).isEqualTo(1);
+        assertThatThrownBy(missing::join).hasCauseInstanceOf(NoMatchFoundException.class);
+        assertThatThrownBy(() -> MovieLookup.getMovieById(405)).isInstanceOf(NoMatchFoundException.class);
+    }
+
+    @Test
+    public void unmatchedIdWithTimeoutFailsWithNoMatch() {
+        LookupBatcher.setDefault(new LookupBatcher(Duration.ofMillis(20), 100));
+
+        assertThatThrownBy(() -> MusicLookup.getSongById(404, Duration.ofSeconds(5)))
+            .isInstanceOf(NoMatchFoundException.class);
+        assertThatThrownBy(() -> MusicLookup.getAlbumById(405, Duration.ofSeconds(5)))
+            .isInstanceOf(NoMatchFoundException.class);
+    }
+
+    @Test
+    public void failedBatchFailsEveryCaller() {
+        LookupBatcher.setDefault(new LookupBatcher(Duration.ofMillis(20), 100));
+
+        CompletableFuture<JSONObject> first = MusicLookup.getSongByIdAsync(1);
+        CompletableFuture<JSONObject> second = MusicLookup.getSongByIdAsync(500);
+
+        assertThatThrownBy(first::join)
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(NetworkCommunicationException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(NetworkCommunicationException.class);
+    }
+
+}
@@ -56,6 +56,15 @@ public class MusicLookupTests extends BaseLookupTest {
         } finally { logResponse(); }
     }
 
+    @Test
+    public void getTopSongsAsync() {
+        try {
+            response = MusicLookup.topSongsAsync(limit).join();
+            verifyResponseHasResults();
+            verifyResponseMatchesLimit(limit);
+        } finally { logResponse(); }
+    }
+
     @Test
     public void getTopSongsWithLimit() {
         try {
@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.lookup;
+
+import me.tobiadeyinka.itunessearch.networking.HttpTransport;
+import me.tobiadeyinka.itunessearch.networking.TransportRequest;
+import me.tobiadeyinka.itunessearch.networking.TransportResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Answers id lookups without the iTunes api. Even ids are albums, odd ids are songs, ids in {@link #UNKNOWN_IDS}
+ * match nothing and a lookup ending with id 500 fails with a server error.
+ */
+class StubLookupTransport implements HttpTransport {
+
+    static final Set<Long> UNKNOWN_IDS = Set.of(404L, 405L);
+
+    /**
+     * the query strings of all lookups received
+     */
+    final Queue<String> queries = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public TransportResponse execute(TransportRequest request) {
+        String query = request.getUri().getRawQuery();
+        queries.add(query);
+
+        if (query.endsWith(",500") || query.equals("id=500")) {
+            return new TransportResponse(500, Map.of(), new ByteArrayInputStream(new byte[0]));
+        }
+
+        String results = Arrays.stream(query.substring("id=".length()).split(","))
+            .map(Long::valueOf)
+            .filter(id -> !UNKNOWN_IDS.contains(id))
+            .map(id -> id % 2 == 0
+                ? String.format("{\"wrapperType\":\"collection\",\"collectionId\":%s,\"artistId\":7}", id)
+                : String.format("{\"wrapperType\":\"track\",\"trackId\":%s,\"collectionId\":%s}", id, id + 1))
+            .collect(Collectors.joining(","));
+
+        byte[] body = String.format("{\"results\":[%s]}", results).getBytes(StandardCharsets.UTF_8);
+        return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body));
+    }
+
+}
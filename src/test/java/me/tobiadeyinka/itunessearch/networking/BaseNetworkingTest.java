@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+/**
+ * Base class for networking tests, runs a local http server instead of querying the iTunes api.
+ */
+public class BaseNetworkingTest {
+
+    static {
+        /*
+         * the server writes headers and body separately, without this nagle's algorithm delays every
+         * response on a persistent connection by the client's delayed ack timeout.
+         */
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    protected HttpServer server;
+
+    @BeforeClass
+    protected void startServer() throws IOException {
+        server = createServer(new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    protected HttpServer createServer(InetSocketAddress address) throws IOException {
+        return HttpServer.create(address, 0);
+    }
+
+    @AfterClass
+    protected void stopServer() {
+        server.stop(0);
+    }
+
+    protected URI uri(String pathAndQuery) {
+        String scheme = server instanceof HttpsServer ? "https" : "http";
+        return URI.create(scheme + "://127.0.0.1:" + server.getAddress().getPort() + pathAndQuery);
+    }
+
+    protected static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length == 0 ? -1 : bytes.length);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    protected static String read(InputStream inputStream) {
+        Scanner scanner = new Scanner(inputStream, StandardCharsets.UTF_8.name()).useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.CircuitBreakerOpenException;
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the circuit breaker, against a stub transport and a manual clock.
+ */
+public class CircuitBreakerTests {
+
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=jack+johnson");
+    private static final URI RSS_URI = URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/10/explicit.json");
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile int statusCode;
+    private volatile long delayMillis;
+
+    private final HttpTransport transport = request -> {
+        requests.incrementAndGet();
+
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (statusCode == -1) throw new IOException("connection reset");
+
+        byte[] body = "{\"resultCount\":0,\"results\":[]}".getBytes(StandardCharsets.UTF_8);
+        return new TransportResponse(statusCode, Map.of(), new ByteArrayInputStream(body));
+    };
+
+    @BeforeMethod
+    public void reset() {
+        clock.set(0);
+        requests.set(0);
+        statusCode = 200;
+        delayMillis = 0;
+    }
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker(clock::get)
+            .withWindow(4, 4)
+            .withOpenDuration(Duration.ofSeconds(30))
+            .withHalfOpenCalls(2);
+    }
+
+    private ItunesClient client(CircuitBreaker circuitBreaker) {
+        return new ItunesClient().withTransport(transport).withCircuitBreaker(ItunesClient.ITUNES_HOST, circuitBreaker);
+    }
+
+    private static void callIgnoringFailure(ItunesClient client, URI uri) {
+        try {
+            client.executeQuery(uri);
+        } catch (NetworkCommunicationException ignored) {
+            /*
+             * outcome recorded by the breaker
+             */
+        }
+    }
+
+    @Test
+    public void opensOnceTheFailureRateReachesTheThreshold() {
+        CircuitBreaker circuitBreaker = breaker();
+        ItunesClient client = client(circuitBreaker);
+
+        client.executeQuery(SEARCH_URI);
+        client.executeQuery(SEARCH_URI);
+        statusCode = 503;
+        callIgnoringFailure(client, SEARCH_URI);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        statusCode = -1;
+        callIgnoringFailure(client, SEARCH_URI);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThatThrownBy(() -> client.executeQuery(SEARCH_URI)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThatThrownBy(() -> client.executeQueryAsync(SEARCH_URI).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(CircuitBreakerOpenException.class);
+
+        assertThat(requests.get()).isEqualTo(4);
+        assertThat(circuitBreaker.getNotPermittedCount()).isEqualTo(2);
+        assertThat(circuitBreaker.getOpenedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void oldOutcomesSlideOutOfTheWindow() {
+        CircuitBreaker circuitBreaker = breaker();
+        ItunesClient client = client(circuitBreaker);
+
+        for (int i = 0; i < 10; i++) {
+            statusCode = i % 4 == 0 ? 429 : 200;
+            callIgnoringFailure(client, SEARCH_URI);
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getFailureRate()).isEqualTo(0.25);
+    }
+
+    @Test
+    public void halfOpenTrialsCloseOrReopenTheBreaker() {
+        List<String> transitions = new CopyOnWriteArrayList<>();
+        CircuitBreaker circuitBreaker = breaker().withListener((breaker, from, to) -> transitions.add(from + ">" + to));
+        ItunesClient client = client(circuitBreaker);
+
+        statusCode = 403;
+        for (int i = 0; i < 4; i++) callIgnoringFailure(client, SEARCH_URI);
+
+        /*
+         * failed trial opens the breaker again
+         */
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        callIgnoringFailure(client, SEARCH_URI);
+        callIgnoringFailure(client, SEARCH_URI);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        statusCode = 200;
+        client.executeQuery(SEARCH_URI);
+        client.executeQuery(SEARCH_URI);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly(
+            "CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>CLOSED"
+        );
+    }
+
+    @Test
+    public void slowCallsOpenTheBreaker() {
+        CircuitBreaker circuitBreaker = breaker()
+            .withWindow(2, 2)
+            .withSlowCallDuration(Duration.ofMillis(50))
+            .withSlowCallRateThreshold(1.0);
+        ItunesClient client = client(circuitBreaker);
+
+        delayMillis = 60;
+        client.executeQuery(SEARCH_URI);
+        client.executeQuery(SEARCH_URI);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void waitingForARateLimitPermitIsNotASlowCall() {
+        CircuitBreaker circuitBreaker = breaker()
+            .withWindow(2, 2)
+            .withSlowCallDuration(Duration.ofMillis(50))
+            .withSlowCallRateThreshold(1.0);
+        ItunesClient client = client(circuitBreaker)
+            .withRateLimiter(ItunesClient.ITUNES_HOST, new RateLimiter(1, Duration.ofMillis(100), 1));
+
+        /*
+         * every call after the first queues about 100 ms for its permit, but is answered right away
+         */
+        for (int i = 0; i < 4; i++) client.executeQuery(SEARCH_URI);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getSlowCallRate()).isZero();
+    }
+
+    @Test
+    public void openBreakerRejectsBeforeTakingARateLimitPermit() {
+        CircuitBreaker circuitBreaker = breaker();
+        RateLimiter rateLimiter = new RateLimiter(10, Duration.ofSeconds(10));
+        ItunesClient client = client(circuitBreaker).withRateLimiter(ItunesClient.ITUNES_HOST, rateLimiter);
+
+        statusCode = 503;
+        for (int i = 0; i < 4; i++) callIgnoringFailure(client, SEARCH_URI);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        long permits = rateLimiter.availablePermits();
+        long notPermitted = circuitBreaker.getNotPermittedCount();
+
+        assertThatThrownBy(() -> client.executeQuery(SEARCH_URI)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(rateLimiter.availablePermits()).isEqualTo(permits);
+        assertThat(circuitBreaker.getNotPermittedCount()).isEqualTo(notPermitted + 1);
+    }
+
+    @Test
+    public void staleResponsesAreServedWhileOpen() {
+        ResponseCache cache = new ResponseCache(10, clock::get)
+            .withTtl(Endpoint.SEARCH, Duration.ofMinutes(1))
+            .withMaxStale(Duration.ofHours(1));
+        CircuitBreaker circuitBreaker = breaker();
+        ItunesClient client = client(circuitBreaker).withResponseCache(cache);
+
+        client.executeQuery(SEARCH_URI);
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+
+        statusCode = 503;
+        for (int i = 0; i < 3; i++) callIgnoringFailure(client, SEARCH_URI);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        JSONObject response = client.executeQuery(SEARCH_URI);
+        JSONObject asyncResponse = client.executeQueryAsync(SEARCH_URI).join();
+
+        assertThat(response.getInt("resultCount")).isZero();
+        assertThat(asyncResponse.getInt("resultCount")).isZero();
+        assertThat(cache.getStaleHitCount()).isEqualTo(2);
+        assertThat(requests.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void retriesStopOnceTheBreakerOpens() {
+        CircuitBreaker circuitBreaker = breaker();
+        RetryPolicy retryPolicy = new RetryPolicy().withMaxAttempts(10).withBaseDelay(Duration.ofMillis(1));
+        ItunesClient client = client(circuitBreaker).withRetryPolicy(retryPolicy);
+
+        statusCode = 503;
+        assertThatThrownBy(() -> client.executeQuery(SEARCH_URI)).isInstanceOf(NetworkCommunicationException.class);
+
+        assertThat(requests.get()).isEqualTo(4);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void breakersArePerHost() {
+        CircuitBreaker circuitBreaker = breaker();
+        ItunesClient client = client(circuitBreaker);
+
+        statusCode = 500;
+        for (int i = 0; i < 4; i++) callIgnoringFailure(client, SEARCH_URI);
+
+        statusCode = 200;
+        assertThat(client.executeQuery(RSS_URI).getInt("resultCount")).isZero();
+        assertThat(client.getCircuitBreaker("ITUNES.apple.com")).isSameAs(circuitBreaker);
+        assertThat(client.getCircuitBreaker(ItunesClient.RSS_HOST)).isNull();
+    }
+
+    @Test
+    public void stateChangesReachTheClientMetricsAndListener() {
+        List<String> transitions = new CopyOnWriteArrayList<>();
+        ClientMetrics metrics = new ClientMetrics();
+        CircuitBreaker circuitBreaker = breaker();
+        ItunesClient client = client(circuitBreaker)
+            .withMetrics(metrics)
+            .withEventListener(new ItunesEventListener() {
+                @Override
+                public void circuitStateChanged(String host, CircuitBreaker.State from, CircuitBreaker.State to) {
+                    transitions.add(host + " " + from + ">" + to);
+                }
+            });
+
+        statusCode = 503;
+        for (int i = 0; i < 4; i++) callIgnoringFailure(client, SEARCH_URI);
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        statusCode = 200;
+        client.executeQuery(SEARCH_URI);
+
+        assertThat(transitions).containsExactly("itunes.apple.com CLOSED>OPEN", "itunes.apple.com OPEN>HALF_OPEN");
+        assertThat(metrics.getCircuitStates()).containsExactly(
+            Map.entry(ItunesClient.ITUNES_HOST, CircuitBreaker.State.HALF_OPEN)
+        );
+        assertThat(metrics.getCircuitTransitionCounts()).containsExactly(Map.entry(ItunesClient.ITUNES_HOST, 2L));
+
+        /*
+         * a removed breaker no longer reports to the client, even when another client closes it
+         */
+        client.withCircuitBreaker(ItunesClient.ITUNES_HOST, null);
+        client(circuitBreaker).executeQuery(SEARCH_URI);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(transitions).hasSize(2);
+        assertThat(metrics.getCircuitTransitionCounts()).containsExactly(Map.entry(ItunesClient.ITUNES_HOST, 2L));
+    }
+
+}
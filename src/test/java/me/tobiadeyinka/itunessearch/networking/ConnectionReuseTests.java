@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Connection reuse tests against a local https server. The cost of a request with and without keep-alive is
+ * compared by the end to end benchmark instead.
+ */
+public class ConnectionReuseTests extends BaseNetworkingTest {
+
+    private static final int REQUESTS = 20;
+    private static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private SSLContext serverContext;
+    private SSLContext clientContext;
+    private String body;
+
+    @Override
+    protected HttpServer createServer(InetSocketAddress address) throws IOException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream keyStoreStream = getClass().getResourceAsStream("/networking/localhost.p12")) {
+                keyStore.load(keyStoreStream, KEYSTORE_PASSWORD);
+            }
+
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+            serverContext = SSLContext.getInstance("TLS");
+            serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(keyStore);
+            clientContext = SSLContext.getInstance("TLS");
+            clientContext.init(null, trustManagers.getTrustManagers(), null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+
+        HttpsServer httpsServer = HttpsServer.create(address, 0);
+        httpsServer.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        return httpsServer;
+    }
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        StringBuilder results = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) results.append(',');
+            results.append("{\"trackId\":").append(i).append(",\"trackName\":\"track ").append(i).append("\"}");
+        }
+
+        body = "{\"resultCount\":200,\"results\":[" + results + "]}";
+
+        server.createContext("/fixed", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            respond(exchange, 200, body);
+        });
+
+        server.createContext("/downgrade", exchange -> {
+            exchange.getResponseHeaders().add("Location", "http://127.0.0.1:" + server.getAddress().getPort() + "/fixed");
+            respond(exchange, 302, "");
+        });
+
+        server.createContext("/chunked", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.sendResponseHeaders(200, 0);
+
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    @BeforeMethod
+    public void clearClientPorts() {
+        clientPorts.clear();
+    }
+
+    @Test
+    public void pooledTransportReusesConnection() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport().withSslContext(clientContext)) {
+            executeRequests(transport, "/fixed", REQUESTS);
+
+            assertThat(clientPorts).hasSize(1);
+            assertThat(transport.getOpenedConnectionCount()).isEqualTo(1);
+            assertThat(transport.getReusedConnectionCount()).isEqualTo(REQUESTS - 1);
+            assertThat(transport.getIdleConnectionCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void pooledTransportReadsChunkedBodies() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport().withSslContext(clientContext)) {
+            executeRequests(transport, "/chunked", REQUESTS);
+
+            assertThat(clientPorts).hasSize(1);
+            assertThat(transport.getOpenedConnectionCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void pooledTransportDrainsUnreadBodies() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport().withSslContext(clientContext)) {
+            for (int i = 0; i < REQUESTS; i++) {
+                transport.execute(new TransportRequest(uri("/fixed"))).close();
+            }
+
+            assertThat(transport.getOpenedConnectionCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void pooledTransportEvictsIdleConnections() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport()
+                .withSslContext(clientContext)
+                .withIdleTimeout(Duration.ZERO)) {
+            executeRequests(transport, "/fixed", 3);
+
+            assertThat(transport.getOpenedConnectionCount()).isEqualTo(3);
+            assertThat(transport.getReusedConnectionCount()).isZero();
+        }
+    }
+
+    @Test
+    public void pooledTransportWithoutIdleConnections() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport()
+                .withSslContext(clientContext)
+                .withMaxIdleConnections(0)) {
+            executeRequests(transport, "/fixed", 3);
+
+            assertThat(clientPorts).hasSize(3);
+            assertThat(transport.getIdleConnectionCount()).isZero();
+        }
+    }
+
+    @Test
+    public void pooledTransportDoesNotFollowRedirectsToHttp() throws IOException {
+        try (PooledHttpTransport transport = new PooledHttpTransport().withSslContext(clientContext);
+             TransportResponse response = transport.execute(new TransportRequest(uri("/downgrade")))) {
+            assertThat(response.getStatusCode()).isEqualTo(302);
+            assertThat(response.getHeader("Location")).startsWith("http://");
+            assertThat(transport.getOpenedConnectionCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void urlConnectionTransportReusesConnection() throws IOException {
+        executeRequests(new UrlConnectionTransport().withSslContext(clientContext), "/fixed", REQUESTS);
+        assertThat(clientPorts).hasSize(1);
+    }
+
+    @Test
+    public void urlConnectionTransportWithoutKeepAlive() throws IOException {
+        executeRequests(new UrlConnectionTransport().withSslContext(clientContext).withKeepAlive(false), "/fixed", 3);
+        assertThat(clientPorts).hasSize(3);
+    }
+
+    private void executeRequests(HttpTransport transport, String path, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            try (TransportResponse response = transport.execute(new TransportRequest(uri(path)))) {
+                assertThat(response.getStatusCode()).isEqualTo(200);
+                assertThat(read(response.getBody())).isEqualTo(body);
+            }
+        }
+    }
+
+}
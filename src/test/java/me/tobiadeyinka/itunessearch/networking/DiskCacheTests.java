@@ -0,0 +1,327 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the disk tier of the response cache.
+ */
+public class DiskCacheTests {
+
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=jack&limit=5");
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=1");
+
+    private final AtomicLong clock = new AtomicLong();
+    private Path directory;
+    private DiskCache diskCache;
+
+    @BeforeMethod
+    public void createDirectory() throws IOException {
+        clock.set(1_000_000);
+        directory = Files.createTempDirectory("itunes-cache");
+        diskCache = open();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        diskCache.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private DiskCache open() throws IOException {
+        return new DiskCache(directory, clock::get).withCompactionInterval(Duration.ZERO);
+    }
+
+    private DiskCache reopen() throws IOException {
+        diskCache.close();
+        diskCache = open();
+        return diskCache;
+    }
+
+    private static byte[] body(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        new ResponseCache(10).withDiskCache(diskCache).put(SEARCH_URI, body("search"));
+
+        ResponseCache cache = new ResponseCache(10).withDiskCache(reopen());
+
+        assertThat(cache.get(SEARCH_URI)).isEqualTo(body("search"));
+        assertThat(cache.get(LOOKUP_URI)).isNull();
+        assertThat(cache.getDiskHitCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void diskHitsAreHeldInMemoryForTheRestOfTheirTtl() throws IOException {
+        new ResponseCache(10)
+            .withTtl(Endpoint.SEARCH, Duration.ofMinutes(10))
+            .withDiskCache(diskCache)
+            .put(SEARCH_URI, body("search"));
+
+        clock.addAndGet(Duration.ofMinutes(4).toMillis());
+        ResponseCache cache = new ResponseCache(10, () -> TimeUnit.MILLISECONDS.toNanos(clock.get()))
+            .withDiskCache(reopen());
+
+        assertThat(cache.get(SEARCH_URI)).isEqualTo(body("search"));
+        assertThat(cache.get(SEARCH_URI)).isEqualTo(body("search"));
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getDiskHitCount()).isEqualTo(1);
+
+        /*
+         * the entry expires 10 minutes after it was written, not after it was read back
+         */
+        clock.addAndGet(Duration.ofMinutes(6).toMillis());
+        assertThat(cache.get(SEARCH_URI)).isNull();
+        assertThat(cache.getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void entriesExpireByWallClockAcrossRestarts() throws IOException {
+        new ResponseCache(10)
+            .withTtl(Endpoint.SEARCH, Duration.ofMinutes(10))
+            .withMaxStale(Duration.ofMinutes(5))
+            .withDiskCache(diskCache)
+            .put(SEARCH_URI, body("search"));
+
+        ResponseCache cache = new ResponseCache(10).withDiskCache(reopen());
+        String key = NetworkUtils.canonicalKey(SEARCH_URI);
+
+        clock.addAndGet(Duration.ofMinutes(10).toMillis());
+        assertThat(cache.get(SEARCH_URI)).isNull();
+        assertThat(cache.getStale(key, Endpoint.SEARCH)).isNotNull();
+        assertThat(cache.getStaleHitCount()).isEqualTo(1);
+
+        clock.addAndGet(Duration.ofMinutes(5).toMillis());
+        assertThat(cache.getStale(key, Endpoint.SEARCH)).isNull();
+
+        diskCache.compact();
+        assertThat(reopen().getEntryCount()).isZero();
+    }
+
+    @Test
+    public void invalidatedEntriesStayRemoved() throws IOException {
+        ResponseCache cache = new ResponseCache(10).withDiskCache(diskCache);
+        cache.put(SEARCH_URI, body("search"));
+        cache.put(LOOKUP_URI, body("lookup"));
+        cache.invalidate(SEARCH_URI);
+
+        cache = new ResponseCache(10).withDiskCache(reopen());
+        assertThat(cache.get(SEARCH_URI)).isNull();
+        assertThat(cache.get(LOOKUP_URI)).isEqualTo(body("lookup"));
+
+        cache.clear();
+        assertThat(diskCache.getSegmentCount()).isZero();
+        assertThat(reopen().getEntryCount()).isZero();
+    }
+
+    @Test
+    public void recoveryStopsAtATornRecord() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            diskCache.put("key-" + i, body("body-" + i), 60_000, 0);
+        }
+
+        diskCache.close();
+
+        /*
+         * flip the last byte of the last body, as if the jvm died before it was written
+         */
+        Path segment = segments().get(0);
+        long lastByte = 8 + 3 * 28 + 3 * "key-0".length() + 3 * "body-0".length() - 1;
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 'x' }), lastByte);
+        }
+
+        diskCache = open();
+        assertThat(diskCache.getCorruptRecordCount()).isEqualTo(1);
+        assertThat(diskCache.find("key-0")).isNotNull();
+        assertThat(diskCache.find("key-1")).isNotNull();
+        assertThat(diskCache.find("key-2")).isNull();
+
+        diskCache.put("key-3", body("body-3"), 60_000, 0);
+        reopen();
+
+        assertThat(diskCache.getCorruptRecordCount()).isZero();
+        assertThat(read("key-3")).isEqualTo("body-3");
+        assertThat(read("key-1")).isEqualTo("body-1");
+    }
+
+    @Test
+    public void compactionRewritesSparseSegments() throws IOException {
+        diskCache.withSegmentSize(4096);
+        byte[] padding = new byte[1000];
+
+        for (int i = 0; i < 20; i++) {
+            diskCache.put("replaced", padding, 60_000, 0);
+        }
+
+        diskCache.put("kept", body("kept"), 60_000, 0);
+        diskCache.put("replaced", body("latest"), 60_000, 0);
+        int segments = diskCache.getSegmentCount();
+
+        diskCache.compact();
+
+        assertThat(diskCache.getCompactionCount()).isEqualTo(1);
+        assertThat(diskCache.getSegmentCount()).isLessThan(segments);
+        assertThat(segments().size()).isEqualTo(diskCache.getSegmentCount());
+        assertThat(read("replaced")).isEqualTo("latest");
+        assertThat(read("kept")).isEqualTo("kept");
+
+        reopen();
+        assertThat(read("replaced")).isEqualTo("latest");
+        assertThat(read("kept")).isEqualTo("kept");
+        assertThat(diskCache.getEntryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void compactionRollingOverKeepsEveryMovedRecord() throws IOException {
+        diskCache.withSegmentSize(4096);
+        byte[] padding = new byte[1000];
+
+        for (int i = 0; i < 6; i++) {
+            diskCache.put("live-" + i, padding, 60_000, 0);
+            diskCache.put("replaced", padding, 60_000, 0);
+            diskCache.put("replaced", padding, 60_000, 0);
+        }
+
+        diskCache.put("replaced", body("latest"), 60_000, 0);
+        List<Path> before = segments();
+
+        diskCache.compact();
+
+        /*
+         * the moved records filled the active segment and rolled over to new ones
+         */
+        List<Path> created = segments();
+        created.removeAll(before);
+        assertThat(created).isNotEmpty();
+        assertThat(segments()).contains(before.get(before.size() - 1));
+        reopen();
+
+        for (int i = 0; i < 6; i++) {
+            assertThat(diskCache.find("live-" + i)).isNotNull();
+        }
+
+        assertThat(read("replaced")).isEqualTo("latest");
+        assertThat(diskCache.getCorruptRecordCount()).isZero();
+        assertThat(diskCache.getEntryCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void oldestSegmentsAreDroppedPastTheMaximumSize() throws IOException {
+        diskCache.withSegmentSize(4096).withMaxSize(3 * 4096);
+
+        for (int i = 0; i < 20; i++) {
+            diskCache.put("key-" + i, new byte[1000], 60_000, 0);
+        }
+
+        assertThat(diskCache.size()).isLessThanOrEqualTo(3 * 4096);
+        assertThat(diskCache.getDroppedSegmentCount()).isPositive();
+        assertThat(diskCache.find("key-0")).isNull();
+        assertThat(diskCache.find("key-19")).isNotNull();
+    }
+
+    @Test
+    public void aDirectoryIsUsedByOneCacheAtATime() {
+        assertThatThrownBy(this::open)
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("in use");
+    }
+
+    @Test
+    public void readsAreViewsOfTheMappedSegment() {
+        diskCache.put("key", body("body"), 60_000, 0);
+        ByteBuffer body = diskCache.read(diskCache.find("key"));
+
+        assertThat(body.isDirect()).isTrue();
+        assertThat(body.isReadOnly()).isTrue();
+        assertThat(body.remaining()).isEqualTo(4);
+    }
+
+    @Test
+    public void clientAnswersFromDiskAfterARestart() throws IOException {
+        AtomicInteger requests = new AtomicInteger();
+        HttpTransport transport = request -> {
+            requests.incrementAndGet();
+            return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body("{\"resultCount\":7}")));
+        };
+
+        new ItunesClient()
+            .withTransport(transport)
+            .withResponseCache(new ResponseCache(10).withDiskCache(diskCache))
+            .executeQuery(SEARCH_URI);
+
+        ItunesClient restarted = new ItunesClient()
+            .withTransport(transport)
+            .withResponseCache(new ResponseCache(10).withDiskCache(reopen()));
+
+        JSONObject response = restarted.executeQuery(SEARCH_URI);
+        assertThat(response.getInt("resultCount")).isEqualTo(7);
+        assertThat(restarted.fetchResultsAsync(SEARCH_URI).join()).isEmpty();
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    private String read(String key) {
+        ByteBuffer body = diskCache.read(diskCache.find(key));
+        return StandardCharsets.UTF_8.decode(body).toString();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+}
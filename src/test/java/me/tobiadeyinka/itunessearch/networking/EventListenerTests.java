@@ -0,0 +1,237 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
+import me.tobiadeyinka.itunessearch.lookup.MusicLookup;
+import me.tobiadeyinka.itunessearch.search.MusicSearch;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the events reported to an {@link ItunesEventListener}.
+ */
+public class EventListenerTests {
+
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=the+national");
+
+    private ItunesStandInServer standIn;
+    private PooledHttpTransport transport;
+    private RecordingListener listener;
+
+    @BeforeClass
+    public void startStandIn() throws IOException {
+        standIn = ItunesStandInServer.start();
+    }
+
+    @AfterClass
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @BeforeMethod
+    public void createListener() {
+        standIn.reset();
+        transport = new PooledHttpTransport();
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void everyStageOfASearchIsReported() {
+        ItunesClient client = standIn.configure(new ItunesClient())
+            .withTransport(transport)
+            .withRateLimiter(ItunesClient.ITUNES_HOST, new RateLimiter(10, Duration.ofMinutes(1)))
+            .withEventListener(listener);
+
+        new MusicSearch().with("the national").withClient(client).execute();
+
+        assertThat(listener.events()).containsExactly(
+            "queryCompiled", "rateLimitAcquired", "dnsResolved", "connectionAcquired new", "requestSent",
+            "firstByte 200", "bodyComplete", "parseComplete"
+        );
+        assertThat(listener.bytes).isGreaterThan(0);
+        assertThat(listener.address).isEqualTo(InetAddress.getLoopbackAddress());
+
+        listener.clear();
+        client.executeQuery(SEARCH_URI);
+
+        assertThat(listener.events()).containsExactly(
+            "rateLimitAcquired", "connectionAcquired reused", "requestSent", "firstByte 200", "bodyComplete",
+            "parseComplete"
+        );
+    }
+
+    @Test
+    public void lookupsAreReportedByTheDefaultClient() throws NoMatchFoundException {
+        ItunesClient defaultClient = ItunesClient.getDefault();
+        ItunesClient.setDefault(standIn.configure(new ItunesClient()).withEventListener(listener));
+
+        try {
+            MusicLookup.getSongById(1348407955L);
+        } finally {
+            ItunesClient.setDefault(defaultClient);
+        }
+
+        assertThat(listener.events()).containsExactly("queryCompiled", "firstByte 200", "bodyComplete", "parseComplete");
+        assertThat(listener.compiled.getPath()).isEqualTo("/lookup");
+    }
+
+    @Test
+    public void cacheHitsSkipTheTransport() {
+        ItunesClient client = standIn.configure(new ItunesClient())
+            .withTransport(new HttpClientTransport())
+            .withResponseCache(new ResponseCache(10))
+            .withEventListener(listener);
+
+        client.executeQuery(SEARCH_URI);
+        assertThat(listener.events()).containsExactly("cacheLookup miss", "firstByte 200", "bodyComplete", "parseComplete");
+
+        listener.clear();
+        client.executeQueryAsync(SEARCH_URI).join();
+        assertThat(listener.events()).containsExactly("cacheLookup hit", "parseComplete");
+        assertThat(standIn.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failuresAreReported() {
+        standIn.withErrorRate(1, 503);
+        ItunesClient client = standIn.configure(new ItunesClient())
+            .withTransport(transport)
+            .withEventListener(listener);
+
+        assertThatThrownBy(() -> client.executeQuery(SEARCH_URI)).isInstanceOf(NetworkCommunicationException.class);
+        assertThat(listener.events()).endsWith("firstByte 503", "failure");
+        assertThat(listener.failure).isInstanceOf(NetworkCommunicationException.class).hasMessageContaining("503");
+
+        listener.clear();
+        assertThatThrownBy(() -> client.executeQueryAsync(SEARCH_URI).join())
+            .hasCauseInstanceOf(NetworkCommunicationException.class);
+        assertThat(listener.events()).endsWith("firstByte 503", "failure");
+        assertThat(listener.failure).isInstanceOf(NetworkCommunicationException.class);
+    }
+
+    @Test
+    public void requestsCarryNoListenerWithoutOne() {
+        List<TransportRequest> requests = new ArrayList<>();
+        ItunesClient client = new ItunesClient().withTransport(request -> {
+            requests.add(request);
+            return new TransportResponse(200, Map.of(), new ByteArrayInputStream("{}".getBytes()));
+        });
+
+        client.executeQuery(SEARCH_URI);
+        client.withEventListener(listener).executeQuery(SEARCH_URI);
+
+        assertThat(requests.get(0).getEventListener()).isNull();
+        assertThat(requests.get(1).getEventListener()).isSameAs(listener);
+    }
+
+    /**
+     * records the events it is told about, in order
+     */
+    private static class RecordingListener implements ItunesEventListener {
+
+        private final List<String> events = new ArrayList<>();
+
+        private URI compiled;
+        private InetAddress address;
+        private long bytes;
+        private RuntimeException failure;
+
+        @Override
+        public synchronized void queryCompiled(URI uri) {
+            compiled = uri;
+            events.add("queryCompiled");
+        }
+
+        @Override
+        public synchronized void cacheLookup(TransportRequest request, boolean hit) {
+            events.add(hit ? "cacheLookup hit" : "cacheLookup miss");
+        }
+
+        @Override
+        public synchronized void rateLimitAcquired(TransportRequest request, long waitNanos) {
+            events.add("rateLimitAcquired");
+        }
+
+        @Override
+        public synchronized void dnsResolved(TransportRequest request, InetAddress address) {
+            this.address = address;
+            events.add("dnsResolved");
+        }
+
+        @Override
+        public synchronized void connectionAcquired(TransportRequest request, boolean reused) {
+            events.add(reused ? "connectionAcquired reused" : "connectionAcquired new");
+        }
+
+        @Override
+        public synchronized void requestSent(TransportRequest request) {
+            events.add("requestSent");
+        }
+
+        @Override
+        public synchronized void firstByte(TransportRequest request, int statusCode) {
+            events.add("firstByte " + statusCode);
+        }
+
+        @Override
+        public synchronized void bodyComplete(TransportRequest request, long bytes) {
+            this.bytes = bytes;
+            events.add("bodyComplete");
+        }
+
+        @Override
+        public synchronized void parseComplete(TransportRequest request) {
+            events.add("parseComplete");
+        }
+
+        @Override
+        public synchronized void failure(TransportRequest request, RuntimeException failure) {
+            this.failure = failure;
+            events.add("failure");
+        }
+
+        synchronized List<String> events() {
+            return new ArrayList<>(events);
+        }
+
+        synchronized void clear() {
+            events.clear();
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the flight recorder events of the library.
+ */
+public class FlightRecorderTests {
+
+    private static final String CALL = "me.tobiadeyinka.itunessearch.Call";
+    private static final String EXCHANGE = "me.tobiadeyinka.itunessearch.Exchange";
+
+    private static final URI SEARCH_URI =
+        URI.create("https://itunes.apple.com/search?term=the+national&media=music&country=gb&limit=5");
+
+    private ItunesStandInServer standIn;
+    private ItunesClient client;
+
+    @BeforeClass
+    public void startStandIn() throws IOException {
+        standIn = ItunesStandInServer.start();
+    }
+
+    @AfterClass
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @BeforeMethod
+    public void createClient() {
+        standIn.reset();
+        client = standIn.configure(new ItunesClient());
+    }
+
+    @Test
+    public void callsAreRecordedWithoutTheSearchTerm() throws IOException {
+        client.withResponseCache(new ResponseCache(10));
+
+        List<RecordedEvent> events = record(new Recording(), () -> {
+            client.executeQuery(SEARCH_URI);
+            client.executeQueryAsync(SEARCH_URI).join();
+        });
+
+        List<RecordedEvent> calls = events(events, CALL);
+        assertThat(calls).hasSize(2);
+
+        RecordedEvent miss = calls.get(0);
+        assertThat(miss.getString("urlTemplate")).isEqualTo(
+            "https://itunes.apple.com/search?term={term}&media=music&country=gb&limit=5"
+        );
+        assertThat(miss.getString("endpoint")).isEqualTo("SEARCH");
+        assertThat(miss.getString("media")).isEqualTo("MUSIC");
+        assertThat(miss.getString("country")).isEqualTo("GB");
+        assertThat(miss.getInt("statusCode")).isEqualTo(200);
+        assertThat(miss.getString("cacheOutcome")).isEqualTo("miss");
+        assertThat(miss.getLong("bytes")).isGreaterThan(0);
+        assertThat(miss.getLong("parse")).isGreaterThanOrEqualTo(0);
+        assertThat(miss.getLong("timeToFirstByte")).isPositive();
+        assertThat(miss.getString("failure")).isNull();
+        assertThat(miss.getDuration()).isGreaterThan(Duration.ZERO);
+
+        RecordedEvent hit = calls.get(1);
+        assertThat(hit.getString("cacheOutcome")).isEqualTo("hit");
+        assertThat(hit.getInt("statusCode")).isZero();
+        assertThat(hit.getLong("bytes")).isZero();
+
+        assertThat(events(events, EXCHANGE)).hasSize(1);
+    }
+
+    @Test
+    public void everyAttemptIsAnExchange() throws IOException {
+        standIn.withErrorRate(1, 503);
+        client
+            .withTransport(new PooledHttpTransport())
+            .withRetryPolicy(new RetryPolicy().withMaxAttempts(3).withBaseDelay(Duration.ofMillis(1)));
+
+        List<RecordedEvent> events = record(new Recording(), () -> {
+            assertThatThrownBy(() -> client.executeQuery(SEARCH_URI)).isInstanceOf(NetworkCommunicationException.class);
+            assertThatThrownBy(() -> client.executeQueryAsync(SEARCH_URI).join())
+                .hasCauseInstanceOf(NetworkCommunicationException.class);
+        });
+
+        List<RecordedEvent> exchanges = events(events, EXCHANGE);
+        assertThat(exchanges).hasSize(6);
+        assertThat(exchanges).allSatisfy(exchange -> {
+            assertThat(exchange.getInt("statusCode")).isEqualTo(503);
+            assertThat(exchange.getLong("timeToFirstByte")).isPositive();
+            assertThat(exchange.getString("urlTemplate")).doesNotContain("national");
+        });
+
+        List<RecordedEvent> calls = events(events, CALL);
+        assertThat(calls).hasSize(2);
+        assertThat(calls).allSatisfy(call -> {
+            assertThat(call.getString("cacheOutcome")).isEqualTo("none");
+            assertThat(call.getString("failure")).contains("NetworkCommunicationException").contains("503");
+        });
+    }
+
+    @Test
+    public void exchangesAreOnlyRecordedWhenEnabled() throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        List<RecordedEvent> events = record(recording, () -> client.executeQuery(SEARCH_URI));
+
+        assertThat(events(events, CALL)).hasSize(1);
+        assertThat(events(events, EXCHANGE)).isEmpty();
+    }
+
+    @Test
+    public void eventsAreOnlyCreatedWhileRecording() {
+        assertThat(ItunesCallEvent.start()).isNull();
+        assertThat(ItunesExchangeEvent.start()).isNull();
+    }
+
+    @Test
+    public void templatesLeaveOutWhatWasQueried() {
+        assertThat(ItunesEvent.urlTemplate(URI.create("https://itunes.apple.com/lookup?id=909253,284910350")))
+            .isEqualTo("https://itunes.apple.com/lookup?id={id}");
+        assertThat(ItunesEvent.urlTemplate(URI.create("https://itunes.apple.com/lookup?upc=720642462928&entity=song")))
+            .isEqualTo("https://itunes.apple.com/lookup?upc={upc}&entity=song");
+        assertThat(ItunesEvent.urlTemplate(
+            URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/10/explicit.json")
+        )).isEqualTo("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/10/explicit.json");
+    }
+
+    /**
+     * run the calls while the recording records the events of the library, and read back what it recorded
+     */
+    private static List<RecordedEvent> record(Recording recording, Runnable calls) throws IOException {
+        Path file = Files.createTempFile("itunes", ".jfr");
+
+        try (recording) {
+            if (recording.getSettings().isEmpty()) {
+                recording.enable(CALL);
+                recording.enable(EXCHANGE);
+            }
+
+            recording.start();
+            calls.run();
+            recording.stop();
+            recording.dump(file);
+
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .collect(Collectors.toList());
+    }
+
+}
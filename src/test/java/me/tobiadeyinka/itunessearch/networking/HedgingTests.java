@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for hedging slow requests, against a stub transport whose first request stalls.
+ */
+public class HedgingTests {
+
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=909253");
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=jack+johnson");
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<Integer> closedResponses = ConcurrentHashMap.newKeySet();
+
+    private volatile long stallMillis;
+    private volatile boolean failing;
+
+    /**
+     * the first request stalls, later ones answer right away. Each response reports which request it answers.
+     */
+    private final HttpTransport transport = request -> {
+        int number = requests.incrementAndGet();
+
+        if (number == 1) {
+            try {
+                Thread.sleep(stallMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failing) throw new IOException("connection reset on request " + number);
+
+        byte[] body = new JSONObject().put("resultCount", 0).put("request", number).put("results", new Object[0])
+            .toString().getBytes(StandardCharsets.UTF_8);
+
+        return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body) {
+            @Override
+            public void close() throws IOException {
+                closedResponses.add(number);
+                super.close();
+            }
+        });
+    };
+
+    @BeforeMethod
+    public void reset() {
+        requests.set(0);
+        closedResponses.clear();
+        stallMillis = 1000;
+        failing = false;
+    }
+
+    private ItunesClient client(HedgingPolicy policy) {
+        return new ItunesClient().withTransport(transport).withHedgingPolicy(policy).withRequestCoalescing(false);
+    }
+
+    private static Duration time(Runnable call) {
+        long start = System.nanoTime();
+        call.run();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    @Test
+    public void stalledLookupIsAnsweredByTheHedge() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(50));
+        ItunesClient client = client(policy);
+
+        JSONObject[] response = new JSONObject[1];
+        Duration elapsed = time(() -> response[0] = client.executeQuery(LOOKUP_URI));
+
+        assertThat(elapsed).isLessThan(Duration.ofMillis(800));
+        assertThat(response[0].getInt("request")).isEqualTo(2);
+        assertThat(policy.getHedgeCount()).isEqualTo(1);
+        assertThat(policy.getHedgeWinCount()).isEqualTo(1);
+
+        /*
+         * the stalled response is closed once it arrives
+         */
+        Thread.sleep(1200);
+        assertThat(closedResponses).containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    public void asynchronousLookupsAreHedged() {
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(50));
+
+        JSONObject response = client(policy).executeQueryAsync(LOOKUP_URI).join();
+
+        assertThat(response.getInt("request")).isEqualTo(2);
+        assertThat(policy.getHedgeWinCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void fastRequestsAreNotHedged() {
+        stallMillis = 0;
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(200));
+
+        assertThat(client(policy).executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(1);
+        assertThat(policy.getHedgeCount()).isZero();
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void onlyConfiguredEndpointsAreHedged() {
+        stallMillis = 300;
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(50));
+
+        assertThat(client(policy).executeQuery(SEARCH_URI).getInt("request")).isEqualTo(1);
+        assertThat(policy.getHedgeCount()).isZero();
+    }
+
+    @Test
+    public void hedgesNeverWaitForRateLimitPermits() {
+        stallMillis = 300;
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(50));
+        RateLimiter rateLimiter = new RateLimiter(1, Duration.ofSeconds(10));
+        ItunesClient client = client(policy).withRateLimiter(ItunesClient.ITUNES_HOST, rateLimiter);
+
+        assertThat(client.executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(1);
+        assertThat(policy.getHedgeCount()).isZero();
+        assertThat(policy.getBudgetDeniedCount()).isEqualTo(1);
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failureIsReportedOnceBothRequestsFailed() {
+        stallMillis = 100;
+        failing = true;
+        HedgingPolicy policy = new HedgingPolicy().withFixedDelay(Duration.ofMillis(20));
+
+        assertThatThrownBy(() -> client(policy).executeQuery(LOOKUP_URI))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("connection reset");
+
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void delayFollowsTheObservedPercentile() {
+        HedgingPolicy policy = new HedgingPolicy()
+            .withPercentile(0.9)
+            .withDelayBounds(Duration.ofMillis(10), Duration.ofSeconds(1));
+
+        assertThat(policy.getDelay()).isEqualTo(Duration.ofSeconds(1));
+
+        for (int i = 1; i <= 100; i++) {
+            policy.recordLatency(Duration.ofMillis(i).toNanos());
+        }
+
+        assertThat(policy.getDelay()).isEqualTo(Duration.ofMillis(90));
+
+        for (int i = 0; i < 256; i++) {
+            policy.recordLatency(Duration.ofMillis(1).toNanos());
+        }
+
+        assertThat(policy.getDelay()).isEqualTo(Duration.ofMillis(10));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Tests for the bundled transports and their use by {@link ItunesClient}.
+ */
+public class HttpTransportTests extends BaseNetworkingTest {
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/search", exchange -> respond(exchange, 200, "{\"resultCount\":1,\"results\":[{\"trackId\":1}]}"));
+        server.createContext("/throttled", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "3");
+            respond(exchange, 403, "");
+        });
+    }
+
+    @DataProvider
+    public Object[][] transports() {
+        return new Object[][] { { new UrlConnectionTransport() }, { new HttpClientTransport() } };
+    }
+
+    @Test(dataProvider = "transports")
+    public void executeSuccessfulRequest(HttpTransport transport) throws IOException {
+        try (TransportResponse response = transport.execute(new TransportRequest(uri("/search?term=jack")))) {
+            assertThat(response.getStatusCode()).isEqualTo(200);
+            assertThat(response.isSuccessful()).isTrue();
+            assertThat(response.getHeader("content-type")).isEqualTo("application/json");
+            assertThat(read(response.getBody())).contains("\"trackId\":1");
+        }
+    }
+
+    @Test(dataProvider = "transports")
+    public void executeFailedRequest(HttpTransport transport) throws IOException {
+        try (TransportResponse response = transport.execute(new TransportRequest(uri("/throttled")))) {
+            assertThat(response.getStatusCode()).isEqualTo(403);
+            assertThat(response.isSuccessful()).isFalse();
+            assertThat(response.getHeader("Retry-After")).isEqualTo("3");
+        }
+    }
+
+    @Test(dataProvider = "transports")
+    public void executeRequestAsynchronously(HttpTransport transport) throws IOException {
+        TransportRequest request = new TransportRequest(uri("/search?term=jack"));
+
+        try (TransportResponse response = transport.executeAsync(request, Runnable::run).join()) {
+            assertThat(response.getStatusCode()).isEqualTo(200);
+            assertThat(response.getTimeToFirstByteNanos()).isPositive();
+            assertThat(read(response.getBody())).contains("\"trackId\":1");
+        }
+    }
+
+    @Test(dataProvider = "transports")
+    public void clientParsesResponse(HttpTransport transport) {
+        JSONObject response = new ItunesClient().withTransport(transport).executeQuery(uri("/search?term=jack"));
+        assertThat(response.getInt("resultCount")).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "transports", expectedExceptions = NetworkCommunicationException.class)
+    public void clientRejectsUnsuccessfulResponse(HttpTransport transport) {
+        new ItunesClient().withTransport(transport).executeQuery(uri("/throttled"));
+    }
+
+    @Test(dataProvider = "transports")
+    public void clientExecutesQueryAsynchronously(HttpTransport transport) {
+        JSONObject response = new ItunesClient().withTransport(transport).executeQueryAsync(uri("/search?term=jack")).join();
+        assertThat(response.getInt("resultCount")).isEqualTo(1);
+    }
+
+    @Test(dataProvider = "transports")
+    public void clientFailsAsyncQueryOnUnsuccessfulResponse(HttpTransport transport) {
+        Throwable failure = catchThrowable(
+            () -> new ItunesClient().withTransport(transport).executeQueryAsync(uri("/throttled")).join()
+        );
+
+        assertThat(failure).isInstanceOf(CompletionException.class);
+        assertThat(failure.getCause()).isInstanceOf(NetworkCommunicationException.class);
+    }
+
+}
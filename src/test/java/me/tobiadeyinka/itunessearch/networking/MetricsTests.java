@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.entities.ItunesMedia;
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the latency histograms and counters of a client.
+ */
+public class MetricsTests {
+
+    private static final URI SEARCH_URI =
+        URI.create("https://itunes.apple.com/search?term=jack+johnson&media=music&country=gb");
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=909253");
+    private static final URI RSS_URI =
+        URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/10/explicit.json");
+    private static final URI MISSING_URI = URI.create("https://itunes.apple.com/lookup?id=404");
+    private static final URI FAILING_URI = URI.create("https://itunes.apple.com/lookup?id=1");
+
+    private static final byte[] BODY = new JSONObject().put("resultCount", 0).put("results", new Object[0])
+        .toString().getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger unavailable = new AtomicInteger();
+
+    /**
+     * answers 404 for MISSING_URI, fails FAILING_URI, and answers 503 while there are unavailable answers left
+     */
+    private final HttpTransport transport = request -> {
+        if (request.getUri().equals(FAILING_URI)) throw new IOException("connection reset");
+
+        int statusCode = request.getUri().equals(MISSING_URI) ? 404 : unavailable.getAndDecrement() > 0 ? 503 : 200;
+        return new TransportResponse(statusCode, Map.of("Content-Type", List.of("text/javascript")),
+            new ByteArrayInputStream(BODY)).withTimings(1_000_000, 2_000_000);
+    };
+
+    private ClientMetrics metrics;
+    private ItunesClient client;
+
+    @BeforeMethod
+    public void createClient() {
+        unavailable.set(0);
+        metrics = new ClientMetrics();
+        client = new ItunesClient().withTransport(transport).withMetrics(metrics);
+    }
+
+    @Test
+    public void requestsAreRecordedByEndpointMediaAndCountry() {
+        client.executeQuery(SEARCH_URI);
+        client.executeQuery(SEARCH_URI);
+        client.executeQueryAsync(LOOKUP_URI).join();
+        client.executeQuery(RSS_URI);
+
+        SeriesSnapshot search = metrics.getSeries(Endpoint.SEARCH, ItunesMedia.MUSIC, CountryCode.GB);
+        assertThat(search.getStatusCounts()).containsExactly(Map.entry(200, 2L));
+        assertThat(search.getBytesRead()).isEqualTo(2L * BODY.length);
+        assertThat(search.getBodyRead().getCount()).isEqualTo(2);
+        assertThat(search.getParse().getCount()).isEqualTo(2);
+        assertThat(search.getConnect().getP50()).isBetween(950_000L, 1_050_000L);
+        assertThat(search.getTimeToFirstByte().getMax()).isBetween(1_900_000L, 2_100_000L);
+
+        assertThat(metrics.getSeries(Endpoint.LOOKUP, null, null).getResponseCount()).isEqualTo(1);
+        assertThat(metrics.getSeries(Endpoint.RSS, ItunesMedia.MUSIC, CountryCode.US).getResponseCount()).isEqualTo(1);
+        assertThat(metrics.getSeries(Endpoint.SEARCH, ItunesMedia.MUSIC, CountryCode.US)).isNull();
+
+        assertThat(metrics.getSeries()).hasSize(3);
+        assertThat(metrics.getResponseCount()).isEqualTo(4);
+        assertThat(metrics.getBytesRead()).isEqualTo(4L * BODY.length);
+    }
+
+    @Test
+    public void searchesWithoutMediaAreRecordedAsAll() {
+        client.executeQuery(URI.create("https://itunes.apple.com/search?term=jack+johnson"));
+
+        assertThat(metrics.getSeries(Endpoint.SEARCH, ItunesMedia.ALL, null).getResponseCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failuresAreCountedByStatus() {
+        assertThatThrownBy(() -> client.executeQuery(MISSING_URI)).isInstanceOf(NetworkCommunicationException.class);
+        assertThatThrownBy(() -> client.executeQuery(FAILING_URI)).isInstanceOf(NetworkCommunicationException.class);
+        assertThatThrownBy(() -> client.executeQueryAsync(FAILING_URI).join())
+            .hasCauseInstanceOf(NetworkCommunicationException.class);
+
+        SeriesSnapshot lookup = metrics.getSeries(Endpoint.LOOKUP, null, null);
+        assertThat(lookup.getStatusCounts()).containsExactly(Map.entry(404, 1L));
+        assertThat(lookup.getErrorCount()).isEqualTo(2);
+        assertThat(lookup.getBodyRead().getCount()).isZero();
+        assertThat(metrics.getErrorCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void retriesAndQueueWaitAreRecorded() {
+        unavailable.set(2);
+        client
+            .withRetryPolicy(new RetryPolicy().withBaseDelay(Duration.ofMillis(1)).withMaxDelay(Duration.ofMillis(5)))
+            .withRateLimiter(ItunesClient.ITUNES_HOST, new RateLimiter(1000, Duration.ofSeconds(1), 1));
+
+        client.executeQuery(LOOKUP_URI);
+
+        SeriesSnapshot lookup = metrics.getSeries(Endpoint.LOOKUP, null, null);
+        assertThat(lookup.getRetryCount()).isEqualTo(2);
+        assertThat(lookup.getQueueWait().getCount()).isEqualTo(3);
+        assertThat(lookup.getStatusCounts()).containsExactly(Map.entry(200, 1L));
+        assertThat(metrics.getRetryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(10_000);
+        assertThat(snapshot.getMax()).isEqualTo(10_000_000);
+        assertThat(snapshot.getMean()).isBetween(4_700_000L, 5_300_000L);
+        assertThat(snapshot.getP50()).isBetween(4_700_000L, 5_300_000L);
+        assertThat(snapshot.getP99()).isBetween(9_300_000L, 10_000_000L);
+        assertThat(snapshot.getP999()).isBetween(9_300_000L, 10_000_000L);
+        assertThat(new LatencyHistogram().snapshot().getP99()).isZero();
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        TransportRequest request = new TransportRequest(SEARCH_URI);
+
+        /*
+         * warm up so the recording code is compiled before it is measured
+         */
+        for (int i = 0; i < 100_000; i++) record(metrics, request, i);
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) record(metrics, request, i);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        SeriesSnapshot search = metrics.getSeries(Endpoint.SEARCH, ItunesMedia.MUSIC, CountryCode.GB);
+        assertThat(search.getQueueWait().getCount()).isEqualTo(200_000);
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    @Test
+    public void metricsAreReadableOverJmx() throws Exception {
+        client.executeQuery(SEARCH_URI);
+        ObjectName name = metrics.registerMBean("metrics-tests");
+
+        try {
+            assertThatThrownBy(() -> metrics.registerMBean("metrics-tests")).isInstanceOf(IllegalStateException.class);
+
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ResponseCount")).isEqualTo(1L);
+            CompositeData[] series = (CompositeData[]) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "Series");
+
+            assertThat(series).hasSize(1);
+            assertThat(series[0].get("endpoint")).isEqualTo(Endpoint.SEARCH.name());
+            assertThat(series[0].get("country")).isEqualTo(CountryCode.GB.name());
+        } finally {
+            ClientMetrics.unregisterMBean("metrics-tests");
+        }
+
+        assertThatThrownBy(() -> ClientMetrics.unregisterMBean("metrics-tests"))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void record(ClientMetrics metrics, TransportRequest request, long nanos) {
+        metrics.series(request).record(ClientMetrics.Phase.QUEUE_WAIT, nanos);
+    }
+
+}
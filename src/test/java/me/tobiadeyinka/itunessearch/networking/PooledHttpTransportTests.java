@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for how {@link PooledHttpTransport} handles connections and responses at the wire level, against a
+ * server socket answering with scripted bytes.
+ */
+public class PooledHttpTransportTests {
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    /**
+     * Answers one request on a connection. The request number counts from 1 per connection.
+     */
+    @FunctionalInterface
+    private interface Script {
+
+        void answer(Socket socket, int connection, int request) throws IOException, InterruptedException;
+
+    }
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private ServerSocket serverSocket;
+    private PooledHttpTransport transport;
+    private volatile Script script;
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        connections.set(0);
+        requests.set(0);
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        transport = new PooledHttpTransport().withReadTimeout(Duration.ofMillis(500));
+
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    int connection = connections.incrementAndGet();
+                    Thread handler = new Thread(() -> serve(socket, connection));
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterMethod
+    public void stopServer() throws IOException {
+        transport.close();
+        serverSocket.close();
+    }
+
+    private void serve(Socket socket, int connection) {
+        try (socket) {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1)
+            );
+
+            for (int request = 1; ; request++) {
+                String line = reader.readLine();
+                if (line == null) return;
+
+                while (line != null && !line.isEmpty()) line = reader.readLine();
+                requests.incrementAndGet();
+                script.answer(socket, connection, request);
+            }
+        } catch (IOException | InterruptedException ignored) {
+            /*
+             * the script or the client closed the connection
+             */
+        }
+    }
+
+    private static void write(Socket socket, String response) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + path);
+    }
+
+    private String get(String path) throws IOException {
+        try (TransportResponse response = transport.execute(new TransportRequest(uri(path)))) {
+            return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void requestOnAConnectionClosedWhileIdleIsSentAgain() throws IOException {
+        script = (socket, connection, request) -> {
+            write(socket, OK);
+
+            /*
+             * the first connection is closed by the server once idle, without telling the client
+             */
+            if (connection == 1) socket.close();
+        };
+
+        assertThat(get("/first")).isEqualTo("ok");
+        assertThat(get("/second")).isEqualTo("ok");
+        assertThat(connections.get()).isEqualTo(2);
+        assertThat(transport.getReusedConnectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void readTimeoutOnAPooledConnectionIsNotRetried() throws IOException {
+        script = (socket, connection, request) -> {
+            if (request == 1) {
+                write(socket, OK);
+            } else {
+                Thread.sleep(5_000);
+            }
+        };
+
+        assertThat(get("/first")).isEqualTo("ok");
+        assertThatThrownBy(() -> get("/stalled")).isInstanceOf(SocketTimeoutException.class);
+        assertThat(connections.get()).isEqualTo(1);
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void malformedContentLengthFailsWithAnIoException() {
+        script = (socket, connection, request) -> write(socket, "HTTP/1.1 200 OK\r\nContent-Length: two\r\n\r\nok");
+
+        assertThatThrownBy(() -> get("/")).isInstanceOf(IOException.class).hasMessageContaining("Content-Length");
+    }
+
+    @Test
+    public void malformedChunkSizeFailsWithAnIoException() {
+        script = (socket, connection, request) ->
+            write(socket, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\nok\r\n0\r\n\r\n");
+
+        assertThatThrownBy(() -> get("/")).isInstanceOf(IOException.class).hasMessageContaining("chunk size");
+    }
+
+    @Test
+    public void overlongHeaderLineFailsWithAnIoException() {
+        String header = "X-Padding: " + "a".repeat(10_000) + "\r\n";
+        script = (socket, connection, request) ->
+            write(socket, "HTTP/1.1 200 OK\r\n" + header + "Content-Length: 2\r\n\r\nok");
+
+        assertThatThrownBy(() -> get("/")).isInstanceOf(IOException.class).hasMessageContaining("longer than");
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.RateLimitExceededException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Tests for the token bucket and its use by {@link ItunesClient}.
+ */
+public class RateLimiterTests extends BaseNetworkingTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/search", exchange -> respond(exchange, 200, "{\"resultCount\":0,\"results\":[]}"));
+    }
+
+    private RateLimiter rateLimiter(int permits, int burst) {
+        clock.set(0);
+        return new RateLimiter(permits, Duration.ofSeconds(permits), burst, clock::get);
+    }
+
+    @Test
+    public void burstIsAvailableRightAway() {
+        RateLimiter rateLimiter = rateLimiter(10, 3);
+
+        assertThat(rateLimiter.availablePermits()).isEqualTo(3);
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isFalse();
+        assertThat(rateLimiter.availablePermits()).isZero();
+        assertThat(rateLimiter.timeUntilNextPermit()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void permitsRefillOverTime() {
+        RateLimiter rateLimiter = rateLimiter(10, 3);
+        while (rateLimiter.tryAcquire()) { }
+
+        clock.addAndGet(Duration.ofMillis(1500).toNanos());
+        assertThat(rateLimiter.availablePermits()).isEqualTo(1);
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(rateLimiter.availablePermits()).isEqualTo(3);
+    }
+
+    @Test
+    public void reservationsQueueBehindEachOther() {
+        RateLimiter rateLimiter = rateLimiter(10, 1);
+
+        assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isZero();
+        assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(Duration.ofSeconds(1).toNanos());
+        assertThat(rateLimiter.reserve(Long.MAX_VALUE)).isEqualTo(Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    public void timedAcquireDoesNotConsumeWhenItWouldWaitTooLong() throws InterruptedException {
+        RateLimiter rateLimiter = rateLimiter(10, 1);
+        rateLimiter.acquire();
+
+        assertThat(rateLimiter.tryAcquire(Duration.ofMillis(500))).isFalse();
+        assertThat(rateLimiter.timeUntilNextPermit()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void concurrentAcquiresNeverExceedTheBurst() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(100, Duration.ofDays(1));
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (rateLimiter.tryAcquire()) acquired.incrementAndGet();
+                }
+
+                done.countDown();
+            });
+        }
+
+        done.await(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertThat(acquired.get()).isEqualTo(100);
+    }
+
+    @Test
+    public void clientLimitsRequestsPerHost() {
+        RateLimiter rateLimiter = new RateLimiter(1, Duration.ofHours(1));
+        ItunesClient client = new ItunesClient()
+            .withRateLimiter("127.0.0.1", rateLimiter)
+            .withRateLimiter(ItunesClient.RSS_HOST, new RateLimiter(1, Duration.ofHours(1)))
+            .withRateLimitTimeout(Duration.ZERO);
+
+        client.executeQuery(uri("/search?term=jack"));
+        assertThat(rateLimiter.availablePermits()).isZero();
+
+        Throwable failure = catchThrowable(() -> client.executeQuery(uri("/search?term=jack")));
+        assertThat(failure).isInstanceOf(RateLimitExceededException.class);
+
+        failure = catchThrowable(() -> client.executeQueryAsync(uri("/search?term=jack")).join());
+        assertThat(failure).isInstanceOf(CompletionException.class);
+        assertThat(failure.getCause()).isInstanceOf(RateLimitExceededException.class);
+
+        assertThat(client.getRateLimiter(ItunesClient.RSS_HOST).availablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    public void clientWaitsForPermits() {
+        ItunesClient client = new ItunesClient()
+            .withRateLimiter("127.0.0.1", new RateLimiter(10, Duration.ofSeconds(1), 1));
+
+        long start = System.nanoTime();
+        client.executeQuery(uri("/search?term=jack"));
+        client.executeQueryAsync(uri("/search?term=jack")).join();
+        client.executeQuery(uri("/search?term=jack"));
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(190));
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for recording traffic to a cassette and replaying it.
+ */
+public class RecordReplayTests {
+
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=jack+johnson&limit=5");
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=909253");
+    private static final URI FAILING_URI = URI.create("https://itunes.apple.com/lookup?id=1");
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long latencyMillis;
+
+    private Path cassette;
+
+    /**
+     * answers every request with its number, and fails requests for FAILING_URI
+     */
+    private final HttpTransport transport = request -> {
+        int number = requests.incrementAndGet();
+        sleep(latencyMillis);
+
+        if (request.getUri().equals(FAILING_URI)) throw new IOException("connection reset on request " + number);
+
+        byte[] body = new JSONObject().put("resultCount", 0).put("request", number).put("results", new Object[0])
+            .toString().getBytes(StandardCharsets.UTF_8);
+
+        return new TransportResponse(200, Map.of("Content-Type", List.of("text/javascript")),
+            new ByteArrayInputStream(body));
+    };
+
+    @BeforeMethod
+    public void createCassette() throws IOException {
+        requests.set(0);
+        latencyMillis = 0;
+        cassette = Files.createTempFile("itunes", ".cassette");
+    }
+
+    @AfterMethod
+    public void deleteCassette() throws IOException {
+        Files.deleteIfExists(cassette);
+    }
+
+    @Test
+    public void everyExchangeIsRecorded() throws IOException {
+        try (RecordingTransport recorder = new RecordingTransport(transport, cassette)) {
+            ItunesClient client = new ItunesClient().withTransport(recorder);
+
+            assertThat(client.executeQuery(SEARCH_URI).getInt("request")).isEqualTo(1);
+            assertThat(client.executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(2);
+            assertThatThrownBy(() -> client.executeQuery(FAILING_URI))
+                .isInstanceOf(NetworkCommunicationException.class);
+
+            assertThat(recorder.getRecordedCount()).isEqualTo(3);
+        }
+
+        List<Cassette.Interaction> interactions = Cassette.read(cassette).getInteractions();
+
+        assertThat(interactions).extracting(Cassette.Interaction::getUri)
+            .containsExactly(SEARCH_URI, LOOKUP_URI, FAILING_URI);
+        assertThat(interactions.get(0).getStatusCode()).isEqualTo(200);
+        assertThat(interactions.get(0).getBodyLength()).isGreaterThan(0);
+        assertThat(interactions.get(1).getStartNanos()).isGreaterThan(interactions.get(0).getStartNanos());
+        assertThat(interactions.get(2).isFailure()).isTrue();
+        assertThat(interactions.get(2).getFailure()).isEqualTo("connection reset on request 3");
+    }
+
+    @Test
+    public void replayAnswersFromTheCassette() throws IOException {
+        record(SEARCH_URI, LOOKUP_URI, FAILING_URI);
+
+        ReplayTransport replay = new ReplayTransport(Cassette.read(cassette));
+        ItunesClient client = new ItunesClient().withTransport(replay);
+
+        /*
+         * the query parameters of the recorded search are swapped, the canonical uri still matches
+         */
+        JSONObject response = client.executeQuery(URI.create("https://itunes.apple.com/search?limit=5&term=jack+johnson"));
+        assertThat(response.getInt("request")).isEqualTo(1);
+        assertThat(client.executeQueryAsync(LOOKUP_URI).join().getInt("request")).isEqualTo(2);
+        assertThatThrownBy(() -> client.executeQuery(FAILING_URI))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("connection reset on request 3");
+
+        assertThat(replay.getReplayedCount()).isEqualTo(3);
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void repeatedRequestsReplayInOrderAndStartOver() throws IOException {
+        record(LOOKUP_URI, LOOKUP_URI);
+
+        ItunesClient client = new ItunesClient()
+            .withTransport(new ReplayTransport(Cassette.read(cassette)))
+            .withRequestCoalescing(false);
+
+        assertThat(client.executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(1);
+        assertThat(client.executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(2);
+        assertThat(client.executeQuery(LOOKUP_URI).getInt("request")).isEqualTo(1);
+    }
+
+    @Test
+    public void unrecordedRequestsFail() throws IOException {
+        record(LOOKUP_URI);
+
+        ReplayTransport replay = new ReplayTransport(Cassette.read(cassette));
+        ItunesClient client = new ItunesClient().withTransport(replay);
+
+        assertThatThrownBy(() -> client.executeQuery(SEARCH_URI))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("No recorded response");
+        assertThat(replay.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void originalTimingReplaysTheRecordedLatency() throws IOException {
+        latencyMillis = 300;
+        record(LOOKUP_URI);
+
+        ReplayTransport replay = new ReplayTransport(Cassette.read(cassette));
+        ItunesClient client = new ItunesClient().withTransport(replay).withRequestCoalescing(false);
+
+        assertThat(time(() -> client.executeQuery(LOOKUP_URI))).isLessThan(Duration.ofMillis(200));
+
+        replay.withOriginalTiming(true);
+        assertThat(time(() -> client.executeQuery(LOOKUP_URI))).isGreaterThanOrEqualTo(Duration.ofMillis(300));
+        assertThat(time(() -> client.executeQueryAsync(LOOKUP_URI).join()))
+            .isGreaterThanOrEqualTo(Duration.ofMillis(300));
+    }
+
+    @Test
+    public void originalTimingHonoursTheDeadline() throws IOException {
+        latencyMillis = 1000;
+        record(LOOKUP_URI);
+
+        ItunesClient client = new ItunesClient()
+            .withTransport(new ReplayTransport(Cassette.read(cassette)).withOriginalTiming(true));
+
+        TransportRequest request = new TransportRequest(LOOKUP_URI).withTimeout(Duration.ofMillis(100));
+        Duration elapsed = time(() -> assertThatThrownBy(() -> client.executeQuery(request))
+            .isInstanceOf(RequestTimeoutException.class));
+
+        assertThat(elapsed).isLessThan(Duration.ofMillis(800));
+    }
+
+    @Test
+    public void trafficToTheStandInReplaysWithoutIt() throws IOException {
+        try (ItunesStandInServer standIn = ItunesStandInServer.start()) {
+            JSONObject recorded;
+
+            try (RecordingTransport recorder = new RecordingTransport(new UrlConnectionTransport(), cassette)) {
+                ItunesClient client = standIn.configure(new ItunesClient().withTransport(recorder));
+                recorded = client.executeQuery(URI.create("https://itunes.apple.com/search?term=the+national"));
+            }
+
+            /*
+             * the cassette holds the requests as they were sent, so the replaying client keeps the base uri. The
+             * request count shows the replay never reached the stand-in.
+             */
+            ItunesClient client = standIn.configure(new ItunesClient()
+                .withTransport(new ReplayTransport(Cassette.read(cassette))));
+
+            JSONObject replayed = client.executeQuery(URI.create("https://itunes.apple.com/search?term=the+national"));
+            assertThat(replayed.similar(recorded)).isTrue();
+            assertThat(standIn.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    private void record(URI... uris) throws IOException {
+        try (RecordingTransport recorder = new RecordingTransport(transport, cassette)) {
+            ItunesClient client = new ItunesClient().withTransport(recorder).withRequestCoalescing(false);
+
+            for (URI uri : uris) {
+                try {
+                    client.executeQuery(uri);
+                } catch (NetworkCommunicationException ignored) {
+                    /*
+                     * failures are recorded too
+                     */
+                }
+            }
+        }
+    }
+
+    private static Duration time(Runnable call) {
+        long start = System.nanoTime();
+        call.run();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
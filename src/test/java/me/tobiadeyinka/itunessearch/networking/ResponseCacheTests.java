@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the response cache and its use by {@link ItunesClient}.
+ */
+public class ResponseCacheTests extends BaseNetworkingTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private static final URI SEARCH_URI = URI.create("https://itunes.apple.com/search?term=jack&limit=5");
+    private static final URI LOOKUP_URI = URI.create("https://itunes.apple.com/lookup?id=1");
+    private static final URI RSS_URI = URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/5/explicit.json");
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/search", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 200, "{\"resultCount\":1,\"results\":[{\"trackId\":1}]}");
+        });
+    }
+
+    @BeforeMethod
+    public void reset() {
+        clock.set(0);
+        requests.set(0);
+    }
+
+    private static byte[] body(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void canonicalKeyIgnoresParameterOrderAndDefaultPort() {
+        assertThat(NetworkUtils.canonicalKey(URI.create("HTTPS://iTunes.apple.com:443/search?limit=5&term=jack")))
+            .isEqualTo(NetworkUtils.canonicalKey(SEARCH_URI))
+            .isEqualTo("https://itunes.apple.com/search?limit=5&term=jack");
+    }
+
+    @Test
+    public void endpointsAreRecognised() {
+        assertThat(Endpoint.of(SEARCH_URI)).isEqualTo(Endpoint.SEARCH);
+        assertThat(Endpoint.of(LOOKUP_URI)).isEqualTo(Endpoint.LOOKUP);
+        assertThat(Endpoint.of(RSS_URI)).isEqualTo(Endpoint.RSS);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ResponseCache cache = new ResponseCache(2, clock::get);
+        cache.put(SEARCH_URI, body("search"));
+        cache.put(LOOKUP_URI, body("lookup"));
+
+        assertThat(cache.get(SEARCH_URI)).isEqualTo(body("search"));
+        cache.put(RSS_URI, body("rss"));
+
+        assertThat(cache.get(LOOKUP_URI)).isNull();
+        assertThat(cache.get(SEARCH_URI)).isNotNull();
+        assertThat(cache.get(RSS_URI)).isNotNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(3);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void entriesExpirePerEndpoint() {
+        ResponseCache cache = new ResponseCache(10, clock::get)
+            .withTtl(Endpoint.SEARCH, Duration.ofMinutes(1))
+            .withTtl(Endpoint.LOOKUP, Duration.ofMinutes(5));
+
+        cache.put(SEARCH_URI, body("search"));
+        cache.put(LOOKUP_URI, body("lookup"));
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+
+        assertThat(cache.get(SEARCH_URI)).isNull();
+        assertThat(cache.get(LOOKUP_URI)).isNotNull();
+        assertThat(cache.getExpirationCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void zeroTtlDisablesCachingForEndpoint() {
+        ResponseCache cache = new ResponseCache(10, clock::get).withTtl(Endpoint.RSS, Duration.ZERO);
+        cache.put(RSS_URI, body("rss"));
+
+        assertThat(cache.get(RSS_URI)).isNull();
+    }
+
+    @Test
+    public void clientServesRepeatedQueriesFromCache() {
+        ResponseCache cache = new ResponseCache(10);
+        ItunesClient client = new ItunesClient().withResponseCache(cache);
+
+        JSONObject first = client.executeQuery(uri("/search?term=jack&limit=5"));
+        JSONObject second = client.executeQuery(uri("/search?limit=5&term=jack"));
+        JSONObject third = client.executeQueryAsync(uri("/search?term=jack&limit=5")).join();
+
+        assertThat(requests.get()).isEqualTo(1);
+        assertThat(second.similar(first)).isTrue();
+        assertThat(third.similar(first)).isTrue();
+        assertThat(second).isNotSameAs(first);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+}
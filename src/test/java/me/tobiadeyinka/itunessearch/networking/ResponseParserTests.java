@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for parsing response bodies from their stream.
+ */
+public class ResponseParserTests extends BaseNetworkingTest {
+
+    private static final int RESULTS = 200;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private String largeBody;
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        largeBody = searchResponse(RESULTS);
+
+        server.createContext("/search", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 200, largeBody);
+        });
+    }
+
+    /**
+     * @return a body shaped like a search response, about 2 KB per result like a real song result
+     */
+    private static String searchResponse(int results) {
+        StringBuilder body = new StringBuilder("{\"resultCount\":").append(results).append(",\"results\":[");
+
+        for (int i = 0; i < results; i++) {
+            if (i > 0) body.append(',');
+
+            body.append(new JSONObject()
+                .put("wrapperType", "track")
+                .put("kind", "song")
+                .put("trackId", 1000L + i)
+                .put("trackName", "Song Ä " + i)
+                .put("artistName", "Artist " + i)
+                .put("collectionName", "Album " + i)
+                .put("trackPrice", 1.29)
+                .put("isStreamable", true)
+                .put("genres", List.of("Pop", "Music"))
+                .put("previewUrl", "https://audio-ssl.itunes.apple.com/itunes-assets/" + "x".repeat(1800) + i));
+        }
+
+        return body.append("]}").toString();
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parseMatchesParsingTheWholeString() {
+        assertThat(ResponseParser.parse(stream(largeBody)).similar(new JSONObject(largeBody))).isTrue();
+    }
+
+    @Test
+    public void resultsAreHandedOverInOrder() {
+        List<JSONObject> results = new ArrayList<>();
+        int count = ResponseParser.forEachResult(stream(largeBody), results::add);
+
+        assertThat(count).isEqualTo(RESULTS);
+        assertThat(results).hasSize(RESULTS);
+        assertThat(results.get(0).getString("trackName")).isEqualTo("Song Ä 0");
+        assertThat(results.get(RESULTS - 1).getLong("trackId")).isEqualTo(1000L + RESULTS - 1);
+    }
+
+    @Test
+    public void otherMembersAreSkipped() {
+        List<JSONObject> results = new ArrayList<>();
+        String body = "{ \"meta\" : {\"nested\":[1,{\"results\":[2]}]}, \"results\" : [ {\"trackId\":1} , {\"trackId\":2} ],"
+            + " \"resultCount\" : 2 }";
+
+        assertThat(ResponseParser.forEachResult(stream(body), results::add)).isEqualTo(2);
+        assertThat(results).extracting(result -> result.getInt("trackId")).containsExactly(1, 2);
+        assertThat(ResponseParser.forEachResult(stream("{\"resultCount\":0,\"results\":[]}"), results::add)).isZero();
+        assertThat(ResponseParser.forEachResult(stream("{}"), results::add)).isZero();
+    }
+
+    @Test
+    public void malformedBodiesAreRejected() {
+        Consumer<JSONObject> ignore = result -> { };
+
+        assertThatThrownBy(() -> ResponseParser.forEachResult(stream("[]"), ignore)).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ResponseParser.forEachResult(stream("{\"results\":{}}"), ignore)).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ResponseParser.forEachResult(stream("{\"results\":[1]}"), ignore)).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ResponseParser.forEachResult(stream("{\"results\":[{}"), ignore)).isInstanceOf(JSONException.class);
+    }
+
+    @Test
+    public void resultsArriveBeforeTheBodyIsComplete() {
+        InputStream failingAfterFirstResult = new SequenceInputStream(
+            stream("{\"results\":[{\"trackId\":1},"),
+            new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException("connection reset");
+                }
+            }
+        );
+
+        List<JSONObject> results = new ArrayList<>();
+
+        assertThatThrownBy(() -> ResponseParser.forEachResult(failingAfterFirstResult, results::add))
+            .isInstanceOf(JSONException.class)
+            .hasCauseInstanceOf(IOException.class);
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    public void clientStreamsResultsAndCachesTheBody() {
+        ResponseCache cache = new ResponseCache(10);
+        ItunesClient client = new ItunesClient().withResponseCache(cache);
+        requests.set(0);
+
+        AtomicInteger handled = new AtomicInteger();
+        assertThat(client.executeQuery(uri("/search?term=stream"), result -> handled.incrementAndGet())).isEqualTo(RESULTS);
+        assertThat(client.executeQuery(uri("/search?term=stream"), result -> handled.incrementAndGet())).isEqualTo(RESULTS);
+        assertThat(client.executeQuery(uri("/search?term=stream")).getInt("resultCount")).isEqualTo(RESULTS);
+
+        assertThat(handled.get()).isEqualTo(2 * RESULTS);
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void clientStreamsResultsWithoutCache() {
+        AtomicInteger handled = new AtomicInteger();
+        ItunesClient client = new ItunesClient();
+
+        assertThat(client.executeQuery(uri("/search?term=uncached"), result -> handled.incrementAndGet())).isEqualTo(RESULTS);
+        assertThat(handled.get()).isEqualTo(RESULTS);
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.lookup.MusicLookup;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for retrying failed requests, against a transport replaying scripted outcomes.
+ */
+public class RetryTests {
+
+    private static final URI URI = java.net.URI.create("https://itunes.apple.com/search?term=jack+johnson");
+    private static final byte[] BODY = "{\"resultCount\":0,\"results\":[]}".getBytes(StandardCharsets.UTF_8);
+
+    private final Deque<Object> outcomes = new ArrayDeque<>();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    /**
+     * replays the scripted outcomes in order, an Integer is a response status and an IOException is thrown.
+     * Once the script runs out every request succeeds.
+     */
+    private final HttpTransport transport = request -> {
+        attempts.incrementAndGet();
+        Object outcome;
+
+        synchronized (outcomes) {
+            outcome = outcomes.isEmpty() ? 200 : outcomes.poll();
+        }
+
+        if (outcome instanceof IOException) throw (IOException) outcome;
+        if (outcome instanceof TransportResponse) return (TransportResponse) outcome;
+        return new TransportResponse((Integer) outcome, Map.of(), new ByteArrayInputStream(BODY));
+    };
+
+    @BeforeMethod
+    public void reset() {
+        outcomes.clear();
+        attempts.set(0);
+    }
+
+    private void script(Object... scripted) {
+        outcomes.addAll(List.of(scripted));
+    }
+
+    private static RetryPolicy fastPolicy() {
+        return new RetryPolicy().withBaseDelay(Duration.ofMillis(5));
+    }
+
+    private ItunesClient client(RetryPolicy policy) {
+        return new ItunesClient().withTransport(transport).withRetryPolicy(policy);
+    }
+
+    private static TransportResponse retryAfter(int statusCode, String value) {
+        return new TransportResponse(statusCode, Map.of("Retry-After", List.of(value)), new ByteArrayInputStream(BODY));
+    }
+
+    @Test
+    public void throttledAndFailedRequestsAreRetried() {
+        RetryPolicy policy = fastPolicy().withMaxAttempts(4);
+        script(429, 403, 503);
+
+        JSONObject response = client(policy).executeQuery(URI);
+
+        assertThat(response.getInt("resultCount")).isZero();
+        assertThat(attempts.get()).isEqualTo(4);
+        assertThat(policy.getRetryCount()).isEqualTo(3);
+        assertThat(policy.getExhaustedCount()).isZero();
+    }
+
+    @Test
+    public void ioFailuresAreRetriedAsynchronously() {
+        RetryPolicy policy = fastPolicy();
+        script(new IOException("connection reset"), new SocketTimeoutException("read timed out"));
+
+        JSONObject response = client(policy).executeQueryAsync(URI).join();
+
+        assertThat(response.has("results")).isTrue();
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(policy.getRetryCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void lastFailureIsReportedOnceAttemptsRunOut() {
+        RetryPolicy policy = fastPolicy().withMaxAttempts(2);
+        script(500, 502, 200);
+
+        assertThatThrownBy(() -> client(policy).executeQuery(URI))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("502");
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(policy.getExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried() {
+        RetryPolicy policy = fastPolicy();
+        script(404);
+
+        assertThatThrownBy(() -> client(policy).executeQuery(URI)).hasMessageContaining("404");
+        assertThat(attempts.get()).isEqualTo(1);
+
+        script(new InterruptedIOException("interrupted"));
+        assertThatThrownBy(() -> client(policy).executeQueryAsync(URI).join())
+            .hasCauseInstanceOf(NetworkCommunicationException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(policy.getRetryCount()).isZero();
+    }
+
+    @Test
+    public void retryAfterIsHonoured() {
+        RetryPolicy policy = fastPolicy();
+        script(retryAfter(429, "1"));
+
+        long start = System.nanoTime();
+        client(policy).executeQuery(URI);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofSeconds(1));
+        assertThat(attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void noRetryStartsPastTheTimeBudget() {
+        RetryPolicy policy = fastPolicy().withTimeBudget(Duration.ofSeconds(2));
+        script(retryAfter(429, "120"));
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> client(policy).executeQuery(URI)).hasMessageContaining("429");
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(policy.getExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void everyAttemptAcquiresARateLimitPermit() {
+        RateLimiter rateLimiter = new RateLimiter(10, Duration.ofSeconds(1));
+        ItunesClient client = client(fastPolicy()).withRateLimiter(ItunesClient.ITUNES_HOST, rateLimiter);
+        script(503, 503);
+
+        client.executeQuery(URI);
+
+        assertThat(rateLimiter.availablePermits()).isLessThanOrEqualTo(7);
+    }
+
+    @Test
+    public void backoffUsesFullJitterUpToTheMaximumDelay() {
+        RetryPolicy highest = new RetryPolicy(() -> 0.999)
+            .withBaseDelay(Duration.ofMillis(100))
+            .withMaxDelay(Duration.ofSeconds(1));
+
+        assertThat(highest.backoffNanos(1)).isBetween(Duration.ofMillis(99).toNanos(), Duration.ofMillis(100).toNanos());
+        assertThat(highest.backoffNanos(3)).isBetween(Duration.ofMillis(399).toNanos(), Duration.ofMillis(400).toNanos());
+        assertThat(highest.backoffNanos(30)).isLessThanOrEqualTo(Duration.ofSeconds(1).toNanos());
+        assertThat(new RetryPolicy(() -> 0).backoffNanos(5)).isZero();
+    }
+
+    @Test
+    public void retryAfterAcceptsSecondsAndDates() {
+        ZonedDateTime now = ZonedDateTime.of(2018, 3, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        String inTenSeconds = DateTimeFormatter.RFC_1123_DATE_TIME.format(now.plusSeconds(10));
+
+        assertThat(RetryPolicy.retryAfterNanos(retryAfter(429, "3"), now)).isEqualTo(Duration.ofSeconds(3).toNanos());
+        assertThat(RetryPolicy.retryAfterNanos(retryAfter(429, inTenSeconds), now)).isEqualTo(Duration.ofSeconds(10).toNanos());
+        assertThat(RetryPolicy.retryAfterNanos(retryAfter(429, "soon"), now)).isZero();
+    }
+
+    @Test
+    public void lookupFailuresAreNoLongerSwallowed() {
+        ItunesClient previousDefault = ItunesClient.getDefault();
+        ItunesClient.setDefault(client(fastPolicy().withMaxAttempts(1)));
+        script(500);
+
+        try {
+            assertThatThrownBy(MusicLookup::topSongs).isInstanceOf(NetworkCommunicationException.class);
+        } finally {
+            ItunesClient.setDefault(previousDefault);
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.sun.net.httpserver.HttpServer;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for coalescing identical requests in flight.
+ */
+public class SingleFlightTests extends BaseNetworkingTest {
+
+    private static final int CALLERS = 20;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile CountDownLatch received;
+    private volatile CountDownLatch release;
+
+    @Override
+    protected HttpServer createServer(InetSocketAddress address) throws IOException {
+        HttpServer server = super.createServer(address);
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/search", exchange -> {
+            requests.incrementAndGet();
+            received.countDown();
+
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query.contains("fail")) {
+                respond(exchange, 503, "");
+            } else {
+                respond(exchange, 200, "{\"resultCount\":1,\"results\":[{\"trackId\":1}]}");
+            }
+        });
+    }
+
+    @BeforeMethod
+    public void reset() {
+        requests.set(0);
+        received = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @Test
+    public void identicalRequestsInFlightShareOneExchange() throws Exception {
+        ItunesClient client = new ItunesClient();
+        List<CompletableFuture<JSONObject>> responses = new ArrayList<>();
+
+        responses.add(client.executeQueryAsync(uri("/search?term=jack&limit=5")));
+        received.await(5, TimeUnit.SECONDS);
+
+        /*
+         * same query, parameters in a different order
+         */
+        for (int i = 1; i < CALLERS; i++) {
+            responses.add(client.executeQueryAsync(uri("/search?limit=5&term=jack")));
+        }
+
+        release.countDown();
+
+        for (CompletableFuture<JSONObject> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS).getInt("resultCount")).isEqualTo(1);
+        }
+
+        assertThat(responses.get(0).join()).isNotSameAs(responses.get(1).join());
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failureIsSharedWithEveryCaller() throws Exception {
+        ItunesClient client = new ItunesClient();
+        List<CompletableFuture<JSONObject>> responses = new ArrayList<>();
+
+        responses.add(client.executeQueryAsync(uri("/search?term=fail")));
+        received.await(5, TimeUnit.SECONDS);
+
+        for (int i = 1; i < CALLERS; i++) {
+            responses.add(client.executeQueryAsync(uri("/search?term=fail")));
+        }
+
+        release.countDown();
+
+        for (CompletableFuture<JSONObject> response : responses) {
+            assertThatThrownBy(response::join).hasCauseInstanceOf(NetworkCommunicationException.class);
+        }
+
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void requestsAreNotCoalescedWhenDisabled() throws Exception {
+        ItunesClient client = new ItunesClient().withRequestCoalescing(false);
+        received = new CountDownLatch(3);
+
+        List<CompletableFuture<JSONObject>> responses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            responses.add(client.executeQueryAsync(uri("/search?term=jack")));
+        }
+
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void blockingCallersWaitForTheRequestInFlight() throws Exception {
+        AtomicInteger delegateCalls = new AtomicInteger();
+        CountDownLatch delegateRelease = new CountDownLatch(1);
+
+        SingleFlightTransport transport = new SingleFlightTransport(request -> {
+            delegateCalls.incrementAndGet();
+
+            try {
+                delegateRelease.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = "shared".getBytes(StandardCharsets.UTF_8);
+            return new TransportResponse(200, Map.of("X-Test", List.of("1")), new ByteArrayInputStream(body));
+        });
+
+        ExecutorService threads = Executors.newFixedThreadPool(CALLERS);
+        TransportRequest request = new TransportRequest(URI.create("https://itunes.apple.com/lookup?id=1"));
+
+        try {
+            List<Future<String>> bodies = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                bodies.add(threads.submit(() -> {
+                    try (TransportResponse response = transport.execute(request)) {
+                        assertThat(response.getHeader("x-test")).isEqualTo("1");
+                        return new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                }));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (transport.getCoalescedCount() < CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            delegateRelease.countDown();
+
+            for (Future<String> body : bodies) {
+                assertThat(body.get(5, TimeUnit.SECONDS)).isEqualTo("shared");
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertThat(delegateCalls.get()).isEqualTo(1);
+        assertThat(transport.getCoalescedCount()).isEqualTo(CALLERS - 1);
+        assertThat(transport.getInFlightCount()).isZero();
+    }
+
+    @Test
+    public void sequentialRequestsAreEachSent() throws Exception {
+        ItunesClient client = new ItunesClient();
+        release.countDown();
+
+        client.executeQuery(uri("/search?term=jack"));
+        client.executeQuery(uri("/search?term=jack"));
+
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void responsesNobodyWaitsOnAreNotBuffered() throws Exception {
+        ByteArrayInputStream body = new ByteArrayInputStream("streamed".getBytes(StandardCharsets.UTF_8));
+        SingleFlightTransport transport = new SingleFlightTransport(request -> new TransportResponse(200, Map.of(), body));
+        TransportRequest request = new TransportRequest(URI.create("https://itunes.apple.com/lookup?id=1"));
+
+        try (TransportResponse response = transport.execute(request)) {
+            assertThat(response.getBody()).isSameAs(body);
+        }
+
+        try (TransportResponse response = transport.executeAsync(request, Runnable::run).get(5, TimeUnit.SECONDS)) {
+            assertThat(response.getBody()).isSameAs(body);
+        }
+
+        assertThat(transport.getInFlightCount()).isZero();
+    }
+
+}
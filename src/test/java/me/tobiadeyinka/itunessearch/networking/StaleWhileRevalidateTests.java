@@ -0,0 +1,257 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.lookup.MusicLookup;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for serving expired rss chart responses while they are refreshed in the background.
+ */
+public class StaleWhileRevalidateTests extends BaseNetworkingTest {
+
+    private static final URI CHART_URI =
+        URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-songs/all/5/explicit.json");
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger status = new AtomicInteger();
+    private final AtomicReference<String> chart = new AtomicReference<>();
+    private volatile CountDownLatch release;
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/api", exchange -> {
+            requests.incrementAndGet();
+
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            respond(exchange, status.get(), status.get() == 200 ? chart.get() : "");
+        });
+    }
+
+    @BeforeMethod
+    public void reset() {
+        clock.set(0);
+        requests.set(0);
+        status.set(200);
+        chart.set(chart("first"));
+        release = new CountDownLatch(0);
+    }
+
+    private static String chart(String name) {
+        return "{\"feed\":{\"results\":[{\"name\":\"" + name + "\"}]}}";
+    }
+
+    private static String firstName(JSONObject chart) {
+        return chart.getJSONObject("feed").getJSONArray("results").getJSONObject(0).getString("name");
+    }
+
+    private ResponseCache cache() {
+        return new ResponseCache(10, clock::get)
+            .withTtl(Endpoint.RSS, Duration.ofMinutes(30))
+            .withStaleWhileRevalidate(Endpoint.RSS, Duration.ofHours(24));
+    }
+
+    private ItunesClient client(ResponseCache cache) {
+        return new ItunesClient()
+            .withBaseUri(ItunesClient.RSS_HOST, uri(""))
+            .withResponseCache(cache);
+    }
+
+    /**
+     * wait for background refreshes to reach the server and the cache
+     */
+    private static void awaitRevalidation(ResponseCache cache, long revalidations, AtomicInteger requests,
+                                          int expectedRequests) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (requests.get() < expectedRequests || cache.getRevalidationCount() < revalidations) {
+            if (System.nanoTime() > deadline) break;
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void expiredChartIsServedWhileRefreshed() throws InterruptedException {
+        ResponseCache cache = cache();
+        ItunesClient client = client(cache);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("first");
+
+        chart.set(chart("second"));
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("first");
+        awaitRevalidation(cache, 1, requests, 2);
+        assertThat(cache.getRevalidationCount()).isEqualTo(1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.get(CHART_URI) == null && System.nanoTime() < deadline) Thread.sleep(10);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("second");
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void onlyOneRefreshIsInFlightPerChart() throws InterruptedException {
+        ResponseCache cache = cache();
+        ItunesClient client = client(cache);
+
+        client.executeQuery(CHART_URI);
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        release = new CountDownLatch(1);
+
+        List<CompletableFuture<JSONObject>> charts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) charts.add(client.executeQueryAsync(CHART_URI));
+
+        for (CompletableFuture<JSONObject> served : charts) {
+            assertThat(firstName(served.join())).isEqualTo("first");
+        }
+
+        awaitRevalidation(cache, 10, requests, 2);
+        release.countDown();
+
+        assertThat(cache.getRevalidationCount()).isEqualTo(10);
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void refreshIsNotBoundByTheCallersRequest() throws InterruptedException {
+        ResponseCache cache = cache();
+        ItunesClient client = client(cache);
+
+        client.executeQuery(CHART_URI);
+        chart.set(chart("second"));
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        release = new CountDownLatch(1);
+
+        AtomicInteger requestsSent = new AtomicInteger();
+        ItunesEventListener listener = new ItunesEventListener() {
+            @Override
+            public void requestSent(TransportRequest request) {
+                requestsSent.incrementAndGet();
+            }
+        };
+        TransportRequest request = new TransportRequest(CHART_URI)
+            .withTimeout(Duration.ofMillis(100))
+            .withEventListener(listener);
+
+        assertThat(firstName(client.executeQuery(request))).isEqualTo("first");
+        awaitRevalidation(cache, 1, requests, 2);
+        Thread.sleep(300);
+        release.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.get(CHART_URI) == null && System.nanoTime() < deadline) Thread.sleep(10);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("second");
+        assertThat(requestsSent.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void expiredChartIsKeptWhenRefreshFails() throws InterruptedException {
+        ResponseCache cache = cache();
+        ItunesClient client = client(cache);
+
+        client.executeQuery(CHART_URI);
+        clock.addAndGet(Duration.ofHours(1).toNanos());
+        status.set(503);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("first");
+        awaitRevalidation(cache, 1, requests, 2);
+        Thread.sleep(100);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("first");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void staleChartIsServedPastTheWindowWhenUpstreamFails() {
+        ResponseCache cache = cache().withMaxStale(Duration.ofDays(7));
+        ItunesClient client = client(cache);
+
+        client.executeQuery(CHART_URI);
+        clock.addAndGet(Duration.ofHours(25).toNanos());
+        status.set(503);
+
+        assertThat(firstName(client.executeQuery(CHART_URI))).isEqualTo("first");
+        assertThat(firstName(client.executeQueryAsync(CHART_URI).join())).isEqualTo("first");
+        assertThat(cache.getStaleHitCount()).isEqualTo(2);
+        assertThat(cache.getRevalidationCount()).isEqualTo(0);
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void expiredChartIsNotServedPastTheWindow() {
+        ResponseCache cache = cache();
+        ItunesClient client = client(cache);
+
+        client.executeQuery(CHART_URI);
+        clock.addAndGet(Duration.ofHours(25).toNanos());
+        status.set(503);
+
+        assertThatThrownBy(() -> client.executeQuery(CHART_URI)).isInstanceOf(NetworkCommunicationException.class);
+        assertThat(cache.getRevalidationCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void chartLookupsServeExpiredCharts() throws InterruptedException {
+        ItunesClient previousDefault = ItunesClient.getDefault();
+        ResponseCache cache = cache();
+        ItunesClient.setDefault(client(cache));
+
+        try {
+            assertThat(firstName(MusicLookup.topSongs(5))).isEqualTo("first");
+
+            chart.set(chart("second"));
+            clock.addAndGet(Duration.ofHours(1).toNanos());
+
+            assertThat(firstName(MusicLookup.topSongs(5))).isEqualTo("first");
+            awaitRevalidation(cache, 1, requests, 2);
+            assertThat(cache.getRevalidationCount()).isEqualTo(1);
+        } finally {
+            ItunesClient.setDefault(previousDefault);
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.networking;
+
+import com.neovisionaries.i18n.CountryCode;
+import com.sun.net.httpserver.HttpServer;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.NoMatchFoundException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+import me.tobiadeyinka.itunessearch.lookup.MusicLookup;
+import me.tobiadeyinka.itunessearch.search.MusicSearch;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for connect, read and total timeouts, against a local server that answers slowly.
+ */
+public class TimeoutTests extends BaseNetworkingTest {
+
+    private static final String BODY = "{\"resultCount\":0,\"results\":[]}";
+
+    private final AtomicInteger unavailableRequests = new AtomicInteger();
+
+    @Override
+    protected HttpServer createServer(InetSocketAddress address) throws IOException {
+        HttpServer server = super.createServer(address);
+        server.setExecutor(Executors.newCachedThreadPool());
+        return server;
+    }
+
+    @BeforeClass(dependsOnMethods = "startServer")
+    public void registerHandlers() {
+        server.createContext("/slow", exchange -> {
+            sleep(2000);
+            respond(exchange, 200, BODY);
+        });
+
+        /*
+         * sends the headers right away, then the body a byte every 100 ms
+         */
+        server.createContext("/trickle", exchange -> {
+            byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (byte b : body) {
+                    out.write(b);
+                    out.flush();
+                    sleep(100);
+                }
+            } catch (IOException ignored) {
+                /*
+                 * the client gave up
+                 */
+            }
+        });
+
+        server.createContext("/unavailable", exchange -> {
+            unavailableRequests.incrementAndGet();
+            respond(exchange, 503, "");
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Duration time(Runnable call) {
+        long start = System.nanoTime();
+
+        try {
+            call.run();
+        } catch (RuntimeException ignored) {
+            /*
+             * asserted separately
+             */
+        }
+
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private void assertTimesOut(ItunesClient client, String path, Duration within) {
+        Supplier<Object> call = () -> client.executeQuery(uri(path));
+
+        assertThatThrownBy(call::get).isInstanceOf(RequestTimeoutException.class);
+        assertThat(time(call::get)).isLessThan(within);
+    }
+
+    @Test
+    public void transportsTimeOutWaitingForTheResponse() {
+        Duration within = Duration.ofMillis(1500);
+
+        assertTimesOut(new ItunesClient().withTransport(
+            new UrlConnectionTransport().withReadTimeout(Duration.ofMillis(200))), "/slow", within);
+        assertTimesOut(new ItunesClient().withTransport(
+            new PooledHttpTransport().withReadTimeout(Duration.ofMillis(200))), "/slow", within);
+        assertTimesOut(new ItunesClient().withTransport(
+            new HttpClientTransport().withResponseTimeout(Duration.ofMillis(200))), "/slow", within);
+    }
+
+    @Test
+    public void clientTimeoutShortensTheReadTimeout() {
+        ItunesClient client = new ItunesClient().withTimeout(Duration.ofMillis(300));
+
+        assertThat(new UrlConnectionTransport().getReadTimeout()).isEqualTo(Duration.ofSeconds(30));
+        assertTimesOut(client, "/slow", Duration.ofMillis(1500));
+    }
+
+    @Test
+    public void deadlineSpansReadingTheBody() {
+        ItunesClient client = new ItunesClient().withTransport(new PooledHttpTransport());
+        TransportRequest request = new TransportRequest(uri("/trickle")).withTimeout(Duration.ofMillis(500));
+
+        assertThatThrownBy(() -> client.executeQuery(request)).isInstanceOf(RequestTimeoutException.class);
+    }
+
+    @Test
+    public void asynchronousQueriesFailOnTheirDeadline() {
+        ItunesClient client = new ItunesClient().withTransport(new HttpClientTransport());
+        TransportRequest request = new TransportRequest(uri("/slow")).withTimeout(Duration.ofMillis(300));
+
+        Duration elapsed = time(() -> assertThatThrownBy(() -> client.executeQueryAsync(request).join())
+            .isInstanceOf(CompletionException.class)
+            .hasCauseInstanceOf(RequestTimeoutException.class));
+
+        assertThat(elapsed).isLessThan(Duration.ofMillis(1500));
+    }
+
+    @Test
+    public void noRetryStartsPastTheDeadline() {
+        unavailableRequests.set(0);
+
+        /*
+         * without jitter the waits are 100, 200, 400 and 800 ms: the attempts start at about 0, 100, 300 and 700 ms,
+         * and the 800 ms wait after the fourth would end past the deadline
+         */
+        ItunesClient client = new ItunesClient().withRetryPolicy(new RetryPolicy(() -> 1)
+            .withMaxAttempts(100)
+            .withBaseDelay(Duration.ofMillis(100)));
+
+        TransportRequest request = new TransportRequest(uri("/unavailable")).withTimeout(Duration.ofMillis(1000));
+        assertThatThrownBy(() -> client.executeQuery(request))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .isNotInstanceOf(RequestTimeoutException.class)
+            .hasMessageContaining("503");
+
+        assertThat(unavailableRequests.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void noRateLimitWaitExtendsPastTheDeadline() {
+        RateLimiter rateLimiter = new RateLimiter(1, Duration.ofSeconds(10));
+        rateLimiter.tryAcquire();
+        ItunesClient client = new ItunesClient().withRateLimiter("127.0.0.1", rateLimiter);
+
+        TransportRequest request = new TransportRequest(uri("/unavailable")).withTimeout(Duration.ofMillis(500));
+        Duration elapsed = time(() -> assertThatThrownBy(() -> client.executeQuery(request))
+            .isInstanceOf(RequestTimeoutException.class));
+
+        assertThat(elapsed).isLessThan(Duration.ofMillis(200));
+    }
+
+    @Test
+    public void earlierDeadlineIsKept() {
+        TransportRequest request = new TransportRequest(uri("/slow"));
+        TransportRequest shortDeadline = request.withTimeout(Duration.ofSeconds(1));
+
+        assertThat(request.hasDeadline()).isFalse();
+        assertThat(request.getRemainingTime()).isNull();
+        assertThat(shortDeadline.withTimeout(Duration.ofMinutes(1))).isSameAs(shortDeadline);
+        assertThat(shortDeadline.getRemainingTime()).isBetween(Duration.ZERO, Duration.ofSeconds(1));
+        assertThat(shortDeadline).isEqualTo(request);
+    }
+
+    @Test
+    public void searchesAndLookupsPassTheirDeadlineOn() throws NoMatchFoundException {
+        List<Duration> remaining = new CopyOnWriteArrayList<>();
+        ItunesClient client = new ItunesClient().withTransport(request -> {
+            remaining.add(request.getRemainingTime());
+            String body = "{\"resultCount\":1,\"results\":[{\"trackId\":1}]}";
+            return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        });
+
+        new MusicSearch().with("jack johnson").withClient(client).execute(Duration.ofSeconds(5));
+
+        ItunesClient previousDefault = ItunesClient.getDefault();
+        ItunesClient.setDefault(client);
+
+        try {
+            MusicLookup.getSongById(1, Duration.ofSeconds(5));
+            MusicLookup.topSongs(CountryCode.US, 5, Duration.ofSeconds(5));
+        } finally {
+            ItunesClient.setDefault(previousDefault);
+        }
+
+        assertThat(remaining).hasSize(3).allSatisfy(time -> assertThat(time).isBetween(Duration.ZERO, Duration.ofSeconds(5)));
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.results;
+
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.ResponseCache;
+import me.tobiadeyinka.itunessearch.networking.TransportResponse;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the typed result model.
+ */
+public class ItunesResultTests {
+
+    private static final String SONG = "{\"wrapperType\":\"track\",\"kind\":\"song\",\"artistId\":909253,\"collectionId\":879273552,"
+        + "\"trackId\":879273565,\"artistName\":\"Jack Johnson\",\"collectionName\":\"In Between Dreams\","
+        + "\"trackName\":\"Better Together\",\"trackPrice\":1.29,\"releaseDate\":\"2005-03-01T08:00:00Z\","
+        + "\"trackExplicitness\":\"notExplicit\",\"discNumber\":1,\"trackNumber\":1,\"trackTimeMillis\":207679,"
+        + "\"isStreamable\":true,\"country\":\"USA\",\"currency\":\"USD\",\"primaryGenreName\":\"Rock\"}";
+
+    private static final String BODY = "{\n  \"resultCount\": 10,\n  \"results\": [\n"
+        + SONG + ",\n"
+        + "{\"wrapperType\":\"collection\",\"collectionType\":\"Album\",\"collectionId\":879273552,\"collectionName\":\"In Between Dreams\",\"trackCount\":16},"
+        + "{\"wrapperType\":\"artist\",\"artistType\":\"Artist\",\"artistId\":909253,\"artistName\":\"Jack Johnson\",\"amgArtistId\":468749},"
+        + "{\"wrapperType\":\"track\",\"kind\":\"podcast\",\"trackId\":1,\"feedUrl\":\"https://feeds.example.com/rss\",\"genres\":[\"Science\",\"Podcasts\"]},"
+        + "{\"wrapperType\":\"track\",\"kind\":\"feature-movie\",\"trackId\":2,\"contentAdvisoryRating\":\"PG-13\"},"
+        + "{\"wrapperType\":\"track\",\"kind\":\"tv-episode\",\"trackId\":3,\"artistName\":\"Show\",\"collectionName\":\"Season 1\",\"trackNumber\":4},"
+        + "{\"kind\":\"ebook\",\"trackId\":4,\"trackName\":\"Book\",\"price\":9.99,\"genres\":[]},"
+        + "{\"wrapperType\":\"software\",\"kind\":\"software\",\"trackId\":5,\"bundleId\":\"com.example\",\"fileSizeBytes\":\"123456789\"},"
+        + "{\"wrapperType\":\"audiobook\",\"collectionId\":6,\"description\":\"Read aloud\"},"
+        + "{\"wrapperType\":\"track\",\"kind\":\"music-video\",\"trackId\":7}\n"
+        + "  ]\n}";
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void resultsAreTypedByWrapperTypeAndKind() {
+        List<ItunesResult> results = ItunesResults.parse(bytes(BODY));
+
+        assertThat(results).extracting(result -> (Object) result.getClass()).containsExactly(
+            Track.class, Collection.class, Artist.class, Podcast.class, Movie.class,
+            TvEpisode.class, EBook.class, Software.class, AudioBook.class, Track.class
+        );
+    }
+
+    @Test
+    public void fieldsAreDecoded() {
+        List<ItunesResult> results = ItunesResults.parse(bytes(BODY));
+        Track song = (Track) results.get(0);
+
+        assertThat(song.getTrackId()).isEqualTo(879273565L);
+        assertThat(song.getTrackName()).isEqualTo("Better Together");
+        assertThat(song.getTrackPrice()).isEqualTo(1.29);
+        assertThat(song.getTrackNumber()).isEqualTo(1);
+        assertThat(song.getTrackTimeMillis()).isEqualTo(207679L);
+        assertThat(song.isStreamable()).isTrue();
+        assertThat(song.getReleaseDate()).isEqualTo(Instant.parse("2005-03-01T08:00:00Z"));
+        assertThat(song.getArtistName()).isEqualTo("Jack Johnson");
+        assertThat(song.getPreviewUrl()).isNull();
+
+        assertThat(((Collection) results.get(1)).getTrackCount()).isEqualTo(16);
+        assertThat(((Artist) results.get(2)).getAmgArtistId()).isEqualTo(468749L);
+        assertThat(((Podcast) results.get(3)).getGenres()).containsExactly("Science", "Podcasts");
+        assertThat(((Movie) results.get(4)).getContentAdvisoryRating()).isEqualTo("PG-13");
+        assertThat(((TvEpisode) results.get(5)).getEpisodeNumber()).isEqualTo(4);
+        assertThat(((TvEpisode) results.get(5)).getSeasonName()).isEqualTo("Season 1");
+        assertThat(((EBook) results.get(6)).getGenres()).isEmpty();
+        assertThat(((Software) results.get(7)).getFileSizeBytes()).isEqualTo(123456789L);
+        assertThat(((AudioBook) results.get(8)).getDescription()).isEqualTo("Read aloud");
+    }
+
+    @Test
+    public void stringsAreUnescaped() {
+        String body = "{\"results\":[{\"trackName\":\"Café \\\"Ol\\u00e9\\\"\\n\\\\ \\/ \\ud83c\\udfb5\",\"artistName\":null,"
+            + "\"kind\":\"song\"}]}";
+        ItunesResult result = ItunesResults.parse(bytes(body)).get(0);
+
+        assertThat(((Track) result).getTrackName()).isEqualTo("Café \"Olé\"\n\\ / 🎵");
+        assertThat(result.getArtistName()).isNull();
+        assertThat(result.has("artistName")).isTrue();
+        assertThat(result.has("collectionName")).isFalse();
+    }
+
+    @Test
+    public void onlyTheFieldsReadAreDecoded() {
+        /*
+         * the price is not a valid number, so reading it would fail
+         */
+        String body = "{\"results\":[{\"kind\":\"song\",\"trackPrice\":1.2.3,\"trackId\":1,\"trackName\":\"Song\","
+            + "\"nested\":{\"trackId\":2,\"list\":[\"}\",\"]\"]}}]}";
+        Track track = (Track) ItunesResults.parse(bytes(body)).get(0);
+
+        assertThat(track.getTrackId()).isEqualTo(1);
+        assertThat(track.getTrackName()).isEqualTo("Song");
+        assertThatThrownBy(track::getTrackPrice).isInstanceOf(JSONException.class);
+    }
+
+    @Test
+    public void fieldsCanBeReadAsDifferentTypes() {
+        Track song = (Track) ItunesResults.parse(bytes(BODY)).get(0);
+
+        assertThat(song.getString("trackId")).isEqualTo("879273565");
+        assertThat(song.getLong("trackId")).isEqualTo(879273565L);
+        assertThat(song.getDouble("trackId")).isEqualTo(879273565.0);
+        assertThat(song.getTrackId()).isEqualTo(879273565L);
+
+        assertThat(song.getTrackPrice()).isEqualTo(1.29);
+        assertThat(song.getString("trackPrice")).isEqualTo("1.29");
+        assertThatThrownBy(() -> song.getLong("trackPrice")).isInstanceOf(JSONException.class);
+        assertThat(song.getTrackPrice()).isEqualTo(1.29);
+
+        Software software = (Software) ItunesResults.parse(bytes(BODY)).get(7);
+        assertThat(software.getString("fileSizeBytes")).isEqualTo("123456789");
+        assertThat(software.getFileSizeBytes()).isEqualTo(123456789L);
+        assertThat(software.getDouble("fileSizeBytes")).isEqualTo(123456789.0);
+    }
+
+    @Test
+    public void valuesOfTheWrongTypeAreRejected() {
+        String body = "{\"results\":[{\"kind\":\"song\",\"trackId\":\"abc\",\"trackNumber\":-,"
+            + "\"trackCount\":99999999999999999999,\"trackTimeMillis\":\"-12\",\"isStreamable\":1}]}";
+        Track track = (Track) ItunesResults.parse(bytes(body)).get(0);
+
+        assertThatThrownBy(() -> track.getLong("trackId")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> track.getDouble("trackId")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> track.getLong("trackNumber")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> track.getLong("trackCount")).isInstanceOf(JSONException.class);
+        assertThatThrownBy(track::isStreamable).isInstanceOf(JSONException.class);
+        assertThat(track.getTrackTimeMillis()).isEqualTo(-12L);
+        assertThat(track.getString("trackId")).isEqualTo("abc");
+    }
+
+    @Test
+    public void resultsConvertBackToJson() {
+        ItunesResult result = ItunesResults.parse(bytes(BODY)).get(0);
+
+        assertThat(result.toJSONObject().similar(new JSONObject(SONG))).isTrue();
+        assertThat(result.toString()).isEqualTo(SONG);
+        assertThat(ItunesResult.from(new JSONObject(SONG))).isInstanceOf(Track.class);
+        assertThat(((Track) ItunesResult.from(new JSONObject(SONG))).getTrackId()).isEqualTo(879273565L);
+    }
+
+    @Test
+    public void bodiesWithoutResultsAreEmpty() {
+        assertThat(ItunesResults.parse(bytes("{\"resultCount\":0,\"results\":[]}"))).isEmpty();
+        assertThat(ItunesResults.parse(bytes(" {\"feed\":{\"results\":[{}]}} "))).isEmpty();
+    }
+
+    @Test
+    public void malformedBodiesAreRejected() {
+        assertThatThrownBy(() -> ItunesResults.parse(bytes("[]"))).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ItunesResults.parse(bytes("{\"results\":{}}"))).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ItunesResults.parse(bytes("{\"results\":[1]}"))).isInstanceOf(JSONException.class);
+        assertThatThrownBy(() -> ItunesResults.parse(bytes("{\"results\":[{\"a\":\"}]}"))).isInstanceOf(JSONException.class);
+    }
+
+    @Test
+    public void clientFetchesTypedResults() {
+        AtomicInteger requests = new AtomicInteger();
+        ItunesClient client = new ItunesClient()
+            .withResponseCache(new ResponseCache(10))
+            .withTransport(request -> {
+                requests.incrementAndGet();
+                return new TransportResponse(200, Map.of(), new ByteArrayInputStream(bytes(BODY)));
+            });
+
+        URI uri = URI.create("https://itunes.apple.com/search?term=jack+johnson");
+
+        assertThat(client.fetchResults(uri)).hasSize(10);
+        assertThat(client.fetchResultsAsync(uri).join()).hasSize(10);
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+}
@@ -18,13 +18,16 @@
 package me.tobiadeyinka.itunessearch.search;
 
 import me.tobiadeyinka.itunessearch.TestUtils;
+import me.tobiadeyinka.itunessearch.standin.ItunesStandInServer;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
 import org.testng.annotations.BeforeMethod;
 
+import java.io.IOException;
 import java.util.logging.Logger;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,6 +48,8 @@ public class BaseSearchTest {
     protected Search search = null;
     protected JSONObject response = null;
 
+    private ItunesStandInServer standIn = null;
+
     protected void verifyResponseHasResults() {
         assertThat(response.has("results")).isTrue();
     }
@@ -78,12 +83,27 @@ public class BaseSearchTest {
     }
 
     /*
-     * The itunes api limits call per minute, so sleep for a minute before the next
+     * unless the tests run live, they query a local stand-in for the itunes api.
+     */
+    @BeforeClass
+    protected void startStandIn() throws IOException {
+        if (!TestUtils.isLive()) {
+            standIn = TestUtils.startStandIn();
+        }
+    }
+
+    /*
+     * The itunes api limits calls per minute, so live tests sleep for a minute before the next
      * set of tests start, to avoid failures.
      */
     @AfterClass
-    protected void sleepForAMinute() {
-        TestUtils.sleepForAMinute();
+    protected void stopStandInOrSleep() {
+        if (standIn != null) {
+            TestUtils.stopStandIn(standIn);
+            standIn = null;
+        } else {
+            TestUtils.sleepForAMinute();
+        }
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import me.tobiadeyinka.itunessearch.entities.MusicSearchReturnType;
+import me.tobiadeyinka.itunessearch.exceptions.MissingRequiredParameterException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.TransportRequest;
+import me.tobiadeyinka.itunessearch.networking.TransportResponse;
+
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for compiled queries, against a stub transport instead of the iTunes api.
+ */
+public class CompiledQueryTests {
+
+    private final Queue<TransportRequest> requests = new ConcurrentLinkedQueue<>();
+
+    private final ItunesClient client = new ItunesClient()
+        .withRequestCoalescing(false)
+        .withTransport(request -> {
+            requests.add(request);
+            byte[] body = "{\"resultCount\":1,\"results\":[{\"kind\":\"song\",\"trackId\":1}]}".getBytes(StandardCharsets.UTF_8);
+            return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body));
+        });
+
+    @BeforeMethod
+    public void reset() {
+        requests.clear();
+    }
+
+    @Test
+    public void queryIsEncodedOnce() {
+        CompiledQuery query = new MusicSearch().with("jack johnson").withClient(client).compile();
+
+        query.execute();
+        query.fetchResults();
+        query.executeAsync().join();
+
+        assertThat(query.getUri().getRawQuery()).contains("term=jack%20johnson");
+        assertThat(query.getCacheKey()).startsWith("https://itunes.apple.com/search?");
+        assertThat(new String(query.getEncodedUrl(), StandardCharsets.US_ASCII)).isEqualTo(query.getUri().toString());
+        assertThat(requests).hasSize(3).allSatisfy(request -> assertThat(request.getUri()).isSameAs(query.getUri()));
+    }
+
+    @Test
+    public void queryIsNotAffectedByLaterChangesToTheSearch() {
+        MusicSearch search = new MusicSearch().with("jack johnson").withLimit(5).withClient(client);
+        CompiledQuery query = search.compile();
+
+        search.with("other").withLimit(10).inCountry(CountryCode.GB).andReturn(MusicSearchReturnType.ALBUM);
+
+        assertThat(query).isEqualTo(new MusicSearch().with("jack johnson").withLimit(5).compile());
+        assertThat(query).isNotEqualTo(search.compile());
+        assertThat(query.getUri().getRawQuery()).contains("limit=5").doesNotContain("other");
+    }
+
+    @Test
+    public void equalQueriesShareTheirKey() {
+        CompiledQuery first = new MusicSearch().with("jack").compile();
+        CompiledQuery second = new MusicSearch().with("jack").withClient(client).compile();
+
+        assertThat(first).isEqualTo(second).hasSameHashCodeAs(second);
+        assertThat(first.getCacheKey()).isEqualTo(second.getCacheKey());
+        assertThat(first.getClient()).isSameAs(ItunesClient.getDefault());
+        assertThat(second.getClient()).isSameAs(client);
+    }
+
+    @Test
+    public void clientCanBeChangedWithoutRecompiling() {
+        CompiledQuery query = new MusicSearch().with("jack").compile();
+        CompiledQuery stubbed = query.withClient(client);
+
+        assertThat(stubbed).isEqualTo(query);
+        assertThat(query.getClient()).isSameAs(ItunesClient.getDefault());
+        assertThat(stubbed.execute().getInt("resultCount")).isEqualTo(1);
+        assertThat(requests).hasSize(1);
+    }
+
+    @Test
+    public void compilingValidatesTheSearch() {
+        assertThatThrownBy(() -> new MusicSearch().compile()).isInstanceOf(MissingRequiredParameterException.class);
+    }
+
+    @Test
+    public void queryCanBeSharedBetweenThreads() throws Exception {
+        CompiledQuery query = new PodcastSearch().with("radiolab").withClient(client).compile();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<JSONObject>> responses = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                responses.add(threads.submit(() -> query.execute()));
+            }
+
+            for (Future<JSONObject> response : responses) {
+                assertThat(response.get().getInt("resultCount")).isEqualTo(1);
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertThat(requests).hasSize(100).allSatisfy(request -> assertThat(request.getUri()).isSameAs(query.getUri()));
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import me.tobiadeyinka.itunessearch.exceptions.InvalidParameterException;
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.RateLimiter;
+import me.tobiadeyinka.itunessearch.networking.TransportResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for running a search against several storefronts, against a stub transport instead of the iTunes api.
+ */
+public class CountryFanOutTests {
+
+    private static final Pattern COUNTRY = Pattern.compile("country=(\\w+)");
+
+    private static final List<CountryCode> COUNTRIES = List.of(
+        CountryCode.US, CountryCode.GB, CountryCode.DE, CountryCode.FR, CountryCode.JP,
+        CountryCode.CA, CountryCode.AU, CountryCode.BR, CountryCode.IT, CountryCode.ES
+    );
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    private final Map<String, Duration> remainingTimes = new ConcurrentHashMap<>();
+
+    /**
+     * every storefront returns a track shared by all storefronts and one of its own
+     */
+    private final ItunesClient client = new ItunesClient().withTransport(request -> {
+        Matcher matcher = COUNTRY.matcher(request.getUri().getRawQuery());
+        String country = matcher.find() ? matcher.group(1) : "";
+
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        if (request.hasDeadline()) remainingTimes.put(country, request.getRemainingTime());
+
+        try {
+            Thread.sleep(delays.getOrDefault(country, 5L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+
+        if (failing.contains(country)) {
+            return new TransportResponse(503, Map.of(), new ByteArrayInputStream(new byte[0]));
+        }
+
+        JSONArray results = new JSONArray()
+            .put(new JSONObject().put("trackId", 1).put("country", country))
+            .put(new JSONObject().put("trackId", country.hashCode()).put("country", country))
+            .put(new JSONObject().put("collectionId", 7).put("country", country));
+
+        byte[] body = new JSONObject().put("resultCount", 3).put("results", results)
+            .toString().getBytes(StandardCharsets.UTF_8);
+        return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body));
+    });
+
+    @BeforeMethod
+    public void reset() {
+        inFlight.set(0);
+        maxInFlight.set(0);
+        delays.clear();
+        failing.clear();
+        remainingTimes.clear();
+    }
+
+    private MusicSearch search() {
+        return new MusicSearch().with("jack johnson").withClient(client);
+    }
+
+    @Test
+    public void everyStorefrontIsQueriedWithBoundedParallelism() {
+        FanOutResult result = search().fanOut(COUNTRIES).withParallelism(3).execute();
+
+        assertThat(result.isComplete()).isTrue();
+        assertThat(result.getResponses().keySet()).containsExactlyElementsOf(COUNTRIES);
+        assertThat(maxInFlight.get()).isBetween(1, 3);
+        assertThat(result.getResponses().get(CountryCode.GB).getJSONArray("results").getJSONObject(0).getString("country"))
+            .isEqualTo("GB");
+    }
+
+    @Test
+    public void responsesAreHandedOverAsTheyComplete() {
+        delays.put("US", 300L);
+        List<CountryCode> order = new ArrayList<>();
+
+        search().fanOut(List.of(CountryCode.US, CountryCode.GB, CountryCode.DE)).withParallelism(3)
+            .execute((country, response) -> order.add(country));
+
+        assertThat(order).hasSize(3).endsWith(CountryCode.US);
+    }
+
+    @Test
+    public void mergedResultsAreDeduplicated() {
+        FanOutResult result = search().fanOut(COUNTRIES).withParallelism(5).execute();
+        List<JSONObject> merged = result.getMergedResults();
+
+        /*
+         * the shared track and collection once, plus one track per storefront
+         */
+        assertThat(merged).hasSize(2 + COUNTRIES.size());
+        assertThat(merged.get(0).getString("country")).isEqualTo("US");
+        assertThat(merged.stream().filter(item -> item.optInt("trackId") == 1).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void deadlineReturnsPartialResults() {
+        delays.put("JP", 2000L);
+        delays.put("CA", 2000L);
+
+        long start = System.nanoTime();
+        FanOutResult result = search().fanOut(COUNTRIES).withParallelism(10)
+            .withDeadline(Duration.ofMillis(300))
+            .execute();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.getUnfinished()).containsExactlyInAnyOrder(CountryCode.JP, CountryCode.CA);
+        assertThat(result.getResponses()).hasSize(COUNTRIES.size() - 2);
+        assertThat(result.getMergedResults()).isNotEmpty();
+    }
+
+    @Test
+    public void storefrontsNotStartedByTheDeadlineAreUnfinished() {
+        delays.put("US", 2000L);
+
+        FanOutResult result = search().fanOut(COUNTRIES).withParallelism(1)
+            .withDeadline(Duration.ofMillis(100))
+            .execute();
+
+        assertThat(result.getResponses()).isEmpty();
+        assertThat(result.getUnfinished()).containsExactlyElementsOf(COUNTRIES);
+    }
+
+    @Test
+    public void requestsCarryTheTimeLeftUntilTheDeadline() {
+        FanOutResult result = search().fanOut(COUNTRIES).withParallelism(3)
+            .withDeadline(Duration.ofSeconds(5))
+            .execute();
+
+        assertThat(result.isComplete()).isTrue();
+        assertThat(remainingTimes).hasSize(COUNTRIES.size());
+        assertThat(remainingTimes.values()).allSatisfy(time -> assertThat(time).isBetween(Duration.ZERO, Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void requestsWaitingForTheRateLimitAreAbandonedAtTheDeadline() {
+        RateLimiter rateLimiter = new RateLimiter(1, Duration.ofSeconds(10), 1);
+        client.withRateLimiter(ItunesClient.ITUNES_HOST, rateLimiter);
+
+        try {
+            FanOutResult result = search().fanOut(COUNTRIES).withParallelism(3)
+                .withDeadline(Duration.ofMillis(300))
+                .execute();
+
+            /*
+             * the storefronts behind the first could only be sent 10 seconds later, past the deadline, so they
+             * gave up on the rate limiter right away instead of queueing for it
+             */
+            assertThat(result.getResponses()).containsOnlyKeys(CountryCode.US);
+            assertThat(result.getFailures()).isEmpty();
+            assertThat(result.getUnfinished()).containsExactlyElementsOf(COUNTRIES.subList(1, COUNTRIES.size()));
+            assertThat(remainingTimes).containsOnlyKeys("US");
+            assertThat(rateLimiter.timeUntilNextPermit()).isGreaterThan(Duration.ofSeconds(9));
+        } finally {
+            client.withRateLimiter(ItunesClient.ITUNES_HOST, null);
+        }
+    }
+
+    @Test
+    public void failuresAreReportedPerStorefront() {
+        failing.add("DE");
+        FanOutResult result = search().fanOut(COUNTRIES).execute();
+
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.getFailures()).containsOnlyKeys(CountryCode.DE);
+        assertThat(result.getFailures().get(CountryCode.DE)).isInstanceOf(NetworkCommunicationException.class);
+        assertThat(result.getResponses()).hasSize(COUNTRIES.size() - 1);
+    }
+
+    @Test
+    public void requestsShareTheClientRateLimit() {
+        client.withRateLimiter(ItunesClient.ITUNES_HOST, new RateLimiter(5, Duration.ofSeconds(1), 5));
+
+        try {
+            long start = System.nanoTime();
+            FanOutResult result = search().fanOut(COUNTRIES).withParallelism(10).execute();
+
+            /*
+             * a burst of 5, then the other 5 at 200 ms intervals
+             */
+            assertThat(result.isComplete()).isTrue();
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(800));
+        } finally {
+            client.withRateLimiter(ItunesClient.ITUNES_HOST, null);
+        }
+    }
+
+    @Test
+    public void templateIsLeftUnchanged() {
+        MusicSearch search = search().inCountry(CountryCode.NZ);
+        CountryFanOut fanOut = search.fanOut(EnumSet.of(CountryCode.US, CountryCode.GB));
+
+        assertThat(search.getCountryCode()).isEqualTo(CountryCode.NZ);
+        assertThat(fanOut.getCountries()).containsExactly(CountryCode.GB, CountryCode.US);
+        assertThatThrownBy(() -> search.fanOut(List.of())).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> fanOut.withParallelism(0)).isInstanceOf(InvalidParameterException.class);
+    }
+
+}
@@ -47,6 +47,16 @@ public class MusicSearchTests extends BaseSearchTest {
         } finally { logUrlAndResponse(); }
     }
 
+    @Test
+    public void searchForMusicAsynchronously() {
+        try {
+            MusicSearch musicSearch = new MusicSearch().with(searchTerm);
+            search = musicSearch;
+            response = musicSearch.executeAsync().join();
+            verifyResponseHasResults();
+        } finally { logUrlAndResponse(); }
+    }
+
     @Test
     public void searchForMusicUsingArtistAttribute() {
         try {
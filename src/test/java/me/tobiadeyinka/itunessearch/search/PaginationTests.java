@@ -0,0 +1,177 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.search;
+
+import me.tobiadeyinka.itunessearch.exceptions.InvalidParameterException;
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.TransportResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for streaming search results page by page, against a stub transport instead of the iTunes api.
+ */
+public class PaginationTests {
+
+    private static final Pattern LIMIT = Pattern.compile("limit=(\\d+)");
+    private static final Pattern OFFSET = Pattern.compile("offset=(\\d+)");
+
+    private final Queue<String> queries = new ConcurrentLinkedQueue<>();
+    private volatile int totalResults;
+    private volatile int failAtOffset;
+
+    /**
+     * serves results numbered from 0 to totalResults - 1
+     */
+    private final ItunesClient client = new ItunesClient().withTransport(request -> {
+        String query = request.getUri().getRawQuery();
+        queries.add(query);
+
+        int limit = parameter(LIMIT, query);
+        int offset = parameter(OFFSET, query);
+
+        if (offset == failAtOffset) {
+            return new TransportResponse(503, Map.of(), new ByteArrayInputStream(new byte[0]));
+        }
+
+        JSONArray results = new JSONArray();
+        for (int i = offset; i < Math.min(offset + limit, totalResults); i++) {
+            results.put(new JSONObject().put("trackId", i));
+        }
+
+        byte[] body = new JSONObject().put("resultCount", results.length()).put("results", results)
+            .toString().getBytes(StandardCharsets.UTF_8);
+        return new TransportResponse(200, Map.of(), new ByteArrayInputStream(body));
+    });
+
+    private static int parameter(Pattern pattern, String query) {
+        Matcher matcher = pattern.matcher(query);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    @BeforeMethod
+    public void reset() {
+        queries.clear();
+        totalResults = 450;
+        failAtOffset = -1;
+    }
+
+    private MusicSearch search() {
+        return new MusicSearch().with("jack johnson").withLimit(5).withClient(client);
+    }
+
+    private List<Integer> offsets() {
+        return queries.stream().map(query -> parameter(OFFSET, query)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void allPagesAreWalkedInOrder() {
+        List<Integer> ids = search().stream().map(result -> result.getInt("trackId")).collect(Collectors.toList());
+
+        assertThat(ids).hasSize(450);
+        assertThat(ids).isSorted();
+        assertThat(offsets()).containsExactly(0, 200, 400);
+        assertThat(queries).allSatisfy(query -> assertThat(query).contains("limit=200").doesNotContain("limit=5"));
+    }
+
+    @Test
+    public void emptyPageEndsAStreamOfFullPages() {
+        totalResults = 40;
+
+        assertThat(search().stream(20).count()).isEqualTo(40);
+        assertThat(offsets()).containsExactly(0, 20, 40);
+    }
+
+    @Test
+    public void nextPageIsRequestedWhileTheCurrentOneIsConsumed() throws Exception {
+        Iterator<JSONObject> results = search().stream(100).iterator();
+
+        assertThat(results.next().getInt("trackId")).isZero();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!queries.stream().anyMatch(query -> query.contains("limit=100&offset=100")) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        /*
+         * prefetches cancelled by earlier tests may still arrive, only count this stream's pages
+         */
+        queries.removeIf(query -> !query.contains("limit=100"));
+        assertThat(offsets()).containsExactly(0, 100);
+    }
+
+    @Test
+    public void limitingTheStreamStopsPaging() {
+        List<JSONObject> results;
+
+        try (Stream<JSONObject> stream = search().stream(10)) {
+            results = stream.limit(15).collect(Collectors.toList());
+        }
+
+        assertThat(results).hasSize(15);
+        assertThat(offsets()).doesNotContain(30, 40);
+    }
+
+    @Test
+    public void failedPageFailsTheStream() {
+        failAtOffset = 200;
+        Iterator<JSONObject> results = search().stream().iterator();
+
+        for (int i = 0; i < 200; i++) results.next();
+
+        assertThatThrownBy(results::hasNext).isInstanceOf(NetworkCommunicationException.class);
+        assertThat(results.hasNext()).isFalse();
+    }
+
+    @Test
+    public void pageSizeIsValidated() {
+        assertThatThrownBy(() -> search().stream(0)).isInstanceOf(InvalidParameterException.class);
+        assertThatThrownBy(() -> search().stream(201)).isInstanceOf(InvalidParameterException.class);
+    }
+
+    @Test
+    public void pageUriReplacesLimitAndOffset() {
+        URI uri = URI.create("https://itunes.apple.com/search?term=a%20b&limit=5&offset=7&lang=en_us");
+
+        assertThat(PagedResultIterator.pageUri(uri, 400, 200))
+            .isEqualTo(URI.create("https://itunes.apple.com/search?term=a%20b&lang=en_us&limit=200&offset=400"));
+    }
+
+}
@@ -0,0 +1,520 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.RateLimiter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * A local stand-in for the iTunes search, lookup and RSS feed apis, answering from the fixtures in
+ * {@code /standin/catalog.json}. Tests and load benchmarks point a client at it with {@link #configure(ItunesClient)}
+ * to run offline, without the api's rate limits.
+ *
+ * Latency, errors and throttling can be injected to exercise the client's timeouts, retries and circuit breakers.
+ */
+public class ItunesStandInServer implements AutoCloseable {
+
+    static {
+        /*
+         * the server writes headers and body separately, without this nagle's algorithm delays every
+         * response on a persistent connection by the client's delayed ack timeout.
+         */
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final String CATALOG = "/standin/catalog.json";
+
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    private static final int MAX_SEARCH_LIMIT = 200;
+
+    /**
+     * RSS feed kinds, keyed by media type and feed name
+     */
+    private static final Map<String, String> FEED_KINDS = Map.ofEntries(
+        Map.entry("itunes-music/top-songs", "song"),
+        Map.entry("itunes-music/hot-tracks", "song"),
+        Map.entry("itunes-music/new-music", "song"),
+        Map.entry("itunes-music/top-albums", "album"),
+        Map.entry("itunes-music/recent-releases", "album"),
+        Map.entry("books/top-free", "ebook"),
+        Map.entry("books/top-paid", "ebook"),
+        Map.entry("movies/top-movies", "feature-movie"),
+        Map.entry("podcasts/top-podcasts", "podcast")
+    );
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<JSONObject> catalog;
+
+    private volatile long latencyNanos = 0;
+    private volatile long latencyJitterNanos = 0;
+    private volatile double errorRate = 0;
+    private volatile int errorStatusCode = 503;
+    private volatile RateLimiter throttle = null;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    private ItunesStandInServer(HttpServer server, List<JSONObject> catalog) {
+        this.server = server;
+        this.catalog = catalog;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "itunes-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server.setExecutor(executor);
+        server.createContext("/search", exchange -> handle(exchange, this::search));
+        server.createContext("/lookup", exchange -> handle(exchange, this::lookup));
+        server.createContext("/api/v1/", exchange -> handle(exchange, this::feed));
+    }
+
+    /**
+     * Starts a stand-in on a free local port.
+     *
+     * @return the started stand-in
+     * @throws IOException if the server cannot be bound or the fixtures cannot be read
+     */
+    public static ItunesStandInServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ItunesStandInServer standIn = new ItunesStandInServer(server, readCatalog());
+        server.start();
+        return standIn;
+    }
+
+    /**
+     * Starts a stand-in serving https on a free local port, so that benchmarks include the tls handshakes the
+     * real api costs.
+     *
+     * @param sslContext the context holding the server's certificate, which clients must trust
+     * @return the started stand-in
+     * @throws IOException if the server cannot be bound or the fixtures cannot be read
+     */
+    public static ItunesStandInServer start(SSLContext sslContext) throws IOException {
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+
+        ItunesStandInServer standIn = new ItunesStandInServer(server, readCatalog());
+        server.start();
+        return standIn;
+    }
+
+    private static List<JSONObject> readCatalog() throws IOException {
+        try (InputStream in = ItunesStandInServer.class.getResourceAsStream(CATALOG)) {
+            if (in == null) throw new IOException("Missing stand-in fixtures " + CATALOG);
+
+            JSONArray results = new JSONObject(new JSONTokener(in)).getJSONArray("results");
+            List<JSONObject> catalog = new ArrayList<>();
+
+            for (int i = 0; i < results.length(); i++) {
+                catalog.add(results.getJSONObject(i));
+            }
+
+            return catalog;
+        }
+    }
+
+    /**
+     * Delays every response.
+     *
+     * @param latency the minimum delay
+     * @param jitter the maximum random delay added to the minimum
+     * @return the current stand-in
+     */
+    public ItunesStandInServer withLatency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.latencyJitterNanos = jitter.toNanos();
+        return this;
+    }
+
+    /**
+     * Fails a random share of the requests.
+     *
+     * @param errorRate the share of requests to fail, from 0 to 1
+     * @param statusCode the status code failed requests are answered with
+     * @return the current stand-in
+     */
+    public ItunesStandInServer withErrorRate(double errorRate, int statusCode) {
+        if (errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("errorRate must be between 0 and 1");
+
+        this.errorRate = errorRate;
+        this.errorStatusCode = statusCode;
+        return this;
+    }
+
+    /**
+     * Throttles requests the way the iTunes api does, answering those over the limit with 403 and a Retry-After
+     * header.
+     *
+     * @param throttle the limit requests are admitted by, e.g. {@code RateLimiter.perMinute(20)}, null for none
+     * @return the current stand-in
+     */
+    public ItunesStandInServer withThrottling(RateLimiter throttle) {
+        this.throttle = throttle;
+        return this;
+    }
+
+    /**
+     * Points the client's iTunes and RSS hosts at this stand-in.
+     *
+     * @param client the client to configure
+     * @return the client
+     */
+    public ItunesClient configure(ItunesClient client) {
+        return client
+            .withBaseUri(ItunesClient.ITUNES_HOST, getBaseUri())
+            .withBaseUri(ItunesClient.RSS_HOST, getBaseUri());
+    }
+
+    public URI getBaseUri() {
+        String scheme = server instanceof HttpsServer ? "https" : "http";
+        return URI.create(scheme + "://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests failed by the injected error rate
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return the number of requests rejected by throttling
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Clears the counters and injected faults.
+     */
+    public void reset() {
+        latencyNanos = 0;
+        latencyJitterNanos = 0;
+        errorRate = 0;
+        throttle = null;
+        requestCount.set(0);
+        errorCount.set(0);
+        throttledCount.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        Response handle(URI uri, Map<String, String> parameters);
+    }
+
+    private static class Response {
+
+        private final int statusCode;
+        private final JSONObject body;
+
+        private Response(int statusCode, JSONObject body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requestCount.incrementAndGet();
+
+        try (exchange) {
+            RateLimiter throttle = this.throttle;
+            if (throttle != null && !throttle.tryAcquire()) {
+                throttledCount.incrementAndGet();
+                long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(
+                    throttle.timeUntilNextPermit().toNanos() + TimeUnit.SECONDS.toNanos(1) - 1));
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfter));
+                respond(exchange, error(403, "Rate limit exceeded"));
+                return;
+            }
+
+            delay();
+
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                respond(exchange, error(errorStatusCode, "Injected failure"));
+                return;
+            }
+
+            URI uri = exchange.getRequestURI();
+            respond(exchange, handler.handle(uri, parameters(uri)));
+        }
+    }
+
+    private void delay() {
+        long nanos = latencyNanos;
+        if (latencyJitterNanos > 0) nanos += ThreadLocalRandom.current().nextLong(latencyJitterNanos);
+        if (nanos <= 0) return;
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, Response response) throws IOException {
+        byte[] bytes = response.body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/javascript; charset=utf-8");
+        exchange.sendResponseHeaders(response.statusCode, bytes.length);
+
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(bytes);
+        } catch (IOException ignored) {
+            /*
+             * the client gave up
+             */
+        }
+    }
+
+    private static Response error(int statusCode, String message) {
+        return new Response(statusCode, new JSONObject().put("errorMessage", message));
+    }
+
+    private static Response results(List<JSONObject> results) {
+        return new Response(200, new JSONObject()
+            .put("resultCount", results.size())
+            .put("results", new JSONArray(results)));
+    }
+
+    private static Map<String, String> parameters(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        if (uri.getRawQuery() == null) return parameters;
+
+        for (String pair : uri.getRawQuery().split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) continue;
+
+            parameters.put(
+                URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8)
+            );
+        }
+
+        return parameters;
+    }
+
+    /*
+     * /search?term=...&media=...&genreId=...&limit=...&offset=...
+     *
+     * every word of the term must appear in the item's names, kind or genre.
+     */
+    private Response search(URI uri, Map<String, String> parameters) {
+        String term = parameters.get("term");
+        if (term == null || term.isBlank()) return error(400, "Invalid value(s) for key(s): [term]");
+
+        int limit, offset;
+
+        try {
+            limit = Math.min(MAX_SEARCH_LIMIT, Integer.parseInt(parameters.getOrDefault("limit", "" + DEFAULT_SEARCH_LIMIT)));
+            offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        } catch (NumberFormatException e) {
+            return error(400, "Invalid value(s) for key(s): [limit, offset]");
+        }
+
+        String[] words = term.toLowerCase(Locale.ROOT).split("\\s+");
+        String media = parameters.getOrDefault("media", "all");
+        String genreId = parameters.get("genreId");
+
+        List<JSONObject> matches = catalog.stream()
+            .filter(item -> "all".equals(media) || media.equals(mediaOf(item))
+                || ("music".equals(media) && "musicVideo".equals(mediaOf(item))))
+            .filter(item -> genreId == null || item.optJSONArray("genreIds") != null
+                && item.getJSONArray("genreIds").toList().contains(genreId))
+            .filter(item -> Arrays.stream(words).allMatch(searchableText(item)::contains))
+            .skip(Math.max(0, offset))
+            .limit(Math.max(0, limit))
+            .collect(Collectors.toList());
+
+        return results(matches);
+    }
+
+    /*
+     * /lookup?id=1,2,3
+     */
+    private Response lookup(URI uri, Map<String, String> parameters) {
+        String ids = parameters.get("id");
+        if (ids == null || ids.isBlank()) return error(400, "Invalid value(s) for key(s): [id]");
+
+        List<JSONObject> matches = new ArrayList<>();
+
+        for (String id : ids.split(",")) {
+            long value;
+
+            try {
+                value = Long.parseLong(id.trim());
+            } catch (NumberFormatException e) {
+                return error(400, "Invalid value(s) for key(s): [id]");
+            }
+
+            catalog.stream()
+                .filter(item -> primaryId(item) == value)
+                .findFirst()
+                .ifPresent(matches::add);
+        }
+
+        return results(matches);
+    }
+
+    /*
+     * /api/v1/{country}/{media type}/{feed}/{genre}/{limit}/explicit.json
+     */
+    private Response feed(URI uri, Map<String, String> parameters) {
+        String[] segments = uri.getPath().split("/");
+        if (segments.length != 9) return error(404, "Feed not found");
+
+        String country = segments[3];
+        String kind = FEED_KINDS.get(segments[4] + "/" + segments[5]);
+        if (kind == null) return error(404, "Feed not found");
+
+        int limit;
+
+        try {
+            limit = Integer.parseInt(segments[7]);
+        } catch (NumberFormatException e) {
+            return error(404, "Feed not found");
+        }
+
+        List<JSONObject> results = catalog.stream()
+            .filter(item -> kind.equals(kindOf(item)))
+            .limit(Math.max(0, limit))
+            .map(ItunesStandInServer::feedEntry)
+            .collect(Collectors.toList());
+
+        JSONObject feed = new JSONObject()
+            .put("title", segments[5])
+            .put("country", country)
+            .put("id", uri.toString())
+            .put("results", new JSONArray(results));
+
+        return new Response(200, new JSONObject().put("feed", feed));
+    }
+
+    private static String kindOf(JSONObject item) {
+        if ("collection".equals(item.optString("wrapperType"))) return "album";
+        return item.optString("kind", item.optString("wrapperType"));
+    }
+
+    private static String mediaOf(JSONObject item) {
+        switch (kindOf(item)) {
+            case "song":
+            case "album":
+            case "artist":
+                return "music";
+            case "music-video":
+                return "musicVideo";
+            case "feature-movie":
+                return "Short Films".equals(item.optString("primaryGenreName")) ? "shortFilm" : "movie";
+            case "tv-episode":
+                return "tvShow";
+            case "audiobook":
+                return "audiobook";
+            default:
+                return kindOf(item);
+        }
+    }
+
+    private static long primaryId(JSONObject item) {
+        switch (item.optString("wrapperType")) {
+            case "artist":
+                return item.optLong("artistId");
+            case "collection":
+            case "audiobook":
+                return item.optLong("collectionId");
+            default:
+                return item.optLong("trackId");
+        }
+    }
+
+    private static String searchableText(JSONObject item) {
+        return String.join(" ",
+            item.optString("trackName"),
+            item.optString("collectionName"),
+            item.optString("artistName"),
+            item.optString("primaryGenreName"),
+            kindOf(item)
+        ).toLowerCase(Locale.ROOT);
+    }
+
+    private static JSONObject feedEntry(JSONObject item) {
+        String name = item.has("trackName") ? item.getString("trackName") : item.optString("collectionName");
+        String kind = kindOf(item);
+
+        return new JSONObject()
+            .put("id", String.valueOf(primaryId(item)))
+            .put("name", name)
+            .put("artistName", item.optString("artistName"))
+            .put("artistId", String.valueOf(item.optLong("artistId")))
+            .put("kind", "feature-movie".equals(kind) ? "movie" : "ebook".equals(kind) ? "book" : kind)
+            .put("releaseDate", item.optString("releaseDate").replaceFirst("T.*", ""))
+            .put("artworkUrl100", item.optString("artworkUrl100"))
+            .put("genres", new JSONArray().put(new JSONObject()
+                .put("genreId", item.getJSONArray("genreIds").getString(0))
+                .put("name", item.optString("primaryGenreName"))))
+            .put("url", item.has("trackViewUrl") ? item.getString("trackViewUrl") : item.optString("collectionViewUrl"));
+    }
+
+}
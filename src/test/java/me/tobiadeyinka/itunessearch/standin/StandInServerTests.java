@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2018 Oluwatobi Adeyinka
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package me.tobiadeyinka.itunessearch.standin;
+
+import me.tobiadeyinka.itunessearch.exceptions.NetworkCommunicationException;
+import me.tobiadeyinka.itunessearch.exceptions.RequestTimeoutException;
+import me.tobiadeyinka.itunessearch.networking.ItunesClient;
+import me.tobiadeyinka.itunessearch.networking.RateLimiter;
+import me.tobiadeyinka.itunessearch.networking.RetryPolicy;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests for the local iTunes stand-in and for pointing a client at another base uri.
+ */
+public class StandInServerTests {
+
+    private ItunesStandInServer standIn;
+    private ItunesClient client;
+
+    @BeforeClass
+    public void startStandIn() throws IOException {
+        standIn = ItunesStandInServer.start();
+    }
+
+    @AfterClass
+    public void stopStandIn() {
+        standIn.close();
+    }
+
+    @BeforeMethod
+    public void resetStandIn() {
+        standIn.reset();
+        client = standIn.configure(new ItunesClient());
+    }
+
+    @Test
+    public void searchMatchesEveryWordOfTheTerm() {
+        JSONArray results = client
+            .executeQuery(URI.create("https://itunes.apple.com/search?term=the+national&media=music"))
+            .getJSONArray("results");
+
+        assertThat(results.length()).isGreaterThan(1);
+        for (int i = 0; i < results.length(); i++) {
+            assertThat(results.getJSONObject(i).toString().toLowerCase()).contains("the national");
+        }
+    }
+
+    @Test
+    public void searchHonoursLimitAndOffset() {
+        JSONArray firstPage = client
+            .executeQuery(URI.create("https://itunes.apple.com/search?term=the&limit=2"))
+            .getJSONArray("results");
+        JSONArray secondPage = client
+            .executeQuery(URI.create("https://itunes.apple.com/search?term=the&limit=2&offset=1"))
+            .getJSONArray("results");
+
+        assertThat(firstPage.length()).isEqualTo(2);
+        assertThat(secondPage.getJSONObject(0).similar(firstPage.getJSONObject(1))).isTrue();
+    }
+
+    @Test
+    public void lookupReturnsTheKnownIdsInOrder() {
+        JSONObject response = client
+            .executeQuery(URI.create("https://itunes.apple.com/lookup?id=1348407955,1,1267086009"));
+
+        assertThat(response.getInt("resultCount")).isEqualTo(2);
+        assertThat(response.getJSONArray("results").getJSONObject(0).getLong("trackId")).isEqualTo(1348407955L);
+        assertThat(response.getJSONArray("results").getJSONObject(1).getLong("trackId")).isEqualTo(1267086009L);
+    }
+
+    @Test
+    public void feedsAreTruncatedToTheLimit() {
+        JSONObject feed = client
+            .executeQuery(URI.create("https://rss.itunes.apple.com/api/v1/ca/itunes-music/top-songs/all/2/explicit.json"))
+            .getJSONObject("feed");
+
+        assertThat(feed.getString("country")).isEqualTo("ca");
+        assertThat(feed.getJSONArray("results").length()).isEqualTo(2);
+        assertThat(feed.getJSONArray("results").getJSONObject(0).getString("kind")).isEqualTo("song");
+
+        assertThatThrownBy(() -> client.executeQuery(
+            URI.create("https://rss.itunes.apple.com/api/v1/us/itunes-music/top-nothing/all/2/explicit.json")
+        ))
+            .isInstanceOf(NetworkCommunicationException.class)
+            .hasMessageContaining("404")
+            .hasMessageContaining("rss.itunes.apple.com");
+    }
+
+    @Test
+    public void rateLimitingStillAppliesToTheOriginalHost() {
+        RateLimiter rateLimiter = new RateLimiter(10, Duration.ofMinutes(1));
+        client.withRateLimiter(ItunesClient.ITUNES_HOST, rateLimiter);
+
+        client.executeQuery(URI.create("https://itunes.apple.com/search?term=radio"));
+
+        assertThat(rateLimiter.availablePermits()).isEqualTo(9);
+        assertThat(standIn.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void injectedLatencyTripsTheClientTimeout() {
+        standIn.withLatency(Duration.ofMillis(500), Duration.ZERO);
+        client.withTimeout(Duration.ofMillis(100));
+
+        assertThatThrownBy(() -> client.executeQuery(URI.create("https://itunes.apple.com/search?term=radio")))
+            .isInstanceOf(RequestTimeoutException.class);
+    }
+
+    @Test
+    public void retriesRecoverFromInjectedErrors() {
+        standIn.withErrorRate(0.3, 503);
+        client.withRetryPolicy(new RetryPolicy()
+            .withMaxAttempts(10)
+            .withBaseDelay(Duration.ofMillis(1))
+            .withMaxDelay(Duration.ofMillis(5)));
+
+        for (int i = 0; i < 20; i++) {
+            JSONObject response = client
+                .executeQuery(URI.create("https://itunes.apple.com/lookup?id=1272970334&n=" + i));
+            assertThat(response.getInt("resultCount")).isEqualTo(1);
+        }
+
+        assertThat(standIn.getErrorCount()).isGreaterThan(0);
+        assertThat(standIn.getRequestCount()).isEqualTo(20 + standIn.getErrorCount());
+    }
+
+    @Test
+    public void throttledRequestsAreAnsweredWithRetryAfter() throws Exception {
+        standIn.withThrottling(new RateLimiter(2, Duration.ofMinutes(1)));
+
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(standIn.getBaseUri().resolve("/search?term=radio")).build();
+
+        assertThat(httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+        assertThat(httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+
+        HttpResponse<Void> throttled = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        assertThat(throttled.statusCode()).isEqualTo(403);
+        assertThat(Long.parseLong(throttled.headers().firstValue("Retry-After").orElseThrow())).isBetween(1L, 30L);
+        assertThat(standIn.getThrottledCount()).isEqualTo(1);
+    }
+
+}